@@ -0,0 +1,91 @@
+package thermapp.sdk.sample.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encoding and decoding a frame with every codec. the frames cycle through a short clip,
+ * with a keyframe at the start of every cycle, so the delta codec sees realistic changes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class CodecBenchmark {
+    //number of frames of the clip, also the keyframe interval
+    private static final int CLIP_LENGTH = 16;
+
+    @Param({"RAW32", "FIXED16", "DELTA"})
+    public String encoding;
+
+    @Param({"160x120", "384x288", "640x480"})
+    public String resolution;
+
+    private int width;
+    private int height;
+    private int[][] clip;
+    private FrameCodec encoder;
+    private FrameCodec decoder;
+    private FrameBuffer buffer;
+    //the encoded clip, in order
+    private ByteBuffer[] payloads;
+    private MessageHeader[] headers;
+    private int[] decoded;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        width = ThermalScene.width(resolution);
+        height = ThermalScene.height(resolution);
+        clip = ThermalScene.frames(width, height, CLIP_LENGTH);
+        encoder = FrameCodecs.create(encoding, 1, CLIP_LENGTH);
+        buffer = new FrameBuffer(encoder.maxPayloadLength(width, height));
+
+        //encode the clip once for the decode benchmark
+        FrameCodec clipEncoder = FrameCodecs.create(encoding, 1, CLIP_LENGTH);
+        payloads = new ByteBuffer[CLIP_LENGTH];
+        headers = new MessageHeader[CLIP_LENGTH];
+        for (int i = 0; i < CLIP_LENGTH; i++) {
+            ByteBuffer bytes = buffer.clear(clipEncoder.maxPayloadLength(width, height));
+            int flags = clipEncoder.encode(clip[i], width, height, buffer);
+            bytes.flip();
+            payloads[i] = ByteBuffer.allocate(bytes.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+            payloads[i].put(bytes).flip();
+            headers[i] = new MessageHeader().set(WireProtocol.TYPE_FRAME, clipEncoder.getEncoding(), flags, i, 0,
+                    width, height, payloads[i].remaining());
+        }
+        decoder = FrameCodecs.forEncoding(encoder.getEncoding());
+        decoded = new int[width * height];
+    }
+
+    @Benchmark
+    public int encode() {
+        int[] pixels = clip[next];
+        next = (next + 1) % CLIP_LENGTH;
+        buffer.clear(encoder.maxPayloadLength(width, height));
+        encoder.encode(pixels, width, height, buffer);
+        return buffer.bytes().position();
+    }
+
+    @Benchmark
+    public boolean decode() {
+        int index = next;
+        next = (next + 1) % CLIP_LENGTH;
+        return decoder.decode(headers[index], payloads[index], decoded);
+    }
+}
@@ -0,0 +1,76 @@
+package thermapp.sdk.sample.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * snappy compression of an encoded payload of every codec, and the decompression of the receiver
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class CompressionBenchmark {
+    @Param({"RAW32", "FIXED16", "DELTA"})
+    public String encoding;
+
+    @Param({"160x120", "384x288", "640x480"})
+    public String resolution;
+
+    private SnappyStage snappy;
+    //the encoded payload of the second frame of the scene, a delta frame for the delta codec
+    private ByteBuffer payload;
+    private ByteBuffer compressed;
+    private ByteBuffer compressedHeap;
+
+    @Setup
+    public void setUp() throws Exception {
+        if (!SnappyStage.isAvailable())
+            throw new IllegalStateException("snappy is not available on this machine");
+
+        int width = ThermalScene.width(resolution);
+        int height = ThermalScene.height(resolution);
+        int[][] frames = ThermalScene.frames(width, height, 2);
+        FrameCodec codec = FrameCodecs.create(encoding, 1, 30);
+        FrameBuffer buffer = new FrameBuffer(codec.maxPayloadLength(width, height));
+        for (int[] frame : frames) {
+            buffer.clear(codec.maxPayloadLength(width, height));
+            codec.encode(frame, width, height, buffer);
+        }
+        payload = buffer.bytes();
+        payload.flip();
+
+        snappy = new SnappyStage();
+        compressed = ByteBuffer.allocateDirect(snappy.maxCompressedLength(payload.remaining()));
+        int length = snappy.compress(payload, compressed);
+        compressed.limit(length);
+        compressedHeap = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        compressedHeap.put(compressed.duplicate()).flip();
+        compressed.clear();
+    }
+
+    @Benchmark
+    public int compress() throws Exception {
+        return snappy.compress(payload, compressed);
+    }
+
+    @Benchmark
+    public int decompress() throws Exception {
+        return snappy.decompress(compressedHeap).remaining();
+    }
+}
@@ -0,0 +1,63 @@
+package thermapp.sdk.sample.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * packing a frame of ints into little endian bytes: the per frame byte array of the first version
+ * of the app against the pooled direct buffer of the serializer, header included
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class PackingBenchmark {
+    @Param({"160x120", "384x288", "640x480"})
+    public String resolution;
+
+    private Frame frame;
+    private FrameSerializer serializer;
+
+    @Setup
+    public void setUp() {
+        int width = ThermalScene.width(resolution);
+        int height = ThermalScene.height(resolution);
+        frame = ThermalScene.frame(ThermalScene.frames(width, height, 1)[0], width, height, 0);
+        serializer = new FrameSerializer(new Raw32Codec());
+    }
+
+    @Benchmark
+    public byte[] int2byte() {
+        int[] src = frame.getPixels();
+        byte[] output = new byte[frame.getLength() * 4];
+        for (int i = 0; i < frame.getLength(); i++) {
+            int position = i << 2;
+            output[position | 0] = (byte) ((src[i] >> 0) & 0xFF);
+            output[position | 1] = (byte) ((src[i] >> 8) & 0xFF);
+            output[position | 2] = (byte) ((src[i] >> 16) & 0xFF);
+            output[position | 3] = (byte) ((src[i] >> 24) & 0xFF);
+        }
+        return output;
+    }
+
+    @Benchmark
+    public int serializeRaw32() throws Exception {
+        FrameBuffer buffer = serializer.serialize(frame);
+        int length = buffer.bytes().remaining();
+        serializer.release(buffer);
+        return length;
+    }
+}
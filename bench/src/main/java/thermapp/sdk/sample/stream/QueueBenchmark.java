@@ -0,0 +1,88 @@
+package thermapp.sdk.sample.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * handing a frame from the camera thread to the sender thread through the frame queue.
+ * the single threaded benchmark measures the copy and the locking without contention, the
+ * handoff benchmark offers to a blocking queue drained by a real consumer thread
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class QueueBenchmark {
+    @Param({"160x120", "384x288", "640x480"})
+    public String resolution;
+
+    private int width;
+    private int height;
+    private int[] pixels;
+    //drained by the benchmark thread itself
+    private FrameQueue queue;
+    //drained by the consumer thread
+    private FrameQueue handoffQueue;
+    private Thread consumer;
+
+    @Setup
+    public void setUp() {
+        width = ThermalScene.width(resolution);
+        height = ThermalScene.height(resolution);
+        pixels = ThermalScene.frames(width, height, 1)[0];
+
+        queue = new FrameQueue(4, OverflowPolicy.DROP_OLDEST);
+        queue.open();
+
+        handoffQueue = new FrameQueue(4, OverflowPolicy.BLOCK);
+        handoffQueue.open();
+        consumer = new Thread("Consumer") {
+            @Override
+            public void run() {
+                try {
+                    while (true)
+                        handoffQueue.release(handoffQueue.take(), true);
+                } catch (InterruptedException e) {
+                    //the benchmark is over
+                }
+            }
+        };
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        consumer.interrupt();
+        handoffQueue.close();
+        consumer.join();
+    }
+
+    @Benchmark
+    public long offerTakeRelease() throws InterruptedException {
+        queue.offer(pixels, width, height);
+        Frame frame = queue.take();
+        long sequence = frame.getSequence();
+        queue.release(frame, true);
+        return sequence;
+    }
+
+    @Benchmark
+    public boolean handoff() throws InterruptedException {
+        return handoffQueue.offer(pixels, width, height);
+    }
+}
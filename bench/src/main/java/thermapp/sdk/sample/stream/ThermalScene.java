@@ -0,0 +1,55 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * deterministic camera like frames for the benchmarks: a warm gradient, a hot spot moving across
+ * the scene and a little sensor noise, so every run and every commit encodes the same data
+ */
+final class ThermalScene {
+    private ThermalScene() {}
+
+    static int width(String resolution) {
+        return Integer.parseInt(resolution.substring(0, resolution.indexOf('x')));
+    }
+
+    static int height(String resolution) {
+        return Integer.parseInt(resolution.substring(resolution.indexOf('x') + 1));
+    }
+
+    /**
+     * @param count number of consecutive frames
+     * @return the frames, row by row
+     */
+    static int[][] frames(int width, int height, int count) {
+        int[][] frames = new int[count][width * height];
+        int seed = 12345;
+        int radius = Math.max(2, height / 12);
+        for (int f = 0; f < count; f++) {
+            int spotX = (f * 3) % width;
+            int spotY = height / 2 + (int) (height / 4 * Math.sin(f / 20.0));
+            int[] pixels = frames[f];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    seed = seed * 1103515245 + 12345;
+                    int value = 2500 + y * 4 + x + ((seed >>> 16) & 7);
+                    int dx = x - spotX;
+                    int dy = y - spotY;
+                    if (dx * dx + dy * dy < radius * radius)
+                        value += 1200;
+                    pixels[y * width + x] = value;
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * @return a pooled frame holding the temperatures, like the frame queue hands to the sender
+     */
+    static Frame frame(int[] pixels, int width, int height, long sequence) {
+        Frame frame = new Frame();
+        frame.set(pixels, width, height);
+        frame.setSequence(sequence);
+        frame.setTimestamp(sequence);
+        return frame;
+    }
+}
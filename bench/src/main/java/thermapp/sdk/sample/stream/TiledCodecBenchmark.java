@@ -0,0 +1,101 @@
+package thermapp.sdk.sample.stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * encoding and compressing a frame split in tiles on a number of threads, against the whole frame
+ * encoded then compressed on the sender thread. 1 thread measures the cost of the tiles alone
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms512m", "-Xmx512m"})
+@State(Scope.Thread)
+public class TiledCodecBenchmark {
+    //number of frames of the scene, encoded one after the other
+    private static final int CLIP_LENGTH = 16;
+    //number of tiles of the tiled codec, the default of the app
+    private static final int TILES = 8;
+
+    @Param({"FIXED16", "DELTA"})
+    public String encoding;
+
+    @Param({"384x288", "640x480"})
+    public String resolution;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private int width;
+    private int height;
+    private int[][] frames;
+    private int index;
+    private TileWorkers workers;
+    private FrameCodec tiled;
+    private FrameCodec whole;
+    private SnappyStage snappy;
+    private FrameBuffer buffer;
+    private FrameBuffer compressed;
+
+    @Setup
+    public void setUp() {
+        if (!SnappyStage.isAvailable())
+            throw new IllegalStateException("snappy is not available on this machine");
+
+        width = ThermalScene.width(resolution);
+        height = ThermalScene.height(resolution);
+        frames = ThermalScene.frames(width, height, CLIP_LENGTH);
+        workers = threads > 1 ? new TileWorkers(threads) : null;
+        TiledCodec codec = (TiledCodec) FrameCodecs.create(encoding, 1, 30, TILES, workers);
+        codec.setTiled(true, true);
+        tiled = codec;
+        whole = FrameCodecs.create(encoding, 1, 30);
+        snappy = new SnappyStage();
+        buffer = new FrameBuffer(0);
+        compressed = new FrameBuffer(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (workers != null)
+            workers.shutdown();
+    }
+
+    @Benchmark
+    public int encodeTiled() {
+        int[] pixels = next();
+        buffer.clear(tiled.maxPayloadLength(width, height));
+        tiled.encode(pixels, width, height, buffer);
+        return buffer.bytes().position();
+    }
+
+    @Benchmark
+    public int encodeWhole() throws Exception {
+        int[] pixels = next();
+        ByteBuffer bytes = buffer.clear(whole.maxPayloadLength(width, height));
+        whole.encode(pixels, width, height, buffer);
+        bytes.flip();
+        return snappy.compress(bytes, compressed.clear(snappy.maxCompressedLength(bytes.remaining())));
+    }
+
+    private int[] next() {
+        int[] pixels = frames[index];
+        index = (index + 1) % frames.length;
+        return pixels;
+    }
+}
@@ -0,0 +1,134 @@
+package thermapp.sdk.sample.stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * the delta frames decode bit exact along the chain, with a keyframe wherever the receiver could not
+ * follow it, and a receiver that lost a frame of the chain waits for the next keyframe
+ */
+public class DeltaCodecTest {
+    private static final int WIDTH = 384;
+    private static final int HEIGHT = 288;
+    private static final int KEYFRAME_INTERVAL = 4;
+
+    @Test
+    public void sequenceIsBitExactWithAKeyframeEveryInterval() throws Exception {
+        int[][] frames = ThermalScene.frames(WIDTH, HEIGHT, 3 * KEYFRAME_INTERVAL + 1);
+        //extreme differences against the previous frame too
+        frames[1][0] = Integer.MIN_VALUE;
+        frames[2][0] = Integer.MAX_VALUE;
+        FrameSerializer serializer = new FrameSerializer(new DeltaCodec(KEYFRAME_INTERVAL));
+        DeltaCodec decoder = new DeltaCodec(KEYFRAME_INTERVAL);
+
+        for (int f = 0; f < frames.length; f++) {
+            ByteBuffer message = serialize(serializer, frames[f], WIDTH, HEIGHT, f);
+            assertEquals("frame " + f, f % KEYFRAME_INTERVAL == 0, isKeyframe(message));
+            assertArrayEquals("frame " + f, frames[f], decode(decoder, message, true));
+        }
+    }
+
+    @Test
+    public void resolutionChangeForcesAKeyframe() throws Exception {
+        FrameSerializer serializer = new FrameSerializer(new DeltaCodec(KEYFRAME_INTERVAL));
+        DeltaCodec decoder = new DeltaCodec(KEYFRAME_INTERVAL);
+        int[][] large = ThermalScene.frames(WIDTH, HEIGHT, 2);
+        int[][] small = ThermalScene.frames(WIDTH / 2, HEIGHT / 2, 2);
+
+        assertTrue(isKeyframe(roundTrip(serializer, decoder, large[0], WIDTH, HEIGHT, 0)));
+        assertFalse(isKeyframe(roundTrip(serializer, decoder, large[1], WIDTH, HEIGHT, 1)));
+        assertTrue(isKeyframe(roundTrip(serializer, decoder, small[0], WIDTH / 2, HEIGHT / 2, 2)));
+        assertFalse(isKeyframe(roundTrip(serializer, decoder, small[1], WIDTH / 2, HEIGHT / 2, 3)));
+        assertTrue(isKeyframe(roundTrip(serializer, decoder, large[0], WIDTH, HEIGHT, 4)));
+    }
+
+    @Test
+    public void resetForcesAKeyframe() throws Exception {
+        DeltaCodec encoder = new DeltaCodec(KEYFRAME_INTERVAL);
+        FrameSerializer serializer = new FrameSerializer(encoder);
+        DeltaCodec decoder = new DeltaCodec(KEYFRAME_INTERVAL);
+        int[][] frames = ThermalScene.frames(WIDTH, HEIGHT, 3);
+
+        assertTrue(isKeyframe(roundTrip(serializer, decoder, frames[0], WIDTH, HEIGHT, 0)));
+        assertFalse(isKeyframe(roundTrip(serializer, decoder, frames[1], WIDTH, HEIGHT, 1)));
+        encoder.reset();
+        assertTrue(isKeyframe(roundTrip(serializer, decoder, frames[2], WIDTH, HEIGHT, 2)));
+    }
+
+    @Test
+    public void missedReferenceRefusesDeltasUntilTheNextKeyframe() throws Exception {
+        int[][] frames = ThermalScene.frames(WIDTH, HEIGHT, 2 * KEYFRAME_INTERVAL + 1);
+        FrameSerializer serializer = new FrameSerializer(new DeltaCodec(KEYFRAME_INTERVAL));
+        DeltaCodec decoder = new DeltaCodec(KEYFRAME_INTERVAL);
+
+        ByteBuffer[] messages = new ByteBuffer[frames.length];
+        for (int f = 0; f < frames.length; f++)
+            messages[f] = serialize(serializer, frames[f], WIDTH, HEIGHT, f);
+
+        assertArrayEquals(frames[0], decode(decoder, messages[0], true));
+        assertArrayEquals(frames[1], decode(decoder, messages[1], true));
+        //frame 2 is lost, the rest of the chain cannot be decoded, even once frame 2 comes late
+        for (int f = 3; f < KEYFRAME_INTERVAL; f++)
+            decode(decoder, messages[f], false);
+        decode(decoder, messages[2], false);
+        for (int f = KEYFRAME_INTERVAL; f < frames.length; f++)
+            assertArrayEquals("frame " + f, frames[f], decode(decoder, messages[f], true));
+
+        //a decoder joining in the middle of the chain waits for the keyframe as well
+        DeltaCodec late = new DeltaCodec(KEYFRAME_INTERVAL);
+        decode(late, messages[KEYFRAME_INTERVAL + 1], false);
+        decode(late, messages[KEYFRAME_INTERVAL + 2], false);
+        assertArrayEquals(frames[2 * KEYFRAME_INTERVAL], decode(late, messages[2 * KEYFRAME_INTERVAL], true));
+    }
+
+    private static ByteBuffer roundTrip(FrameSerializer serializer, DeltaCodec decoder, int[] pixels, int width,
+                                        int height, int sequence) throws Exception {
+        ByteBuffer message = serialize(serializer, pixels, width, height, sequence);
+        assertArrayEquals(pixels, decode(decoder, message, true));
+        return message;
+    }
+
+    /**
+     * serialize a frame like the sender does
+     * @return a copy of the message
+     */
+    private static ByteBuffer serialize(FrameSerializer serializer, int[] pixels, int width, int height,
+                                        int sequence) throws Exception {
+        FrameBuffer buffer = serializer.serialize(ThermalScene.frame(pixels, width, height, sequence));
+        ByteBuffer message = ByteBuffer.allocate(buffer.bytes().remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        message.put(buffer.bytes().duplicate());
+        serializer.release(buffer);
+        message.flip();
+        return message;
+    }
+
+    private static boolean isKeyframe(ByteBuffer message) {
+        MessageHeader header = new MessageHeader();
+        assertTrue(WireProtocol.readHeader(message, 0, header));
+        return header.hasFlag(WireProtocol.FLAG_KEYFRAME);
+    }
+
+    /**
+     * decode a message like the receiver does
+     * @param decoded whether the decoder is expected to accept the frame
+     * @return the temperatures decoded
+     */
+    private static int[] decode(DeltaCodec decoder, ByteBuffer message, boolean decoded) {
+        MessageHeader header = new MessageHeader();
+        assertTrue(WireProtocol.readHeader(message, 0, header));
+        assertEquals(WireProtocol.ENCODING_DELTA, header.getEncoding());
+
+        ByteBuffer payload = message.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        payload.position(WireProtocol.HEADER_SIZE);
+        int[] pixels = new int[header.getWidth() * header.getHeight()];
+        assertEquals(decoded, decoder.decode(header, payload.slice().order(ByteOrder.LITTLE_ENDIAN), pixels));
+        return pixels;
+    }
+}
@@ -0,0 +1,85 @@
+package thermapp.sdk.sample.stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * the fixed point frames decode to the temperatures sent, exactly at scale 1 and within half the scale above
+ */
+public class Fixed16CodecTest {
+    private static final int WIDTH = 384;
+    private static final int HEIGHT = 288;
+
+    @Test
+    public void scale1IsLossless() throws Exception {
+        int[] pixels = ThermalScene.frames(WIDTH, HEIGHT, 1)[0];
+        assertArrayEquals(pixels, roundTrip(new Fixed16Codec(1), pixels));
+    }
+
+    @Test
+    public void scale1IsLosslessOverTheWholeRange() throws Exception {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        //a negative offset and a frame spanning all 65536 values
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = -20000 + (i * 7919) % 65536;
+        pixels[0] = -20000;
+        pixels[1] = -20000 + 65535;
+
+        Fixed16Codec codec = new Fixed16Codec(1);
+        assertArrayEquals(pixels, roundTrip(codec, pixels));
+        assertEquals(0, codec.getClampedCount());
+    }
+
+    @Test
+    public void largerScaleStaysWithinHalfTheScale() throws Exception {
+        for (int scale : new int[]{2, 3, 4, 10}) {
+            int[] pixels = ThermalScene.frames(WIDTH, HEIGHT, 1)[0];
+            Fixed16Codec codec = new Fixed16Codec(scale);
+            int[] decoded = roundTrip(codec, pixels);
+            for (int i = 0; i < pixels.length; i++)
+                assertTrue("scale " + scale + " pixel " + i + ": " + pixels[i] + " decoded as " + decoded[i],
+                        Math.abs(decoded[i] - pixels[i]) <= scale / 2);
+            assertEquals(0, codec.getClampedCount());
+        }
+    }
+
+    @Test
+    public void valuesBeyondTheRangeAreClamped() throws Exception {
+        int[] pixels = ThermalScene.frames(WIDTH, HEIGHT, 1)[0];
+        pixels[0] = 0;
+        pixels[1] = 2 * 65536;
+
+        Fixed16Codec codec = new Fixed16Codec(1);
+        int[] decoded = roundTrip(codec, pixels);
+        assertEquals(65535, decoded[1]);
+        assertEquals(1, codec.getClampedCount());
+    }
+
+    /**
+     * serialize and decode a frame like the sender and the receiver do
+     */
+    private static int[] roundTrip(Fixed16Codec codec, int[] pixels) throws Exception {
+        FrameSerializer serializer = new FrameSerializer(codec);
+        FrameBuffer buffer = serializer.serialize(ThermalScene.frame(pixels, WIDTH, HEIGHT, 1));
+        ByteBuffer message = ByteBuffer.allocate(buffer.bytes().remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        message.put(buffer.bytes().duplicate());
+        serializer.release(buffer);
+
+        MessageHeader header = new MessageHeader();
+        assertTrue(WireProtocol.readHeader(message, 0, header));
+        assertEquals(WireProtocol.ENCODING_FIXED16, header.getEncoding());
+        assertEquals(8 + WIDTH * HEIGHT * 2, header.getPayloadLength());
+
+        message.position(WireProtocol.HEADER_SIZE);
+        int[] decoded = new int[WIDTH * HEIGHT];
+        assertTrue(new Fixed16Codec(codec.getScale()).decode(header, message.slice().order(ByteOrder.LITTLE_ENDIAN),
+                decoded));
+        return decoded;
+    }
+}
@@ -0,0 +1,81 @@
+package thermapp.sdk.sample.stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * the raw frames of the serializer carry the same bytes as the int2byte stream of the first version of the app
+ */
+public class FrameSerializerTest {
+    @Test
+    public void raw32PayloadMatchesInt2byte() throws Exception {
+        int width = 384;
+        int height = 288;
+        int[] pixels = ThermalScene.frames(width, height, 1)[0];
+        //every byte position of negative and extreme values too
+        pixels[0] = -1;
+        pixels[1] = Integer.MIN_VALUE;
+        pixels[2] = Integer.MAX_VALUE;
+        pixels[3] = 0x01020304;
+        Frame frame = ThermalScene.frame(pixels, width, height, 7);
+
+        FrameSerializer serializer = new FrameSerializer(new Raw32Codec());
+        FrameBuffer buffer = serializer.serialize(frame);
+        byte[] message = copy(buffer.bytes());
+        serializer.release(buffer);
+
+        MessageHeader header = new MessageHeader();
+        assertTrue(WireProtocol.readHeader(ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN), 0, header));
+        assertEquals(WireProtocol.ENCODING_RAW32, header.getEncoding());
+        assertEquals(width * height * 4, header.getPayloadLength());
+        assertEquals(WireProtocol.HEADER_SIZE + header.getPayloadLength(), message.length);
+
+        byte[] payload = new byte[header.getPayloadLength()];
+        System.arraycopy(message, WireProtocol.HEADER_SIZE, payload, 0, payload.length);
+        assertArrayEquals(int2byte(pixels, width * height), payload);
+    }
+
+    @Test
+    public void pooledBuffersKeepMatchingInt2byte() throws Exception {
+        FrameSerializer serializer = new FrameSerializer(new Raw32Codec());
+        //a smaller frame after a larger one reuses the larger buffer
+        int[][] sizes = {{640, 480}, {160, 120}, {384, 288}};
+        for (int[] size : sizes) {
+            int[] pixels = ThermalScene.frames(size[0], size[1], 1)[0];
+            FrameBuffer buffer = serializer.serialize(ThermalScene.frame(pixels, size[0], size[1], 1));
+            byte[] message = copy(buffer.bytes());
+            serializer.release(buffer);
+
+            byte[] payload = new byte[message.length - WireProtocol.HEADER_SIZE];
+            System.arraycopy(message, WireProtocol.HEADER_SIZE, payload, 0, payload.length);
+            assertArrayEquals(int2byte(pixels, size[0] * size[1]), payload);
+        }
+    }
+
+    /**
+     * the conversion of the first version of the app
+     */
+    private static byte[] int2byte(int[] src, int length) {
+        byte[] output = new byte[length * 4];
+        for (int i = 0; i < length; i++) {
+            int position = i << 2;
+            output[position | 0] = (byte) ((src[i] >> 0) & 0xFF);
+            output[position | 1] = (byte) ((src[i] >> 8) & 0xFF);
+            output[position | 2] = (byte) ((src[i] >> 16) & 0xFF);
+            output[position | 3] = (byte) ((src[i] >> 24) & 0xFF);
+        }
+        return output;
+    }
+
+    private static byte[] copy(ByteBuffer bytes) {
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,123 @@
+package thermapp.sdk.sample.stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * the preview levels decode exactly as encoded, with the runs cut at the boundaries of the control bytes
+ */
+public class PreviewCodecTest {
+    @Test
+    public void repeatedRunsAtTheirBoundaries() {
+        //a flat frame is all level 0
+        assertEncoded(flat(2), 1 + 2);
+        assertEncoded(flat(3), 2);
+        assertEncoded(flat(130), 2);
+        //the longest run, then a single literal, a too short run as literals and a shortest run
+        assertEncoded(flat(131), 2 + 2);
+        assertEncoded(flat(132), 2 + 1 + 2);
+        assertEncoded(flat(133), 2 + 2);
+        assertEncoded(flat(260), 2 + 2);
+    }
+
+    @Test
+    public void literalRunsAtTheirBoundaries() {
+        assertEncoded(alternating(127), 1 + 127);
+        assertEncoded(alternating(128), 1 + 128);
+        assertEncoded(alternating(129), 1 + 128 + 1 + 1);
+        assertEncoded(alternating(256), 1 + 128 + 1 + 128);
+        assertEncoded(alternating(257), 1 + 128 + 1 + 128 + 1 + 1);
+    }
+
+    @Test
+    public void literalsNextToRuns() {
+        //the longest literal run then the shortest repeated one
+        assertEncoded(concat(alternating(128), repeat(7, 3)), 1 + 128 + 2);
+        //a repeated run too short to be one joins the literals
+        assertEncoded(concat(alternating(129), repeat(7, 2)), 1 + 128 + 1 + 3);
+        assertEncoded(concat(repeat(7, 130), alternating(128)), 2 + 1 + 128);
+        assertEncoded(concat(concat(alternating(5), repeat(7, 131)), alternating(3)), 1 + 5 + 2 + 1 + 1 + 3);
+    }
+
+    @Test
+    public void sceneRoundTrips() {
+        int width = 384;
+        int height = 288;
+        int[] pixels = ThermalScene.frames(width, height, 1)[0];
+        ByteBuffer payload = encode(pixels, width, height);
+        int length = width * height;
+        byte[] levels = new byte[length];
+        assertTrue(PreviewCodec.decode(payload, payload.remaining(), levels, length));
+
+        int min = PreviewCodec.getMin(payload);
+        int max = PreviewCodec.getMax(payload);
+        for (int i = 0; i < length; i++) {
+            int expected = (int) (((pixels[i] - (long) min) * 255 + ((max - min) >> 1)) / (max - min));
+            assertEquals("pixel " + i, expected, levels[i] & 0xFF);
+        }
+        //a payload cut short or holding too many levels is refused
+        assertFalse(PreviewCodec.decode(payload, payload.remaining() - 1, levels, length));
+        assertFalse(PreviewCodec.decode(payload, payload.remaining(), new byte[length + 1], length + 1));
+    }
+
+    /**
+     * encode temperatures from 0 to 255, so the levels are the temperatures, and check the levels decoded
+     * @param length number of bytes of the encoded levels
+     */
+    private static void assertEncoded(int[] pixels, int length) {
+        ByteBuffer payload = encode(pixels, pixels.length, 1);
+        assertEquals(WireProtocol.PREVIEW_HEADER_LENGTH + length, payload.remaining());
+        assertTrue(payload.remaining() <= PreviewCodec.maxPayloadLength(pixels.length, 1));
+
+        byte[] levels = new byte[pixels.length];
+        assertTrue(PreviewCodec.decode(payload, payload.remaining(), levels, levels.length));
+        byte[] expected = new byte[pixels.length];
+        int min = PreviewCodec.getMin(payload);
+        for (int i = 0; i < pixels.length; i++)
+            expected[i] = (byte) (pixels[i] - min);
+        assertArrayEquals(expected, levels);
+    }
+
+    private static ByteBuffer encode(int[] pixels, int width, int height) {
+        ByteBuffer payload = ByteBuffer.allocate(PreviewCodec.maxPayloadLength(width, height))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        new PreviewCodec().encode(pixels, width, height, payload);
+        payload.flip();
+        return payload;
+    }
+
+    private static int[] flat(int length) {
+        return repeat(1000, length);
+    }
+
+    private static int[] repeat(int value, int length) {
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++)
+            pixels[i] = value;
+        return pixels;
+    }
+
+    /**
+     * @return 0 and 255 in turn, no two neighbours alike
+     */
+    private static int[] alternating(int length) {
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++)
+            pixels[i] = (i & 1) == 0 ? 0 : 255;
+        return pixels;
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] pixels = new int[first.length + second.length];
+        System.arraycopy(first, 0, pixels, 0, first.length);
+        System.arraycopy(second, 0, pixels, first.length, second.length);
+        return pixels;
+    }
+}
@@ -0,0 +1,143 @@
+package thermapp.sdk.sample.stream;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * the tiled payload is the same whatever the number of threads, a receiver decodes it bit exact, and a
+ * handshake changing the tiling while a frame is serialized applies from the next frame
+ */
+public class TiledCodecTest {
+    private static final int WIDTH = 384;
+    private static final int HEIGHT = 288;
+    private static final int TILES = 4;
+    private static final int FRAMES = 5;
+    private static final int KEYFRAME_INTERVAL = 3;
+
+    @Test
+    public void tilingChangedAfterSizingAppliesToTheNextFrame() {
+        TiledCodec codec = new TiledCodec(new Raw32Codec(), tileCodecs(), null);
+        int[] pixels = ThermalScene.frames(WIDTH, HEIGHT, 1)[0];
+        FrameBuffer buffer = new FrameBuffer(0);
+
+        //sized whole, then the handshake turns the tiles on before the frame is encoded
+        int length = codec.maxPayloadLength(WIDTH, HEIGHT);
+        buffer.clear(length);
+        codec.setTiled(true, false);
+        assertTrue(codec.isTiled());
+        assertEquals(0, codec.encode(pixels, WIDTH, HEIGHT, buffer) & WireProtocol.FLAG_TILED);
+        assertEquals(length, buffer.bytes().position());
+
+        //the next frame is tiled, then the tiles are turned off between sizing and encoding
+        length = codec.maxPayloadLength(WIDTH, HEIGHT);
+        buffer.clear(length);
+        codec.setTiled(false, false);
+        assertEquals(WireProtocol.FLAG_TILED, codec.encode(pixels, WIDTH, HEIGHT, buffer) & WireProtocol.FLAG_TILED);
+        assertTrue(buffer.bytes().position() <= length);
+    }
+
+    @Test
+    public void payloadIsTheSameWhateverTheWorkers() throws Exception {
+        for (boolean compressed : new boolean[]{false, true}) {
+            for (String name : new String[]{"RAW32", "DELTA"}) {
+                //a height the tiles do not divide as well
+                for (int height : new int[]{HEIGHT, HEIGHT + 2}) {
+                    String what = name + " compressed=" + compressed + " height=" + height;
+                    int[][] frames = ThermalScene.frames(WIDTH, height, FRAMES);
+                    byte[][] reference = serialize(name, compressed, null, frames, height);
+                    for (int threads : new int[]{2, 4}) {
+                        TileWorkers workers = new TileWorkers(threads);
+                        try {
+                            byte[][] messages = serialize(name, compressed, workers, frames, height);
+                            for (int f = 0; f < FRAMES; f++)
+                                assertArrayEquals(what + " threads=" + threads + " frame " + f, reference[f],
+                                        messages[f]);
+                        } finally {
+                            workers.shutdown();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void receiverDecodesBitExact() throws Exception {
+        assertTrue(SnappyStage.isAvailable());
+        for (boolean compressed : new boolean[]{false, true}) {
+            for (String name : new String[]{"RAW32", "DELTA"}) {
+                for (int height : new int[]{HEIGHT, HEIGHT + 2}) {
+                    String what = name + " compressed=" + compressed + " height=" + height;
+                    int[][] frames = ThermalScene.frames(WIDTH, height, FRAMES);
+                    byte[][] messages = serialize(name, compressed, null, frames, height);
+                    TileWorkers workers = new TileWorkers(2);
+                    try {
+                        FrameCodec[] receivers = {null, null};
+                        int compressedTiles = 0;
+                        for (int f = 0; f < FRAMES; f++) {
+                            ByteBuffer message = ByteBuffer.wrap(messages[f]).order(ByteOrder.LITTLE_ENDIAN);
+                            MessageHeader header = new MessageHeader();
+                            assertTrue(WireProtocol.readHeader(message, 0, header));
+                            assertTrue(what, header.hasFlag(WireProtocol.FLAG_TILED));
+                            for (int t = 0; t < TILES; t++)
+                                if ((message.get(WireProtocol.HEADER_SIZE + 4 + t * 8 + 2)
+                                        & WireProtocol.FLAG_COMPRESSED) != 0)
+                                    compressedTiles++;
+
+                            //decoded on the calling thread and on workers
+                            for (int r = 0; r < receivers.length; r++) {
+                                if (receivers[r] == null)
+                                    receivers[r] = FrameCodecs.forEncoding(header.getEncoding(),
+                                            r == 0 ? null : workers);
+                                message.position(WireProtocol.HEADER_SIZE);
+                                int[] decoded = new int[WIDTH * height];
+                                assertTrue(what + " frame " + f, receivers[r].decode(header,
+                                        message.slice().order(ByteOrder.LITTLE_ENDIAN), decoded));
+                                assertArrayEquals(what + " frame " + f, frames[f], decoded);
+                            }
+                        }
+                        //the raw temperatures compress, so the compressed tiles were decoded too
+                        if (compressed && name.equals("RAW32"))
+                            assertTrue(what, compressedTiles > 0);
+                        if (!compressed)
+                            assertEquals(what, 0, compressedTiles);
+                    } finally {
+                        workers.shutdown();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * serialize frames like a sender the receiver accepted the tiles of
+     * @return a copy of every message
+     */
+    private static byte[][] serialize(String name, boolean compressed, TileWorkers workers, int[][] frames,
+                                      int height) throws Exception {
+        TiledCodec codec = (TiledCodec) FrameCodecs.create(name, 1, KEYFRAME_INTERVAL, TILES, workers);
+        codec.setTiled(true, compressed);
+        FrameSerializer serializer = new FrameSerializer(codec);
+        byte[][] messages = new byte[frames.length][];
+        for (int f = 0; f < frames.length; f++) {
+            FrameBuffer buffer = serializer.serialize(ThermalScene.frame(frames[f], WIDTH, height, f));
+            messages[f] = new byte[buffer.bytes().remaining()];
+            buffer.bytes().duplicate().get(messages[f]);
+            serializer.release(buffer);
+        }
+        return messages;
+    }
+
+    private static FrameCodec[] tileCodecs() {
+        FrameCodec[] codecs = new FrameCodec[TILES];
+        for (int t = 0; t < TILES; t++)
+            codecs[t] = new Raw32Codec();
+        return codecs;
+    }
+}
@@ -0,0 +1,215 @@
+package thermapp.sdk.sample.stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * the messages split by the fragmenter are put back together by the assembler, whatever the order of the
+ * datagrams, and a lost or hostile datagram costs a message at most
+ */
+public class UdpFragmenterTest {
+    //smallest mtu, 64 message bytes per datagram
+    private static final int MTU = UdpFragmenter.MIN_MTU;
+    private static final int FRAGMENT_PAYLOAD = 64;
+
+    private DatagramChannel receiver;
+    private DatagramChannel sender;
+    private UdpFragmenter fragmenter;
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = DatagramChannel.open();
+        receiver.socket().setReceiveBufferSize(1 << 20);
+        receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        receiver.configureBlocking(false);
+        sender = DatagramChannel.open();
+        sender.connect(receiver.getLocalAddress());
+        fragmenter = new UdpFragmenter(sender, MTU);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Test
+    public void fragmentsInOrderMakeTheMessage() throws IOException {
+        byte[] message = message(1000, 1);
+        List<ByteBuffer> fragments = send(message);
+        assertEquals((message.length + FRAGMENT_PAYLOAD - 1) / FRAGMENT_PAYLOAD, fragments.size());
+
+        FragmentAssembler assembler = new FragmentAssembler(4);
+        for (int i = 0; i < fragments.size() - 1; i++)
+            assertNull(assembler.add(fragments.get(i)));
+        assertArrayEquals(message, bytes(assembler.add(fragments.get(fragments.size() - 1))));
+        assertEquals(1, assembler.getCompleteCount());
+    }
+
+    @Test
+    public void fragmentsOutOfOrderMakeTheMessage() throws IOException {
+        byte[] message = message(1000, 2);
+        List<ByteBuffer> fragments = send(message);
+        Collections.reverse(fragments);
+        Collections.swap(fragments, 3, 7);
+
+        FragmentAssembler assembler = new FragmentAssembler(4);
+        for (int i = 0; i < fragments.size() - 1; i++)
+            assertNull(assembler.add(fragments.get(i)));
+        assertArrayEquals(message, bytes(assembler.add(fragments.get(fragments.size() - 1))));
+    }
+
+    @Test
+    public void interleavedMessagesAreAssembledApart() throws IOException {
+        byte[] first = message(300, 3);
+        byte[] second = message(500, 4);
+        List<ByteBuffer> firstFragments = send(first);
+        List<ByteBuffer> secondFragments = send(second);
+
+        FragmentAssembler assembler = new FragmentAssembler(2);
+        for (int i = 0; i < secondFragments.size() - 1; i++)
+            assertNull(assembler.add(secondFragments.get(i)));
+        for (int i = 0; i < firstFragments.size() - 1; i++)
+            assertNull(assembler.add(firstFragments.get(i)));
+        assertArrayEquals(second, bytes(assembler.add(secondFragments.get(secondFragments.size() - 1))));
+        assertArrayEquals(first, bytes(assembler.add(firstFragments.get(firstFragments.size() - 1))));
+        assertEquals(0, assembler.getDroppedCount());
+    }
+
+    @Test
+    public void lostFragmentCostsOnlyItsMessage() throws IOException {
+        byte[] lost = message(400, 5);
+        byte[] next = message(400, 6);
+        List<ByteBuffer> lostFragments = send(lost);
+        List<ByteBuffer> nextFragments = send(next);
+        lostFragments.remove(2);
+
+        //a single slot, the next message takes it over from the incomplete one
+        FragmentAssembler assembler = new FragmentAssembler(1);
+        for (ByteBuffer fragment : lostFragments)
+            assertNull(assembler.add(fragment));
+        ByteBuffer complete = null;
+        for (ByteBuffer fragment : nextFragments)
+            complete = assembler.add(fragment);
+        assertArrayEquals(next, bytes(complete));
+        assertEquals(1, assembler.getDroppedCount());
+        assertEquals(1, assembler.getCompleteCount());
+    }
+
+    @Test
+    public void oldestIncompleteMessageIsEvicted() throws IOException {
+        List<List<ByteBuffer>> messages = new ArrayList<List<ByteBuffer>>();
+        byte[][] contents = new byte[3][];
+        for (int m = 0; m < 3; m++) {
+            contents[m] = message(200, 10 + m);
+            messages.add(send(contents[m]));
+        }
+
+        FragmentAssembler assembler = new FragmentAssembler(2);
+        //the first fragment of every message, the third one evicts the first
+        for (int m = 0; m < 3; m++)
+            assertNull(assembler.add(messages.get(m).get(0)));
+        assertEquals(1, assembler.getDroppedCount());
+
+        //the rest of the evicted message is older than everything assembled, it is ignored
+        for (int i = 1; i < messages.get(0).size(); i++)
+            assertNull(assembler.add(messages.get(0).get(i)));
+        assertEquals(1, assembler.getDroppedCount());
+
+        for (int m = 1; m < 3; m++) {
+            ByteBuffer complete = null;
+            for (int i = 1; i < messages.get(m).size(); i++)
+                complete = assembler.add(messages.get(m).get(i));
+            assertArrayEquals(contents[m], bytes(complete));
+        }
+    }
+
+    @Test
+    public void fragmentOutsideItsMessageIsInvalid() {
+        FragmentAssembler assembler = new FragmentAssembler(2);
+        //an offset so large that offset + length overflows
+        assertNull(assembler.add(fragment(1, 0, 2, 1000, Integer.MAX_VALUE - 10, 64)));
+        assertNull(assembler.add(fragment(1, 0, 2, 1000, 1000 - 63, 64)));
+        assertNull(assembler.add(fragment(1, 0, 2, -1, 0, 64)));
+        assertEquals(3, assembler.getInvalidCount());
+
+        //a fragment claiming another length than the first one of its message is not taken
+        assertNull(assembler.add(fragment(2, 0, 2, 128, 0, 64)));
+        assertNull(assembler.add(fragment(2, 1, 2, 4096, 1024, 64)));
+        ByteBuffer complete = assembler.add(fragment(2, 1, 2, 128, 64, 64));
+        assertNotNull(complete);
+        assertEquals(128, complete.remaining());
+    }
+
+    /**
+     * @return a message of the given length with recognizable bytes
+     */
+    private static byte[] message(int length, int seed) {
+        byte[] message = new byte[length];
+        for (int i = 0; i < length; i++)
+            message[i] = (byte) (i * 31 + seed);
+        return message;
+    }
+
+    /**
+     * send a message through the fragmenter
+     * @return its datagrams as received, in order
+     */
+    private List<ByteBuffer> send(byte[] message) throws IOException {
+        int count = (message.length + FRAGMENT_PAYLOAD - 1) / FRAGMENT_PAYLOAD;
+        fragmenter.write(ByteBuffer.wrap(message));
+
+        List<ByteBuffer> datagrams = new ArrayList<ByteBuffer>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (datagrams.size() < count && System.currentTimeMillis() < deadline) {
+            ByteBuffer datagram = ByteBuffer.allocate(MTU);
+            if (receiver.receive(datagram) == null) {
+                Thread.yield();
+                continue;
+            }
+            datagram.flip();
+            datagrams.add(datagram);
+        }
+        assertEquals(count, datagrams.size());
+        return datagrams;
+    }
+
+    /**
+     * @return a hand made datagram with the given header and a payload of the given length
+     */
+    private static ByteBuffer fragment(int messageId, int index, int count, int messageLength, int offset,
+                                       int length) {
+        ByteBuffer datagram = ByteBuffer.allocate(UdpFragmenter.HEADER_SIZE + length).order(ByteOrder.LITTLE_ENDIAN);
+        datagram.putInt(UdpFragmenter.MAGIC);
+        datagram.putInt(messageId);
+        datagram.putShort((short) index);
+        datagram.putShort((short) count);
+        datagram.putInt(messageLength);
+        datagram.putInt(offset);
+        datagram.position(0);
+        return datagram;
+    }
+
+    private static byte[] bytes(ByteBuffer message) {
+        assertNotNull(message);
+        byte[] bytes = new byte[message.remaining()];
+        message.duplicate().get(bytes);
+        return bytes;
+    }
+}
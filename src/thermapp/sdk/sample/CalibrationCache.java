@@ -0,0 +1,211 @@
+package thermapp.sdk.sample;
+
+import android.os.Environment;
+import android.util.Log;
+import thermapp.sdk.DeviceData;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * tells whether the calibration tables of a camera are on the device without hashing all of them on every launch.
+ *
+ * the sdk verifies the downloaded tables against the md5 of its Data.json manifest, which reads every table.
+ * once it verified them the cache writes a stamp with the md5 of the manifest and the length and modification
+ * time of every table, checked by a crc of the stamp itself. on the next launch the tables are trusted as long
+ * as the stamp is intact and nothing changed, only the small manifest is hashed again. anything else falls
+ * back to the sdk check, and to a download when the tables are missing.
+ * nothing touches the network, so the check may run before the camera is connected, for the last camera seen
+ */
+public class CalibrationCache {
+    //creating a tag name for logs
+    private static final String TAG = "CalibrationCache";
+    //manifest of the tables, written by the sdk next to them
+    private static final String MANIFEST = "Data.json";
+    //first line of a stamp, to tell its format
+    private static final String STAMP_VERSION = "calibration-stamp 1";
+
+    //directory of the stamps, the files directory of the app
+    private final File stampDir;
+
+    /**
+     * @param stampDir directory of the stamps, the files directory of the app
+     */
+    public CalibrationCache(File stampDir) {
+        this.stampDir = stampDir;
+    }
+
+    /**
+     * check that the calibration tables of a camera are on the device, from the stamp when it still matches
+     * @param serialNumber serial number of the camera
+     * @return true if the tables are there and complete, false if they must be downloaded
+     */
+    public boolean isDataAvailable(String serialNumber) {
+        DeviceData deviceData = new DeviceData(serialNumber);
+        File dataDir = getDataDir(serialNumber);
+        File stamp = getStamp(serialNumber);
+        if (dataDir != null && stamp != null && matches(stamp, serialNumber, deviceData, dataDir)) {
+            Log.i(TAG, "the calibration tables of " + serialNumber + " match their stamp");
+            return true;
+        }
+
+        if (!deviceData.IsDataAvialable())
+            return false;
+        if (dataDir != null && stamp != null)
+            writeStamp(stamp, serialNumber, deviceData, dataDir);
+        return true;
+    }
+
+    /**
+     * forget the stamp of a camera, e.g. when its tables are downloaded again
+     */
+    public void invalidate(String serialNumber) {
+        File stamp = getStamp(serialNumber);
+        if (stamp != null && stamp.exists() && !stamp.delete())
+            Log.w(TAG, "failed to delete " + stamp);
+    }
+
+    /**
+     * @return the directory the sdk downloads the tables of a camera to, null if the external storage is not mounted
+     */
+    private static File getDataDir(String serialNumber) {
+        if (!Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState()))
+            return null;
+        File storage = Environment.getExternalStorageDirectory();
+        return storage != null ? new File(storage, "ThermApp/" + serialNumber) : null;
+    }
+
+    private File getStamp(String serialNumber) {
+        return stampDir != null ? new File(stampDir, "calibration-" + serialNumber + ".stamp") : null;
+    }
+
+    /**
+     * @return true if the stamp is intact and the tables did not change since it was written
+     */
+    private static boolean matches(File stamp, String serialNumber, DeviceData deviceData, File dataDir) {
+        List<String> lines = readStamp(stamp);
+        return lines != null && lines.equals(describe(serialNumber, deviceData, dataDir));
+    }
+
+    /**
+     * @return the lines of the stamp without its crc, null if it is missing or its crc does not match
+     */
+    private static List<String> readStamp(File stamp) {
+        if (!stamp.exists())
+            return null;
+
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(stamp), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to read " + stamp + ": " + e);
+            return null;
+        } finally {
+            close(reader);
+        }
+
+        if (lines.isEmpty())
+            return null;
+        String crc = lines.remove(lines.size() - 1);
+        return crc.equals("crc " + crc(lines)) ? lines : null;
+    }
+
+    /**
+     * write the stamp of tables the sdk just verified, the launch goes on without it if it fails
+     */
+    private static void writeStamp(File stamp, String serialNumber, DeviceData deviceData, File dataDir) {
+        List<String> lines = describe(serialNumber, deviceData, dataDir);
+        if (lines == null)
+            return;
+
+        //written aside and renamed, so a crash never leaves half a stamp
+        File temp = new File(stamp.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+            for (String line : lines)
+                writer.write(line + "\n");
+            writer.write("crc " + crc(lines) + "\n");
+            writer.close();
+            writer = null;
+            if (!temp.renameTo(stamp))
+                throw new IOException("failed to rename " + temp + " to " + stamp);
+        } catch (IOException e) {
+            Log.w(TAG, "failed to write the calibration stamp: " + e);
+            temp.delete();
+        } finally {
+            close(writer);
+        }
+    }
+
+    /**
+     * @return the lines of the stamp of the tables as they are now, null if the manifest can not be hashed
+     */
+    private static List<String> describe(String serialNumber, DeviceData deviceData, File dataDir) {
+        File manifest = new File(dataDir, MANIFEST);
+        File[] files = dataDir.listFiles();
+        if (!manifest.exists() || files == null)
+            return null;
+
+        List<String> lines = new ArrayList<String>();
+        lines.add(STAMP_VERSION);
+        lines.add(serialNumber);
+        try {
+            lines.add("manifest " + toHex(deviceData.createChecksum(manifest)));
+        } catch (Exception e) {
+            Log.w(TAG, "failed to hash " + manifest + ": " + e);
+            return null;
+        }
+        Arrays.sort(files);
+        for (File file : files)
+            if (file.isFile() && !file.getName().equals(MANIFEST))
+                lines.add(file.getName() + " " + file.length() + " " + file.lastModified());
+        return lines;
+    }
+
+    private static String crc(List<String> lines) {
+        CRC32 crc = new CRC32();
+        for (String line : lines) {
+            byte[] bytes;
+            try {
+                bytes = (line + "\n").getBytes("UTF-8");
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            crc.update(bytes, 0, bytes.length);
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes)
+            hex.append(String.format("%02x", b & 0xFF));
+        return hex.toString();
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            //nothing left to do with it
+        }
+    }
+}
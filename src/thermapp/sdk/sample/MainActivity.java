@@ -3,51 +3,39 @@ package thermapp.sdk.sample;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.*;
-import android.graphics.Bitmap;
 import android.hardware.usb.UsbManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.View;
 import android.widget.ImageButton;
 import android.widget.RelativeLayout;
 import android.widget.Toast;
-import thermapp.sdk.ThermAppAPI;
-import thermapp.sdk.ThermAppAPI_Callback;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
-
-public class MainActivity extends Activity implements ThermAppAPI_Callback {
+/**
+ * viewer and controller of the stream, the camera and the connection to the server
+ * live in the {@link StreamingService} so they keep running when the activity is gone.
+ * on a cold start the connection to the server is opened while the service initiates the camera
+ * and checks its calibration, and the welcome activity is only shown when the terms of use were
+ * not accepted yet or the calibration tables must be downloaded
+ */
+public class MainActivity extends Activity {
     //creating a tag name for logs
     private static final String TAG = "MainActivity";
     //app context
     private Context context;
-    //udp socket
-    private Socket socket;
-    //ip address of the udp server
-    private String ipAddress;
-    //port address of the udp server
-    private Integer port;
-    //true if the ip address and the port were set up in the preferences
-    private boolean isServerDataSetUp;
-    //is temperatures array size sent
-    private boolean isTemperaturesSizeSent;
     //setting button
     private ImageButton settingsButton;
 
-    //thermal camera sdk
-    private ThermAppAPI mDeviceSdk = null;
 	private RelativeLayout Splash_Lay;
 	private RelativeLayout NoCam_Lay;
 
-    //tcp server writer
-    private OutputStream serverWriter;
-
-    //width and height of the frame sent via tcp socket
-    private int[] frameSize;
+    //the service streaming the thermal camera, null while not bound
+    private StreamingService streamingService;
+    //true while the service initiates the camera and checks its calibration
+    private boolean coldStarting;
 
     //data used in order to make the thermal camera mode, black and white
     private int[] gray_palette;
@@ -89,19 +77,106 @@ public class MainActivity extends Activity implements ThermAppAPI_Callback {
         for (int i = 0; i < 256; i++)
             gray_palette[i] = 0xFF000000 | (i << 0) | (i << 8) | (i << 16);
 
-        //if successfully initiated thermal camera sdk, launch the welcome activity
-        if (InitSdk()) {
-            final Intent i = new Intent(this, WelcomeActivity.class);
-            i.putExtra("serialnum", Integer.toString(mDeviceSdk.GetSerialNumber()));
-            startActivityForResult(i, 1);
-        } else {
-            NoCam_Lay.setVisibility(View.VISIBLE);
-        }
-
         //listen to usb device de-attach events
         IntentFilter filter = new IntentFilter();
         filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
         registerReceiver(mUsbReceiver, filter);
+
+        //start the streaming service in the foreground and bind to it, the camera is opened once bound
+        Intent service = new Intent(this, StreamingService.class);
+        startService(service);
+        bindService(service, mServiceConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    // Define streaming service connection
+    private ServiceConnection mServiceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            Log.i(TAG, "bound to the streaming service");
+            streamingService = ((StreamingService.LocalBinder) binder).getService();
+
+            if (streamingService.isVideoStarted()) {
+                //the service kept streaming while the activity was gone
+                Splash_Lay.setVisibility(View.GONE);
+                applySettings();
+                return;
+            }
+
+            //connect to the server at once, the camera is initiated meanwhile
+            applyStreamSettings();
+            coldStart();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            Log.i(TAG, "the streaming service was disconnected");
+            streamingService = null;
+        }
+    };
+
+    /**
+     * let the service initiate the camera and check its calibration tables
+     */
+    private void coldStart() {
+        coldStarting = true;
+        streamingService.coldStart(new StreamingService.ColdStartListener() {
+            @Override
+            public void onColdStart(boolean connected, boolean calibrated) {
+                coldStarting = false;
+                onDeviceReady(connected, calibrated);
+            }
+        });
+    }
+
+    /**
+     * the service initiated the camera and checked its calibration tables
+     * @param connected true if the thermal camera sdk was initiated
+     * @param calibrated true if the calibration tables are on the device
+     */
+    private void onDeviceReady(boolean connected, boolean calibrated) {
+        if (streamingService == null)
+            return;
+        if (!connected) {
+            NoCam_Lay.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        SetThermalMode_BW();
+        boolean termsShown = PreferenceManager.getDefaultSharedPreferences(this).getBoolean("terms_shown", false);
+        if (termsShown && calibrated) {
+            //nothing to ask or download, the video starts without the welcome activity
+            Log.i(TAG, "the calibration tables are on the device, starting the video");
+            startVideo();
+            return;
+        }
+
+        //launch the welcome activity for the terms of use or the download of the calibration tables
+        final Intent i = new Intent(MainActivity.this, WelcomeActivity.class);
+        i.putExtra("serialnum", Integer.toString(streamingService.getSerialNumber()));
+        startActivityForResult(i, 1);
+    }
+
+    /**
+     * start the video of the thermal camera, the frames go to the server
+     */
+    private void startVideo() {
+        try {
+            Log.i(TAG, "trying to start the video of the thermal camera");
+            streamingService.startVideo();
+        } catch (Exception e) {
+            Log.e(TAG, "failed to start the video of the thermal camera");
+            Log.e(TAG, e.toString());
+
+            // Report error to use
+            AlertDialog.Builder dlgAlert = new AlertDialog.Builder(this);
+            dlgAlert.setMessage("Unable to start video: " + e.getMessage());
+            dlgAlert.setTitle("ThermApp");
+            dlgAlert.setPositiveButton("OK", null);
+            dlgAlert.setCancelable(true);
+            dlgAlert.create().show();
+        }
+
+        Splash_Lay.setVisibility(View.GONE);
     }
 
     /**
@@ -133,41 +208,21 @@ public class MainActivity extends Activity implements ThermAppAPI_Callback {
         }
     };
 
-    /**
-     * initiate the thermal camera sdk
-     * @return
-     */
-	private boolean InitSdk() {
-		// Create Developer SDK Instance
-		mDeviceSdk = new ThermAppAPI(this);
-
-		// Try to open usb interface
-		try {
-			mDeviceSdk.ConnectToDevice();
-		} catch (Exception e) {
-
-			// Close SDK
-			mDeviceSdk = null;
-			return false;
-		}
-		return true;
-	}
-
     /**
      * set the camera mode to black and white
      */
 	private void SetThermalMode_BW() {
         Log.i(TAG, "setting the thermal camera mode to black and white");
 
-        if (mDeviceSdk != null) {
+        if (streamingService != null) {
             try {
-                mDeviceSdk.SetMode(1, gray_palette);
+                streamingService.setMode(1, gray_palette);
             } catch (Exception e) {
                 Log.e(TAG, "failed to set the mode of the thermal camera app to black and white");
                 Log.e(TAG, e.toString());
             }
         } else {
-            Log.w(TAG, "thermal camera sdk instance was nul!!");
+            Log.w(TAG, "streaming service was not bound yet");
         }
 	}
 
@@ -189,23 +244,7 @@ public class MainActivity extends Activity implements ThermAppAPI_Callback {
             if (result.equals("OK")) {
                 Log.i(TAG, "the result received from the intent was \"OK\"");
 
-                try {
-                    Log.i(TAG, "trying to start the video of the thermal camera");
-                    mDeviceSdk.StartVideo();
-                } catch (Exception e) {
-                    Log.e(TAG, "failed to start the video of the thermal camera");
-                    Log.e(TAG, e.toString());
-
-                    // Report error to use
-                    AlertDialog.Builder dlgAlert = new AlertDialog.Builder(this);
-                    dlgAlert.setMessage("Unable to start video: " + e.getMessage());
-                    dlgAlert.setTitle("ThermApp");
-                    dlgAlert.setPositiveButton("OK", null);
-                    dlgAlert.setCancelable(true);
-                    dlgAlert.create().show();
-                }
-
-                Splash_Lay.setVisibility(View.GONE);
+                startVideo();
             } else if (result.equals("EXIT")) {
                 Log.i(TAG, "the result received from the intent was not \"OK\"");
 
@@ -219,132 +258,41 @@ public class MainActivity extends Activity implements ThermAppAPI_Callback {
 	}
 
     /**
-     * some weird voodoo
+     * the activity was launched again, e.g. when the camera was attached
      * @param intent
      */
     @Override
     protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
         Log.i(TAG, "new intent received");
 
-        if (Splash_Lay.getVisibility() == View.VISIBLE) {
-            onCreate(new Bundle());
+        //still on the splash screen, the camera may be there now, the receiver and the binding stay as they are
+        if (Splash_Lay.getVisibility() == View.VISIBLE && streamingService != null && !coldStarting
+                && !streamingService.isVideoStarted()) {
+            NoCam_Lay.setVisibility(View.GONE);
+            coldStart();
         }
-        super.onNewIntent(intent);
     }
 
     /**
-     * on new frame event from the thermal camera app
-     * @param bmp
+     * apply the camera mode and the stream settings from the preferences to the streaming service
      */
-    @Override public void OnFrameGetThermAppBMP(Bitmap bmp) {}
+    private void applySettings() {
+        if (streamingService == null)
+            return;
 
-    /**
-     * on new temperature event from the thermal camera
-     * @param frame
-     * @param width
-     * @param height
-     */
-    @Override
-    public void OnFrameGetThermAppTemperatures(int[] frame, int width, int height) {
-            //if didn't sent the size of the frame array yet, send it first
-            if (!isTemperaturesSizeSent) {
-                //init frame size
-                frameSize = new int[2];
-                frameSize[0] = width;
-                frameSize[1] = height;
-
-                try {
-                    //send frame size to the tcp server
-                    serverWriter.write(int2byte(frameSize));
-                } catch (IOException e) {
-                    Log.e(TAG, "failed to send frame size to the server");
-                    e.printStackTrace();
-                }
-
-                //send the width and the height
-                isTemperaturesSizeSent = true;
-            }
+        //set the thermal camera mode to black and white
+        SetThermalMode_BW();
 
-            try {
-                //send frame to the tcp server
-                serverWriter.write(int2byte(frame));
-            } catch (IOException e) {
-                Log.e(TAG, "failed to send frame to the server");
-                e.printStackTrace();
-            }
+        applyStreamSettings();
     }
 
     /**
-     * update from shared preferences
+     * (re)start streaming if the ip address and port were set and the settings changed
      */
-    private void updatePreferences() {
-        //get preferences
-        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
-        //get ip address from the preferences
-        ipAddress = preferences.getString("ipAddress", null);
-        //get port number from the preferences
-        String portString = preferences.getString("port", null);
-        port = portString != null ? Integer.parseInt(portString) : null;
-
-        //check if the ip address and the port were actually filled
-        if (!(isServerDataSetUp = ipAddress != null || port != null)) {
+    private void applyStreamSettings() {
+        if (!streamingService.applyPreferences())
             Toast.makeText(context, "please set up the ip address and port number", Toast.LENGTH_LONG).show();
-        }
-    }
-
-    /**
-     * convert int array into byte array
-     * @param src
-     * @return
-     */
-    private static byte[] int2byte(int[] src) {
-        byte[] output = new byte[src.length*4];
-
-        for(int i = 0; i < src.length; i++) {
-            int position = i << 2;
-            output[position | 0] = (byte)((src[i] >>  0) & 0xFF);
-            output[position | 1] = (byte)((src[i] >>  8) & 0xFF);
-            output[position | 2] = (byte)((src[i] >> 16) & 0xFF);
-            output[position | 3] = (byte)((src[i] >> 24) & 0xFF);
-        }
-
-        return output;
-    }
-
-    /**
-     * establish connection with the udp server
-     */
-    private void establishConnection(){
-        Log.i(TAG, "opening a connection with the server");
-        new Thread() {
-            public void run() {
-                try {
-                    socket = new Socket(ipAddress, port);
-                    //get server writer
-                    serverWriter = socket.getOutputStream();
-                    Log.i(TAG, "a connection with the server was successfully established");
-                } catch (Exception e) {
-                    Log.e(TAG, "failed to establish a connection with the server");
-                    Log.e(TAG, e.toString());
-                }
-            }
-        }.start();
-    }
-
-    /**
-     * end the connection with the udp server
-     */
-    private void endConnection(){
-        Log.i(TAG, "closing the connection with the udp server");
-        try {
-            if (socket != null) {
-                socket.close();
-                socket = null;
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "failed to close the socket to the server");
-            e.printStackTrace();
-        }
     }
 
     /**
@@ -354,25 +302,10 @@ public class MainActivity extends Activity implements ThermAppAPI_Callback {
     public void onResume() {
         Log.i(TAG, "onResume called");
 
-        //set the thermal camera mode to black and white
-        SetThermalMode_BW();
-
         super.onResume();
 
-        //update user preferences (ip address and port number)
-        updatePreferences();
-
-        //establish a connection with the server if the ip address and port were set
-        if (isServerDataSetUp)
-            establishConnection();
-    }
-
-    @Override
-    public void onPause() {
-        super.onPause();
-
-        //end the connection with the udp server
-        endConnection();
+        //apply the preferences, they may have changed in the preferences activity
+        applySettings();
     }
 
     /**
@@ -382,6 +315,11 @@ public class MainActivity extends Activity implements ThermAppAPI_Callback {
     public void onDestroy() {
         Log.i(TAG, "onDestroy called");
 
+        unregisterReceiver(mUsbReceiver);
+        unbindService(mServiceConnection);
+        //before closing the app, which exits the process
+        super.onDestroy();
+
         //close the app if was about to finish
         if (this.isFinishing())
             CloseApp();
@@ -393,6 +331,9 @@ public class MainActivity extends Activity implements ThermAppAPI_Callback {
     private void CloseApp() {
         Log.i(TAG, "closing the app");
 
+        //stop streaming and release the camera
+        stopService(new Intent(this, StreamingService.class));
+
         //close the app
         this.finish();
         System.exit(0);
@@ -0,0 +1,675 @@
+package thermapp.sdk.sample;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.wifi.WifiManager;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.preference.PreferenceManager;
+import android.util.Log;
+import thermapp.sdk.sample.stream.ConnectionManager;
+import thermapp.sdk.sample.stream.FrameQueue;
+import thermapp.sdk.sample.stream.FrameRecorder;
+import thermapp.sdk.sample.stream.FrameSender;
+import thermapp.sdk.sample.stream.FrameServer;
+import thermapp.sdk.sample.stream.FrameSource;
+import thermapp.sdk.sample.stream.OverflowPolicy;
+import thermapp.sdk.sample.stream.PreviewChannel;
+import thermapp.sdk.sample.stream.ReplayFrameSource;
+import thermapp.sdk.sample.stream.SocketProfile;
+import thermapp.sdk.sample.stream.StartupTimer;
+import thermapp.sdk.sample.stream.StreamMetrics;
+import thermapp.sdk.sample.stream.StreamSettings;
+import thermapp.sdk.sample.stream.Subscriber;
+import thermapp.sdk.sample.stream.SyntheticFrameSource;
+import thermapp.sdk.sample.stream.TiledCodec;
+import thermapp.sdk.sample.stream.Transport;
+import thermapp.sdk.sample.stream.UdpFragmenter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * foreground service that owns the thermal camera and streams its frames to the server,
+ * so the stream keeps running at full rate when the screen is off or another app is in front.
+ * the main activity binds to the service and only controls it.
+ * instead of the camera the frames may come from a synthetic scene or a replayed recording,
+ * chosen by the frameSource preference, to try the stream without the camera.
+ *
+ * on a cold start the sdk opens the camera while the calibration tables of the last camera are checked,
+ * and the activity connects to the server meanwhile, see {@link #coldStart(ColdStartListener)}.
+ * every phase is timed up to the first frame written to the wire, and logged once
+ */
+public class StreamingService extends Service implements FrameSource.Listener {
+    //creating a tag name for logs
+    private static final String TAG = "StreamingService";
+    //id of the foreground notification
+    private static final int NOTIFICATION_ID = 1;
+    //time between two stream stats logs, in milliseconds
+    private static final long STATS_LOG_INTERVAL = 10000;
+    //name of the recording ring file in the external files directory
+    private static final String RECORDING_FILE = "recording.ring";
+    //name of the recording replayed by the replay source in the external files directory
+    private static final String REPLAY_FILE = "replay.thrm";
+    //size of the frames of the synthetic source, the resolution of the camera
+    private static final int SYNTHETIC_WIDTH = 384;
+    private static final int SYNTHETIC_HEIGHT = 288;
+
+    //returned to the bound activity
+    private final IBinder binder = new LocalBinder();
+    //posts the result of the cold start to the main thread
+    private final Handler mainHandler = new Handler();
+
+    //delivers the frames, the camera or a source chosen in the preferences, null until connected
+    private FrameSource frameSource;
+    //the thermal camera, null if the frames come from another source
+    private ThermAppFrameSource camera;
+    //true once the video of the frame source was started
+    private boolean isVideoStarted;
+    //times the phases of the cold start, null once the first frame was written or without a cold start
+    private volatile StartupTimer startupTimer;
+
+    //keeps the cpu running while streaming with the screen off
+    private PowerManager.WakeLock wakeLock;
+    //keeps the wifi in high performance mode while streaming with the screen off
+    private WifiManager.WifiLock wifiLock;
+
+    //settings of the current stream, null if not streaming
+    private StreamSettings settings;
+    //frames waiting to be sent to the server
+    private volatile FrameQueue frameQueue;
+    //keeps the connection with the server alive and sends the queued frames, null in server mode
+    private ConnectionManager connectionManager;
+    //serves the queued frames to the subscribers in server mode, null otherwise
+    private FrameServer frameServer;
+    //records every frame into the ring file, null if not recording
+    private FrameRecorder frameRecorder;
+    //logs the stream stats periodically on the main thread
+    private final Handler statsHandler = new Handler();
+
+    /**
+     * notified on the main thread once the frame source is ready and the calibration was checked
+     */
+    public interface ColdStartListener {
+        /**
+         * @param connected true if the thermal camera is connected, or another source was chosen
+         * @param calibrated true if the calibration tables of the camera are on the device, always true
+         * for another source
+         */
+        void onColdStart(boolean connected, boolean calibrated);
+    }
+
+    /**
+     * gives the bound activity access to the service
+     */
+    public class LocalBinder extends Binder {
+        StreamingService getService() {
+            return StreamingService.this;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Log.i(TAG, "onCreate called");
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+        wakeLock.setReferenceCounted(false);
+
+        WifiManager wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
+        wifiLock = wifiManager.createWifiLock(WifiManager.WIFI_MODE_FULL_HIGH_PERF, TAG);
+        wifiLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        Log.i(TAG, "onStartCommand called");
+
+        //tap the notification to get back to the viewer
+        Intent viewer = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, viewer, 0);
+        Notification notification = new Notification.Builder(this)
+                .setContentTitle("ThermApp")
+                .setContentText("streaming the thermal camera")
+                .setSmallIcon(R.drawable.ic_launcher)
+                .setContentIntent(pendingIntent)
+                .setOngoing(true)
+                .build();
+        startForeground(NOTIFICATION_ID, notification);
+
+        //without the camera there is nothing to restart the service for
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.i(TAG, "onDestroy called");
+
+        stopStreaming();
+
+        if (frameSource != null && isVideoStarted)
+            frameSource.stop();
+        stopForeground(true);
+        super.onDestroy();
+    }
+
+    /**
+     * create the frame source chosen in the preferences, for the camera initiate its sdk.
+     * does nothing if it was already created
+     * @return true if the thermal camera is connected, or another source was chosen
+     */
+    public synchronized boolean connectToDevice() {
+        if (frameSource != null)
+            return true;
+
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        String source = preferences.getString("frameSource", "CAMERA");
+        if ("SYNTHETIC".equals(source)) {
+            Log.i(TAG, "streaming a synthetic scene instead of the thermal camera");
+            frameSource = new SyntheticFrameSource(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT,
+                    getInt(preferences, "syntheticFps", 9, 0, 1000), 0);
+            return true;
+        }
+        if ("REPLAY".equals(source)) {
+            File filesDir = getExternalFilesDir(null);
+            if (filesDir == null) {
+                Log.e(TAG, "the external storage is not available, there is no recording to replay");
+                return false;
+            }
+            Log.i(TAG, "replaying " + REPLAY_FILE + " instead of the thermal camera");
+            frameSource = new ReplayFrameSource(new File(filesDir, REPLAY_FILE), true, true);
+            return true;
+        }
+
+        // Create Developer SDK Instance and try to open usb interface
+        ThermAppFrameSource newCamera = new ThermAppFrameSource(this);
+        try {
+            newCamera.connect();
+        } catch (Exception e) {
+            Log.e(TAG, "failed to connect to the thermal camera");
+            Log.e(TAG, e.toString());
+            return false;
+        }
+        camera = newCamera;
+        frameSource = newCamera;
+        return true;
+    }
+
+    /**
+     * @return serial number of the connected thermal camera, 0 for another source
+     */
+    public synchronized int getSerialNumber() {
+        return camera != null ? camera.getSerialNumber() : 0;
+    }
+
+    /**
+     * initiate the frame source and check the calibration tables of the camera on a thread of their own.
+     * the tables of the last camera seen are checked while the sdk opens the camera, and again for
+     * another camera. the phases are timed from now to the first frame written to the wire
+     * @param listener notified on the main thread
+     */
+    public void coldStart(final ColdStartListener listener) {
+        final StartupTimer timer = new StartupTimer();
+        startupTimer = timer;
+        final SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+        final String lastSerialNumber = preferences.getString("lastSerialNumber", null);
+        final CalibrationCache calibration = new CalibrationCache(getFilesDir());
+
+        new Thread("ColdStart") {
+            @Override
+            public void run() {
+                //nothing of the check needs the camera, only its serial number
+                final boolean[] lastCalibrated = new boolean[1];
+                Thread check = null;
+                if (lastSerialNumber != null) {
+                    check = new Thread("CalibrationCheck") {
+                        @Override
+                        public void run() {
+                            timer.begin("calibrationCheck");
+                            lastCalibrated[0] = calibration.isDataAvailable(lastSerialNumber);
+                            timer.end("calibrationCheck");
+                        }
+                    };
+                    check.start();
+                }
+
+                timer.begin("sdkInit");
+                final boolean connected = connectToDevice();
+                timer.end("sdkInit");
+
+                boolean calibrated = connected;
+                if (connected && camera != null) {
+                    String serialNumber = Integer.toString(getSerialNumber());
+                    if (check != null && serialNumber.equals(lastSerialNumber)) {
+                        calibrated = waitFor(check) && lastCalibrated[0];
+                    } else {
+                        Log.i(TAG, "another camera than the last one, checking its calibration tables");
+                        timer.begin("calibrationRecheck");
+                        calibrated = calibration.isDataAvailable(serialNumber);
+                        timer.end("calibrationRecheck");
+                        preferences.edit().putString("lastSerialNumber", serialNumber).apply();
+                    }
+                }
+
+                final boolean result = calibrated;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onColdStart(connected, result);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    /**
+     * @return false if interrupted before the thread ended
+     */
+    private static boolean waitFor(Thread thread) {
+        try {
+            thread.join();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * start the video of the frame source, does nothing if it was already started
+     * @throws Exception if the source failed to start
+     */
+    public void startVideo() throws Exception {
+        if (isVideoStarted)
+            return;
+
+        StartupTimer timer = startupTimer;
+        if (timer != null)
+            timer.begin("startVideo");
+        frameSource.start(this);
+        isVideoStarted = true;
+        if (timer != null)
+            timer.end("startVideo");
+    }
+
+    public boolean isVideoStarted() {
+        return isVideoStarted;
+    }
+
+    /**
+     * set the mode of the thermal camera
+     * @param mode sdk mode
+     * @param palette palette of the mode
+     * @throws Exception if the sdk failed to set the mode
+     */
+    public void setMode(int mode, int[] palette) throws Exception {
+        if (camera == null) {
+            Log.w(TAG, "the frames do not come from the thermal camera, there is no mode to set");
+            return;
+        }
+        camera.setMode(mode, palette);
+    }
+
+    /**
+     * read the stream settings from the preferences and restart the stream if they changed
+     * @return false if the ip address and port of the server are not set up
+     */
+    public boolean applyPreferences() {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(this);
+
+        //get ip address and port number from the preferences, server mode only needs the port
+        boolean serverMode = preferences.getBoolean("serverMode", false);
+        String ipAddress = preferences.getString("ipAddress", null);
+        //a port that is missing, not a number or out of range stops the streaming like a missing address
+        int port = getInt(preferences, "port", -1, 0, 65535);
+        if ((ipAddress == null && !serverMode) || port < 0) {
+            stopStreaming();
+            return false;
+        }
+
+        StreamSettings newSettings = new StreamSettings();
+        newSettings.setServerMode(serverMode);
+        newSettings.setHost(ipAddress);
+        newSettings.setPort(port);
+        newSettings.setTransport(Transport.parse(preferences.getString("transport", null), Transport.TCP));
+        newSettings.setMtu(getInt(preferences, "mtu", 1500, UdpFragmenter.MIN_MTU, 65535));
+        newSettings.setSocketProfile(SocketProfile.parse(preferences.getString("socketProfile", null),
+                SocketProfile.LOW_LATENCY));
+
+        //get the frame queue settings from the preferences
+        newSettings.setQueueCapacity(getInt(preferences, "queueCapacity", 4, 1, 1024));
+        newSettings.setOverflowPolicy(OverflowPolicy.parse(preferences.getString("overflowPolicy", null),
+                OverflowPolicy.DROP_OLDEST));
+
+        //get the encoding settings from the preferences
+        newSettings.setEncoding(preferences.getString("encoding", "RAW32"));
+        newSettings.setFixedPointScale(getInt(preferences, "fixedPointScale", 1, 1, 65535));
+        newSettings.setKeyframeInterval(getInt(preferences, "keyframeInterval", 30, 1, Integer.MAX_VALUE));
+        newSettings.setTiles(getInt(preferences, "tiles", 8, 1, 64));
+        newSettings.setCompression(preferences.getBoolean("compression", false));
+        newSettings.setProgressive(preferences.getBoolean("progressive", false));
+        newSettings.setAdaptiveRate(preferences.getBoolean("adaptiveRate", true));
+
+        //get the recording settings from the preferences, the ring file is on the external storage
+        newSettings.setRecording(preferences.getBoolean("recording", false));
+        newSettings.setRecordingSize(getInt(preferences, "recordingSize", 64, StreamSettings.MIN_RECORDING_SIZE, StreamSettings.MAX_RECORDING_SIZE));
+        newSettings.setBackfillRate(getInt(preferences, "backfillRate", 5, 0, 1000));
+
+        //get the change detection settings from the preferences
+        newSettings.setGating(preferences.getBoolean("gating", false));
+        newSettings.setGateTolerance(getInt(preferences, "gateTolerance", 10, 0, Integer.MAX_VALUE));
+        newSettings.setGateChangedPerMille(getInt(preferences, "gateChangedPerMille", 5, 0, 1000));
+        newSettings.setHeartbeatInterval(getInt(preferences, "heartbeatInterval", 1000, 0, Integer.MAX_VALUE));
+
+        //get the dual channel settings from the preferences, -1 sends the radiometric frames on demand only
+        newSettings.setDualChannel(preferences.getBoolean("dualChannel", false));
+        newSettings.setPreviewInterval(getInt(preferences, "previewInterval", 0, 0, Integer.MAX_VALUE));
+        newSettings.setRadiometricInterval(getInt(preferences, "radiometricInterval", 1000, PreviewChannel.ON_DEMAND, Integer.MAX_VALUE));
+
+        //get the analytics settings from the preferences, without a threshold no hot spot is reported
+        newSettings.setAnalytics(preferences.getBoolean("analytics", false));
+        newSettings.setAnalyticsThreshold(getInt(preferences, "analyticsThreshold", Integer.MAX_VALUE,
+                Integer.MIN_VALUE, Integer.MAX_VALUE));
+        File filesDir = getExternalFilesDir(null);
+        if (filesDir != null)
+            newSettings.setRecordingFile(new File(filesDir, RECORDING_FILE));
+
+        if (!newSettings.equals(settings)) {
+            stopStreaming();
+            startStreaming(newSettings);
+        }
+        return true;
+    }
+
+    /**
+     * start streaming to the server, the connection manager reconnects whenever the connection is lost
+     */
+    private void startStreaming(StreamSettings newSettings) {
+        if (newSettings.isCompression() && !newSettings.isCompressionAvailable())
+            Log.w(TAG, "snappy is not available on this device, sending uncompressed frames");
+
+        settings = newSettings;
+        startRecording(newSettings);
+        if (newSettings.isServerMode())
+            startServer(newSettings);
+        else
+            startConnection(newSettings);
+
+        wakeLock.acquire();
+        wifiLock.acquire();
+        statsHandler.postDelayed(statsLogger, STATS_LOG_INTERVAL);
+    }
+
+    /**
+     * connect to the server
+     */
+    private void startConnection(StreamSettings newSettings) {
+        Log.i(TAG, "opening a connection with the server: " + newSettings);
+        connectionManager = newSettings.createConnectionManager(new ConnectionManager.Listener() {
+            @Override
+            public void onStateChanged(ConnectionManager.State state) {
+                Log.i(TAG, "connection state: " + state);
+            }
+
+            @Override
+            public void onConnected(int attempts, long recoverMillis) {
+                Log.i(TAG, "a connection with the server was successfully established after "
+                        + attempts + " attempts, " + recoverMillis + "ms without a connection");
+                StartupTimer timer = startupTimer;
+                if (timer != null)
+                    timer.mark("connected", System.nanoTime());
+            }
+
+            @Override
+            public void onConnectionFailed(IOException e) {
+                Log.e(TAG, "the connection with the server failed");
+                Log.e(TAG, e.toString());
+            }
+        });
+        connectionManager.setRecorder(frameRecorder);
+        connectionManager.getQueue().setRecorder(frameRecorder);
+        frameQueue = connectionManager.getQueue();
+        connectionManager.start();
+
+        //retry at once when the network comes back instead of waiting for the backoff
+        registerReceiver(mNetworkReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    /**
+     * listen on the port and serve the frames to every subscriber
+     */
+    private void startServer(StreamSettings newSettings) {
+        Log.i(TAG, "serving the stream to subscribers: " + newSettings);
+        frameServer = newSettings.createFrameServer(new FrameServer.Listener() {
+            @Override
+            public void onSubscriberConnected(Subscriber subscriber) {
+                Log.i(TAG, "subscriber connected: " + subscriber.getAddress());
+            }
+
+            @Override
+            public void onSubscriberDisconnected(Subscriber subscriber, IOException e) {
+                Log.i(TAG, "subscriber disconnected: " + subscriber);
+                if (e != null)
+                    Log.i(TAG, e.toString());
+            }
+
+            @Override
+            public void onServerFailed(IOException e) {
+                Log.e(TAG, "failed to listen for subscribers");
+                Log.e(TAG, e.toString());
+            }
+        });
+        frameServer.getQueue().setRecorder(frameRecorder);
+        frameQueue = frameServer.getQueue();
+        frameServer.start();
+    }
+
+    /**
+     * open the ring file and record every frame into it, the stream goes on without recording if it fails
+     */
+    private void startRecording(StreamSettings newSettings) {
+        if (newSettings.isRecording() && newSettings.getRecordingFile() == null)
+            Log.w(TAG, "the external storage is not available, the frames are not recorded");
+
+        try {
+            frameRecorder = newSettings.createRecorder();
+        } catch (IOException e) {
+            Log.e(TAG, "failed to open the recording file");
+            Log.e(TAG, e.toString());
+        } catch (IllegalArgumentException e) {
+            //a recording size the ring can not hold
+            Log.e(TAG, "failed to open the recording file: " + e.getMessage());
+        }
+        if (frameRecorder == null)
+            return;
+
+        Log.i(TAG, "recording the frames into " + newSettings.getRecordingFile() + ": " + frameRecorder.getRing());
+        frameRecorder.start();
+    }
+
+    /**
+     * stop streaming and close the connection with the server
+     */
+    public void stopStreaming() {
+        if (settings == null)
+            return;
+
+        Log.i(TAG, "closing the connection with the server");
+        statsHandler.removeCallbacks(statsLogger);
+        logStats();
+
+        //stop accepting frames, wake up the camera thread if it is blocked on a full queue and close the sockets
+        frameQueue = null;
+        if (connectionManager != null) {
+            unregisterReceiver(mNetworkReceiver);
+            connectionManager.shutdown();
+            connectionManager = null;
+        }
+        if (frameServer != null) {
+            frameServer.shutdown();
+            frameServer = null;
+        }
+        if (frameRecorder != null) {
+            frameRecorder.shutdown();
+            frameRecorder = null;
+        }
+        settings = null;
+
+        wifiLock.release();
+        wakeLock.release();
+    }
+
+    // Define network change receiver
+    private BroadcastReceiver mNetworkReceiver = new BroadcastReceiver() {
+        public void onReceive(Context context, Intent intent) {
+            Log.i(TAG, "network connectivity changed");
+
+            ConnectionManager manager = connectionManager;
+            if (manager != null)
+                manager.retryNow();
+        }
+    };
+
+    /**
+     * log the stream stats every STATS_LOG_INTERVAL
+     */
+    private final Runnable statsLogger = new Runnable() {
+        @Override
+        public void run() {
+            logStats();
+            statsHandler.postDelayed(this, STATS_LOG_INTERVAL);
+        }
+    };
+
+    /**
+     * log the stream stats of the connection manager, or of the server and its subscribers
+     */
+    private void logStats() {
+        FrameRecorder recorder = frameRecorder;
+        if (recorder != null)
+            Log.i(TAG, "recording stats: " + recorder);
+
+        FrameServer server = frameServer;
+        if (server != null) {
+            Log.i(TAG, "server stats: " + server);
+            Log.i(TAG, "pipeline metrics: " + server.getBroadcaster().getMetrics());
+            Log.i(TAG, "frame queue stats: " + server.getQueue());
+            for (Subscriber subscriber : server.getSubscribers())
+                Log.i(TAG, "subscriber stats: " + subscriber);
+            if (server.getBroadcaster().getSerializer().getCompression() != null)
+                Log.i(TAG, "compression stats: " + server.getBroadcaster().getSerializer().getCompression());
+            if (server.getBroadcaster().getSerializer().getCodec() instanceof TiledCodec)
+                Log.i(TAG, "tile stats: " + server.getBroadcaster().getSerializer().getCodec());
+            if (server.getBroadcaster().getGate() != null)
+                Log.i(TAG, "change gate stats: " + server.getBroadcaster().getGate());
+        }
+
+        ConnectionManager manager = connectionManager;
+        if (manager == null)
+            return;
+
+        Log.i(TAG, "connection stats: " + manager);
+        Log.i(TAG, "pipeline metrics: " + manager.getMetrics());
+        Log.i(TAG, "frame queue stats: " + manager.getQueue());
+        if (manager.getSerializer().getCompression() != null)
+            Log.i(TAG, "compression stats: " + manager.getSerializer().getCompression());
+        if (manager.getSerializer().getCodec() instanceof TiledCodec)
+            Log.i(TAG, "tile stats: " + manager.getSerializer().getCodec());
+        FrameSender sender = manager.getSender();
+        if (sender != null && sender.getGate() != null)
+            Log.i(TAG, "change gate stats: " + sender.getGate());
+        if (manager.getRateController() != null)
+            Log.i(TAG, "rate control stats: " + manager.getRateController());
+    }
+
+    /**
+     * on new temperature frame from the frame source
+     * @param frame
+     * @param width
+     * @param height
+     */
+    @Override
+    public void onFrame(int[] frame, int width, int height) {
+        StartupTimer timer = startupTimer;
+        if (timer != null)
+            onStartupFrame(timer);
+
+        FrameQueue queue = frameQueue;
+        if (queue == null)
+            return;
+
+        try {
+            //copy the frame to the queue, the sender thread writes it to the server or the subscribers
+            queue.offer(frame, width, height);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "interrupted while waiting for room in the frame queue");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * the frame source ended, e.g. the camera video was stopped
+     * @param e the failure that ended it, null if it ended normally
+     */
+    @Override
+    public void onSourceEnded(IOException e) {
+        Log.i(TAG, "the frame source ended");
+        if (e != null)
+            Log.e(TAG, e.toString());
+    }
+
+    /**
+     * time the first frame of the source, and log the cold start once a frame was written to the wire
+     */
+    private void onStartupFrame(StartupTimer timer) {
+        timer.mark("firstFrame", System.nanoTime());
+        ConnectionManager manager = connectionManager;
+        FrameServer server = frameServer;
+        StreamMetrics metrics = manager != null ? manager.getMetrics()
+                : server != null ? server.getBroadcaster().getMetrics() : null;
+        long firstWriteNanos = metrics != null ? metrics.getFirstWriteNanos() : 0;
+        if (firstWriteNanos == 0)
+            return;
+
+        timer.mark("firstFrameOnWire", firstWriteNanos);
+        Log.i(TAG, "cold start: " + timer);
+        startupTimer = null;
+    }
+
+    /**
+     * @return the int typed in a text preference, the default value if it is missing, empty, not a number
+     * or out of range, so a bad value saved in the preferences can not stop the app from starting
+     */
+    private static int getInt(SharedPreferences preferences, String key, int defaultValue, int min, int max) {
+        String value = preferences.getString(key, null);
+        if (value == null)
+            return defaultValue;
+        int number;
+        try {
+            number = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "ignoring the preference " + key + "=\"" + value + "\", not a number");
+            return defaultValue;
+        }
+        if (number < min || number > max) {
+            Log.w(TAG, "ignoring the preference " + key + "=" + number + ", not between " + min + " and " + max);
+            return defaultValue;
+        }
+        return number;
+    }
+}
@@ -0,0 +1,122 @@
+package thermapp.sdk.sample;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.graphics.Bitmap;
+import thermapp.sdk.ThermAppAPI;
+import thermapp.sdk.ThermAppAPI_Callback;
+import thermapp.sdk.sample.stream.FrameSource;
+
+import java.io.IOException;
+
+/**
+ * the thermal camera as a frame source.
+ * the sdk delivers the frames to the context it was created with, so the source wraps the context
+ * of the service and receives the callbacks itself
+ */
+public class ThermAppFrameSource extends ContextWrapper implements FrameSource, ThermAppAPI_Callback {
+    //thermal camera sdk, null until connected
+    private ThermAppAPI mDeviceSdk;
+    //true once the video of the thermal camera was started
+    private boolean isVideoStarted;
+    //receives the frames, null while stopped
+    private volatile Listener listener;
+
+    public ThermAppFrameSource(Context base) {
+        super(base);
+    }
+
+    /**
+     * initiate the thermal camera sdk and open its usb interface, does nothing if it was already initiated
+     * @throws Exception if the thermal camera is not connected
+     */
+    public synchronized void connect() throws Exception {
+        if (mDeviceSdk != null)
+            return;
+
+        ThermAppAPI sdk = new ThermAppAPI(this);
+        sdk.ConnectToDevice();
+        mDeviceSdk = sdk;
+    }
+
+    /**
+     * @return serial number of the connected thermal camera
+     */
+    public synchronized int getSerialNumber() {
+        return mDeviceSdk.GetSerialNumber();
+    }
+
+    /**
+     * set the mode of the thermal camera
+     * @param mode sdk mode
+     * @param palette palette of the mode
+     * @throws Exception if the sdk failed to set the mode
+     */
+    public synchronized void setMode(int mode, int[] palette) throws Exception {
+        mDeviceSdk.SetMode(mode, palette);
+    }
+
+    /**
+     * start the video of the thermal camera, the frames go to the listener
+     * @throws IOException if the sdk failed to start the video
+     */
+    @Override
+    public synchronized void start(Listener listener) throws IOException {
+        this.listener = listener;
+        if (isVideoStarted)
+            return;
+
+        try {
+            mDeviceSdk.StartVideo();
+        } catch (Exception e) {
+            this.listener = null;
+            throw new IOException("failed to start the video of the thermal camera: " + e.getMessage(), e);
+        }
+        isVideoStarted = true;
+    }
+
+    /**
+     * stop the video of the thermal camera
+     */
+    @Override
+    public synchronized void stop() {
+        Listener current = listener;
+        listener = null;
+        if (!isVideoStarted)
+            return;
+
+        isVideoStarted = false;
+        IOException failure = null;
+        try {
+            mDeviceSdk.StopVideo();
+        } catch (Exception e) {
+            failure = new IOException("failed to stop the video of the thermal camera: " + e.getMessage(), e);
+        }
+        if (current != null)
+            current.onSourceEnded(failure);
+    }
+
+    public synchronized boolean isVideoStarted() {
+        return isVideoStarted;
+    }
+
+    /**
+     * on new frame event from the thermal camera app
+     * @param bmp
+     */
+    @Override
+    public void OnFrameGetThermAppBMP(Bitmap bmp) {}
+
+    /**
+     * on new temperature event from the thermal camera
+     * @param frame
+     * @param width
+     * @param height
+     */
+    @Override
+    public void OnFrameGetThermAppTemperatures(int[] frame, int width, int height) {
+        Listener current = listener;
+        if (current != null)
+            current.onFrame(frame, width, height);
+    }
+}
@@ -55,6 +55,7 @@ public class WelcomeActivity extends Activity implements DeviceData_Callback {
 	private ImageButton mAcceptButton;
 
 	private DeviceData mDeviceData;
+	private CalibrationCache mCalibration;
 
 
 	@Override
@@ -142,6 +143,7 @@ public class WelcomeActivity extends Activity implements DeviceData_Callback {
 
 		// Create instance for ThermApp device data
 		mDeviceData = new DeviceData(serialnum);
+		mCalibration = new CalibrationCache(getFilesDir());
 		
 		// Check if we need to confirm terms of use  
 		if (!mPrefs.getBoolean("terms_shown", false)) {
@@ -163,8 +165,8 @@ public class WelcomeActivity extends Activity implements DeviceData_Callback {
 		// Show download layout
 		mDownloadLayout.setVisibility(View.VISIBLE);
 
-		// Do we have everything we need?
-		if(mDeviceData.IsDataAvialable()) {
+		// Do we have everything we need? (trusts the stamp of tables already verified)
+		if(mCalibration.isDataAvailable(serialnum)) {
 			OnDownloadFinished();
 			return;
 		}
@@ -176,7 +178,8 @@ public class WelcomeActivity extends Activity implements DeviceData_Callback {
 			return;
 		}
 
-		// Else - start downloading
+		// Else - start downloading, the new tables get a new stamp
+		mCalibration.invalidate(serialnum);
 		mDeviceData.StartDownload(this);
 	}
 
@@ -0,0 +1,144 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+
+/**
+ * thread that sends the recorded frames the receiver missed while disconnected, after a reconnect.
+ *
+ * the frames are read back from the {@link FrameRecorder} and sent as WireProtocol.TYPE_BACKFILL
+ * messages between the live frames, encoded by a serializer of their own so the delta chain of the
+ * live frames is not disturbed. the live stream keeps priority: at most maxRate frames are sent per
+ * second, and only while the frame queue is empty and the rate controller did not lower the rate.
+ * the frames written just before the connection broke are sent again, so a receiver may get a frame twice.
+ * the backfill ends with the connection, a backfill cut short is not resumed on the next one
+ */
+public class Backfill extends Thread {
+    //time to wait while live frames are queued or the rate is lowered
+    private static final long BUSY_WAIT = 20;
+    //time to wait for the recorder to catch up with the last missed frame
+    private static final long RECORDER_WAIT = 50;
+    //number of frames written before the connection broke that are sent again, they may have been lost in the socket buffers
+    private static final int RESEND_COUNT = 4;
+
+    //reads the missed frames back
+    private final FrameRecorder recorder;
+    //writes the messages between the live frames
+    private final FrameSender sender;
+    //serializes the backfilled frames
+    private final FrameSerializer serializer;
+    //serializer of the live frames, for the capabilities the receiver accepted
+    private final FrameSerializer liveSerializer;
+    //frames of the live stream, the backfill waits while it is not empty
+    private final FrameQueue liveQueue;
+    //rate of the live stream, the backfill waits while it is lowered, may be null
+    private final RateController rateController;
+    //counts the backfilled frames
+    private final StreamMetrics metrics;
+    //sequence number of the first missed frame
+    private final long fromSequence;
+    //sequence number of the first live frame after the reconnect
+    private final long toSequence;
+    //time between two backfilled frames in milliseconds
+    private final long interval;
+
+    //false once the backfill was asked to stop
+    private volatile boolean running = true;
+    //number of frames sent
+    private volatile long sentCount;
+
+    /**
+     * @param recorder reads the missed frames back
+     * @param sender sender of the new connection
+     * @param serializer serializes the backfilled frames, with a codec of its own
+     * @param liveSerializer serializer of the live frames
+     * @param liveQueue frames of the live stream
+     * @param rateController rate of the live stream, may be null
+     * @param metrics counts the backfilled frames
+     * @param fromSequence sequence number of the first missed frame
+     * @param toSequence sequence number of the first live frame after the reconnect
+     * @param maxRate most frames sent per second
+     */
+    public Backfill(FrameRecorder recorder, FrameSender sender, FrameSerializer serializer,
+                    FrameSerializer liveSerializer, FrameQueue liveQueue, RateController rateController,
+                    StreamMetrics metrics, long fromSequence, long toSequence, int maxRate) {
+        super("Backfill");
+        this.recorder = recorder;
+        this.sender = sender;
+        this.serializer = serializer;
+        this.liveSerializer = liveSerializer;
+        this.liveQueue = liveQueue;
+        this.rateController = rateController;
+        this.metrics = metrics;
+        this.fromSequence = fromSequence;
+        this.toSequence = toSequence;
+        this.interval = 1000 / Math.max(1, maxRate);
+        serializer.setFrameType(WireProtocol.TYPE_BACKFILL);
+    }
+
+    @Override
+    public void run() {
+        FrameRing ring = recorder.getRing();
+        FrameRing.Cursor cursor = ring.cursor(recorder.findSequence(Math.max(0, fromSequence - RESEND_COUNT)));
+        long nextSend = System.currentTimeMillis();
+        try {
+            while (running && sender.isAlive()) {
+                long now = System.currentTimeMillis();
+                if (now < nextSend || liveQueue.size() > 0
+                        || (rateController != null && rateController.getLevel() > 0)) {
+                    Thread.sleep(Math.max(BUSY_WAIT, nextSend - now));
+                    continue;
+                }
+
+                Frame frame = cursor.next(ring.getNextEntry());
+                if (frame == null) {
+                    //the recorder did not write the last missed frames yet
+                    Thread.sleep(RECORDER_WAIT);
+                    continue;
+                }
+                if (frame.getSequence() >= toSequence)
+                    break;
+
+                serializer.setAcceptedCapabilities(liveSerializer.getCapabilitiesInUse());
+                FrameBuffer buffer = serializer.serialize(frame);
+                try {
+                    int length = buffer.bytes().remaining();
+                    sender.writeMessage(buffer.bytes());
+                    metrics.onFrameBackfilled(length);
+                    sentCount++;
+                } finally {
+                    serializer.release(buffer);
+                }
+                nextSend = now + interval;
+            }
+        } catch (InterruptedException e) {
+            //stopped with the connection
+        } catch (IOException e) {
+            //the sender reports the broken connection
+        }
+    }
+
+    /**
+     * stop sending, the frame being written is still completed
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+    }
+
+    public long getFromSequence() {
+        return fromSequence;
+    }
+
+    public long getToSequence() {
+        return toSequence;
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    @Override
+    public String toString() {
+        return "backfill " + fromSequence + "-" + toSequence + " sent=" + sentCount;
+    }
+}
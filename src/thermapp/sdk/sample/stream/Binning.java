@@ -0,0 +1,62 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * lowers the resolution of a frame by averaging blocks of pixels, optionally of a region of the frame only
+ */
+public final class Binning {
+    private Binning() {}
+
+    /**
+     * average every factor x factor block of the source into one pixel of the destination.
+     * rows and columns that do not fill a whole block are dropped
+     * @param src temperatures, row by row
+     * @param width width of the source
+     * @param height height of the source
+     * @param factor size of the blocks
+     * @param dst receives (width / factor) * (height / factor) temperatures
+     */
+    public static void bin(int[] src, int width, int height, int factor, int[] dst) {
+        bin(src, width, 0, 0, width / factor, height / factor, factor, dst);
+    }
+
+    /**
+     * cut a region of the source and average its blocks in the same pass
+     * @param src temperatures, row by row
+     * @param width width of the source
+     * @param region a region clipped to the source, see {@link Region#clip(int, int, int)}
+     * @param dst receives region.getBinnedWidth() * region.getBinnedHeight() temperatures
+     */
+    public static void bin(int[] src, int width, Region region, int[] dst) {
+        bin(src, width, region.getX(), region.getY(), region.getBinnedWidth(), region.getBinnedHeight(),
+                region.getBinning(), dst);
+    }
+
+    private static void bin(int[] src, int width, int left, int top, int binnedWidth, int binnedHeight,
+                            int factor, int[] dst) {
+        if (factor == 1) {
+            for (int y = 0; y < binnedHeight; y++)
+                System.arraycopy(src, (top + y) * width + left, dst, y * binnedWidth, binnedWidth);
+            return;
+        }
+
+        int area = factor * factor;
+        for (int y = 0; y < binnedHeight; y++) {
+            int row = y * binnedWidth;
+            //sum the rows of the block one after the other, so the source is read in order
+            for (int x = 0; x < binnedWidth; x++)
+                dst[row + x] = 0;
+            for (int dy = 0; dy < factor; dy++) {
+                int srcRow = (top + y * factor + dy) * width + left;
+                for (int x = 0; x < binnedWidth; x++) {
+                    int srcIndex = srcRow + x * factor;
+                    int sum = 0;
+                    for (int dx = 0; dx < factor; dx++)
+                        sum += src[srcIndex + dx];
+                    dst[row + x] += sum;
+                }
+            }
+            for (int x = 0; x < binnedWidth; x++)
+                dst[row + x] /= area;
+        }
+    }
+}
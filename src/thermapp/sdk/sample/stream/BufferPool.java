@@ -0,0 +1,47 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * small pool of preallocated frame buffers, so serializing a frame does not allocate.
+ * buffers only grow when a larger frame arrives, which happens once per resolution
+ */
+public class BufferPool {
+    //buffers that are free to use
+    private final FrameBuffer[] free;
+    //number of free buffers
+    private int freeCount;
+    //initial capacity of new buffers
+    private final int bufferCapacity;
+
+    /**
+     * @param size number of buffers kept by the pool
+     * @param bufferCapacity initial capacity of each buffer in bytes
+     */
+    public BufferPool(int size, int bufferCapacity) {
+        this.free = new FrameBuffer[size];
+        this.bufferCapacity = bufferCapacity;
+        for (int i = 0; i < size; i++)
+            free[freeCount++] = new FrameBuffer(bufferCapacity);
+    }
+
+    /**
+     * take a buffer from the pool, a new one is created only if the pool ran dry
+     * @return a free buffer
+     */
+    public synchronized FrameBuffer acquire() {
+        if (freeCount == 0)
+            return new FrameBuffer(bufferCapacity);
+
+        FrameBuffer buffer = free[--freeCount];
+        free[freeCount] = null;
+        return buffer;
+    }
+
+    /**
+     * give a buffer back to the pool, it is dropped if the pool is already full
+     * @param buffer a buffer returned by {@link #acquire()}
+     */
+    public synchronized void release(FrameBuffer buffer) {
+        if (freeCount < free.length)
+            free[freeCount++] = buffer;
+    }
+}
@@ -0,0 +1,160 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * suppresses the frames that differ from the last sent frame by sensor noise only, for fixed cameras
+ * watching a scene that rarely changes.
+ *
+ * a pixel changed when it differs from the last sent frame by more than the tolerance, and a frame is
+ * sent when more than the changed fraction of its pixels changed. the frames are compared against the
+ * last sent frame, not the previous one, so a slow drift is sent once it adds up. the comparison is a
+ * single pass without allocation that stops as soon as enough pixels changed.
+ *
+ * while frames are suppressed a heartbeat is sent every heartbeat interval, and once more before the
+ * next sent frame, so the receiver knows the stream is alive and the suppressed frames are not lost,
+ * see WireProtocol.TYPE_HEARTBEAT
+ */
+public class ChangeGate {
+    //largest difference to the last sent frame that is still sensor noise, in camera units
+    private final int tolerance;
+    //changed pixels per thousand a frame may have and still be suppressed
+    private final int changedPerMille;
+    //time between two heartbeats while frames are suppressed, in milliseconds
+    private final long heartbeatInterval;
+
+    //temperatures of the last sent frame
+    private int[] reference = new int[0];
+    //size of the last sent frame, 0 until a frame was sent
+    private int referenceWidth;
+    private int referenceHeight;
+    //capture time of the last sent frame or heartbeat
+    private long lastMessageTimestamp;
+    //frames suppressed since the last sent frame or heartbeat
+    private int pendingCount;
+    //sequence number and capture time of the last suppressed frame
+    private int lastSuppressedSequence;
+    private long lastSuppressedTimestamp;
+
+    //number of frames sent
+    private volatile long sentCount;
+    //number of frames suppressed
+    private volatile long suppressedCount;
+    //number of heartbeats sent
+    private volatile long heartbeatCount;
+
+    /**
+     * @param tolerance largest difference to the last sent frame that is still sensor noise, in camera units
+     * @param changedPerMille changed pixels per thousand a frame may have and still be suppressed
+     * @param heartbeatInterval time between two heartbeats while frames are suppressed, in milliseconds
+     */
+    public ChangeGate(int tolerance, int changedPerMille, long heartbeatInterval) {
+        this.tolerance = tolerance;
+        this.changedPerMille = changedPerMille;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * compare a frame to the last sent frame, a frame that is sent becomes the new reference
+     * @param pixels the temperatures to send, row by row
+     * @param width width of the temperatures
+     * @param height height of the temperatures
+     * @param sequence sequence number of the frame
+     * @param timestamp capture time of the frame
+     * @return true if the frame must be sent, false if it is suppressed
+     */
+    public boolean accept(int[] pixels, int width, int height, int sequence, long timestamp) {
+        if (width == referenceWidth && height == referenceHeight && !hasChanged(pixels, width, height)) {
+            pendingCount++;
+            suppressedCount++;
+            lastSuppressedSequence = sequence;
+            lastSuppressedTimestamp = timestamp;
+            return false;
+        }
+
+        int length = width * height;
+        if (reference.length < length)
+            reference = new int[length];
+        System.arraycopy(pixels, 0, reference, 0, length);
+        referenceWidth = width;
+        referenceHeight = height;
+        lastMessageTimestamp = timestamp;
+        sentCount++;
+        return true;
+    }
+
+    /**
+     * @return true if more pixels than the changed fraction differ by more than the tolerance
+     */
+    private boolean hasChanged(int[] pixels, int width, int height) {
+        int allowed = (int) ((long) width * height * changedPerMille / 1000);
+        int changed = 0;
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            //no branch per pixel, the count is checked once per row
+            for (int end = i + width; i < end; i++)
+                changed += Math.abs(pixels[i] - reference[i]) > tolerance ? 1 : 0;
+            if (changed > allowed)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param timestamp capture time of the last suppressed frame
+     * @return true if frames were suppressed and nothing was sent for the heartbeat interval
+     */
+    public boolean isHeartbeatDue(long timestamp) {
+        return pendingCount > 0 && timestamp - lastMessageTimestamp >= heartbeatInterval;
+    }
+
+    /**
+     * a heartbeat accounting for the pending frames was sent
+     */
+    public void onHeartbeatSent() {
+        pendingCount = 0;
+        lastMessageTimestamp = lastSuppressedTimestamp;
+        heartbeatCount++;
+    }
+
+    /**
+     * send the next frame whatever it is, e.g. for a new receiver or another region
+     */
+    public void reset() {
+        referenceWidth = 0;
+        referenceHeight = 0;
+    }
+
+    /**
+     * @return number of frames suppressed since the last sent frame or heartbeat
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    public int getLastSuppressedSequence() {
+        return lastSuppressedSequence;
+    }
+
+    public long getLastSuppressedTimestamp() {
+        return lastSuppressedTimestamp;
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    public long getHeartbeatCount() {
+        return heartbeatCount;
+    }
+
+    @Override
+    public String toString() {
+        long total = sentCount + suppressedCount;
+        return String.format("tolerance=%d changed=%d/1000 sent=%d suppressed=%d (%.1f%%) heartbeats=%d",
+                tolerance, changedPerMille, sentCount, suppressedCount,
+                total == 0 ? 0 : 100.0 * suppressedCount / total, heartbeatCount);
+    }
+}
@@ -0,0 +1,139 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * estimates the offset between the clock of a sender and the clock of its receiver, and the round trip
+ * time between them, from ping and pong messages like NTP, see WireProtocol.TYPE_PING.
+ *
+ * the receiver sends a ping stamped t0 on its clock, the sender answers with t0, the time t1 it read the
+ * ping and the time t2 it wrote the pong, both on its clock, and the receiver reads the pong at t3:
+ * <pre>
+ * round trip = (t3 - t0) - (t2 - t1)
+ * offset     = ((t1 - t0) + (t2 - t3)) / 2, the sender clock minus the receiver clock
+ * </pre>
+ * a pong queued behind a frame takes longer one way than the other, which skews its offset by half the
+ * difference. like the NTP clock filter, the offset is taken from the sample with the shortest round trip
+ * of the last SAMPLE_COUNT, the one least delayed by queueing. the times are in microseconds of the wall
+ * clock, see {@link #nowMicros()}
+ */
+public class ClockSync {
+    //number of recent samples the offset is chosen from
+    public static final int SAMPLE_COUNT = 8;
+
+    //wall clock and System.nanoTime() read together once, the precise wall clock runs on System.nanoTime() from them
+    private static final long ANCHOR_MICROS;
+    private static final long ANCHOR_NANOS;
+
+    static {
+        //anchored right as the wall clock ticks, or each process would be up to a millisecond off the others
+        long millis = System.currentTimeMillis();
+        long tick;
+        while ((tick = System.currentTimeMillis()) == millis)
+            Thread.yield();
+        ANCHOR_NANOS = System.nanoTime();
+        ANCHOR_MICROS = tick * 1000;
+    }
+
+    //round trip and offset of the recent samples, in microseconds, a ring of SAMPLE_COUNT
+    private final long[] roundTrips = new long[SAMPLE_COUNT];
+    private final long[] offsets = new long[SAMPLE_COUNT];
+    //number of samples received
+    private long sampleCount;
+    //offset of the sample with the shortest round trip of the recent ones, in microseconds
+    private long offsetMicros;
+    //round trip of the last sample, in microseconds
+    private long lastRoundTripMicros;
+    //number of pongs rejected because their times did not add up
+    private long rejectedCount;
+
+    /**
+     * @return the wall clock in microseconds, finer than System.currentTimeMillis() and never going back
+     */
+    public static long nowMicros() {
+        return ANCHOR_MICROS + (System.nanoTime() - ANCHOR_NANOS) / 1000;
+    }
+
+    /**
+     * a pong was read
+     * @param originateMicros t0, the time the ping was written, on the receiver clock
+     * @param receiveMicros t1, the time the ping was read, on the sender clock
+     * @param transmitMicros t2, the time the pong was written, on the sender clock
+     * @param arrivalMicros t3, the time the pong was read, on the receiver clock
+     * @return false if the times do not add up and the pong was ignored
+     */
+    public synchronized boolean onPong(long originateMicros, long receiveMicros, long transmitMicros,
+                                       long arrivalMicros) {
+        long roundTrip = (arrivalMicros - originateMicros) - (transmitMicros - receiveMicros);
+        if (roundTrip < 0 || transmitMicros < receiveMicros || arrivalMicros < originateMicros) {
+            rejectedCount++;
+            return false;
+        }
+
+        int slot = (int) (sampleCount++ % SAMPLE_COUNT);
+        roundTrips[slot] = roundTrip;
+        offsets[slot] = ((receiveMicros - originateMicros) + (transmitMicros - arrivalMicros)) / 2;
+        lastRoundTripMicros = roundTrip;
+
+        int samples = (int) Math.min(sampleCount, SAMPLE_COUNT);
+        int best = 0;
+        for (int i = 1; i < samples; i++)
+            if (roundTrips[i] < roundTrips[best])
+                best = i;
+        offsetMicros = offsets[best];
+        return true;
+    }
+
+    /**
+     * @return true once a pong was received, before that the offset is 0
+     */
+    public synchronized boolean isSynchronized() {
+        return sampleCount > 0;
+    }
+
+    /**
+     * @return the sender clock minus the receiver clock, in microseconds
+     */
+    public synchronized long getOffsetMicros() {
+        return offsetMicros;
+    }
+
+    /**
+     * @return the round trip of the last pong, in microseconds
+     */
+    public synchronized long getRoundTripMicros() {
+        return lastRoundTripMicros;
+    }
+
+    /**
+     * @return the shortest round trip of the recent pongs, in microseconds, the one the offset comes from
+     */
+    public synchronized long getMinRoundTripMicros() {
+        int samples = (int) Math.min(sampleCount, SAMPLE_COUNT);
+        long min = samples == 0 ? 0 : Long.MAX_VALUE;
+        for (int i = 0; i < samples; i++)
+            min = Math.min(min, roundTrips[i]);
+        return min;
+    }
+
+    /**
+     * @param receiverMicros a time on the receiver clock, in microseconds
+     * @return the same time on the sender clock, in microseconds
+     */
+    public synchronized long toSenderMicros(long receiverMicros) {
+        return receiverMicros + offsetMicros;
+    }
+
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("offset=%.3fms rtt=%.3fms minRtt=%.3fms samples=%d rejected=%d",
+                offsetMicros / 1e3, lastRoundTripMicros / 1e3, getMinRoundTripMicros() / 1e3, sampleCount,
+                rejectedCount);
+    }
+}
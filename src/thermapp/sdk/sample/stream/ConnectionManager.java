@@ -0,0 +1,429 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+/**
+ * thread that keeps the stream connection to the server alive.
+ *
+ * the manager connects, starts a {@link FrameSender} and a {@link ControlReader} on the connection,
+ * and when the connection fails it reconnects after a jittered exponential backoff. the frame queue,
+ * the serializer and the session id live as long as the manager, so after a reconnect the server
+ * sees the same session continuing with the next sequence numbers, starting with a new handshake
+ * and a keyframe. a write that stalls longer than the write timeout is treated as a dead connection.
+ *
+ * with the udp transport the connection is a connected datagram channel, the messages are split by a
+ * {@link UdpFragmenter} and nothing is read back, so no capabilities are negotiated.
+ *
+ * when the frames are recorded, the frames missed while disconnected are sent again by a {@link Backfill}
+ * after the reconnect, between the live frames
+ */
+public class ConnectionManager extends Thread {
+    /**
+     * health of the connection
+     */
+    public enum State {
+        //connecting to the server
+        CONNECTING,
+        //connected and sending frames
+        STREAMING,
+        //waiting before the next connection attempt
+        BACKOFF,
+        //the manager was shut down
+        STOPPED
+    }
+
+    /**
+     * notified from the manager thread about the connection
+     */
+    public interface Listener {
+        void onStateChanged(State state);
+
+        /**
+         * a connection was established
+         * @param attempts number of connection attempts it took
+         * @param recoverMillis time since the connection was lost, or since the manager started
+         */
+        void onConnected(int attempts, long recoverMillis);
+
+        /**
+         * a connection attempt or an established connection failed
+         */
+        void onConnectionFailed(IOException e);
+    }
+
+    //delay before the second attempt, doubled for every failed attempt
+    private static final long INITIAL_BACKOFF = 250;
+    //longest delay between two attempts
+    private static final long MAX_BACKOFF = 10000;
+    //time to wait for a connection to be established
+    private static final int CONNECT_TIMEOUT = 5000;
+    //time a single write may take before the connection is considered dead
+    private static final long WRITE_TIMEOUT = 10000;
+    //how often the sender is checked for stalled writes
+    private static final long WATCH_INTERVAL = 500;
+
+    //address of the server and transport
+    private final StreamSettings settings;
+    //frames to send, shared by all the connections
+    private final FrameQueue queue;
+    //serializes the frames, shared by all the connections
+    private final FrameSerializer serializer;
+    //adapts the rate to the connection, may be null
+    private final RateController rateController;
+    //times the stages of every frame, shared by all the connections
+    private final StreamMetrics metrics;
+    //notified about the connection, may be null
+    private final Listener listener;
+    //identifies the stream across reconnects
+    private final long sessionId = new Random().nextLong();
+    //randomizes the backoff delays
+    private final Random random = new Random();
+    //guards the backoff wait, notified to retry at once
+    private final Object backoffLock = new Object();
+
+    //false once the manager was asked to stop
+    private volatile boolean running = true;
+    //current health of the connection
+    private volatile State state = State.CONNECTING;
+    //connection in use, null while not connected
+    private volatile ByteChannel channel;
+    //sender of the current connection, null while not connected
+    private volatile FrameSender sender;
+    //records the frames for the backfills, null if not recording
+    private volatile FrameRecorder recorder;
+    //backfill of the current connection, null if there is none
+    private volatile Backfill backfill;
+    //true if the backoff should be cut short
+    private boolean retryRequested;
+
+    //number of established connections
+    private volatile int connectCount;
+    //time the last connection took to recover, in milliseconds
+    private volatile long lastRecoverMillis;
+
+    /**
+     * @param settings address of the server, transport and mtu
+     */
+    public ConnectionManager(StreamSettings settings, FrameQueue queue, FrameSerializer serializer,
+                             RateController rateController, StreamMetrics metrics, Listener listener) {
+        super("ConnectionManager");
+        this.settings = settings;
+        this.queue = queue;
+        this.serializer = serializer;
+        this.rateController = rateController;
+        this.metrics = metrics;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        long disconnectedAt = System.currentTimeMillis();
+        int attempts = 0;
+
+        while (running) {
+            setState(State.CONNECTING);
+            attempts++;
+            ByteChannel newChannel;
+            try {
+                newChannel = connect();
+            } catch (IOException e) {
+                if (listener != null)
+                    listener.onConnectionFailed(e);
+                backoff(attempts);
+                continue;
+            }
+
+            channel = newChannel;
+            if (!running) {
+                close(newChannel);
+                break;
+            }
+            stream(newChannel, attempts, System.currentTimeMillis() - disconnectedAt);
+
+            //lost the connection, reconnect at once and back off only if that fails
+            disconnectedAt = System.currentTimeMillis();
+            attempts = 0;
+        }
+
+        setState(State.STOPPED);
+    }
+
+    /**
+     * open a connection to the server with the transport of the settings
+     */
+    private ByteChannel connect() throws IOException {
+        InetSocketAddress address = new InetSocketAddress(settings.getHost(), settings.getPort());
+        if (settings.getTransport() == Transport.UDP) {
+            DatagramChannel datagramChannel = DatagramChannel.open();
+            try {
+                settings.getSocketProfile().apply(datagramChannel.socket());
+                datagramChannel.connect(address);
+            } catch (IOException e) {
+                close(datagramChannel);
+                throw e;
+            }
+            return datagramChannel;
+        }
+
+        SocketChannel socketChannel = SocketChannel.open();
+        try {
+            socketChannel.socket().setKeepAlive(true);
+            //tuned before connecting, so the window is scaled to the send buffer
+            settings.getSocketProfile().apply(socketChannel.socket());
+            socketChannel.socket().connect(address, CONNECT_TIMEOUT);
+        } catch (IOException e) {
+            close(socketChannel);
+            throw e;
+        }
+        return socketChannel;
+    }
+
+    /**
+     * send frames on a connection until it fails or the manager is shut down
+     */
+    private void stream(ByteChannel connection, int attempts, long recoverMillis) {
+        WritableByteChannel out = connection instanceof DatagramChannel
+                ? new UdpFragmenter((DatagramChannel) connection, settings.getMtu()) : connection;
+        FrameSender connectionSender = new FrameSender(queue, out, serializer, rateController, metrics, sessionId,
+                new FrameSender.Listener() {
+                    @Override
+                    public void onSendFailed(IOException e) {
+                        if (running && listener != null)
+                            listener.onConnectionFailed(e);
+                    }
+                });
+        connectionSender.setStatistics(settings.createStatistics());
+        connectionSender.setGate(settings.createGate());
+        connectionSender.setPreview(settings.createPreview());
+        if (connection instanceof SocketChannel)
+            connectionSender.setBatchSize(queue.getSenderFrames());
+        //opened first, so the handshake announces the first frame the queue accepts for this connection
+        long resumeSequence = queue.open();
+        connectionSender.setFirstSequence(resumeSequence);
+        sender = connectionSender;
+        connectionSender.start();
+        if (connection instanceof SocketChannel)
+            new ControlReader(Channels.newInputStream(connection), connectionSender).start();
+
+        if (connectCount++ > 0) {
+            metrics.onReconnect();
+            startBackfill(connectionSender, queue.getLastHandledSequence() + 1, resumeSequence);
+        }
+        lastRecoverMillis = recoverMillis;
+        setState(State.STREAMING);
+        if (listener != null)
+            listener.onConnected(attempts, recoverMillis);
+
+        try {
+            while (running && connectionSender.isAlive()) {
+                connectionSender.join(WATCH_INTERVAL);
+                if (connectionSender.isWriteStalled(WRITE_TIMEOUT)) {
+                    if (listener != null)
+                        listener.onConnectionFailed(new IOException("write stalled for more than " + WRITE_TIMEOUT + "ms"));
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            //shut down
+        }
+
+        //stop accepting frames until the next connection
+        queue.close();
+        Backfill connectionBackfill = backfill;
+        if (connectionBackfill != null)
+            connectionBackfill.shutdown();
+        backfill = null;
+        connectionSender.shutdown();
+        sender = null;
+        channel = null;
+        //closing the channel also ends a stalled write and the control reader
+        close(connection);
+        //the next connection opens the queue and resets the serializer, a late failure of this sender must not undo it
+        waitFor(connectionSender);
+        if (connectionBackfill != null)
+            waitFor(connectionBackfill);
+    }
+
+    /**
+     * wait for a thread of a connection to end, even if the manager is being shut down meanwhile
+     */
+    private static void waitFor(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * send the recorded frames missed while disconnected, if the frames are recorded
+     * @param fromSequence sequence number of the first missed frame
+     * @param toSequence sequence number of the first live frame of the connection
+     */
+    private void startBackfill(FrameSender connectionSender, long fromSequence, long toSequence) {
+        FrameRecorder currentRecorder = recorder;
+        if (currentRecorder == null || settings.getBackfillRate() <= 0 || fromSequence >= toSequence)
+            return;
+
+        FrameSerializer backfillSerializer = new FrameSerializer(FrameCodecs.create(settings.getEncoding(),
+                settings.getFixedPointScale(), settings.getKeyframeInterval()),
+                serializer.getCompression() != null ? new SnappyStage() : null);
+        Backfill connectionBackfill = new Backfill(currentRecorder, connectionSender, backfillSerializer, serializer,
+                queue, rateController, metrics, fromSequence, toSequence, settings.getBackfillRate());
+        backfill = connectionBackfill;
+        connectionBackfill.start();
+    }
+
+    /**
+     * wait before the next attempt, the delay doubles with every attempt and is randomized
+     * between half and all of it, so many senders do not reconnect in lockstep
+     */
+    private void backoff(int attempts) {
+        if (!running)
+            return;
+
+        setState(State.BACKOFF);
+        long delay = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(attempts - 1, 16));
+        delay = delay / 2 + (long) (random.nextDouble() * delay / 2);
+
+        synchronized (backoffLock) {
+            long end = System.currentTimeMillis() + delay;
+            long remaining = delay;
+            while (running && !retryRequested && remaining > 0) {
+                try {
+                    backoffLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                remaining = end - System.currentTimeMillis();
+            }
+            retryRequested = false;
+        }
+    }
+
+    /**
+     * cut the current backoff short, e.g. when the network came back
+     */
+    public void retryNow() {
+        synchronized (backoffLock) {
+            retryRequested = true;
+            backoffLock.notifyAll();
+        }
+    }
+
+    /**
+     * stop streaming and close the connection
+     */
+    public void shutdown() {
+        running = false;
+        queue.close();
+        interrupt();
+        retryNow();
+
+        FrameSender currentSender = sender;
+        if (currentSender != null)
+            currentSender.shutdown();
+        close(channel);
+    }
+
+    public State getConnectionState() {
+        return state;
+    }
+
+    /**
+     * @return the sender of the current connection, null while not connected
+     */
+    public FrameSender getSender() {
+        return sender;
+    }
+
+    public FrameQueue getQueue() {
+        return queue;
+    }
+
+    public FrameSerializer getSerializer() {
+        return serializer;
+    }
+
+    public RateController getRateController() {
+        return rateController;
+    }
+
+    public StreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    public StreamSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @param recorder records the frames for the backfills after a reconnect, null to not backfill
+     */
+    public void setRecorder(FrameRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public FrameRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @return the backfill of the current connection, null if there is none
+     */
+    public Backfill getBackfill() {
+        return backfill;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return number of connections established, the first one included
+     */
+    public int getConnectCount() {
+        return connectCount;
+    }
+
+    public long getLastRecoverMillis() {
+        return lastRecoverMillis;
+    }
+
+    private void setState(State newState) {
+        if (state == newState)
+            return;
+        state = newState;
+        if (listener != null)
+            listener.onStateChanged(newState);
+    }
+
+    private static void close(ByteChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //nothing left to do with it
+        }
+    }
+
+    @Override
+    public String toString() {
+        Backfill currentBackfill = backfill;
+        return "transport=" + settings.getTransport() + " state=" + state + " connects=" + connectCount + " recover=" + lastRecoverMillis + "ms"
+                + (currentBackfill != null ? " " + currentBackfill : "");
+    }
+}
@@ -0,0 +1,105 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * thread that reads the messages the server sends back on the stream connection
+ * and hands them to a listener. the reader ends quietly when the connection is closed
+ */
+public class ControlReader extends Thread {
+    /**
+     * notified from the reader thread for every message received from the server
+     */
+    public interface Listener {
+        /**
+         * the server answered the handshake
+         * @param capabilities the WireProtocol.CAPABILITY_ constants the server accepted
+         */
+        void onHandshake(int capabilities);
+
+        /**
+         * the server asked for the metrics of the stream
+         */
+        void onStatsRequest();
+
+        /**
+         * the server asked to crop and bin the next frames
+         * @param region the region as asked, not clipped to the frames
+         */
+        void onRegion(Region region);
+
+        /**
+         * the server asked for the next frame in full, in analytics mode
+         */
+        void onFrameRequest();
+
+        /**
+         * the server sent a ping to synchronize its clock, see ClockSync
+         * @param originateMicros time the ping was written, on the server clock
+         * @param receiveMicros time the ping was read, see ClockSync.nowMicros()
+         */
+        void onPing(long originateMicros, long receiveMicros);
+    }
+
+    //reads the messages from the connection
+    private final MessageReader reader;
+    //notified for every message
+    private final Listener listener;
+
+    public ControlReader(InputStream in, Listener listener) {
+        super("ControlReader");
+        this.reader = new MessageReader(in);
+        this.listener = listener;
+        setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        try {
+            MessageHeader header;
+            while ((header = reader.next()) != null) {
+                //taken as soon as the message is read, the wait of the pong behind a frame is then left out of the round trip
+                long receiveMicros = ClockSync.nowMicros();
+                ByteBuffer payload = reader.payload();
+                switch (header.getType()) {
+                    case WireProtocol.TYPE_HANDSHAKE:
+                        if (header.getPayloadLength() >= WireProtocol.HANDSHAKE_LENGTH)
+                            listener.onHandshake(payload.getInt(payload.position() + 8));
+                        break;
+                    case WireProtocol.TYPE_STATS_REQUEST:
+                        listener.onStatsRequest();
+                        break;
+                    case WireProtocol.TYPE_FRAME_REQUEST:
+                        listener.onFrameRequest();
+                        break;
+                    case WireProtocol.TYPE_PING:
+                        if (header.getPayloadLength() >= WireProtocol.PING_LENGTH)
+                            listener.onPing(payload.getLong(payload.position()), receiveMicros);
+                        break;
+                    case WireProtocol.TYPE_REGION:
+                        if (header.getPayloadLength() >= WireProtocol.REGION_LENGTH)
+                            readRegion(payload);
+                        break;
+                    default:
+                        //unknown messages are skipped, so newer servers can talk to this sender
+                        break;
+                }
+            }
+        } catch (IOException e) {
+            //the connection was closed, the sender reports the failure
+        }
+    }
+
+    private void readRegion(ByteBuffer payload) {
+        Region region;
+        try {
+            region = Region.read(payload, payload.position());
+        } catch (IllegalArgumentException e) {
+            //not a region, skipped like an unknown message
+            return;
+        }
+        listener.onRegion(region);
+    }
+}
@@ -0,0 +1,192 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * every temperature as the difference against the same pixel of the previous frame.
+ *
+ * the payload starts with the index of the frame since the last keyframe (an int, 0 for a keyframe),
+ * followed by runs until the end of the frame: a varint count of unchanged pixels, a varint count
+ * of changed pixels and then a zig-zag varint difference for each changed pixel. so an unchanged
+ * frame costs a few bytes, and a keyframe is the same thing against an all zeros frame.
+ *
+ * a keyframe is sent every keyframeInterval frames, on the first frame after {@link #reset()} and
+ * whenever the resolution changes. the decoding is bit exact, a receiver that did not see the
+ * previous frame of the chain skips frames until the next keyframe
+ */
+public class DeltaCodec implements FrameCodec {
+    //size of the frame index leading the payload
+    private static final int INDEX_SIZE = 4;
+    //most bytes a varint of an int takes
+    private static final int MAX_VARINT_SIZE = 5;
+
+    //number of frames between keyframes
+    private final int keyframeInterval;
+    //the previous frame, what the receiver has
+    private int[] reference = new int[0];
+    //width and height of the previous frame
+    private int referenceWidth;
+    private int referenceHeight;
+    //index of the previous frame since the last keyframe, -1 if there is no previous frame
+    private int referenceIndex = -1;
+    //encoded payload, copied to the buffer in bulk
+    private byte[] scratch = new byte[0];
+
+    /**
+     * @param keyframeInterval number of frames between keyframes, at least 1
+     */
+    public DeltaCodec(int keyframeInterval) {
+        if (keyframeInterval < 1)
+            throw new IllegalArgumentException("keyframe interval must be positive: " + keyframeInterval);
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    @Override
+    public int getEncoding() {
+        return WireProtocol.ENCODING_DELTA;
+    }
+
+    @Override
+    public int maxPayloadLength(int width, int height) {
+        int length = width * height;
+        //every pixel changed, or a run pair for every changed pixel in the worst case
+        return INDEX_SIZE + length * MAX_VARINT_SIZE + (length + 1) * 2 * varintSize(length);
+    }
+
+    @Override
+    public int encode(int[] pixels, int width, int height, FrameBuffer out) {
+        int length = width * height;
+        boolean keyframe = referenceIndex < 0 || referenceIndex + 1 >= keyframeInterval
+                || width != referenceWidth || height != referenceHeight;
+
+        if (reference.length < length)
+            reference = new int[length];
+        if (keyframe) {
+            Arrays.fill(reference, 0, length, 0);
+            referenceIndex = 0;
+        } else {
+            referenceIndex++;
+        }
+        referenceWidth = width;
+        referenceHeight = height;
+
+        int max = maxPayloadLength(width, height);
+        if (scratch.length < max)
+            scratch = new byte[max];
+
+        int position = 0;
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            while (i < length && pixels[i] == reference[i])
+                i++;
+            int changedStart = i;
+            while (i < length && pixels[i] != reference[i])
+                i++;
+
+            position = putVarint(scratch, position, changedStart - start);
+            position = putVarint(scratch, position, i - changedStart);
+            for (int j = changedStart; j < i; j++) {
+                int delta = pixels[j] - reference[j];
+                position = putVarint(scratch, position, (delta << 1) ^ (delta >> 31));
+                reference[j] = pixels[j];
+            }
+        }
+
+        ByteBuffer bytes = out.bytes();
+        bytes.putInt(referenceIndex);
+        bytes.put(scratch, 0, position);
+        return keyframe ? WireProtocol.FLAG_KEYFRAME : 0;
+    }
+
+    @Override
+    public boolean decode(MessageHeader header, ByteBuffer payload, int[] pixels) {
+        int width = header.getWidth();
+        int height = header.getHeight();
+        int length = width * height;
+        int position = payload.position();
+        int index = payload.getInt(position);
+        position += INDEX_SIZE;
+
+        boolean keyframe = header.hasFlag(WireProtocol.FLAG_KEYFRAME);
+        if (!keyframe && (referenceIndex < 0 || index != referenceIndex + 1
+                || width != referenceWidth || height != referenceHeight)) {
+            //the previous frame of the chain is missing, wait for the next keyframe
+            referenceIndex = -1;
+            return false;
+        }
+
+        if (reference.length < length)
+            reference = new int[length];
+        if (keyframe)
+            Arrays.fill(reference, 0, length, 0);
+
+        int i = 0;
+        while (i < length) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            //unchanged run
+            do {
+                b = payload.get(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            i += value;
+
+            //changed run
+            int changed = 0;
+            shift = 0;
+            do {
+                b = payload.get(position++);
+                changed |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            for (int end = i + changed; i < end; i++) {
+                int zigzag = 0;
+                shift = 0;
+                do {
+                    b = payload.get(position++);
+                    zigzag |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                reference[i] += (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+
+        System.arraycopy(reference, 0, pixels, 0, length);
+        referenceIndex = index;
+        referenceWidth = width;
+        referenceHeight = height;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        referenceIndex = -1;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    private static int putVarint(byte[] dst, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            dst[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[position++] = (byte) value;
+        return position;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,102 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * every temperature as a 2 bytes unsigned fixed point value, half the size of {@link Raw32Codec}.
+ *
+ * a value v is sent as q = round((v - offset) / scale) and decoded as q * scale + offset,
+ * where the offset is the minimum of the frame and the scale is fixed for the codec.
+ * the payload starts with the offset and the scale (2 ints) followed by the values.
+ *
+ * the decoding error is at most scale / 2 for values up to offset + 65535 * scale, larger values
+ * are clamped to that maximum. with a scale of 1 the decoding is lossless as long as the
+ * temperatures of a frame span less than 65536 units, and in general every value that is already
+ * a multiple of the scale above the offset is decoded exactly
+ */
+public class Fixed16Codec implements FrameCodec {
+    //largest encoded value
+    private static final int MAX_VALUE = 0xFFFF;
+
+    //resolution of the encoded temperatures, in temperature units
+    private final int scale;
+    //encoded values of the current frame
+    private short[] values = new short[0];
+    //number of values clamped since the codec was created
+    private long clampedCount;
+
+    /**
+     * @param scale resolution of the encoded temperatures, 1 keeps the full resolution
+     */
+    public Fixed16Codec(int scale) {
+        if (scale < 1)
+            throw new IllegalArgumentException("scale must be positive: " + scale);
+        this.scale = scale;
+    }
+
+    @Override
+    public int getEncoding() {
+        return WireProtocol.ENCODING_FIXED16;
+    }
+
+    @Override
+    public int maxPayloadLength(int width, int height) {
+        return 8 + width * height * 2;
+    }
+
+    @Override
+    public int encode(int[] pixels, int width, int height, FrameBuffer out) {
+        int length = width * height;
+        if (values.length < length)
+            values = new short[length];
+
+        int offset = Integer.MAX_VALUE;
+        for (int i = 0; i < length; i++)
+            if (pixels[i] < offset)
+                offset = pixels[i];
+
+        int half = scale >> 1;
+        for (int i = 0; i < length; i++) {
+            //long, so a frame spanning the whole int range does not overflow
+            long q = ((long) pixels[i] - offset + half) / scale;
+            if (q > MAX_VALUE) {
+                q = MAX_VALUE;
+                clampedCount++;
+            }
+            values[i] = (short) q;
+        }
+
+        ByteBuffer bytes = out.bytes();
+        bytes.putInt(offset);
+        bytes.putInt(scale);
+        out.putShorts(values, 0, length);
+        return 0;
+    }
+
+    @Override
+    public boolean decode(MessageHeader header, ByteBuffer payload, int[] pixels) {
+        int length = header.getWidth() * header.getHeight();
+        int position = payload.position();
+        int offset = payload.getInt(position);
+        int frameScale = payload.getInt(position + 4);
+        position += 8;
+
+        for (int i = 0; i < length; i++)
+            pixels[i] = (payload.getShort(position + (i << 1)) & MAX_VALUE) * frameScale + offset;
+        return true;
+    }
+
+    @Override
+    public void reset() {}
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return number of values that were above the encodable range and were clamped
+     */
+    public long getClampedCount() {
+        return clampedCount;
+    }
+}
@@ -0,0 +1,156 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * puts back together the messages a {@link UdpFragmenter} split into datagrams.
+ *
+ * a few messages are assembled at the same time, so reordered datagrams are fine. when a fragment of
+ * a newer message needs a slot, the oldest incomplete message is dropped instead of waiting for it,
+ * so a lost datagram costs one frame and never stalls the stream. buffers are reused
+ */
+public class FragmentAssembler {
+    /**
+     * a message being assembled
+     */
+    private static class Slot {
+        //id of the message, valid if used
+        int messageId;
+        //true while the slot holds an incomplete message
+        boolean used;
+        //number of fragments of the message
+        int count;
+        //length of the message
+        int length;
+        //number of fragments received
+        int received;
+        //which fragments were received
+        boolean[] fragments = new boolean[0];
+        //the message bytes
+        byte[] bytes = new byte[0];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    //messages being assembled
+    private final Slot[] slots;
+
+    //number of complete messages
+    private long completeCount;
+    //number of incomplete messages that were dropped
+    private long droppedCount;
+    //number of datagrams that were not valid fragments
+    private long invalidCount;
+
+    /**
+     * @param slotCount number of messages assembled at the same time
+     */
+    public FragmentAssembler(int slotCount) {
+        slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++)
+            slots[i] = new Slot();
+    }
+
+    /**
+     * add a received datagram
+     * @param datagram datagram between position and limit, its byte order is set to little endian
+     * @return the complete message when this was its last missing fragment, valid until the next call, else null
+     */
+    public ByteBuffer add(ByteBuffer datagram) {
+        datagram.order(ByteOrder.LITTLE_ENDIAN);
+        int start = datagram.position();
+        int length = datagram.remaining() - UdpFragmenter.HEADER_SIZE;
+        if (length < 0 || datagram.getInt(start) != UdpFragmenter.MAGIC) {
+            invalidCount++;
+            return null;
+        }
+
+        int messageId = datagram.getInt(start + 4);
+        int index = datagram.getShort(start + 8) & 0xFFFF;
+        int count = datagram.getShort(start + 10) & 0xFFFF;
+        int messageLength = datagram.getInt(start + 12);
+        int offset = datagram.getInt(start + 16);
+        if (count == 0 || index >= count || messageLength < 0
+                || messageLength > WireProtocol.HEADER_SIZE + WireProtocol.MAX_PAYLOAD_LENGTH
+                || offset < 0 || offset > messageLength - length) {
+            invalidCount++;
+            return null;
+        }
+
+        Slot slot = slotFor(messageId, count, messageLength);
+        //a fragment disagreeing with the first one of its message would not fit its slot
+        if (slot == null || slot.count != count || slot.length != messageLength || slot.fragments[index])
+            return null;
+
+        datagram.position(start + UdpFragmenter.HEADER_SIZE);
+        datagram.get(slot.bytes, offset, length);
+        datagram.position(start);
+        slot.fragments[index] = true;
+        slot.received++;
+
+        if (slot.received < slot.count)
+            return null;
+
+        slot.used = false;
+        completeCount++;
+        slot.buffer.clear();
+        slot.buffer.limit(messageLength);
+        return slot.buffer;
+    }
+
+    public long getCompleteCount() {
+        return completeCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * find the slot of a message, taking a free slot or the oldest one for a new message
+     * @return null if the message is older than every message being assembled
+     */
+    private Slot slotFor(int messageId, int count, int messageLength) {
+        Slot oldest = null;
+        Slot free = null;
+        for (Slot slot : slots) {
+            if (!slot.used) {
+                if (free == null)
+                    free = slot;
+            } else if (slot.messageId == messageId) {
+                return slot;
+            } else if (oldest == null || slot.messageId - oldest.messageId < 0) {
+                oldest = slot;
+            }
+        }
+
+        Slot slot = free;
+        if (slot == null) {
+            //a fragment of a message older than all the others is late, drop it
+            if (messageId - oldest.messageId < 0)
+                return null;
+            droppedCount++;
+            slot = oldest;
+        }
+
+        slot.used = true;
+        slot.messageId = messageId;
+        slot.count = count;
+        slot.length = messageLength;
+        slot.received = 0;
+        if (slot.fragments.length < count)
+            slot.fragments = new boolean[count];
+        else
+            Arrays.fill(slot.fragments, 0, count, false);
+        if (slot.bytes.length < messageLength) {
+            slot.bytes = new byte[messageLength];
+            slot.buffer = ByteBuffer.wrap(slot.bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return slot;
+    }
+}
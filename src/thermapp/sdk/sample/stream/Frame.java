@@ -0,0 +1,107 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * a single temperatures frame held by the frame queue.
+ * frames are pooled and reused by the queue, so a frame must not be kept after it was released.
+ * a frame may be shared by the sender and the recorder, it is reused once both released it
+ */
+public class Frame {
+    //queue pooling the frame, null if it is not pooled
+    private final FrameQueue owner;
+    //number of holders of the frame, guarded by the lock of the owner
+    private int references;
+    //temperatures of the frame, only the first width*height values are valid
+    private int[] pixels = new int[0];
+    //width of the frame
+    private int width;
+    //height of the frame
+    private int height;
+    //sequence number of the frame, given by the queue
+    private long sequence;
+    //time the frame was received from the camera, in milliseconds since epoch
+    private long timestamp;
+    //System.nanoTime() when the frame was queued, for timing the queue wait
+    private long enqueueNanos;
+
+    public Frame() {
+        this(null);
+    }
+
+    Frame(FrameQueue owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * copy the given temperatures into this frame, growing the pixels array only if needed
+     * @param src temperatures received from the camera
+     * @param width width of the frame
+     * @param height height of the frame
+     */
+    void set(int[] src, int width, int height) {
+        int length = width * height;
+        if (pixels.length < length)
+            pixels = new int[length];
+
+        System.arraycopy(src, 0, pixels, 0, length);
+        this.width = width;
+        this.height = height;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    void setEnqueueNanos(long enqueueNanos) {
+        this.enqueueNanos = enqueueNanos;
+    }
+
+    void retain() {
+        references++;
+    }
+
+    /**
+     * @return true if this was the last reference
+     */
+    boolean release() {
+        return --references <= 0;
+    }
+
+    FrameQueue getOwner() {
+        return owner;
+    }
+
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of valid values in the pixels array
+     */
+    public int getLength() {
+        return width * height;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getEnqueueNanos() {
+        return enqueueNanos;
+    }
+}
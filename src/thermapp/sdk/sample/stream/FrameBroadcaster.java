@@ -0,0 +1,227 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * thread that drains the frame queue for the {@link FrameServer}.
+ * every frame is serialized once into a {@link SharedMessage} and handed by reference to the queue
+ * of every subscriber, so the cost of a frame does not grow with the number of subscribers.
+ * with a change gate the frames that did not change are suppressed for all the subscribers at once
+ */
+public class FrameBroadcaster extends Thread {
+    //frames to send, open while there are subscribers
+    private final FrameQueue queue;
+    //serializes every frame once, with enough pooled buffers for the frames held by the subscribers
+    private final FrameSerializer serializer;
+    //times the stages of every frame, shared with the subscribers
+    private final StreamMetrics metrics;
+    //current subscribers
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+    //messages that are not held by anyone
+    private final SharedMessage[] free;
+    //number of free messages
+    private int freeCount;
+
+    //suppresses the frames that did not change, null to send every frame
+    private volatile ChangeGate gate;
+    //true if the next frame must be a keyframe, e.g. for a new subscriber
+    private volatile boolean keyframeRequested;
+    //false once the broadcaster was asked to stop
+    private volatile boolean running = true;
+
+    //number of frames serialized
+    private volatile long broadcastCount;
+    //number of frames that could not be serialized
+    private volatile long failedCount;
+
+    /**
+     * @param queue frames to send
+     * @param serializer serializes the frames, its pool should hold more buffers than the subscriber queues
+     * @param metrics times the stages of every frame
+     * @param messageCount number of pooled messages
+     */
+    public FrameBroadcaster(FrameQueue queue, FrameSerializer serializer, StreamMetrics metrics, int messageCount) {
+        super("FrameBroadcaster");
+        this.queue = queue;
+        this.serializer = serializer;
+        this.metrics = metrics;
+        this.free = new SharedMessage[messageCount];
+        for (int i = 0; i < messageCount; i++)
+            free[freeCount++] = new SharedMessage(this);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            Frame frame;
+            try {
+                frame = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            metrics.onFrameDequeued(System.nanoTime() - frame.getEnqueueNanos());
+
+            boolean sent = false;
+            boolean suppressed = false;
+            try {
+                suppressed = !broadcast(frame);
+                sent = true;
+            } catch (IOException e) {
+                failedCount++;
+            } finally {
+                if (suppressed)
+                    queue.releaseSkipped(frame);
+                else
+                    queue.release(frame, sent);
+            }
+        }
+    }
+
+    /**
+     * @return false if the frame was suppressed by the gate
+     */
+    private boolean broadcast(Frame frame) throws IOException {
+        ChangeGate currentGate = gate;
+        if (keyframeRequested) {
+            keyframeRequested = false;
+            serializer.getCodec().reset();
+            //a new subscriber gets the scene at once, even if it did not change
+            if (currentGate != null)
+                currentGate.reset();
+        }
+
+        if (currentGate != null) {
+            if (!currentGate.accept(frame.getPixels(), frame.getWidth(), frame.getHeight(),
+                    (int) frame.getSequence(), frame.getTimestamp())) {
+                if (currentGate.isHeartbeatDue(frame.getTimestamp()))
+                    broadcastHeartbeat(currentGate);
+                return false;
+            }
+            //the frames suppressed since the last heartbeat are accounted for before the frame
+            if (currentGate.getPendingCount() > 0)
+                broadcastHeartbeat(currentGate);
+        }
+
+        long start = System.nanoTime();
+        FrameBuffer buffer = serializer.serialize(frame);
+        metrics.onFrameEncoded(System.nanoTime() - start);
+        int flags = buffer.bytes().get(7);
+        boolean independent = serializer.getCodec().getEncoding() != WireProtocol.ENCODING_DELTA
+                || (flags & WireProtocol.FLAG_KEYFRAME) != 0;
+        offer(buffer, frame.getSequence(), frame.getTimestamp(), independent, false);
+        broadcastCount++;
+        return true;
+    }
+
+    /**
+     * send a heartbeat for the frames suppressed by the gate to every subscriber
+     */
+    private void broadcastHeartbeat(ChangeGate currentGate) {
+        FrameBuffer buffer = serializer.serializeHeartbeat(currentGate);
+        //a subscriber waiting for a keyframe skips the heartbeats as well
+        offer(buffer, currentGate.getLastSuppressedSequence(), currentGate.getLastSuppressedTimestamp(), false, true);
+        currentGate.onHeartbeatSent();
+        //the subscribers count the bytes they write
+        metrics.onHeartbeatWritten(0);
+    }
+
+    /**
+     * hand a serialized message to every subscriber
+     */
+    private void offer(FrameBuffer buffer, long sequence, long timestamp, boolean independent, boolean heartbeat) {
+        SharedMessage message = acquire();
+        message.set(buffer, sequence, timestamp, independent, heartbeat);
+        for (Subscriber subscriber : subscribers)
+            subscriber.offer(message);
+        //the broadcaster's own reference
+        message.release();
+    }
+
+    /**
+     * start sending the frames to a subscriber
+     */
+    void add(Subscriber subscriber) {
+        synchronized (subscribers) {
+            subscribers.add(subscriber);
+            keyframeRequested = true;
+            queue.open();
+        }
+    }
+
+    /**
+     * stop sending frames to a subscriber, the queue is closed when the last one left
+     */
+    void remove(Subscriber subscriber) {
+        synchronized (subscribers) {
+            subscribers.remove(subscriber);
+            if (subscribers.isEmpty())
+                queue.close();
+        }
+    }
+
+    /**
+     * stop broadcasting and close every subscriber
+     */
+    public void shutdown() {
+        running = false;
+        queue.close();
+        interrupt();
+        for (Subscriber subscriber : subscribers)
+            subscriber.close();
+    }
+
+    /**
+     * suppress the frames that did not change since the last broadcast frame
+     * @param gate compares the frames to the last broadcast one, null to broadcast every frame
+     */
+    public void setGate(ChangeGate gate) {
+        this.gate = gate;
+    }
+
+    /**
+     * @return the change gate, null if every frame is broadcast
+     */
+    public ChangeGate getGate() {
+        return gate;
+    }
+
+    public List<Subscriber> getSubscribers() {
+        return subscribers;
+    }
+
+    public StreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    public FrameSerializer getSerializer() {
+        return serializer;
+    }
+
+    public long getBroadcastCount() {
+        return broadcastCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    private synchronized SharedMessage acquire() {
+        if (freeCount == 0)
+            return new SharedMessage(this);
+
+        SharedMessage message = free[--freeCount];
+        free[freeCount] = null;
+        return message;
+    }
+
+    /**
+     * take back a message once its last holder released it
+     */
+    synchronized void recycle(SharedMessage message, FrameBuffer buffer) {
+        serializer.release(buffer);
+        if (freeCount < free.length)
+            free[freeCount++] = message;
+    }
+}
@@ -0,0 +1,72 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * a reusable little endian direct buffer holding one serialized message,
+ * together with cached int and short views for bulk puts
+ */
+public class FrameBuffer {
+    //the serialized bytes
+    private ByteBuffer bytes;
+    //int view over the whole buffer, starting at byte 0
+    private IntBuffer ints;
+    //short view over the whole buffer, starting at byte 0
+    private ShortBuffer shorts;
+
+    FrameBuffer(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * clear the buffer, growing it only if it is smaller than the given capacity
+     * @param capacity number of bytes needed
+     * @return the cleared byte buffer
+     */
+    public ByteBuffer clear(int capacity) {
+        if (bytes.capacity() < capacity)
+            allocate(capacity);
+
+        bytes.clear();
+        return bytes;
+    }
+
+    /**
+     * put values at the current position of the byte buffer, the position must be a multiple of 4
+     * @param src values to put
+     * @param offset index of the first value
+     * @param length number of values
+     */
+    public void putInts(int[] src, int offset, int length) {
+        ints.limit(ints.capacity());
+        ints.position(bytes.position() >> 2);
+        ints.put(src, offset, length);
+        bytes.position(bytes.position() + (length << 2));
+    }
+
+    /**
+     * put values at the current position of the byte buffer, the position must be a multiple of 2
+     * @param src values to put
+     * @param offset index of the first value
+     * @param length number of values
+     */
+    public void putShorts(short[] src, int offset, int length) {
+        shorts.limit(shorts.capacity());
+        shorts.position(bytes.position() >> 1);
+        shorts.put(src, offset, length);
+        bytes.position(bytes.position() + (length << 1));
+    }
+
+    public ByteBuffer bytes() {
+        return bytes;
+    }
+
+    private void allocate(int capacity) {
+        bytes = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        ints = bytes.asIntBuffer();
+        shorts = bytes.asShortBuffer();
+    }
+}
@@ -0,0 +1,45 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * encodes the temperatures of a frame into the payload of a frame message, and decodes it back.
+ *
+ * a codec may keep state between frames (e.g. a reference frame), so the sender and every
+ * receiver use their own instance, and {@link #reset()} is called whenever a new connection starts
+ */
+public interface FrameCodec {
+    /**
+     * @return the WireProtocol.ENCODING_ constant written in the header of the encoded frames
+     */
+    int getEncoding();
+
+    /**
+     * @return the largest payload the codec may produce for a frame of the given size
+     */
+    int maxPayloadLength(int width, int height);
+
+    /**
+     * encode temperatures at the position of the buffer, advancing the position past the payload
+     * @param pixels temperatures, row by row
+     * @param width width of the frame
+     * @param height height of the frame
+     * @param out buffer with at least {@link #maxPayloadLength(int, int)} bytes remaining
+     * @return WireProtocol.FLAG_ constants to set in the header
+     */
+    int encode(int[] pixels, int width, int height, FrameBuffer out);
+
+    /**
+     * decode a payload written by {@link #encode(int[], int, int, FrameBuffer)}
+     * @param header header of the frame message
+     * @param payload the payload, from its position to its limit
+     * @param pixels receives width*height temperatures
+     * @return false if the frame can not be decoded yet, e.g. it depends on a frame that was not received
+     */
+    boolean decode(MessageHeader header, ByteBuffer payload, int[] pixels);
+
+    /**
+     * forget any state kept from previous frames
+     */
+    void reset();
+}
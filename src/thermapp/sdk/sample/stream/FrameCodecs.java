@@ -0,0 +1,83 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * creates codecs by name (for the preferences) and by encoding id (for receivers)
+ */
+public final class FrameCodecs {
+    private FrameCodecs() {}
+
+    /**
+     * create the codec a sender uses
+     * @param name name of the encoding in the preferences, e.g. "FIXED16"
+     * @param scale resolution of the fixed point encodings
+     * @param keyframeInterval number of frames between keyframes of the delta encoding
+     * @return the codec, raw 32 bits if the name is unknown
+     */
+    public static FrameCodec create(String name, int scale, int keyframeInterval) {
+        if ("FIXED16".equals(name))
+            return new Fixed16Codec(scale);
+        if ("DELTA".equals(name))
+            return new DeltaCodec(keyframeInterval);
+        return new Raw32Codec();
+    }
+
+    /**
+     * create the codec a sender uses, splitting the frames in tiles encoded in parallel once the
+     * receiver accepts them, see {@link TiledCodec}
+     * @param name name of the encoding in the preferences, e.g. "FIXED16"
+     * @param scale resolution of the fixed point encodings
+     * @param keyframeInterval number of frames between keyframes of the delta encoding
+     * @param tiles number of tiles, 1 or less to always encode the frames whole
+     * @param workers runs the tiles in parallel, null to run them on the calling thread
+     * @return the codec
+     */
+    public static FrameCodec create(String name, int scale, int keyframeInterval, int tiles, TileWorkers workers) {
+        if (tiles <= 1)
+            return create(name, scale, keyframeInterval);
+        FrameCodec[] tileCodecs = new FrameCodec[tiles];
+        for (int i = 0; i < tiles; i++)
+            tileCodecs[i] = create(name, scale, keyframeInterval);
+        return new TiledCodec(create(name, scale, keyframeInterval), tileCodecs, workers);
+    }
+
+    /**
+     * create a codec able to decode frames of the given encoding, whole or tiled
+     * @param encoding a WireProtocol.ENCODING_ constant read from a header
+     * @return the codec
+     * @throws IllegalArgumentException if the encoding is unknown
+     */
+    public static FrameCodec forEncoding(int encoding) {
+        return forEncoding(encoding, null);
+    }
+
+    /**
+     * create a codec able to decode frames of the given encoding, whole or tiled
+     * @param encoding a WireProtocol.ENCODING_ constant read from a header
+     * @param workers decodes the tiles in parallel, null to decode them on the calling thread
+     * @return the codec
+     * @throws IllegalArgumentException if the encoding is unknown
+     */
+    public static FrameCodec forEncoding(int encoding, TileWorkers workers) {
+        return new TiledCodec(createDecoder(encoding), workers);
+    }
+
+    /**
+     * create a codec able to decode whole frames of the given encoding
+     * @param encoding a WireProtocol.ENCODING_ constant read from a header
+     * @return the codec
+     * @throws IllegalArgumentException if the encoding is unknown
+     */
+    static FrameCodec createDecoder(int encoding) {
+        switch (encoding) {
+            case WireProtocol.ENCODING_RAW32:
+                return new Raw32Codec();
+            case WireProtocol.ENCODING_FIXED16:
+                //the scale is read from every frame
+                return new Fixed16Codec(1);
+            case WireProtocol.ENCODING_DELTA:
+                return new DeltaCodec(1);
+            default:
+                throw new IllegalArgumentException("unknown encoding: " + encoding);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * bounded queue of frames between the camera callback thread and the sender thread.
+ *
+ * the camera thread copies every frame into a pooled {@link Frame} and returns at once,
+ * the sender thread takes the frames out, writes them and releases them back to the pool.
+ * frames are only accepted while the queue is open, i.e. while a sender is draining it, but every
+ * frame gets a sequence number and is copied to the {@link FrameRecorder} if there is one.
+ * only a single sender thread may take frames from the queue, it holds one frame at a time
+ * unless it was allowed more with {@link #setSenderFrames(int)}
+ */
+public class FrameQueue {
+    //queued frames, used as a ring
+    private final Frame[] queue;
+    //frames that are not queued and not held by the sender or the recorder
+    private Frame[] pool;
+    //what to do when the queue is full
+    private final OverflowPolicy policy;
+    //times the camera callbacks and counts the drops, may be null
+    private final StreamMetrics metrics;
+    //shares every frame, also while closed, null if not recording
+    private FrameRecorder recorder;
+    //largest number of frames the sender holds at once
+    private int senderFrames = 1;
+
+    //index of the oldest queued frame
+    private int head;
+    //number of queued frames
+    private int count;
+    //number of frames in the pool
+    private int poolSize;
+    //true if the queue accepts frames
+    private boolean open;
+
+    //sequence number of the next frame
+    private long nextSequence;
+    //number of frames that were put in the queue
+    private long enqueuedCount;
+    //number of frames that were thrown away because the queue was full
+    private long droppedCount;
+    //number of frames that were written by the sender
+    private long sentCount;
+    //sequence number of the last frame written by the sender, -1 if none
+    private long lastSentSequence = -1;
+    //number of frames the sender skipped on purpose, a heartbeat or a preview standing for them
+    private long skippedCount;
+    //sequence number of the last frame written or skipped on purpose by the sender, -1 if none
+    private long lastHandledSequence = -1;
+
+    /**
+     * @param capacity maximum number of queued frames
+     * @param policy what to do when the queue is full
+     */
+    public FrameQueue(int capacity, OverflowPolicy policy) {
+        this(capacity, policy, null);
+    }
+
+    /**
+     * @param capacity maximum number of queued frames
+     * @param policy what to do when the queue is full
+     * @param metrics times the camera callbacks and counts the drops, may be null
+     */
+    public FrameQueue(int capacity, OverflowPolicy policy, StreamMetrics metrics) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+
+        this.queue = new Frame[capacity];
+        this.policy = policy;
+        this.metrics = metrics;
+
+        //one more frame than the capacity, for the frame held by the sender
+        this.pool = new Frame[capacity + 1];
+        for (int i = 0; i < pool.length; i++)
+            pool[i] = new Frame(this);
+        this.poolSize = pool.length;
+    }
+
+    /**
+     * copy a frame into the queue, called from the camera callback thread
+     * @param src temperatures received from the camera
+     * @param width width of the frame
+     * @param height height of the frame
+     * @return true if the frame was queued, false if it was dropped or the queue is closed
+     * @throws InterruptedException if interrupted while waiting with the {@link OverflowPolicy#BLOCK} policy
+     */
+    public synchronized boolean offer(int[] src, int width, int height) throws InterruptedException {
+        long arrivalNanos = System.nanoTime();
+        //the capture time, taken before a full queue makes the camera wait so the receiver sees the whole age
+        long timestamp = System.currentTimeMillis();
+        if (metrics != null)
+            metrics.onFrameArrived(arrivalNanos);
+
+        //every frame uses a sequence number, so the receiver sees the frames dropped or missed while disconnected
+        long sequence = nextSequence++;
+        boolean accepted = open && makeRoom();
+        if (!accepted && recorder == null)
+            return false;
+
+        Frame frame = pool[--poolSize];
+        pool[poolSize] = null;
+        frame.set(src, width, height);
+        frame.setSequence(sequence);
+        frame.setTimestamp(timestamp);
+        frame.setEnqueueNanos(arrivalNanos);
+
+        //the recorder shares the copy instead of making its own
+        if (recorder != null) {
+            frame.retain();
+            recorder.record(frame);
+        }
+        if (!accepted)
+            return false;
+
+        frame.retain();
+        queue[(head + count) % queue.length] = frame;
+        count++;
+        enqueuedCount++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * apply the overflow policy if the queue is full
+     * @return false if the new frame must be dropped
+     */
+    private boolean makeRoom() throws InterruptedException {
+        if (count < queue.length)
+            return true;
+
+        switch (policy) {
+            case DROP_NEWEST:
+                onDropped();
+                return false;
+            case DROP_OLDEST:
+                //recycle the oldest frame
+                recycle(poll());
+                onDropped();
+                return true;
+            case BLOCK:
+                while (open && count == queue.length)
+                    wait();
+                return open;
+        }
+        return true;
+    }
+
+    /**
+     * wait for the next frame, called from the sender thread.
+     * the frame must be given back with {@link #release(Frame, boolean)} before taking the next one,
+     * unless the sender may hold more frames
+     * @return the oldest queued frame
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized Frame take() throws InterruptedException {
+        while (count == 0)
+            wait();
+
+        Frame frame = poll();
+        //wake up a camera thread blocked on a full queue
+        notifyAll();
+        return frame;
+    }
+
+    /**
+     * give a frame back to the pool once the sender is done with it
+     * @param frame a frame returned by {@link #take()}
+     * @param sent true if the frame was written successfully
+     */
+    public synchronized void release(Frame frame, boolean sent) {
+        recycle(frame);
+        if (sent) {
+            sentCount++;
+            lastSentSequence = frame.getSequence();
+            lastHandledSequence = lastSentSequence;
+        }
+    }
+
+    /**
+     * give a frame back to the pool that the sender did not write on purpose, e.g. a preview stood for it.
+     * it does not count as sent, but it is not backfilled after a reconnect either
+     * @param frame a frame returned by {@link #take()}
+     */
+    public synchronized void releaseSkipped(Frame frame) {
+        recycle(frame);
+        skippedCount++;
+        lastHandledSequence = frame.getSequence();
+    }
+
+    /**
+     * start accepting frames
+     * @return sequence number of the first frame the queue will accept
+     */
+    public synchronized long open() {
+        open = true;
+        return nextSequence;
+    }
+
+    /**
+     * share every offered frame with a recorder, the pool grows by the frames the recorder may hold
+     * @param recorder the recorder, null to stop recording
+     */
+    public synchronized void setRecorder(FrameRecorder recorder) {
+        if (recorder != null && this.recorder == null)
+            growPool(recorder.getCapacity());
+        this.recorder = recorder;
+    }
+
+    /**
+     * let the sender hold several frames at once, e.g. while it coalesces them into one write,
+     * the pool grows by the extra frames
+     * @param frames largest number of frames the sender holds
+     */
+    public synchronized void setSenderFrames(int frames) {
+        if (frames > senderFrames) {
+            growPool(frames - senderFrames);
+            senderFrames = frames;
+        }
+    }
+
+    public synchronized int getSenderFrames() {
+        return senderFrames;
+    }
+
+    private void growPool(int frames) {
+        int grown = pool.length + frames;
+        Frame[] newPool = new Frame[grown];
+        System.arraycopy(pool, 0, newPool, 0, poolSize);
+        for (int i = pool.length; i < grown; i++)
+            newPool[poolSize++] = new Frame(this);
+        pool = newPool;
+    }
+
+    /**
+     * give back a frame shared with the recorder once it was recorded or dropped
+     */
+    synchronized void releaseRecorded(Frame frame) {
+        recycle(frame);
+    }
+
+    /**
+     * stop accepting frames, throw away the queued ones and wake up a blocked camera thread
+     */
+    public synchronized void close() {
+        open = false;
+        while (count > 0)
+            recycle(poll());
+        notifyAll();
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getCapacity() {
+        return queue.length;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return sequence number the next queued frame will get
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public synchronized long getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * @return sequence number of the last frame written by the sender, -1 if none
+     */
+    public synchronized long getLastSentSequence() {
+        return lastSentSequence;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * @return sequence number of the last frame written or skipped on purpose by the sender, -1 if none,
+     * the frames after it are backfilled after a reconnect
+     */
+    public synchronized long getLastHandledSequence() {
+        return lastHandledSequence;
+    }
+
+    private Frame poll() {
+        Frame frame = queue[head];
+        queue[head] = null;
+        head = (head + 1) % queue.length;
+        count--;
+        return frame;
+    }
+
+    private void onDropped() {
+        droppedCount++;
+        if (metrics != null)
+            metrics.onFrameDropped();
+    }
+
+    /**
+     * drop a reference to a frame, it goes back to the pool once neither the queue or sender
+     * nor the recorder hold it
+     */
+    private void recycle(Frame frame) {
+        if (frame.release())
+            pool[poolSize++] = frame;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "enqueued=" + enqueuedCount + " dropped=" + droppedCount + " sent=" + sentCount
+                + " skipped=" + skippedCount + " queued=" + count + "/" + queue.length + " policy=" + policy;
+    }
+}
@@ -0,0 +1,155 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * thread that records every frame of the stream into a {@link FrameRing}, connected or not.
+ *
+ * the recorder shares the frames copied by the {@link FrameQueue} instead of copying them again, so the
+ * camera thread only hands over a reference. the encoding and the write to the mapped file happen on the
+ * recorder thread, so recording does not slow down the live stream. if the recorder falls behind the
+ * oldest waiting frames are dropped. the recorded frames are read back for backfills after a reconnect
+ * and for exports
+ */
+public class FrameRecorder extends Thread {
+    //number of frames waiting to be recorded
+    private static final int CAPACITY = 4;
+
+    //the ring file
+    private final FrameRing ring;
+    //frames waiting to be recorded, used as a ring
+    private final Frame[] waiting = new Frame[CAPACITY];
+    //time to encode and write a frame to the ring
+    private final LatencyHistogram appendTime = new LatencyHistogram();
+    //first entry of this stream in the ring, the sequence numbers only increase from it
+    private final long firstStreamEntry;
+
+    //index of the oldest waiting frame
+    private int head;
+    //number of waiting frames
+    private int count;
+    //number of frames dropped because the recorder fell behind
+    private long droppedCount;
+    //false once the recorder was asked to stop
+    private volatile boolean running = true;
+
+    /**
+     * @param ring the ring file, closed when the recorder stops
+     */
+    public FrameRecorder(FrameRing ring) {
+        super("FrameRecorder");
+        this.ring = ring;
+        this.firstStreamEntry = ring.getNextEntry();
+        //the live stream goes first when the cpu is busy
+        setPriority(MIN_PRIORITY);
+    }
+
+    /**
+     * hand over a frame to record, called from the camera callback thread with the lock of the queue held.
+     * the frame is given back to its queue once it was recorded
+     */
+    void record(Frame frame) {
+        Frame dropped = null;
+        synchronized (this) {
+            if (!running) {
+                dropped = frame;
+            } else {
+                if (count == waiting.length) {
+                    dropped = poll();
+                    droppedCount++;
+                }
+                waiting[(head + count) % waiting.length] = frame;
+                count++;
+                notifyAll();
+            }
+        }
+        if (dropped != null)
+            dropped.getOwner().releaseRecorded(dropped);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Frame frame;
+            synchronized (this) {
+                while (running && count == 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                if (!running)
+                    break;
+                frame = poll();
+            }
+
+            long start = System.nanoTime();
+            ring.append(frame);
+            appendTime.record(System.nanoTime() - start);
+            frame.getOwner().releaseRecorded(frame);
+        }
+
+        //give the frames that were not recorded back to their queue, without holding the lock
+        //since the camera thread takes the lock of the queue first
+        Frame[] remaining;
+        synchronized (this) {
+            remaining = new Frame[count];
+            for (int i = 0; i < remaining.length; i++)
+                remaining[i] = poll();
+        }
+        for (Frame frame : remaining)
+            frame.getOwner().releaseRecorded(frame);
+        ring.close();
+    }
+
+    private Frame poll() {
+        Frame frame = waiting[head];
+        waiting[head] = null;
+        head = (head + 1) % waiting.length;
+        count--;
+        return frame;
+    }
+
+    /**
+     * stop recording and close the ring file, the frames still waiting are not recorded
+     */
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return the most frames the recorder holds at once
+     */
+    public int getCapacity() {
+        //the waiting frames and the one being recorded
+        return CAPACITY + 1;
+    }
+
+    /**
+     * find a frame of this stream
+     * @param sequence sequence number of the frame
+     * @return the entry of the frame or of the next recorded one, {@link FrameRing#getNextEntry()} if none
+     */
+    public long findSequence(long sequence) {
+        return ring.findSequence(sequence, firstStreamEntry);
+    }
+
+    public FrameRing getRing() {
+        return ring;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public LatencyHistogram getAppendTime() {
+        return appendTime;
+    }
+
+    @Override
+    public String toString() {
+        return ring + " dropped=" + getDroppedCount() + " append " + appendTime;
+    }
+}
@@ -0,0 +1,481 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * fixed size ring file of recorded frames, written through a memory mapping.
+ *
+ * the file holds a header, an index with an entry per frame and a data ring with the delta encoded
+ * frames, a keyframe every {@link #KEYFRAME_INTERVAL} frames. when the ring is full the oldest frames
+ * are overwritten, a frame is never split across the end of the ring. the layout, little endian:
+ * <pre>
+ * header, 64 bytes
+ *  0  int    magic, the bytes "THRR"
+ *  4  int    version of the file
+ *  8  int    number of index entries
+ * 12  int    size of the data ring in bytes
+ * 16  long   number of the oldest entry still in the ring
+ * 24  long   number of the next entry
+ * 32  int    write position in the data ring
+ * index, an entry of 32 bytes per frame at (entry number % number of index entries)
+ *  0  long   capture timestamp, milliseconds since epoch
+ *  8  long   sequence number
+ * 16  int    offset of the payload in the data ring
+ * 20  int    payload length
+ * 24  short  width (unsigned)
+ * 26  short  height (unsigned)
+ * 28  int    WireProtocol.FLAG_ constants of the payload
+ * data ring, the DeltaCodec payloads
+ * </pre>
+ * a single thread appends, any number of {@link Cursor}s read. the index is updated under the lock
+ * of the ring, the payload is written outside of it into space no entry refers to anymore. a reopened
+ * file continues where it was left, the header is written after every frame
+ */
+public class FrameRing {
+    //"THRR" as a little endian int
+    private static final int MAGIC = 'T' | 'H' << 8 | 'R' << 16 | 'R' << 24;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int ENTRY_SIZE = 32;
+    //number of frames between keyframes, the most frames a cursor decodes to reach a frame
+    public static final int KEYFRAME_INTERVAL = 25;
+    //index entries per byte of data ring, enough for frames of 16kB on average
+    private static final int BYTES_PER_ENTRY = 16 * 1024;
+    //smallest file, a few frames of the camera
+    public static final int MIN_SIZE = 4 * 1024 * 1024;
+
+    private static final int FIRST_ENTRY_OFFSET = 16;
+    private static final int NEXT_ENTRY_OFFSET = 24;
+    private static final int POSITION_OFFSET = 32;
+
+    //the file
+    private final RandomAccessFile file;
+    //the whole file, only read and written with absolute indexes
+    private final MappedByteBuffer mapped;
+    //number of index entries
+    private final int indexCapacity;
+    //size of the data ring in bytes
+    private final int dataCapacity;
+    //offset of the data ring in the file
+    private final int dataOffset;
+    //false if the file was opened read only
+    private final boolean writable;
+
+    //number of the oldest entry still in the ring
+    private long firstEntry;
+    //number of the next entry
+    private long nextEntry;
+    //write position in the data ring
+    private int dataPosition;
+
+    //encodes the appended frames, only used by the appending thread
+    private final DeltaCodec codec = new DeltaCodec(KEYFRAME_INTERVAL);
+    //the encoded frame, copied to the mapping in bulk
+    private final FrameBuffer encoded = new FrameBuffer(WireProtocol.HEADER_SIZE);
+    //writes the payloads, a view of its own so its position does not race with the readers
+    private final ByteBuffer writer;
+
+    private FrameRing(RandomAccessFile file, MappedByteBuffer mapped, boolean writable) throws IOException {
+        this.file = file;
+        this.mapped = mapped;
+        this.writable = writable;
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        this.writer = mapped.duplicate();
+
+        int size = mapped.capacity();
+        if (mapped.getInt(0) == MAGIC && mapped.getInt(4) == VERSION
+                && HEADER_SIZE + (long) mapped.getInt(8) * ENTRY_SIZE + mapped.getInt(12) == size) {
+            indexCapacity = mapped.getInt(8);
+            dataCapacity = mapped.getInt(12);
+            firstEntry = mapped.getLong(FIRST_ENTRY_OFFSET);
+            nextEntry = mapped.getLong(NEXT_ENTRY_OFFSET);
+            dataPosition = mapped.getInt(POSITION_OFFSET);
+        } else if (writable) {
+            indexCapacity = Math.max(256, (size - HEADER_SIZE) / BYTES_PER_ENTRY);
+            dataCapacity = size - HEADER_SIZE - indexCapacity * ENTRY_SIZE;
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            mapped.putInt(8, indexCapacity);
+            mapped.putInt(12, dataCapacity);
+            writeHeader();
+        } else {
+            throw new IOException("not a recording file");
+        }
+        dataOffset = HEADER_SIZE + indexCapacity * ENTRY_SIZE;
+    }
+
+    /**
+     * open a ring file for recording, creating it or resizing it if needed.
+     * a file of another size is started over, one of the same size continues where it was left
+     * @param path the ring file
+     * @param size size of the file in bytes, at least {@link #MIN_SIZE}
+     * @throws IOException if the file can not be created or mapped
+     */
+    public static FrameRing open(File path, int size) throws IOException {
+        if (size < MIN_SIZE)
+            throw new IllegalArgumentException("recording size must be at least " + MIN_SIZE + ": " + size);
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            if (file.length() != size)
+                file.setLength(size);
+            MappedByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new FrameRing(file, mapped, true);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * open a ring file to read or export it, e.g. a copy pulled from the device
+     * @throws IOException if the file can not be read or is not a ring file
+     */
+    public static FrameRing openReadOnly(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        try {
+            if (file.length() < HEADER_SIZE)
+                throw new IOException("not a recording file");
+            MappedByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            return new FrameRing(file, mapped, false);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * encode a frame and add it to the ring, overwriting the oldest frames if needed.
+     * only a single thread may append
+     */
+    public void append(Frame frame) {
+        if (!writable)
+            throw new IllegalStateException("the recording is read only");
+
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        encoded.clear(codec.maxPayloadLength(width, height));
+        int flags = codec.encode(frame.getPixels(), width, height, encoded);
+        ByteBuffer bytes = encoded.bytes();
+        int length = bytes.position();
+        if (length > dataCapacity) {
+            //never fits, the next frame has to be a keyframe again
+            codec.reset();
+            return;
+        }
+
+        int offset = reserve(length);
+        bytes.flip();
+        writer.limit(dataOffset + offset + length);
+        writer.position(dataOffset + offset);
+        writer.put(bytes);
+
+        synchronized (this) {
+            int entry = entryOffset(nextEntry);
+            mapped.putLong(entry, frame.getTimestamp());
+            mapped.putLong(entry + 8, frame.getSequence());
+            mapped.putInt(entry + 16, offset);
+            mapped.putInt(entry + 20, length);
+            mapped.putShort(entry + 24, (short) width);
+            mapped.putShort(entry + 26, (short) height);
+            mapped.putInt(entry + 28, flags);
+            nextEntry++;
+            dataPosition = offset + length;
+            writeHeader();
+        }
+    }
+
+    /**
+     * drop the entries using the space of the next payload
+     * @return offset of the payload in the data ring
+     */
+    private synchronized int reserve(int length) {
+        int offset = dataPosition;
+        if (offset + length > dataCapacity) {
+            //the tail is left unused, the frames still in it are the oldest ones
+            evict(offset, dataCapacity);
+            offset = 0;
+        }
+        evict(offset, offset + length);
+        if (nextEntry - firstEntry >= indexCapacity)
+            firstEntry++;
+        writeHeader();
+        return offset;
+    }
+
+    /**
+     * drop the oldest entries while their payload starts in the given range of the data ring
+     */
+    private void evict(int start, int end) {
+        while (firstEntry < nextEntry) {
+            int offset = mapped.getInt(entryOffset(firstEntry) + 16);
+            if (offset < start || offset >= end)
+                break;
+            firstEntry++;
+        }
+    }
+
+    private int entryOffset(long entry) {
+        return HEADER_SIZE + (int) (entry % indexCapacity) * ENTRY_SIZE;
+    }
+
+    private void writeHeader() {
+        mapped.putLong(FIRST_ENTRY_OFFSET, firstEntry);
+        mapped.putLong(NEXT_ENTRY_OFFSET, nextEntry);
+        mapped.putInt(POSITION_OFFSET, dataPosition);
+    }
+
+    /**
+     * @return number of the oldest entry still in the ring
+     */
+    public synchronized long getFirstEntry() {
+        return firstEntry;
+    }
+
+    /**
+     * @return number the next appended frame will get
+     */
+    public synchronized long getNextEntry() {
+        return nextEntry;
+    }
+
+    /**
+     * @return number of frames in the ring
+     */
+    public synchronized long size() {
+        return nextEntry - firstEntry;
+    }
+
+    /**
+     * @return capture timestamp of the given entry, which must still be in the ring
+     */
+    public synchronized long getTimestamp(long entry) {
+        return mapped.getLong(entryOffset(entry));
+    }
+
+    /**
+     * find the first frame of a sequence number or the next one, among the entries from a given one.
+     * the sequence numbers only increase within a stream, so the search starts at the stream's first entry
+     * @param sequence the sequence number to look for
+     * @param fromEntry the first entry of the stream
+     * @return the entry number, {@link #getNextEntry()} if all the frames are older
+     */
+    public synchronized long findSequence(long sequence, long fromEntry) {
+        long low = Math.max(firstEntry, fromEntry);
+        long high = nextEntry;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (mapped.getLong(entryOffset(middle) + 8) < sequence)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * find the first frame captured at or after a time
+     * @param timestamp milliseconds since epoch
+     * @return the entry number, {@link #getNextEntry()} if all the frames are older
+     */
+    public synchronized long findTimestamp(long timestamp) {
+        long low = firstEntry;
+        long high = nextEntry;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (mapped.getLong(entryOffset(middle)) < timestamp)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @param entry number of the first entry to read
+     * @return a cursor reading the frames from the given entry, decoding from the keyframe before it
+     */
+    public Cursor cursor(long entry) {
+        return new Cursor(entry, keyframeBefore(entry));
+    }
+
+    /**
+     * @return the keyframe entry at or before the given one, the oldest entry if it was overwritten
+     */
+    private synchronized long keyframeBefore(long entry) {
+        long keyframe = Math.min(Math.max(entry, firstEntry), nextEntry);
+        while (keyframe > firstEntry && keyframe > entry - KEYFRAME_INTERVAL
+                && (keyframe == nextEntry || (mapped.getInt(entryOffset(keyframe) + 28) & WireProtocol.FLAG_KEYFRAME) == 0))
+            keyframe--;
+        return keyframe;
+    }
+
+    /**
+     * write the frames captured in a time range as a stream of WireProtocol messages, a handshake then
+     * a frame message per frame, so an exported file reads like a received stream
+     * @param fromMillis start of the range, milliseconds since epoch
+     * @param toMillis end of the range, excluded
+     * @param serializer encodes the exported frames, with the capabilities it should use accepted
+     * @param out where the messages are written
+     * @return number of exported frames
+     * @throws IOException if writing or compressing failed
+     */
+    public long export(long fromMillis, long toMillis, FrameSerializer serializer, WritableByteChannel out)
+            throws IOException {
+        long end = findTimestamp(toMillis);
+        Cursor cursor = cursor(findTimestamp(fromMillis));
+        long count = 0;
+        Frame frame;
+        while ((frame = cursor.next(end)) != null) {
+            if (count == 0)
+                write(serializer, serializer.serializeHandshake(0, serializer.getCapabilitiesInUse(),
+                        (int) frame.getSequence()), out);
+            write(serializer, serializer.serialize(frame), out);
+            count++;
+        }
+        return count;
+    }
+
+    private static void write(FrameSerializer serializer, FrameBuffer buffer, WritableByteChannel out)
+            throws IOException {
+        try {
+            ByteBuffer bytes = buffer.bytes();
+            while (bytes.hasRemaining())
+                out.write(bytes);
+        } finally {
+            serializer.release(buffer);
+        }
+    }
+
+    /**
+     * copy the payload of an entry into a buffer, flipped, must be called with the lock held
+     * @return the header of the entry, with the payload length
+     */
+    private MessageHeader read(long entry, MessageHeader header, ByteBuffer payload) {
+        int index = entryOffset(entry);
+        int offset = mapped.getInt(index + 16);
+        int length = mapped.getInt(index + 20);
+        ByteBuffer data = mapped.duplicate();
+        data.limit(dataOffset + offset + length);
+        data.position(dataOffset + offset);
+        payload.clear();
+        payload.put(data);
+        payload.flip();
+
+        return header.set(WireProtocol.TYPE_FRAME, WireProtocol.ENCODING_DELTA, mapped.getInt(index + 28),
+                (int) mapped.getLong(index + 8), mapped.getLong(index), mapped.getShort(index + 24) & 0xffff,
+                mapped.getShort(index + 26) & 0xffff, length);
+    }
+
+    /**
+     * write the mapping to the file and close it.
+     * the mapping itself is released by the garbage collector
+     */
+    public void close() {
+        synchronized (this) {
+            if (writable)
+                mapped.force();
+        }
+        try {
+            file.close();
+        } catch (IOException e) {
+            //nothing left to do with it
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "frames=" + (nextEntry - firstEntry) + "/" + indexCapacity + " recorded=" + nextEntry
+                + " position=" + dataPosition + "/" + dataCapacity;
+    }
+
+    /**
+     * reads the frames of the ring in order, decoding them into a frame of its own.
+     * a cursor is used by a single thread
+     */
+    public class Cursor {
+        //decodes the delta chain of the read frames
+        private final DeltaCodec decoder = new DeltaCodec(KEYFRAME_INTERVAL);
+        //header of the entry being read
+        private final MessageHeader header = new MessageHeader();
+        //the decoded frame
+        private final Frame frame = new Frame();
+        //payload of the entry being read
+        private ByteBuffer payload = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
+        //decoded temperatures
+        private int[] pixels = new int[0];
+        //number of the first entry to return, the entries before it are only decoded
+        private final long startEntry;
+        //number of the next entry to read
+        private long entry;
+        //number of entries skipped because they were overwritten or their keyframe was
+        private long skippedCount;
+
+        private Cursor(long startEntry, long keyframe) {
+            this.startEntry = startEntry;
+            this.entry = keyframe;
+        }
+
+        /**
+         * read the next frame
+         * @param endEntry number of the entry to stop at
+         * @return the frame, valid until the next call, null once the end entry was reached
+         */
+        public Frame next(long endEntry) {
+            while (entry < endEntry) {
+                long current = entry++;
+                long sequence;
+                synchronized (FrameRing.this) {
+                    if (current < firstEntry) {
+                        //overwritten before it was read, continue with the oldest frame
+                        skippedCount += firstEntry - current;
+                        entry = firstEntry;
+                        continue;
+                    }
+                    if (current >= nextEntry)
+                        return null;
+                    int length = mapped.getInt(entryOffset(current) + 20);
+                    if (payload.capacity() < length)
+                        payload = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+                    read(current, header, payload);
+                    sequence = mapped.getLong(entryOffset(current) + 8);
+                }
+
+                int length = header.getWidth() * header.getHeight();
+                if (pixels.length < length)
+                    pixels = new int[length];
+                if (!decoder.decode(header, payload, pixels)) {
+                    //the keyframe of the chain was overwritten
+                    if (current >= startEntry)
+                        skippedCount++;
+                    continue;
+                }
+                if (current < startEntry)
+                    continue;
+                frame.set(pixels, header.getWidth(), header.getHeight());
+                frame.setSequence(sequence);
+                frame.setTimestamp(header.getTimestamp());
+                return frame;
+            }
+            return null;
+        }
+
+        /**
+         * @return number of the next entry to read
+         */
+        public long getEntry() {
+            return entry;
+        }
+
+        public long getSkippedCount() {
+            return skippedCount;
+        }
+    }
+}
@@ -0,0 +1,638 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * thread that drains the frame queue into the server connection,
+ * so a slow network never blocks the camera callback thread.
+ *
+ * the server may ask for a region of the sensor and a binning factor at any time, the next frame
+ * is cut and binned in a single pass before it is encoded. the sender announces the region it
+ * applied before the first frame of the connection and before every frame where it changed.
+ *
+ * in analytics mode the {@link FrameStatistics} of every frame are sent instead of the frame, and a
+ * frame is sent in full only when the server asks for one, or when a hot spot reaches the threshold:
+ * the first frame of a breach and then one every BREACH_FRAME_INTERVAL while it lasts.
+ *
+ * with a change gate the frames that only differ from the last sent frame by sensor noise are not sent,
+ * heartbeats stand for them, see {@link ChangeGate}. the gate is not used in analytics mode.
+ *
+ * once the server accepted progressive mode every frame is sent as the levels of a {@link Pyramid},
+ * coarsest first, and the refinement levels are skipped as soon as a newer frame is waiting in the queue.
+ * a frame following a preempted one is always sent in full, so a busy queue does not starve the full resolution.
+ *
+ * in dual channel mode the frames go on the preview channel as 8 bit images, and on the radiometric channel
+ * at a lower rate or when the server asks for a frame, see {@link PreviewChannel}. the preview of a frame
+ * is written before the frame. dual channel mode is not used in analytics mode.
+ *
+ * with a batch size above 1 the frames already waiting in the queue are serialized one after the
+ * other and written together in a single gathering write, a frame is never held back waiting for
+ * the next one to arrive
+ */
+public class FrameSender extends Thread implements ControlReader.Listener {
+    /**
+     * notified from the sender thread when the connection fails
+     */
+    public interface Listener {
+        void onSendFailed(IOException e);
+    }
+
+    //time between two full frames sent while the threshold is reached in analytics mode
+    private static final long BREACH_FRAME_INTERVAL = 1000;
+
+    //frames to send
+    private final FrameQueue queue;
+    //tcp server channel
+    private final WritableByteChannel serverChannel;
+    //serializes the frames into pooled buffers
+    private final FrameSerializer serializer;
+    //notified when a write fails, may be null
+    private final Listener listener;
+    //lowers the frame rate and resolution when the connection falls behind, may be null
+    private final RateController rateController;
+    //times the stages of every frame
+    private final StreamMetrics metrics;
+    //held while writing a message, so the stats answered from the control reader do not interleave with frames
+    private final Object writeLock = new Object();
+    //cut and binned temperatures of the current frame
+    private int[] binned = new int[0];
+    //levels of the current frame in progressive mode
+    private final Pyramid pyramid = new Pyramid();
+    //true if the refinements of the previous frame were skipped in progressive mode
+    private boolean refinementPreempted;
+    //region the server asked for, the whole frame until it asks
+    private volatile Region requestedRegion = Region.FULL;
+    //region of the last sent frame, null until the first frame was sent
+    private Region sentRegion;
+    //requested region and rate controller binning the sent region was clipped from
+    private Region clippedFrom;
+    private int clippedFactor;
+    //statistics sent instead of the frames in analytics mode, null to send every frame
+    private FrameStatistics statistics;
+    //true if the server asked for the next frame in analytics or dual channel mode
+    private volatile boolean frameRequested;
+    //suppresses the frames that did not change, null to send every frame
+    private ChangeGate gate;
+    //paces the preview and radiometric channels, null to send the frames on a single channel
+    private PreviewChannel preview;
+    //capture time of the last frame sent because the threshold was reached, 0 while it is not reached
+    private long breachFrameTimestamp;
+    //frames serialized but not written yet, held until they are written together, null to write every frame on its own
+    private Frame[] batchFrames;
+    //serialized messages of the held frames, their bytes and encode start times
+    private FrameBuffer[] batchBuffers;
+    private ByteBuffer[] batchBytes;
+    private long[] batchStartNanos;
+    //number of held frames
+    private int batchCount;
+    //identifies the stream in the handshake, the same across reconnects
+    private final long sessionId;
+    //sequence number the handshake announces, -1 for the next one of the queue
+    private long firstSequence = -1;
+    //time the current write started, 0 while not writing
+    private volatile long writeStartNanos;
+    //false once the sender was asked to stop
+    private volatile boolean running = true;
+
+    public FrameSender(FrameQueue queue, WritableByteChannel serverChannel, FrameSerializer serializer,
+                       RateController rateController, StreamMetrics metrics, long sessionId, Listener listener) {
+        super("FrameSender");
+        this.sessionId = sessionId;
+        this.queue = queue;
+        this.serverChannel = serverChannel;
+        this.serializer = serializer;
+        this.rateController = rateController;
+        this.metrics = metrics;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        serializer.reset();
+        try {
+            //every connection starts with a handshake, so the receiver knows where the first message starts
+            writeAndRelease(serializer.serializeHandshake(sessionId, serializer.getCapabilities(),
+                    (int) (firstSequence >= 0 ? firstSequence : queue.getNextSequence())));
+        } catch (IOException e) {
+            fail(e);
+        }
+
+        while (running) {
+            //nothing left to coalesce, the held frames are written before waiting for the next one
+            if (batchCount > 0 && queue.size() == 0) {
+                try {
+                    flushBatch();
+                } catch (IOException e) {
+                    fail(e);
+                }
+                continue;
+            }
+
+            Frame frame;
+            try {
+                frame = queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            metrics.onFrameDequeued(System.nanoTime() - frame.getEnqueueNanos());
+
+            if (statistics != null) {
+                boolean sendFrame = false;
+                boolean written = false;
+                try {
+                    sendFrame = writeStatistics(frame);
+                    written = true;
+                } catch (IOException e) {
+                    fail(e);
+                }
+                //the statistics stand for the frame, it is not backfilled
+                if (!sendFrame) {
+                    queue.release(frame, written);
+                    continue;
+                }
+            } else if (rateController != null && !rateController.shouldSend(frame.getTimestamp())) {
+                queue.release(frame, false);
+                continue;
+            }
+
+            boolean sent = false;
+            boolean released = false;
+            try {
+                released = write(frame);
+                sent = true;
+            } catch (IOException e) {
+                fail(e);
+            } finally {
+                if (!released)
+                    queue.release(frame, sent);
+            }
+        }
+        releaseBatch(false);
+    }
+
+    /**
+     * ask the sender to stop, the frame being written is still completed or failed
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+    }
+
+    /**
+     * the server answered the handshake, called from the control reader thread
+     * @param capabilities the WireProtocol.CAPABILITY_ constants the server accepted
+     */
+    @Override
+    public void onHandshake(int capabilities) {
+        serializer.setAcceptedCapabilities(capabilities);
+    }
+
+    /**
+     * the server asked for the metrics, called from the control reader thread
+     */
+    @Override
+    public void onStatsRequest() {
+        ByteBuffer stats = FrameSerializer.serializeStats(metrics.toString(), (int) queue.getNextSequence() - 1);
+        try {
+            writeMessage(stats);
+        } catch (IOException e) {
+            //the next frame write reports the broken connection
+        }
+    }
+
+    /**
+     * the server asked to crop and bin the next frames, called from the control reader thread
+     * @param region the requested region, ignored if its binning is not supported
+     */
+    @Override
+    public void onRegion(Region region) {
+        if (Region.isSupportedBinning(region.getBinning()))
+            requestedRegion = region;
+    }
+
+    /**
+     * the server asked for the next frame in full or on the radiometric channel, called from the control reader thread
+     */
+    @Override
+    public void onFrameRequest() {
+        frameRequested = true;
+    }
+
+    /**
+     * the server sent a ping, answered right away between two messages, called from the control reader thread
+     */
+    @Override
+    public void onPing(long originateMicros, long receiveMicros) {
+        ByteBuffer pong = FrameSerializer.serializePong(originateMicros, receiveMicros,
+                (int) queue.getNextSequence() - 1);
+        try {
+            synchronized (writeLock) {
+                FrameSerializer.stampPong(pong);
+                writeMessage(pong);
+            }
+        } catch (IOException e) {
+            //the next frame write reports the broken connection
+        }
+    }
+
+    /**
+     * announce the first frame of the connection in the handshake, call before the sender is started
+     * @param sequence sequence number of the first frame the queue accepted for the connection, see
+     * {@link FrameQueue#open()}
+     */
+    public void setFirstSequence(long sequence) {
+        this.firstSequence = sequence;
+    }
+
+    /**
+     * send the statistics of every frame instead of the frame, call before the sender is started
+     * @param statistics computes the statistics, null to send every frame
+     */
+    public void setStatistics(FrameStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * suppress the frames that did not change since the last sent frame, call before the sender is started
+     * @param gate compares the frames to the last sent one, null to send every frame
+     */
+    public void setGate(ChangeGate gate) {
+        this.gate = gate;
+    }
+
+    /**
+     * @return the change gate, null if every frame is sent
+     */
+    public ChangeGate getGate() {
+        return gate;
+    }
+
+    /**
+     * send the frames on a preview and a radiometric channel, call before the sender is started
+     * @param preview paces the two channels, null to send the frames on a single channel
+     */
+    public void setPreview(PreviewChannel preview) {
+        this.preview = preview;
+    }
+
+    /**
+     * @return the pacing of the two channels, null if the frames are sent on a single channel
+     */
+    public PreviewChannel getPreview() {
+        return preview;
+    }
+
+    /**
+     * coalesce the frames waiting in the queue into a single write, call before the sender is started.
+     * the queue must let the sender hold that many frames, see {@link FrameQueue#setSenderFrames(int)}
+     * @param frames largest number of frames in a write, ignored if the channel can not gather writes
+     */
+    public void setBatchSize(int frames) {
+        if (frames <= 1 || !(serverChannel instanceof GatheringByteChannel)) {
+            batchFrames = null;
+            return;
+        }
+        batchFrames = new Frame[frames];
+        batchBuffers = new FrameBuffer[frames];
+        batchBytes = new ByteBuffer[frames];
+        batchStartNanos = new long[frames];
+    }
+
+    /**
+     * @return largest number of frames in a write
+     */
+    public int getBatchSize() {
+        return batchFrames != null ? batchFrames.length : 1;
+    }
+
+    /**
+     * write a message between two frames, from another thread
+     * @param bytes the whole message
+     * @throws IOException if the write failed, the next frame write reports the broken connection
+     */
+    public void writeMessage(ByteBuffer bytes) throws IOException {
+        synchronized (writeLock) {
+            while (bytes.hasRemaining())
+                serverChannel.write(bytes);
+        }
+    }
+
+    /**
+     * @return the rate controller, null if the rate is not adapted
+     */
+    public RateController getRateController() {
+        return rateController;
+    }
+
+    public FrameSerializer getSerializer() {
+        return serializer;
+    }
+
+    public StreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return the region the server asked for
+     */
+    public Region getRequestedRegion() {
+        return requestedRegion;
+    }
+
+    /**
+     * @return true if the frame was skipped and given back to the queue already, or if it is held to be
+     * written with the next ones, it is given back to the queue once it was written or its batch failed
+     */
+    private boolean write(Frame frame) throws IOException {
+        Region region = clipRegion(frame);
+        if (!region.equals(sentRegion)) {
+            //the held frames still belong to the previous region
+            flushBatch();
+            //the frames of the new region do not depend on the previous ones
+            serializer.getCodec().reset();
+            if (gate != null)
+                gate.reset();
+            if (preview != null)
+                preview.reset();
+            writeMessage(FrameSerializer.serializeRegion(region, (int) frame.getSequence()));
+            sentRegion = region;
+        }
+        int width = region.getBinnedWidth();
+        int height = region.getBinnedHeight();
+
+        long start = System.nanoTime();
+        int[] pixels = frame.getPixels();
+        if (!region.isWhole(frame.getWidth(), frame.getHeight())) {
+            if (binned.length < width * height)
+                binned = new int[width * height];
+            Binning.bin(frame.getPixels(), frame.getWidth(), region, binned);
+            pixels = binned;
+        }
+
+        //the temperatures that would be sent are compared, so a change outside the region does not count
+        if (gate != null && statistics == null) {
+            if (!gate.accept(pixels, width, height, (int) frame.getSequence(), frame.getTimestamp())) {
+                //the held frames come first, the gate counts the suppressed frame and it is not backfilled
+                flushBatch();
+                if (gate.isHeartbeatDue(frame.getTimestamp()))
+                    writeHeartbeat();
+                queue.releaseSkipped(frame);
+                return true;
+            }
+            //the frames suppressed since the last heartbeat are accounted for before the frame
+            if (gate.getPendingCount() > 0)
+                writeHeartbeat();
+        }
+
+        if (preview != null && statistics == null) {
+            if (preview.isPreviewDue(frame.getTimestamp()))
+                writePreview(frame, pixels, width, height);
+            if (!preview.isRadiometricDue(frame.getTimestamp(), frameRequested)) {
+                //not sent, the preview stands for it if it had one
+                metrics.onRadiometricSkipped();
+                queue.releaseSkipped(frame);
+                return true;
+            }
+            frameRequested = false;
+            preview.onRadiometricSent(frame.getTimestamp());
+            //the preview took part of the time
+            start = System.nanoTime();
+        }
+
+        if (serializer.isProgressiveEnabled() && Pyramid.canSplit(width, height)) {
+            writeLevels(frame, pixels, width, height, start);
+            return false;
+        }
+
+        FrameBuffer buffer = serializer.serialize(frame, pixels, width, height);
+        long encoded = System.nanoTime();
+        metrics.onFrameEncoded(encoded - start);
+
+        //the statistics of analytics mode are written at once, so the frames are never held
+        if (batchFrames != null && statistics == null) {
+            batchFrames[batchCount] = frame;
+            batchBuffers[batchCount] = buffer;
+            batchBytes[batchCount] = buffer.bytes();
+            batchStartNanos[batchCount] = start;
+            batchCount++;
+            //the frame belongs to the batch from here, a failed flush gives it back with the others
+            if (batchCount == batchFrames.length) {
+                try {
+                    flushBatch();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            return true;
+        }
+
+        int length = buffer.bytes().remaining();
+        writeAndRelease(buffer);
+        long written = System.nanoTime();
+        metrics.onFrameWritten(written - encoded, length);
+
+        if (rateController != null)
+            rateController.onFrameWritten(queue.size(), written - start, width, height);
+        return false;
+    }
+
+    /**
+     * write the levels of a frame coarsest first, the refinements are skipped once a newer frame is waiting
+     * unless those of the previous frame were skipped too
+     * @param start time the frame was taken from the queue
+     */
+    private void writeLevels(Frame frame, int[] pixels, int width, int height, long start) throws IOException {
+        //the held frames come first
+        flushBatch();
+        pyramid.build(pixels, width, height);
+
+        long encodeNanos = System.nanoTime() - start;
+        long writeNanos = 0;
+        int length = 0;
+        boolean preempted = false;
+        for (int level = 0; level < Pyramid.LEVEL_COUNT; level++) {
+            if (level > 0 && !refinementPreempted && queue.size() > 0) {
+                metrics.onRefinementPreempted();
+                preempted = true;
+                break;
+            }
+            long levelStart = System.nanoTime();
+            FrameBuffer buffer = serializer.serializeLevel(frame, pyramid, level);
+            long encoded = System.nanoTime();
+            length += buffer.bytes().remaining();
+            writeAndRelease(buffer);
+            long written = System.nanoTime();
+            encodeNanos += encoded - levelStart;
+            writeNanos += written - encoded;
+            if (level == 0)
+                metrics.onFirstLevelWritten(written - frame.getEnqueueNanos());
+            if (level == Pyramid.LEVEL_COUNT - 1)
+                metrics.onLastLevelWritten(written - frame.getEnqueueNanos());
+        }
+        refinementPreempted = preempted;
+        metrics.onFrameEncoded(encodeNanos);
+        metrics.onFrameWritten(writeNanos, length);
+
+        if (rateController != null)
+            rateController.onFrameWritten(queue.size(), System.nanoTime() - start, width, height);
+    }
+
+    /**
+     * write the held frames in a single gathering write and give them back to the queue
+     */
+    private void flushBatch() throws IOException {
+        if (batchCount == 0)
+            return;
+
+        long length = 0;
+        for (int i = 0; i < batchCount; i++)
+            length += batchBytes[i].remaining();
+        long start = System.nanoTime();
+        boolean sent = false;
+        writeStartNanos = start;
+        try {
+            GatheringByteChannel channel = (GatheringByteChannel) serverChannel;
+            synchronized (writeLock) {
+                long remaining = length;
+                while (remaining > 0)
+                    remaining -= channel.write(batchBytes, 0, batchCount);
+            }
+            sent = true;
+        } finally {
+            writeStartNanos = 0;
+            long written = System.nanoTime();
+            if (sent) {
+                metrics.onBatchWritten(written - start, batchCount, (int) length);
+                if (rateController != null) {
+                    for (int i = 0; i < batchCount; i++)
+                        rateController.onFrameWritten(queue.size(), written - batchStartNanos[i],
+                                sentRegion.getBinnedWidth(), sentRegion.getBinnedHeight());
+                }
+            }
+            releaseBatch(sent);
+        }
+    }
+
+    /**
+     * give the held frames back to the queue and their buffers to the serializer
+     */
+    private void releaseBatch(boolean sent) {
+        for (int i = 0; i < batchCount; i++) {
+            serializer.release(batchBuffers[i]);
+            queue.release(batchFrames[i], sent);
+            batchFrames[i] = null;
+            batchBuffers[i] = null;
+            batchBytes[i] = null;
+        }
+        batchCount = 0;
+    }
+
+    /**
+     * send a heartbeat for the frames suppressed by the gate, after the held frames they come after
+     */
+    private void writeHeartbeat() throws IOException {
+        flushBatch();
+        FrameBuffer buffer = serializer.serializeHeartbeat(gate);
+        int length = buffer.bytes().remaining();
+        writeAndRelease(buffer);
+        gate.onHeartbeatSent();
+        metrics.onHeartbeatWritten(length);
+    }
+
+    /**
+     * send the 8 bit preview of a frame on the preview channel
+     */
+    private void writePreview(Frame frame, int[] pixels, int width, int height) throws IOException {
+        //the held frames come first
+        flushBatch();
+        long start = System.nanoTime();
+        FrameBuffer buffer = serializer.serializePreview(frame, pixels, width, height);
+        long encoded = System.nanoTime();
+        int length = buffer.bytes().remaining();
+        writeAndRelease(buffer);
+        preview.onPreviewSent(frame.getTimestamp());
+        metrics.onPreviewWritten(encoded - start, length);
+    }
+
+    /**
+     * analyze a frame and send its statistics
+     * @return true if the frame should be sent in full as well
+     */
+    private boolean writeStatistics(Frame frame) throws IOException {
+        long start = System.nanoTime();
+        statistics.analyze(frame.getPixels(), frame.getWidth(), frame.getHeight());
+        FrameBuffer buffer = serializer.serializeStatistics(frame, statistics);
+        long encoded = System.nanoTime();
+        metrics.onFrameEncoded(encoded - start);
+
+        int length = buffer.bytes().remaining();
+        writeAndRelease(buffer);
+        metrics.onStatisticsWritten(length);
+
+        boolean breach = false;
+        if (!statistics.isThresholdReached()) {
+            breachFrameTimestamp = 0;
+        } else if (breachFrameTimestamp == 0 || frame.getTimestamp() - breachFrameTimestamp >= BREACH_FRAME_INTERVAL) {
+            breachFrameTimestamp = frame.getTimestamp();
+            breach = true;
+        }
+        if (frameRequested) {
+            frameRequested = false;
+            return true;
+        }
+        return breach;
+    }
+
+    /**
+     * @return the requested region clipped to the frame and binned by the rate controller as well
+     */
+    private Region clipRegion(Frame frame) {
+        Region requested = requestedRegion;
+        int factor = rateController != null ? rateController.getBinning() : 1;
+        //clipped again only when something changed, the frame size is fixed by the camera
+        if (sentRegion == null || requested != clippedFrom || factor != clippedFactor) {
+            clippedFrom = requested;
+            clippedFactor = factor;
+            return requested.clip(frame.getWidth(), frame.getHeight(), factor);
+        }
+        return sentRegion;
+    }
+
+    private void fail(IOException e) {
+        //the connection is broken, no point in writing the next frames to it
+        running = false;
+        queue.close();
+        if (listener != null)
+            listener.onSendFailed(e);
+    }
+
+    /**
+     * @param timeoutMillis longest acceptable write time
+     * @return true if the current write has been blocked for longer than the timeout
+     */
+    public boolean isWriteStalled(long timeoutMillis) {
+        long start = writeStartNanos;
+        return start != 0 && System.nanoTime() - start > timeoutMillis * 1000000L;
+    }
+
+    private void writeAndRelease(FrameBuffer buffer) throws IOException {
+        writeStartNanos = System.nanoTime();
+        try {
+            ByteBuffer bytes = buffer.bytes();
+            synchronized (writeLock) {
+                while (bytes.hasRemaining())
+                    serverChannel.write(bytes);
+            }
+        } finally {
+            writeStartNanos = 0;
+            serializer.release(buffer);
+        }
+    }
+}
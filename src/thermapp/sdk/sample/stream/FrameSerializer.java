@@ -0,0 +1,421 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * serializes messages of the {@link WireProtocol} into pooled little endian buffers.
+ * the payload of the frames is written by the codec given to the serializer,
+ * and compressed by the snappy stage once the server accepted it.
+ * a {@link TiledCodec} tiles the frames once the server accepted tiles, and compresses the tiles itself.
+ * in progressive mode the levels of a {@link Pyramid} are encoded as 16 bit fixed point values, lossless
+ * as long as a level spans less than 65536 units, whatever the codec of the frames.
+ * the previews of the preview channel are encoded by a {@link PreviewCodec}
+ */
+public class FrameSerializer {
+    //default number of pooled buffers, one being written, one being encoded and one being compressed
+    public static final int POOL_SIZE = 3;
+    //initial buffer capacity, a 384x288 frame of ints
+    private static final int INITIAL_CAPACITY = WireProtocol.HEADER_SIZE + 384 * 288 * 4;
+
+    //buffers used to serialize the messages
+    private final BufferPool pool;
+    //reused header of the message being serialized
+    private final MessageHeader header = new MessageHeader();
+    //encodes the temperatures of the frames
+    private final FrameCodec codec;
+    //compresses the encoded payload, null if compression is off
+    private final SnappyStage compression;
+    //true once the server accepted compression on this connection
+    private volatile boolean compressionEnabled;
+    //message type of the serialized frames, WireProtocol.TYPE_FRAME or TYPE_BACKFILL
+    private int frameType = WireProtocol.TYPE_FRAME;
+    //encodes the levels in progressive mode, they do not depend on the previous frames
+    private final FrameCodec levelCodec = new Fixed16Codec(1);
+    //true if progressive mode is offered to the server
+    private boolean progressive;
+    //true once the server accepted progressive mode on this connection
+    private volatile boolean progressiveEnabled;
+    //encodes the 8 bit previews of the preview channel
+    private final PreviewCodec previewCodec = new PreviewCodec();
+
+    /**
+     * @param codec encodes the temperatures of the frames
+     */
+    public FrameSerializer(FrameCodec codec) {
+        this(codec, null);
+    }
+
+    /**
+     * @param codec encodes the temperatures of the frames
+     * @param compression compresses the encoded payload once the server accepted it, may be null
+     */
+    public FrameSerializer(FrameCodec codec, SnappyStage compression) {
+        this(codec, compression, POOL_SIZE);
+    }
+
+    /**
+     * @param codec encodes the temperatures of the frames
+     * @param compression compresses the encoded payload once the server accepted it, may be null
+     * @param poolSize number of pooled buffers, more than {@link #POOL_SIZE} when serialized frames are held longer
+     */
+    public FrameSerializer(FrameCodec codec, SnappyStage compression, int poolSize) {
+        this.codec = codec;
+        this.compression = compression;
+        this.pool = new BufferPool(poolSize, INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return the WireProtocol.CAPABILITY_ constants to offer in the handshake
+     */
+    public int getCapabilities() {
+        return (compression != null ? WireProtocol.CAPABILITY_SNAPPY : 0)
+                | (codec instanceof TiledCodec ? WireProtocol.CAPABILITY_TILES : 0)
+                | (progressive ? WireProtocol.CAPABILITY_PROGRESSIVE : 0);
+    }
+
+    /**
+     * use the capabilities the server accepted in its handshake
+     * @param capabilities WireProtocol.CAPABILITY_ constants
+     */
+    public void setAcceptedCapabilities(int capabilities) {
+        compressionEnabled = compression != null && (capabilities & WireProtocol.CAPABILITY_SNAPPY) != 0;
+        progressiveEnabled = progressive && (capabilities & WireProtocol.CAPABILITY_PROGRESSIVE) != 0;
+        if (codec instanceof TiledCodec)
+            ((TiledCodec) codec).setTiled((capabilities & WireProtocol.CAPABILITY_TILES) != 0, compressionEnabled);
+    }
+
+    /**
+     * @return the WireProtocol.CAPABILITY_ constants the serialized frames currently use
+     */
+    public int getCapabilitiesInUse() {
+        boolean tiled = codec instanceof TiledCodec && ((TiledCodec) codec).isTiled();
+        return (compressionEnabled ? WireProtocol.CAPABILITY_SNAPPY : 0) | (tiled ? WireProtocol.CAPABILITY_TILES : 0)
+                | (progressiveEnabled ? WireProtocol.CAPABILITY_PROGRESSIVE : 0);
+    }
+
+    /**
+     * serialize the handshake sent at the start of every connection
+     * @param sessionId identifies the sender across connections
+     * @param capabilities bit set of optional features the sender supports
+     * @param nextSequence sequence number of the next frame
+     * @return a flipped buffer that must be released after it was written
+     */
+    public FrameBuffer serializeHandshake(long sessionId, int capabilities, int nextSequence) {
+        FrameBuffer buffer = pool.acquire();
+        writeHandshake(buffer, header, sessionId, capabilities, nextSequence);
+        return buffer;
+    }
+
+    /**
+     * write a handshake message into a buffer, for senders that do not own the serializer
+     * @param buffer the buffer to write to, flipped afterwards
+     * @param header reused header of the caller
+     * @param sessionId identifies the sender across connections
+     * @param capabilities bit set of optional features the sender uses
+     * @param nextSequence sequence number of the next frame
+     */
+    public static void writeHandshake(FrameBuffer buffer, MessageHeader header, long sessionId,
+                                      int capabilities, int nextSequence) {
+        ByteBuffer bytes = buffer.clear(WireProtocol.HEADER_SIZE + WireProtocol.HANDSHAKE_LENGTH);
+
+        header.set(WireProtocol.TYPE_HANDSHAKE, WireProtocol.ENCODING_RAW32, 0, nextSequence,
+                System.currentTimeMillis(), 0, 0, WireProtocol.HANDSHAKE_LENGTH);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.position(WireProtocol.HEADER_SIZE);
+        bytes.putLong(sessionId);
+        bytes.putInt(capabilities);
+        bytes.flip();
+    }
+
+    /**
+     * serialize a stats message, into a new buffer since stats are rare
+     * @param report the metrics report
+     * @param sequence sequence number of the last frame
+     * @return a flipped heap buffer
+     */
+    public static ByteBuffer serializeStats(String report, int sequence) {
+        byte[] text = report.getBytes(Charset.forName("UTF-8"));
+        ByteBuffer bytes = ByteBuffer.allocate(WireProtocol.HEADER_SIZE + text.length).order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader().set(WireProtocol.TYPE_STATS, WireProtocol.ENCODING_RAW32, 0,
+                sequence, System.currentTimeMillis(), 0, 0, text.length);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.position(WireProtocol.HEADER_SIZE);
+        bytes.put(text);
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * serialize a region message, into a new buffer since regions change rarely
+     * @param region the region, clipped when it describes the sent frames
+     * @param sequence sequence number of the first frame cut from the region
+     * @return a flipped heap buffer
+     */
+    public static ByteBuffer serializeRegion(Region region, int sequence) {
+        ByteBuffer bytes = ByteBuffer.allocate(WireProtocol.HEADER_SIZE + WireProtocol.REGION_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader().set(WireProtocol.TYPE_REGION, WireProtocol.ENCODING_RAW32, 0,
+                sequence, System.currentTimeMillis(), region.getBinnedWidth(), region.getBinnedHeight(),
+                WireProtocol.REGION_LENGTH);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.position(WireProtocol.HEADER_SIZE);
+        region.write(bytes);
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * serialize a ping message, sent by a receiver to synchronize its clock with the sender, see ClockSync
+     * @param originateMicros time the ping is written, see ClockSync.nowMicros()
+     * @return a flipped heap buffer
+     */
+    public static ByteBuffer serializePing(long originateMicros) {
+        ByteBuffer bytes = ByteBuffer.allocate(WireProtocol.HEADER_SIZE + WireProtocol.PING_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader().set(WireProtocol.TYPE_PING, WireProtocol.ENCODING_RAW32, 0,
+                0, originateMicros / 1000, 0, 0, WireProtocol.PING_LENGTH);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.putLong(WireProtocol.HEADER_SIZE, originateMicros);
+        return bytes;
+    }
+
+    /**
+     * serialize the answer to a ping, without the time it is written, see {@link #stampPong(ByteBuffer)}
+     * @param originateMicros time the ping was written, from the ping
+     * @param receiveMicros time the ping was read
+     * @param sequence sequence number of the last frame
+     * @return a flipped heap buffer
+     */
+    public static ByteBuffer serializePong(long originateMicros, long receiveMicros, int sequence) {
+        ByteBuffer bytes = ByteBuffer.allocate(WireProtocol.HEADER_SIZE + WireProtocol.PONG_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader().set(WireProtocol.TYPE_PONG, WireProtocol.ENCODING_RAW32, 0,
+                sequence, System.currentTimeMillis(), 0, 0, WireProtocol.PONG_LENGTH);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.putLong(WireProtocol.HEADER_SIZE, originateMicros);
+        bytes.putLong(WireProtocol.HEADER_SIZE + 8, receiveMicros);
+        return bytes;
+    }
+
+    /**
+     * stamp a pong with the time it is written, call under the write lock right before writing it,
+     * so the wait for the frame being written is not taken for network delay
+     */
+    public static void stampPong(ByteBuffer pong) {
+        pong.putLong(pong.position() + WireProtocol.HEADER_SIZE + 16, ClockSync.nowMicros());
+    }
+
+    /**
+     * serialize the statistics of a frame, sent instead of the frame in analytics mode
+     * @param frame the analyzed frame, for the sequence number, timestamp and size
+     * @param statistics the statistics of the frame
+     * @return a flipped buffer that must be released after it was written
+     */
+    public FrameBuffer serializeStatistics(Frame frame, FrameStatistics statistics) {
+        FrameBuffer buffer = pool.acquire();
+        ByteBuffer bytes = buffer.clear(WireProtocol.HEADER_SIZE + statistics.getLength());
+
+        header.set(WireProtocol.TYPE_ANALYTICS, WireProtocol.ENCODING_RAW32, 0, (int) frame.getSequence(),
+                frame.getTimestamp(), frame.getWidth(), frame.getHeight(), statistics.getLength());
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.position(WireProtocol.HEADER_SIZE);
+        statistics.write(bytes);
+        bytes.flip();
+        return buffer;
+    }
+
+    /**
+     * serialize the 8 bit preview of a frame for the preview channel, never compressed
+     * @param frame the frame the temperatures were taken from, for the sequence number and timestamp
+     * @param pixels the temperatures, e.g. binned
+     * @param width width of the temperatures
+     * @param height height of the temperatures
+     * @return a flipped buffer that must be released after it was written
+     */
+    public FrameBuffer serializePreview(Frame frame, int[] pixels, int width, int height) {
+        FrameBuffer buffer = pool.acquire();
+        ByteBuffer bytes = buffer.clear(WireProtocol.HEADER_SIZE + PreviewCodec.maxPayloadLength(width, height));
+
+        bytes.position(WireProtocol.HEADER_SIZE);
+        previewCodec.encode(pixels, width, height, bytes);
+        header.set(WireProtocol.TYPE_PREVIEW, WireProtocol.ENCODING_RAW32, 0, (int) frame.getSequence(),
+                frame.getTimestamp(), width, height, bytes.position() - WireProtocol.HEADER_SIZE);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.flip();
+        return buffer;
+    }
+
+    /**
+     * serialize a heartbeat, sent instead of the frames suppressed by the change gate
+     * @param gate the gate that suppressed the frames, for the last suppressed frame and their number
+     * @return a flipped buffer that must be released after it was written
+     */
+    public FrameBuffer serializeHeartbeat(ChangeGate gate) {
+        FrameBuffer buffer = pool.acquire();
+        ByteBuffer bytes = buffer.clear(WireProtocol.HEADER_SIZE + WireProtocol.HEARTBEAT_LENGTH);
+
+        header.set(WireProtocol.TYPE_HEARTBEAT, WireProtocol.ENCODING_RAW32, 0, gate.getLastSuppressedSequence(),
+                gate.getLastSuppressedTimestamp(), 0, 0, WireProtocol.HEARTBEAT_LENGTH);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.putInt(WireProtocol.HEADER_SIZE, gate.getPendingCount());
+        bytes.position(WireProtocol.HEADER_SIZE + WireProtocol.HEARTBEAT_LENGTH);
+        bytes.flip();
+        return buffer;
+    }
+
+    /**
+     * serialize a frame message
+     * @param frame the frame to serialize
+     * @return a flipped buffer that must be released after it was written
+     * @throws IOException if compressing the payload failed
+     */
+    public FrameBuffer serialize(Frame frame) throws IOException {
+        return serialize(frame, frame.getPixels(), frame.getWidth(), frame.getHeight());
+    }
+
+    /**
+     * serialize a frame message with temperatures derived from the frame, e.g. binned
+     * @param frame the frame the temperatures were taken from, for the sequence number and timestamp
+     * @param pixels the temperatures to send, row by row
+     * @param width width of the temperatures
+     * @param height height of the temperatures
+     * @return a flipped buffer that must be released after it was written
+     * @throws IOException if compressing the payload failed
+     */
+    public FrameBuffer serialize(Frame frame, int[] pixels, int width, int height) throws IOException {
+        FrameBuffer buffer = pool.acquire();
+        ByteBuffer bytes = buffer.clear(WireProtocol.HEADER_SIZE + codec.maxPayloadLength(width, height));
+
+        //encode the payload first, the header is written once its length is known
+        bytes.position(WireProtocol.HEADER_SIZE);
+        int flags = codec.encode(pixels, width, height, buffer);
+        return complete(buffer, frameType, codec.getEncoding(), flags, frame, width, height);
+    }
+
+    /**
+     * serialize a level of a frame in progressive mode
+     * @param frame the frame the levels were built from, for the sequence number and timestamp
+     * @param pyramid the levels of the frame
+     * @param level the level to serialize, 0 for the coarsest
+     * @return a flipped buffer that must be released after it was written
+     * @throws IOException if compressing the payload failed
+     */
+    public FrameBuffer serializeLevel(Frame frame, Pyramid pyramid, int level) throws IOException {
+        int width = pyramid.getWidth(level);
+        int height = pyramid.getHeight(level);
+        FrameBuffer buffer = pool.acquire();
+        ByteBuffer bytes = buffer.clear(WireProtocol.HEADER_SIZE + WireProtocol.LEVEL_HEADER_LENGTH
+                + levelCodec.maxPayloadLength(width, height));
+
+        bytes.position(WireProtocol.HEADER_SIZE);
+        bytes.put((byte) level);
+        bytes.put((byte) Pyramid.LEVEL_COUNT);
+        bytes.putShort((short) 0);
+        int flags = levelCodec.encode(pyramid.getResiduals(level), width, height, buffer);
+        return complete(buffer, WireProtocol.TYPE_LEVEL, levelCodec.getEncoding(), flags, frame, width, height);
+    }
+
+    /**
+     * compress the encoded payload if compression was accepted, and write the header
+     * @param buffer holds the encoded payload after the header space, positioned at its end
+     * @return a flipped buffer that must be released after it was written
+     */
+    private FrameBuffer complete(FrameBuffer buffer, int type, int encoding, int flags, Frame frame,
+                                 int width, int height) throws IOException {
+        ByteBuffer bytes = buffer.bytes();
+        int payloadLength = bytes.position() - WireProtocol.HEADER_SIZE;
+
+        //tiles are compressed one by one by the codec
+        if (compressionEnabled && (flags & WireProtocol.FLAG_TILED) == 0) {
+            FrameBuffer compressed = compress(buffer, payloadLength);
+            pool.release(buffer);
+            buffer = compressed;
+            bytes = compressed.bytes();
+            payloadLength = bytes.position() - WireProtocol.HEADER_SIZE;
+            flags |= WireProtocol.FLAG_COMPRESSED;
+        }
+
+        header.set(type, encoding, flags, (int) frame.getSequence(), frame.getTimestamp(), width, height,
+                payloadLength);
+        WireProtocol.writeHeader(bytes, 0, header);
+        bytes.flip();
+        return buffer;
+    }
+
+    /**
+     * forget the state kept from the previous connection, called when a new connection starts
+     */
+    public void reset() {
+        codec.reset();
+        compressionEnabled = false;
+        progressiveEnabled = false;
+        if (codec instanceof TiledCodec)
+            ((TiledCodec) codec).setTiled(false, false);
+    }
+
+    /**
+     * @param frameType message type of the serialized frames, WireProtocol.TYPE_FRAME or TYPE_BACKFILL
+     */
+    public void setFrameType(int frameType) {
+        this.frameType = frameType;
+    }
+
+    /**
+     * offer progressive mode in the handshake, the frames are sent as levels once the server accepted it
+     * @param progressive true to offer progressive mode
+     */
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    /**
+     * @return true if the server accepted progressive mode on this connection
+     */
+    public boolean isProgressiveEnabled() {
+        return progressiveEnabled;
+    }
+
+    public FrameCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return the compression stage, null if compression is off
+     */
+    public SnappyStage getCompression() {
+        return compression;
+    }
+
+    /**
+     * compress the payload of an encoded frame into a new pooled buffer
+     * @return the buffer holding the compressed payload after the header space, positioned at its end
+     */
+    private FrameBuffer compress(FrameBuffer encoded, int payloadLength) throws IOException {
+        ByteBuffer src = encoded.bytes();
+        src.limit(WireProtocol.HEADER_SIZE + payloadLength);
+        src.position(WireProtocol.HEADER_SIZE);
+
+        FrameBuffer compressed = pool.acquire();
+        ByteBuffer dst = compressed.clear(WireProtocol.HEADER_SIZE + compression.maxCompressedLength(payloadLength));
+        dst.position(WireProtocol.HEADER_SIZE);
+        try {
+            int compressedLength = compression.compress(src, dst);
+            dst.position(WireProtocol.HEADER_SIZE + compressedLength);
+        } catch (IOException e) {
+            pool.release(compressed);
+            throw e;
+        }
+        return compressed;
+    }
+
+    /**
+     * give a written buffer back to the pool
+     * @param buffer a buffer returned by one of the serialize methods
+     */
+    public void release(FrameBuffer buffer) {
+        pool.release(buffer);
+    }
+}
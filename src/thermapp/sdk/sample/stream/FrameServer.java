@@ -0,0 +1,196 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * thread that serves the stream to any number of subscribers, instead of connecting to one server.
+ *
+ * the server listens on a port and starts a {@link Subscriber} for every accepted connection.
+ * the {@link FrameBroadcaster} serializes every frame once and shares it with all the subscribers,
+ * each one writing from its own bounded queue. the frame queue is only open while there are
+ * subscribers, and a new subscriber gets a keyframe first
+ */
+public class FrameServer extends Thread implements Subscriber.Listener {
+    /**
+     * notified from the server threads about the subscribers
+     */
+    public interface Listener {
+        void onSubscriberConnected(Subscriber subscriber);
+
+        /**
+         * @param e the failure that ended the connection, null if it was closed
+         */
+        void onSubscriberDisconnected(Subscriber subscriber, IOException e);
+
+        /**
+         * listening on the port failed, the server tries again after a delay
+         */
+        void onServerFailed(IOException e);
+    }
+
+    //time between two attempts to listen on the port
+    private static final long RETRY_INTERVAL = 2000;
+
+    //port to listen on
+    private final int port;
+    //maximum number of queued messages per subscriber
+    private final int subscriberCapacity;
+    //how the subscriber sockets are tuned
+    private final SocketProfile socketProfile;
+    //frames to send
+    private final FrameQueue queue;
+    //shares the serialized frames with the subscribers
+    private final FrameBroadcaster broadcaster;
+    //notified about the subscribers, may be null
+    private final Listener listener;
+    //identifies the stream in the handshakes
+    private final long sessionId = new Random().nextLong();
+
+    //false once the server was asked to stop
+    private volatile boolean running = true;
+    //listening channel, null while not listening
+    private volatile ServerSocketChannel serverChannel;
+    //number of accepted subscribers
+    private volatile int acceptCount;
+
+    /**
+     * @param port port to listen on
+     * @param subscriberCapacity maximum number of queued messages per subscriber
+     * @param socketProfile how the subscriber sockets are tuned
+     * @param queue frames to send
+     * @param broadcaster shares the serialized frames with the subscribers
+     * @param listener notified about the subscribers, may be null
+     */
+    public FrameServer(int port, int subscriberCapacity, SocketProfile socketProfile, FrameQueue queue,
+                       FrameBroadcaster broadcaster, Listener listener) {
+        super("FrameServer");
+        this.port = port;
+        this.subscriberCapacity = subscriberCapacity;
+        this.socketProfile = socketProfile;
+        this.queue = queue;
+        this.broadcaster = broadcaster;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        broadcaster.start();
+
+        while (running) {
+            try {
+                ServerSocketChannel newChannel = ServerSocketChannel.open();
+                newChannel.socket().setReuseAddress(true);
+                newChannel.socket().bind(new InetSocketAddress(port));
+                serverChannel = newChannel;
+                if (!running)
+                    break;
+                accept(newChannel);
+            } catch (IOException e) {
+                if (!running)
+                    break;
+                if (listener != null)
+                    listener.onServerFailed(e);
+                close(serverChannel);
+                serverChannel = null;
+                try {
+                    Thread.sleep(RETRY_INTERVAL);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+
+        close(serverChannel);
+        serverChannel = null;
+    }
+
+    private void accept(ServerSocketChannel channel) throws IOException {
+        FrameSerializer serializer = broadcaster.getSerializer();
+        boolean delta = serializer.getCodec().getEncoding() == WireProtocol.ENCODING_DELTA;
+        while (running) {
+            SocketChannel client = channel.accept();
+            client.socket().setKeepAlive(true);
+            socketProfile.apply(client.socket());
+
+            Subscriber subscriber = new Subscriber(client, subscriberCapacity, delta, broadcaster.getMetrics(), this);
+            subscriber.setBatchSize(socketProfile.getBatchSize());
+            acceptCount++;
+            broadcaster.add(subscriber);
+            subscriber.startStreaming(sessionId, serializer.getCapabilitiesInUse(),
+                    (int) queue.getNextSequence());
+            new ControlReader(Channels.newInputStream(client), subscriber).start();
+            if (listener != null)
+                listener.onSubscriberConnected(subscriber);
+        }
+    }
+
+    @Override
+    public void onSubscriberClosed(Subscriber subscriber, IOException e) {
+        broadcaster.remove(subscriber);
+        if (running && listener != null)
+            listener.onSubscriberDisconnected(subscriber, e);
+    }
+
+    /**
+     * stop listening, close every subscriber and stop the broadcaster
+     */
+    public void shutdown() {
+        running = false;
+        interrupt();
+        close(serverChannel);
+        broadcaster.shutdown();
+    }
+
+    public FrameQueue getQueue() {
+        return queue;
+    }
+
+    public FrameBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+
+    /**
+     * @return the current subscribers
+     */
+    public List<Subscriber> getSubscribers() {
+        return broadcaster.getSubscribers();
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public int getAcceptCount() {
+        return acceptCount;
+    }
+
+    private static void close(ServerSocketChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //nothing left to do with it
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "port=" + port + " subscribers=" + broadcaster.getSubscribers().size() + " accepted=" + acceptCount
+                + " broadcast=" + broadcaster.getBroadcastCount() + " failed=" + broadcaster.getFailedCount();
+    }
+}
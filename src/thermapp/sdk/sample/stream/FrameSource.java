@@ -0,0 +1,40 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+
+/**
+ * produces the temperature frames that are streamed: the thermal camera, a synthetic scene or a
+ * replayed recording, so the pipeline can run and be profiled without the camera, also on a plain jvm.
+ * the frames are delivered on a thread of the source, like the callbacks of the camera sdk
+ */
+public interface FrameSource {
+    /**
+     * notified from the thread of the source
+     */
+    interface Listener {
+        /**
+         * a new frame, the pixels are only valid during the call, see {@link FrameQueue#offer(int[], int, int)}
+         * @param pixels temperatures, row by row
+         * @param width width of the frame
+         * @param height height of the frame
+         */
+        void onFrame(int[] pixels, int width, int height);
+
+        /**
+         * the source will not deliver more frames, e.g. a replayed recording reached its end
+         * @param e the failure that ended the source, null if it ended normally
+         */
+        void onSourceEnded(IOException e);
+    }
+
+    /**
+     * start delivering frames to the listener
+     * @throws IOException if the source could not be started
+     */
+    void start(Listener listener) throws IOException;
+
+    /**
+     * stop delivering frames, the frame being delivered is still completed
+     */
+    void stop();
+}
@@ -0,0 +1,335 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * statistics of a frame sent instead of its temperatures in analytics mode, see WireProtocol.TYPE_ANALYTICS.
+ *
+ * the minimum, maximum, mean, a coarse histogram and the hot spots are computed in a single pass
+ * over the temperatures without allocating. the histogram has HISTOGRAM_BINS bins of a power of two
+ * width covering the range of the previous frame, or of its first row for the first frame, and values
+ * outside the range are counted in the first or last bin.
+ * the frame is split in a GRID_COLUMNS x GRID_ROWS grid, and the hottest pixel of every cell reaching
+ * the threshold is a hot spot, the MAX_HOT_SPOTS hottest ones are sent hottest first.
+ *
+ * the payload layout is:
+ * <pre>
+ *  0  int    minimum
+ *  4  int    maximum
+ *  8  int    mean, rounded down
+ * 12  short  column of the maximum (unsigned)
+ * 14  short  row of the maximum (unsigned)
+ * 16  int    lowest value of the first histogram bin
+ * 20  byte   log2 of the width of a histogram bin
+ * 21  byte   number of hot spots
+ * 22  short  0
+ * 24  int[]  HISTOGRAM_BINS counts
+ * 88         hot spots, column and row (unsigned shorts) and temperature (int) each
+ * </pre>
+ * an instance is reused for every frame of a connection, and by the receiver to read the records
+ */
+public class FrameStatistics {
+    //number of histogram bins
+    public static final int HISTOGRAM_BINS = 16;
+    //size of the hot spot grid
+    public static final int GRID_COLUMNS = 8;
+    public static final int GRID_ROWS = 6;
+    //largest number of hot spots in a record
+    public static final int MAX_HOT_SPOTS = 8;
+    //size of a record without hot spots
+    public static final int FIXED_LENGTH = 24 + HISTOGRAM_BINS * 4;
+    //size of a hot spot in a record
+    public static final int HOT_SPOT_LENGTH = 8;
+    //size of the largest record
+    public static final int MAX_LENGTH = FIXED_LENGTH + MAX_HOT_SPOTS * HOT_SPOT_LENGTH;
+
+    //temperature a cell must reach to be a hot spot
+    private final int threshold;
+
+    //statistics of the last frame
+    private int minimum;
+    private int maximum;
+    private int mean;
+    private int maximumX;
+    private int maximumY;
+    //lowest value of the first histogram bin
+    private int histogramLow;
+    //log2 of the width of a histogram bin
+    private int histogramShift;
+    private final int[] histogram = new int[HISTOGRAM_BINS];
+    //hot spots of the last frame, hottest first
+    private int hotSpotCount;
+    private final int[] hotSpotX = new int[MAX_HOT_SPOTS];
+    private final int[] hotSpotY = new int[MAX_HOT_SPOTS];
+    private final int[] hotSpotTemperature = new int[MAX_HOT_SPOTS];
+
+    //hottest pixel of every grid cell, index in the frame
+    private final int[] cellMaximum = new int[GRID_COLUMNS * GRID_ROWS];
+    private final int[] cellIndex = new int[GRID_COLUMNS * GRID_ROWS];
+    //first column of every grid column, and the frame width at the end
+    private final int[] cellLeft = new int[GRID_COLUMNS + 1];
+    //true once a frame was analyzed, so the histogram range of the previous frame is known
+    private boolean hasRange;
+
+    /**
+     * @param threshold temperature a cell must reach to be a hot spot, in the units of the camera
+     */
+    public FrameStatistics(int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * compute the statistics of a frame in a single pass
+     * @param pixels temperatures, row by row
+     * @param width width of the frame
+     * @param height height of the frame
+     */
+    public void analyze(int[] pixels, int width, int height) {
+        if (!hasRange) {
+            //the first frame has no previous range, the histogram is over its first row
+            setHistogramRange(pixels, 0, width);
+            hasRange = true;
+        }
+        for (int i = 0; i < HISTOGRAM_BINS; i++)
+            histogram[i] = 0;
+        for (int i = 0; i < cellMaximum.length; i++)
+            cellMaximum[i] = Integer.MIN_VALUE;
+        for (int c = 0; c <= GRID_COLUMNS; c++)
+            cellLeft[c] = c * width / GRID_COLUMNS;
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int maxIndex = 0;
+        long sum = 0;
+        int low = histogramLow;
+        int shift = histogramShift;
+        int lastBin = HISTOGRAM_BINS - 1;
+
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int cellRow = y * GRID_ROWS / height * GRID_COLUMNS;
+            for (int c = 0; c < GRID_COLUMNS; c++) {
+                int cell = cellRow + c;
+                int cellMax = cellMaximum[cell];
+                int cellMaxIndex = cellIndex[cell];
+                for (int i = row + cellLeft[c], end = row + cellLeft[c + 1]; i < end; i++) {
+                    int value = pixels[i];
+                    sum += value;
+                    if (value < min)
+                        min = value;
+                    if (value > cellMax) {
+                        cellMax = value;
+                        cellMaxIndex = i;
+                    }
+                    long bin = ((long) value - low) >> shift;
+                    histogram[bin < 0 ? 0 : bin > lastBin ? lastBin : (int) bin]++;
+                }
+                cellMaximum[cell] = cellMax;
+                cellIndex[cell] = cellMaxIndex;
+                if (cellMax > max) {
+                    max = cellMax;
+                    maxIndex = cellMaxIndex;
+                }
+            }
+        }
+
+        int count = width * height;
+        minimum = min;
+        maximum = max;
+        mean = count > 0 ? (int) Math.floor((double) sum / count) : 0;
+        maximumX = count > 0 ? maxIndex % width : 0;
+        maximumY = count > 0 ? maxIndex / width : 0;
+        findHotSpots(width);
+
+        //the next frame is binned over the range of this one
+        if (count > 0)
+            setHistogramRange(min, max);
+    }
+
+    /**
+     * @return true if a cell reached the threshold in the last frame
+     */
+    public boolean isThresholdReached() {
+        return hotSpotCount > 0;
+    }
+
+    /**
+     * @return the size of the record of the last frame
+     */
+    public int getLength() {
+        return FIXED_LENGTH + hotSpotCount * HOT_SPOT_LENGTH;
+    }
+
+    /**
+     * write the record of the last frame at the buffer position
+     * @param buffer little endian buffer with getLength() bytes remaining
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(minimum);
+        buffer.putInt(maximum);
+        buffer.putInt(mean);
+        buffer.putShort((short) maximumX);
+        buffer.putShort((short) maximumY);
+        buffer.putInt(histogramLow);
+        buffer.put((byte) histogramShift);
+        buffer.put((byte) hotSpotCount);
+        buffer.putShort((short) 0);
+        for (int i = 0; i < HISTOGRAM_BINS; i++)
+            buffer.putInt(histogram[i]);
+        for (int i = 0; i < hotSpotCount; i++) {
+            buffer.putShort((short) hotSpotX[i]);
+            buffer.putShort((short) hotSpotY[i]);
+            buffer.putInt(hotSpotTemperature[i]);
+        }
+    }
+
+    /**
+     * read a record written by {@link #write(ByteBuffer)}
+     * @param buffer little endian buffer holding the record
+     * @param offset index of the first record byte
+     * @param length size of the record
+     * @return false if the bytes are not a record
+     */
+    public boolean read(ByteBuffer buffer, int offset, int length) {
+        if (length < FIXED_LENGTH)
+            return false;
+        int count = buffer.get(offset + 21) & 0xFF;
+        if (count > MAX_HOT_SPOTS || length < FIXED_LENGTH + count * HOT_SPOT_LENGTH)
+            return false;
+
+        minimum = buffer.getInt(offset);
+        maximum = buffer.getInt(offset + 4);
+        mean = buffer.getInt(offset + 8);
+        maximumX = buffer.getShort(offset + 12) & 0xFFFF;
+        maximumY = buffer.getShort(offset + 14) & 0xFFFF;
+        histogramLow = buffer.getInt(offset + 16);
+        histogramShift = buffer.get(offset + 20) & 0xFF;
+        for (int i = 0; i < HISTOGRAM_BINS; i++)
+            histogram[i] = buffer.getInt(offset + 24 + i * 4);
+        hotSpotCount = count;
+        for (int i = 0; i < count; i++) {
+            int spot = offset + FIXED_LENGTH + i * HOT_SPOT_LENGTH;
+            hotSpotX[i] = buffer.getShort(spot) & 0xFFFF;
+            hotSpotY[i] = buffer.getShort(spot + 2) & 0xFFFF;
+            hotSpotTemperature[i] = buffer.getInt(spot + 4);
+        }
+        return true;
+    }
+
+    /**
+     * pick the hottest cells reaching the threshold, hottest first
+     */
+    private void findHotSpots(int width) {
+        hotSpotCount = 0;
+        while (hotSpotCount < MAX_HOT_SPOTS) {
+            int hottest = -1;
+            for (int cell = 0; cell < cellMaximum.length; cell++) {
+                if (cellMaximum[cell] >= threshold && (hottest < 0 || cellMaximum[cell] > cellMaximum[hottest]))
+                    hottest = cell;
+            }
+            if (hottest < 0)
+                break;
+            hotSpotX[hotSpotCount] = cellIndex[hottest] % width;
+            hotSpotY[hotSpotCount] = cellIndex[hottest] / width;
+            hotSpotTemperature[hotSpotCount] = cellMaximum[hottest];
+            hotSpotCount++;
+            //taken, so the next round finds the next hottest
+            cellMaximum[hottest] = Integer.MIN_VALUE;
+        }
+    }
+
+    private void setHistogramRange(int[] pixels, int from, int to) {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = from; i < to && i < pixels.length; i++) {
+            min = Math.min(min, pixels[i]);
+            max = Math.max(max, pixels[i]);
+        }
+        if (min <= max)
+            setHistogramRange(min, max);
+    }
+
+    /**
+     * use the smallest power of two bin width so HISTOGRAM_BINS bins cover the range
+     */
+    private void setHistogramRange(int min, int max) {
+        long span = (long) max - min + 1;
+        int shift = 0;
+        while ((long) HISTOGRAM_BINS << shift < span)
+            shift++;
+        histogramLow = min;
+        histogramShift = shift;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getMinimum() {
+        return minimum;
+    }
+
+    public int getMaximum() {
+        return maximum;
+    }
+
+    public int getMean() {
+        return mean;
+    }
+
+    public int getMaximumX() {
+        return maximumX;
+    }
+
+    public int getMaximumY() {
+        return maximumY;
+    }
+
+    public int getHistogramLow() {
+        return histogramLow;
+    }
+
+    /**
+     * @return the width of a histogram bin in temperature units
+     */
+    public int getHistogramBinWidth() {
+        return 1 << histogramShift;
+    }
+
+    /**
+     * @return the number of temperatures in a histogram bin
+     */
+    public int getHistogramCount(int bin) {
+        return histogram[bin];
+    }
+
+    public int getHotSpotCount() {
+        return hotSpotCount;
+    }
+
+    public int getHotSpotX(int index) {
+        return hotSpotX[index];
+    }
+
+    public int getHotSpotY(int index) {
+        return hotSpotY[index];
+    }
+
+    public int getHotSpotTemperature(int index) {
+        return hotSpotTemperature[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        text.append("min=").append(minimum).append(" max=").append(maximum).append(" at ").append(maximumX)
+                .append(",").append(maximumY).append(" mean=").append(mean).append(" histogram from ")
+                .append(histogramLow).append(" by ").append(getHistogramBinWidth()).append(":");
+        for (int i = 0; i < HISTOGRAM_BINS; i++)
+            text.append(" ").append(histogram[i]);
+        text.append(" hotSpots=").append(hotSpotCount);
+        for (int i = 0; i < hotSpotCount; i++)
+            text.append(" ").append(hotSpotX[i]).append(",").append(hotSpotY[i]).append("=").append(hotSpotTemperature[i]);
+        return text.toString();
+    }
+}
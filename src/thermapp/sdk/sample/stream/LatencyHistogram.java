@@ -0,0 +1,114 @@
+package thermapp.sdk.sample.stream;
+
+import java.util.Arrays;
+
+/**
+ * histogram of durations in nanoseconds with a fixed set of log-linear buckets.
+ *
+ * every power of two is split into 16 buckets, so a percentile is within 1/16 of the recorded value,
+ * from nanoseconds up to about 18 minutes. the buckets are allocated once, recording only increments
+ * a counter, so it is cheap enough to time every frame. recording and reading are thread safe
+ */
+public class LatencyHistogram {
+    //number of buckets per power of two, as a power of two
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    //largest power of two with its own buckets, larger values go to the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    //number of recorded values per bucket
+    private final long[] counts = new long[BUCKET_COUNT];
+    //number of recorded values
+    private long count;
+    //largest recorded value
+    private long max;
+    //sum of the recorded values
+    private long sum;
+
+    /**
+     * @param nanos the duration to record, negative values are recorded as 0
+     */
+    public synchronized void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts[bucketOf(nanos)]++;
+        count++;
+        sum += nanos;
+        if (nanos > max)
+            max = nanos;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * @return average of the recorded values, 0 if none
+     */
+    public synchronized long getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the upper bound of the bucket holding the percentile, never more than the max, 0 if empty
+     */
+    public synchronized long getValueAtPercentile(double percentile) {
+        if (count == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target)
+                return Math.min(max, upperBoundOf(i));
+        }
+        return max;
+    }
+
+    /**
+     * forget the recorded values
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKET_COUNT - 1;
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * @return the percentiles in microseconds
+     */
+    @Override
+    public synchronized String toString() {
+        return "n=" + count + " p50=" + getValueAtPercentile(50) / 1000 + "us p99=" + getValueAtPercentile(99) / 1000
+                + "us p999=" + getValueAtPercentile(99.9) / 1000 + "us max=" + max / 1000 + "us";
+    }
+}
@@ -0,0 +1,98 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * header that precedes every message of the stream, see {@link WireProtocol} for the layout.
+ * the header is mutable so a single instance can be reused for every message
+ */
+public class MessageHeader {
+    //protocol version the message was written with
+    private int version = WireProtocol.VERSION;
+    //type of the message, one of the WireProtocol.TYPE_ constants
+    private int type;
+    //encoding of the payload, one of the WireProtocol.ENCODING_ constants
+    private int encoding;
+    //bit set of WireProtocol.FLAG_ constants
+    private int flags;
+    //sequence number of the frame, for a handshake the sequence number of the next frame
+    private int sequence;
+    //capture time of the frame in milliseconds since epoch, for other messages the send time
+    private long timestamp;
+    //width of the frame
+    private int width;
+    //height of the frame
+    private int height;
+    //number of payload bytes following the header
+    private int payloadLength;
+
+    /**
+     * reset the header to describe a new message
+     * @return this header
+     */
+    public MessageHeader set(int type, int encoding, int flags, int sequence, long timestamp,
+                             int width, int height, int payloadLength) {
+        this.version = WireProtocol.VERSION;
+        this.type = type;
+        this.encoding = encoding;
+        this.flags = flags;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.width = width;
+        this.height = height;
+        this.payloadLength = payloadLength;
+        return this;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    void setVersion(int version) {
+        this.version = version;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public int getEncoding() {
+        return encoding;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public int getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    public void setPayloadLength(int payloadLength) {
+        this.payloadLength = payloadLength;
+    }
+
+    @Override
+    public String toString() {
+        return "type=" + type + " encoding=" + encoding + " flags=" + flags + " sequence=" + sequence
+                + " timestamp=" + timestamp + " size=" + width + "x" + height + " payload=" + payloadLength;
+    }
+}
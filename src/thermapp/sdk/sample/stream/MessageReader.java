@@ -0,0 +1,145 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * reads the messages of a stream written with the {@link WireProtocol}.
+ *
+ * if the bytes at the current position are not a valid header, the reader skips ahead one byte at a
+ * time until it finds the next valid header, so it recovers from joining late or from lost bytes.
+ * the header and payload buffers are reused between messages
+ */
+public class MessageReader {
+    //stream to read from
+    private final InputStream in;
+    //bytes of the current header
+    private final byte[] headerBytes = new byte[WireProtocol.HEADER_SIZE];
+    private final ByteBuffer headerBuffer = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+    //the current header
+    private final MessageHeader header = new MessageHeader();
+    //bytes of the current payload, grows as needed
+    private byte[] payloadBytes = new byte[0];
+    private ByteBuffer payloadBuffer = ByteBuffer.wrap(payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+
+    //session id of the last handshake
+    private long sessionId;
+    //true once a frame was read, so gaps in the sequence numbers can be detected
+    private boolean hasLastSequence;
+    //sequence number of the last frame
+    private int lastSequence;
+    //number of bytes skipped while looking for a header
+    private long skippedBytes;
+    //number of times the reader had to look for a header
+    private long resyncCount;
+    //number of frames missing according to the sequence numbers
+    private long lostFrames;
+
+    public MessageReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * read the next message
+     * @return the header of the message, or null at the end of the stream
+     * @throws IOException if reading failed or the stream ended in the middle of a message
+     */
+    public MessageHeader next() throws IOException {
+        if (!readFully(headerBytes, 0, headerBytes.length, true))
+            return null;
+
+        if (!WireProtocol.readHeader(headerBuffer, 0, header)) {
+            resyncCount++;
+            do {
+                //drop the first byte and read one more
+                System.arraycopy(headerBytes, 1, headerBytes, 0, headerBytes.length - 1);
+                if (!readFully(headerBytes, headerBytes.length - 1, 1, true))
+                    return null;
+                skippedBytes++;
+            } while (!WireProtocol.readHeader(headerBuffer, 0, header));
+        }
+
+        int length = header.getPayloadLength();
+        if (payloadBytes.length < length) {
+            payloadBytes = new byte[length];
+            payloadBuffer = ByteBuffer.wrap(payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        readFully(payloadBytes, 0, length, false);
+        payloadBuffer.clear();
+        payloadBuffer.limit(length);
+
+        trackSequence();
+        return header;
+    }
+
+    /**
+     * @return the payload of the last message, positioned at its first byte
+     */
+    public ByteBuffer payload() {
+        return payloadBuffer;
+    }
+
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    public long getLostFrames() {
+        return lostFrames;
+    }
+
+    private void trackSequence() {
+        if (header.getType() == WireProtocol.TYPE_HANDSHAKE) {
+            long handshakeSession = payloadBuffer.getLong(0);
+            if (!hasLastSequence || handshakeSession != sessionId) {
+                //a new session, the next frame continues from the handshake sequence
+                hasLastSequence = true;
+                lastSequence = header.getSequence() - 1;
+            }
+            //else the same session reconnected, the frames missed in between count as lost
+            sessionId = handshakeSession;
+        } else if (header.getType() == WireProtocol.TYPE_FRAME || header.getType() == WireProtocol.TYPE_HEARTBEAT
+                || header.getType() == WireProtocol.TYPE_LEVEL || header.getType() == WireProtocol.TYPE_PREVIEW) {
+            //a heartbeat stands for the frames suppressed since the previous frame or heartbeat, and a preview
+            //for the frames the sender skipped on both paced channels since the previous message.
+            //the levels of a frame and its preview share its sequence number
+            int accounted = 1;
+            if (header.getType() == WireProtocol.TYPE_HEARTBEAT
+                    && header.getPayloadLength() >= WireProtocol.HEARTBEAT_LENGTH)
+                accounted = payloadBuffer.getInt(0);
+            else if (header.getType() == WireProtocol.TYPE_PREVIEW)
+                accounted = header.getSequence() - lastSequence;
+            if (hasLastSequence) {
+                int gap = header.getSequence() - lastSequence - accounted;
+                if (gap > 0)
+                    lostFrames += gap;
+            }
+            hasLastSequence = true;
+            lastSequence = header.getSequence();
+        }
+    }
+
+    /**
+     * @param allowEnd true if the stream may end before the first byte
+     * @return false if the stream ended before the first byte
+     */
+    private boolean readFully(byte[] dst, int offset, int length, boolean allowEnd) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(dst, offset + read, length - read);
+            if (n < 0) {
+                if (read == 0 && allowEnd)
+                    return false;
+                throw new EOFException("stream ended in the middle of a message");
+            }
+            read += n;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * what the frame queue does when a new frame arrives and the queue is full
+ */
+public enum OverflowPolicy {
+    //throw away the oldest queued frame and keep the new one
+    DROP_OLDEST,
+    //throw away the new frame and keep the queued ones
+    DROP_NEWEST,
+    //wait until the sender makes room for the new frame
+    BLOCK;
+
+    /**
+     * parse a policy from its preference value
+     * @param value the name of the policy, e.g. "DROP_OLDEST"
+     * @param defaultPolicy the policy to return if the value is missing or unknown
+     * @return the matching policy
+     */
+    public static OverflowPolicy parse(String value, OverflowPolicy defaultPolicy) {
+        if (value == null)
+            return defaultPolicy;
+
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultPolicy;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * keeps a producer of frames at its frame rate
+ */
+public class Pacer {
+    //time between two frames
+    private final long periodNanos;
+    //time the next frame is due
+    private long nextNanos = System.nanoTime();
+
+    /**
+     * @param fps frames per second
+     */
+    public Pacer(int fps) {
+        periodNanos = 1000000000L / fps;
+    }
+
+    /**
+     * wait until the next frame is due
+     * @return number of frames skipped because the producer fell behind
+     */
+    public long await() throws InterruptedException {
+        long now = System.nanoTime();
+        long skipped = 0;
+        if (now - nextNanos > periodNanos) {
+            skipped = (now - nextNanos) / periodNanos;
+            nextNanos += skipped * periodNanos;
+        }
+        long wait = nextNanos - now;
+        if (wait > 0)
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        nextNanos += periodNanos;
+        return skipped;
+    }
+}
@@ -0,0 +1,93 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * paces the two channels of a dual channel stream: an 8 bit preview for the dashboards that only show
+ * a picture, see {@link PreviewCodec}, and the radiometric frames at a lower rate or only on demand.
+ *
+ * both channels are paced by the capture time of the frames, so a slow frame source does not add up.
+ * the first frame of a connection or of a region goes on both channels
+ */
+public class PreviewChannel {
+    //radiometric interval that sends the radiometric frames only when the receiver asks for one
+    public static final int ON_DEMAND = -1;
+
+    //time between two previews, in milliseconds, 0 for every frame
+    private final int previewInterval;
+    //time between two radiometric frames, in milliseconds, 0 for every frame or ON_DEMAND
+    private final int radiometricInterval;
+
+    //capture time of the last preview and radiometric frame sent
+    private long lastPreviewTimestamp;
+    private long lastRadiometricTimestamp;
+    //false until the first preview and radiometric frame were sent, or after a reset
+    private boolean previewSent;
+    private boolean radiometricSent;
+
+    /**
+     * @param previewInterval time between two previews, in milliseconds, 0 for every frame
+     * @param radiometricInterval time between two radiometric frames, in milliseconds, 0 for every frame
+     * or ON_DEMAND
+     */
+    public PreviewChannel(int previewInterval, int radiometricInterval) {
+        this.previewInterval = previewInterval;
+        this.radiometricInterval = radiometricInterval;
+    }
+
+    /**
+     * @param timestamp capture time of the frame
+     * @return true if the preview of the frame must be sent
+     */
+    public boolean isPreviewDue(long timestamp) {
+        return !previewSent || isElapsed(timestamp, lastPreviewTimestamp, previewInterval);
+    }
+
+    /**
+     * @param timestamp capture time of the frame
+     * @param requested true if the receiver asked for a radiometric frame
+     * @return true if the frame must be sent on the radiometric channel
+     */
+    public boolean isRadiometricDue(long timestamp, boolean requested) {
+        if (requested || !radiometricSent)
+            return true;
+        return radiometricInterval != ON_DEMAND && isElapsed(timestamp, lastRadiometricTimestamp, radiometricInterval);
+    }
+
+    public void onPreviewSent(long timestamp) {
+        previewSent = true;
+        lastPreviewTimestamp = timestamp;
+    }
+
+    public void onRadiometricSent(long timestamp) {
+        radiometricSent = true;
+        lastRadiometricTimestamp = timestamp;
+    }
+
+    /**
+     * send the next frame on both channels, e.g. for another region
+     */
+    public void reset() {
+        previewSent = false;
+        radiometricSent = false;
+    }
+
+    public int getPreviewInterval() {
+        return previewInterval;
+    }
+
+    public int getRadiometricInterval() {
+        return radiometricInterval;
+    }
+
+    /**
+     * @return true if the interval elapsed since the last message, or the clock went back, e.g. a replay looped
+     */
+    private static boolean isElapsed(long timestamp, long last, int interval) {
+        return timestamp - last >= interval || timestamp < last;
+    }
+
+    @Override
+    public String toString() {
+        return "preview=" + previewInterval + "ms radiometric="
+                + (radiometricInterval == ON_DEMAND ? "on demand" : radiometricInterval + "ms");
+    }
+}
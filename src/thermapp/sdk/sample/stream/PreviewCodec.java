@@ -0,0 +1,143 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 8 bit preview image of a frame for the preview channel, see WireProtocol.TYPE_PREVIEW.
+ *
+ * the temperatures are auto ranged: the coldest pixel of the frame is 0 and the hottest 255, like the
+ * gray palette of the camera. the levels are run length encoded like PackBits, a control byte n below 128
+ * is followed by n + 1 literal levels, a control byte n from 128 is followed by a level repeated n - 125
+ * times. flat areas of the scene shrink to a few bytes, and a noisy frame grows by one byte per 128 pixels.
+ * the payload is the coldest and hottest temperatures (ints) then the encoded levels
+ */
+public class PreviewCodec {
+    //longest run of literal levels after a control byte
+    private static final int MAX_LITERALS = 128;
+    //shortest and longest run of a repeated level after a control byte
+    private static final int MIN_REPEAT = 3;
+    private static final int MAX_REPEAT = 130;
+
+    //levels of the frame being encoded
+    private byte[] levels = new byte[0];
+
+    /**
+     * @return the largest payload of a preview of the given size
+     */
+    public static int maxPayloadLength(int width, int height) {
+        int length = width * height;
+        return WireProtocol.PREVIEW_HEADER_LENGTH + length + (length + MAX_LITERALS - 1) / MAX_LITERALS;
+    }
+
+    /**
+     * encode the preview of a frame at the position of the buffer
+     * @param pixels temperatures of the frame, row by row
+     * @param width width of the frame
+     * @param height height of the frame
+     * @param out buffer with at least maxPayloadLength bytes remaining
+     */
+    public void encode(int[] pixels, int width, int height, ByteBuffer out) {
+        int length = width * height;
+        if (levels.length < length)
+            levels = new byte[length];
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < length; i++) {
+            if (pixels[i] < min)
+                min = pixels[i];
+            if (pixels[i] > max)
+                max = pixels[i];
+        }
+        //long, so a frame spanning the whole int range does not overflow
+        long range = length == 0 ? 0 : (long) max - min;
+        for (int i = 0; i < length; i++)
+            levels[i] = (byte) (range == 0 ? 0 : ((pixels[i] - (long) min) * 255 + (range >> 1)) / range);
+
+        out.putInt(length == 0 ? 0 : min);
+        out.putInt(length == 0 ? 0 : max);
+        int literalStart = 0;
+        int i = 0;
+        while (i < length) {
+            int run = 1;
+            while (i + run < length && run < MAX_REPEAT && levels[i + run] == levels[i])
+                run++;
+            if (run < MIN_REPEAT) {
+                i += run;
+                //the literals are flushed when they reach the longest run
+                if (i - literalStart >= MAX_LITERALS) {
+                    putLiterals(out, literalStart, MAX_LITERALS);
+                    literalStart += MAX_LITERALS;
+                }
+                continue;
+            }
+            while (literalStart < i) {
+                int count = Math.min(i - literalStart, MAX_LITERALS);
+                putLiterals(out, literalStart, count);
+                literalStart += count;
+            }
+            out.put((byte) (run + 125));
+            out.put(levels[i]);
+            i += run;
+            literalStart = i;
+        }
+        while (literalStart < length) {
+            int count = Math.min(length - literalStart, MAX_LITERALS);
+            putLiterals(out, literalStart, count);
+            literalStart += count;
+        }
+    }
+
+    private void putLiterals(ByteBuffer out, int start, int count) {
+        out.put((byte) (count - 1));
+        out.put(levels, start, count);
+    }
+
+    /**
+     * decode a preview payload
+     * @param payload the payload, from its position
+     * @param payloadLength length of the payload
+     * @param levels filled with the width * height levels, from 0 for the coldest to 255 for the hottest
+     * @param length number of levels of the preview
+     * @return false if the payload does not hold exactly that many levels
+     */
+    public static boolean decode(ByteBuffer payload, int payloadLength, byte[] levels, int length) {
+        if (payloadLength < WireProtocol.PREVIEW_HEADER_LENGTH)
+            return false;
+        int position = payload.position() + WireProtocol.PREVIEW_HEADER_LENGTH;
+        int end = payload.position() + payloadLength;
+        int i = 0;
+        while (position < end) {
+            int control = payload.get(position++) & 0xFF;
+            if (control < MAX_LITERALS) {
+                int count = control + 1;
+                if (i + count > length || position + count > end)
+                    return false;
+                for (int k = 0; k < count; k++)
+                    levels[i++] = payload.get(position++);
+            } else {
+                int count = control - 125;
+                if (i + count > length || position >= end)
+                    return false;
+                byte level = payload.get(position++);
+                for (int k = 0; k < count; k++)
+                    levels[i++] = level;
+            }
+        }
+        return i == length;
+    }
+
+    /**
+     * @return the coldest temperature of a preview payload, level 0
+     */
+    public static int getMin(ByteBuffer payload) {
+        return payload.getInt(payload.position());
+    }
+
+    /**
+     * @return the hottest temperature of a preview payload, level 255
+     */
+    public static int getMax(ByteBuffer payload) {
+        return payload.getInt(payload.position() + 4);
+    }
+}
@@ -0,0 +1,167 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * resolution pyramid of a frame for the progressive mode, see WireProtocol.TYPE_LEVEL.
+ *
+ * the coarsest level is the frame binned by 4, the next ones are the frame binned by 2 and the frame
+ * itself, sent as the residuals to the coarser level scaled up by repeating its pixels. a receiver
+ * rebuilds every level exactly from the coarser one and its residuals, so it shows a 1/4 resolution
+ * image after the first level and the full frame after the last. the residuals are small and compress
+ * much better than the temperatures.
+ *
+ * the sender builds the levels of a frame with {@link #build(int[], int, int)}, the receiver rebuilds
+ * them one after the other with {@link #apply(int, int, int[], int, int)}. nothing is allocated once
+ * the levels have the size of the frames
+ */
+public class Pyramid {
+    //number of levels: 1/4 resolution, 1/2 resolution and full resolution
+    public static final int LEVEL_COUNT = 3;
+    //smallest width and height of a frame split in levels, so the coarsest level has a pixel
+    public static final int MIN_SIZE = 4;
+
+    //temperatures of every level, coarsest first, the finest one only on the receiver
+    private final int[][] images = new int[LEVEL_COUNT][0];
+    //what is sent for every level, the coarsest level itself then the residuals, only on the sender
+    private final int[][] residuals = new int[LEVEL_COUNT][0];
+    //size of every level
+    private final int[] widths = new int[LEVEL_COUNT];
+    private final int[] heights = new int[LEVEL_COUNT];
+
+    //sequence number of the frame being rebuilt by the receiver
+    private int sequence;
+    //finest level of the frame rebuilt so far, -1 before the first level
+    private int level = -1;
+
+    /**
+     * @return true if a frame is large enough to be split in levels
+     */
+    public static boolean canSplit(int width, int height) {
+        return width >= MIN_SIZE && height >= MIN_SIZE;
+    }
+
+    /**
+     * build the levels of a frame to send, see {@link #getResiduals(int)}
+     * @param pixels temperatures of the frame, row by row
+     * @param width width of the frame, at least MIN_SIZE
+     * @param height height of the frame, at least MIN_SIZE
+     */
+    public void build(int[] pixels, int width, int height) {
+        setSize(2, width, height, true);
+        setSize(1, width / 2, height / 2, true);
+        setSize(0, width / 4, height / 4, true);
+
+        //the coarsest level is binned from the middle one, so the frame is only read once to bin it
+        Binning.bin(pixels, width, height, 2, images[1]);
+        Binning.bin(images[1], widths[1], heights[1], 2, images[0]);
+        System.arraycopy(images[0], 0, residuals[0], 0, widths[0] * heights[0]);
+        subtractScaled(images[1], 1, images[0]);
+        subtractScaled(pixels, 2, images[1]);
+    }
+
+    /**
+     * rebuild a level of a received frame
+     * @param frameSequence sequence number of the frame
+     * @param level the level, 0 for the coarsest
+     * @param values temperatures of the coarsest level, or residuals of the next levels
+     * @param width width of the level
+     * @param height height of the level
+     * @return false if the level can not be rebuilt: a coarser level of the frame is missing or has another size
+     */
+    public boolean apply(int frameSequence, int level, int[] values, int width, int height) {
+        if (level < 0 || level >= LEVEL_COUNT)
+            return false;
+        if (level > 0 && (frameSequence != sequence || level != this.level + 1
+                || widths[level - 1] != width / 2 || heights[level - 1] != height / 2))
+            return false;
+
+        setSize(level, width, height, false);
+        if (level == 0)
+            System.arraycopy(values, 0, images[0], 0, width * height);
+        else
+            addScaled(values, level, images[level - 1]);
+        sequence = frameSequence;
+        this.level = level;
+        return true;
+    }
+
+    /**
+     * @return what is sent for a level: the temperatures of the coarsest level, then the residuals
+     */
+    public int[] getResiduals(int level) {
+        return residuals[level];
+    }
+
+    public int getWidth(int level) {
+        return widths[level];
+    }
+
+    public int getHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * @return the finest level the receiver rebuilt for the last frame, -1 before the first level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the sequence number of the frame the receiver is rebuilding
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the temperatures of the finest level rebuilt by the receiver
+     */
+    public int[] getImage() {
+        return images[Math.max(level, 0)];
+    }
+
+    private void setSize(int level, int width, int height, boolean sending) {
+        widths[level] = width;
+        heights[level] = height;
+        int length = width * height;
+        //the sender keeps the binned levels to compute the residuals, the receiver every rebuilt level
+        if ((!sending || level < LEVEL_COUNT - 1) && images[level].length < length)
+            images[level] = new int[length];
+        if (sending && residuals[level].length < length)
+            residuals[level] = new int[length];
+    }
+
+    /**
+     * residuals of a level: its temperatures minus the coarser level scaled up
+     */
+    private void subtractScaled(int[] fine, int level, int[] coarse) {
+        int width = widths[level];
+        int height = heights[level];
+        int coarseWidth = widths[level - 1];
+        int coarseHeight = heights[level - 1];
+        int[] out = residuals[level];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int coarseRow = Math.min(y >> 1, coarseHeight - 1) * coarseWidth;
+            for (int x = 0; x < width; x++)
+                out[row + x] = fine[row + x] - coarse[coarseRow + Math.min(x >> 1, coarseWidth - 1)];
+        }
+    }
+
+    /**
+     * rebuild a level: the coarser level scaled up plus the residuals
+     */
+    private void addScaled(int[] residual, int level, int[] coarse) {
+        int width = widths[level];
+        int height = heights[level];
+        int coarseWidth = widths[level - 1];
+        int coarseHeight = heights[level - 1];
+        int[] out = images[level];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int coarseRow = Math.min(y >> 1, coarseHeight - 1) * coarseWidth;
+            for (int x = 0; x < width; x++)
+                out[row + x] = residual[row + x] + coarse[coarseRow + Math.min(x >> 1, coarseWidth - 1)];
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * lowers the frame rate and then the resolution of the stream when the connection falls behind,
+ * and raises them back once it recovers.
+ *
+ * the controller watches the depth of the frame queue and the time a write takes. the levels are:
+ * every frame, every 2nd frame, every 4th frame, and every 4th frame binned 2x2.
+ * the controller steps down one level when the queue is half full or a write takes longer than the
+ * time between two sent frames, and steps up one level after the link was healthy for a while
+ */
+public class RateController {
+    //send every SKIP[level] frame
+    private static final int[] SKIP = { 1, 2, 4, 4 };
+    //bin the frames by BINNING[level]
+    private static final int[] BINNING = { 1, 1, 1, 2 };
+    //time to wait after a change before stepping down again, so the queue can drain
+    private static final long STEP_DOWN_COOLDOWN = 500000000L;
+    //time the link must be healthy before stepping up
+    private static final long STEP_UP_DELAY = 3000000000L;
+    //weight of the newest sample in the moving averages
+    private static final double SMOOTHING = 0.2;
+
+    //capacity of the watched queue
+    private final int queueCapacity;
+
+    //current level, an index into SKIP and BINNING
+    private int level;
+    //number of frames seen at the current level
+    private long frameCounter;
+    //number of frames skipped to lower the frame rate
+    private long skippedCount;
+    //moving average of the write time in nanoseconds
+    private double averageWriteNanos;
+    //moving average of the time between camera frames in milliseconds
+    private double averageFrameInterval;
+    //capture time of the previous frame
+    private long lastTimestamp;
+    //time of the last level change
+    private long lastChangeNanos;
+    //time the link became healthy, 0 if it is not
+    private long healthySinceNanos;
+    //number of level changes
+    private long changeCount;
+
+    //sent frames counted for the effective frame rate
+    private int sentInWindow;
+    //start of the effective frame rate window
+    private long windowStartNanos = System.nanoTime();
+    //sent frames per second over the last window
+    private double effectiveFps;
+    //size of the last sent frame
+    private int sentWidth;
+    private int sentHeight;
+
+    /**
+     * @param queueCapacity capacity of the frame queue the controller watches
+     */
+    public RateController(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * called for every frame taken from the queue
+     * @param timestamp capture time of the frame in milliseconds
+     * @return false if the frame should be skipped to lower the frame rate
+     */
+    public synchronized boolean shouldSend(long timestamp) {
+        if (lastTimestamp != 0 && timestamp > lastTimestamp) {
+            long interval = timestamp - lastTimestamp;
+            averageFrameInterval = averageFrameInterval == 0 ? interval
+                    : averageFrameInterval + SMOOTHING * (interval - averageFrameInterval);
+        }
+        lastTimestamp = timestamp;
+
+        if (frameCounter++ % SKIP[level] != 0) {
+            skippedCount++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the factor the frames should be binned by, 1 to keep the full resolution
+     */
+    public synchronized int getBinning() {
+        return BINNING[level];
+    }
+
+    /**
+     * called after every written frame
+     * @param queueDepth number of frames still waiting in the queue
+     * @param writeNanos time the write took
+     * @param width width of the sent frame
+     * @param height height of the sent frame
+     */
+    public synchronized void onFrameWritten(int queueDepth, long writeNanos, int width, int height) {
+        long now = System.nanoTime();
+        averageWriteNanos = averageWriteNanos == 0 ? writeNanos
+                : averageWriteNanos + SMOOTHING * (writeNanos - averageWriteNanos);
+        sentWidth = width;
+        sentHeight = height;
+
+        sentInWindow++;
+        if (now - windowStartNanos >= 1000000000L) {
+            effectiveFps = sentInWindow * 1e9 / (now - windowStartNanos);
+            sentInWindow = 0;
+            windowStartNanos = now;
+        }
+
+        //time available for a write at the current level, unknown until two frames arrived
+        double budgetNanos = averageFrameInterval * 1e6 * SKIP[level];
+        boolean behind = queueDepth * 2 >= queueCapacity && queueDepth > 0
+                || budgetNanos > 0 && averageWriteNanos > budgetNanos;
+
+        if (behind) {
+            healthySinceNanos = 0;
+            if (level < SKIP.length - 1 && now - lastChangeNanos >= STEP_DOWN_COOLDOWN)
+                changeLevel(level + 1, now);
+            return;
+        }
+
+        //healthy if the queue is empty and a write would fit twice in the budget of the level above
+        double upperBudgetNanos = level > 0 ? averageFrameInterval * 1e6 * SKIP[level - 1] : 0;
+        if (level > 0 && queueDepth == 0 && averageWriteNanos * 2 < upperBudgetNanos) {
+            if (healthySinceNanos == 0)
+                healthySinceNanos = now;
+            else if (now - healthySinceNanos >= STEP_UP_DELAY)
+                changeLevel(level - 1, now);
+        } else {
+            healthySinceNanos = 0;
+        }
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the fraction of the camera frames that are sent, e.g. 0.5 for every 2nd frame
+     */
+    public synchronized double getRateFraction() {
+        return 1.0 / SKIP[level];
+    }
+
+    public synchronized double getEffectiveFps() {
+        return effectiveFps;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public synchronized long getChangeCount() {
+        return changeCount;
+    }
+
+    public synchronized int getSentWidth() {
+        return sentWidth;
+    }
+
+    public synchronized int getSentHeight() {
+        return sentHeight;
+    }
+
+    private void changeLevel(int newLevel, long now) {
+        level = newLevel;
+        frameCounter = 0;
+        lastChangeNanos = now;
+        healthySinceNanos = 0;
+        changeCount++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "level=" + level + " every=" + SKIP[level] + " binning=" + BINNING[level]
+                + " fps=" + String.format("%.1f", effectiveFps) + " size=" + sentWidth + "x" + sentHeight
+                + " skipped=" + skippedCount + " changes=" + changeCount
+                + " write=" + String.format("%.1f", averageWriteNanos / 1e6) + "ms";
+    }
+}
@@ -0,0 +1,36 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * every temperature as a 4 bytes little endian int, byte for byte the original int2byte output
+ */
+public class Raw32Codec implements FrameCodec {
+    @Override
+    public int getEncoding() {
+        return WireProtocol.ENCODING_RAW32;
+    }
+
+    @Override
+    public int maxPayloadLength(int width, int height) {
+        return width * height * 4;
+    }
+
+    @Override
+    public int encode(int[] pixels, int width, int height, FrameBuffer out) {
+        out.putInts(pixels, 0, width * height);
+        return 0;
+    }
+
+    @Override
+    public boolean decode(MessageHeader header, ByteBuffer payload, int[] pixels) {
+        int length = header.getWidth() * header.getHeight();
+        int position = payload.position();
+        for (int i = 0; i < length; i++)
+            pixels[i] = payload.getInt(position + (i << 2));
+        return true;
+    }
+
+    @Override
+    public void reset() {}
+}
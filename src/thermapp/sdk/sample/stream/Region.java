@@ -0,0 +1,165 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * rectangle of the sensor to send and the factor to bin it by, as asked by the receiver
+ * in a WireProtocol.TYPE_REGION message and answered by the sender with the region it applied.
+ *
+ * the payload layout is:
+ * <pre>
+ *  0  short  left column (unsigned)
+ *  2  short  top row (unsigned)
+ *  4  short  width (unsigned), 0 for the rest of the row
+ *  6  short  height (unsigned), 0 for the rest of the frame
+ *  8  int    binning, the frames are averaged over binning x binning blocks
+ * </pre>
+ * a region is immutable
+ */
+public final class Region {
+    //the whole frame at full resolution
+    public static final Region FULL = new Region(0, 0, 0, 0, 1);
+
+    //left column
+    private final int x;
+    //top row
+    private final int y;
+    //number of columns, 0 for the rest of the row
+    private final int width;
+    //number of rows, 0 for the rest of the frame
+    private final int height;
+    //size of the averaged blocks
+    private final int binning;
+
+    /**
+     * @param x left column
+     * @param y top row
+     * @param width number of columns, 0 for the rest of the row
+     * @param height number of rows, 0 for the rest of the frame
+     * @param binning size of the averaged blocks, at least 1
+     */
+    public Region(int x, int y, int width, int height, int binning) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || binning < 1)
+            throw new IllegalArgumentException("invalid region " + x + "," + y + " " + width + "x" + height
+                    + " binning " + binning);
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.binning = binning;
+    }
+
+    /**
+     * @return true if a receiver may ask for the binning: 1, 2 or 4
+     */
+    public static boolean isSupportedBinning(int binning) {
+        return binning == 1 || binning == 2 || binning == 4;
+    }
+
+    /**
+     * read a region payload
+     * @param buffer little endian buffer holding the payload
+     * @param offset index of the first payload byte
+     * @throws IllegalArgumentException if the payload does not describe a region
+     */
+    public static Region read(ByteBuffer buffer, int offset) {
+        return new Region(buffer.getShort(offset) & 0xFFFF, buffer.getShort(offset + 2) & 0xFFFF,
+                buffer.getShort(offset + 4) & 0xFFFF, buffer.getShort(offset + 6) & 0xFFFF,
+                buffer.getInt(offset + 8));
+    }
+
+    /**
+     * write the region payload at the buffer position
+     * @param buffer little endian buffer with WireProtocol.REGION_LENGTH bytes remaining
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putShort((short) x);
+        buffer.putShort((short) y);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putInt(binning);
+    }
+
+    /**
+     * fit the region in a frame, so it can be cut from it
+     * @param frameWidth width of the frame
+     * @param frameHeight height of the frame
+     * @param factor additional binning, e.g. of the rate controller
+     * @return a region inside the frame with a width and height that are multiples of the binning
+     */
+    public Region clip(int frameWidth, int frameHeight, int factor) {
+        int clippedBinning = Math.max(1, Math.min(binning * factor, Math.min(frameWidth, frameHeight)));
+        int left = Math.min(x, frameWidth - clippedBinning);
+        int top = Math.min(y, frameHeight - clippedBinning);
+        int clippedWidth = width == 0 ? frameWidth - left : Math.min(width, frameWidth - left);
+        int clippedHeight = height == 0 ? frameHeight - top : Math.min(height, frameHeight - top);
+        //blocks that do not fit entirely are dropped
+        clippedWidth = Math.max(clippedBinning, clippedWidth - clippedWidth % clippedBinning);
+        clippedHeight = Math.max(clippedBinning, clippedHeight - clippedHeight % clippedBinning);
+        return new Region(left, top, clippedWidth, clippedHeight, clippedBinning);
+    }
+
+    /**
+     * @return true if the region is the whole frame at full resolution, nothing to cut
+     */
+    public boolean isWhole(int frameWidth, int frameHeight) {
+        return x == 0 && y == 0 && binning == 1
+                && (width == 0 || width == frameWidth) && (height == 0 || height == frameHeight);
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getBinning() {
+        return binning;
+    }
+
+    /**
+     * @return width of the sent frames, for a clipped region
+     */
+    public int getBinnedWidth() {
+        return width / binning;
+    }
+
+    /**
+     * @return height of the sent frames, for a clipped region
+     */
+    public int getBinnedHeight() {
+        return height / binning;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Region))
+            return false;
+        Region other = (Region) o;
+        return x == other.x && y == other.y && width == other.width && height == other.height
+                && binning == other.binning;
+    }
+
+    @Override
+    public int hashCode() {
+        return (((x * 31 + y) * 31 + width) * 31 + height) * 31 + binning;
+    }
+
+    @Override
+    public String toString() {
+        return x + "," + y + " " + (width == 0 ? "*" : String.valueOf(width)) + "x"
+                + (height == 0 ? "*" : String.valueOf(height)) + " binning=" + binning;
+    }
+}
@@ -0,0 +1,209 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * replays a recording: a ring file recorded by the {@link FrameRecorder}, or a stream file of
+ * {@link WireProtocol} messages, e.g. exported from a ring file or saved from a connection.
+ *
+ * the frames are delivered at their original pace, following the capture timestamps, or as fast
+ * as the listener takes them. the recording is replayed once, or over and over when looping
+ */
+public class ReplayFrameSource implements FrameSource {
+    //longest pause between two replayed frames, so a gap in the recording does not stall the replay
+    private static final long MAX_PAUSE = 1000;
+
+    //the recording
+    private final File file;
+    //true to follow the capture timestamps, false for as fast as possible
+    private final boolean originalSpeed;
+    //true to start over at the end of the recording
+    private final boolean loop;
+
+    //number of frames replayed
+    private volatile long frameCount;
+    //number of frames of the recording that could not be decoded
+    private volatile long failedCount;
+    //number of times the recording was replayed to its end
+    private volatile int passCount;
+    //delivers the frames, null while stopped
+    private volatile Thread thread;
+
+    /**
+     * @param file a ring file or a stream file
+     * @param originalSpeed true to follow the capture timestamps, false for as fast as possible
+     * @param loop true to start over at the end of the recording
+     */
+    public ReplayFrameSource(File file, boolean originalSpeed, boolean loop) {
+        this.file = file;
+        this.originalSpeed = originalSpeed;
+        this.loop = loop;
+    }
+
+    @Override
+    public synchronized void start(final Listener listener) throws IOException {
+        if (thread != null)
+            return;
+        if (!file.canRead())
+            throw new IOException("can not read the recording " + file);
+
+        thread = new Thread("ReplayFrameSource") {
+            @Override
+            public void run() {
+                IOException failure = null;
+                try {
+                    long replayed;
+                    do {
+                        replayed = frameCount;
+                        replay(listener);
+                        passCount++;
+                        //an empty recording is not looped over
+                    } while (loop && thread == this && frameCount > replayed);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (InterruptedException e) {
+                    //stopped
+                }
+                listener.onSourceEnded(failure);
+            }
+        };
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread current = thread;
+        thread = null;
+        if (current != null)
+            current.interrupt();
+    }
+
+    /**
+     * replay the recording once
+     */
+    private void replay(Listener listener) throws IOException, InterruptedException {
+        FrameRing ring;
+        try {
+            ring = FrameRing.openReadOnly(file);
+        } catch (IOException e) {
+            //not a ring file, a stream file
+            replayStream(listener);
+            return;
+        }
+
+        try {
+            Pace pace = new Pace();
+            FrameRing.Cursor cursor = ring.cursor(ring.getFirstEntry());
+            Frame frame;
+            while (isRunning() && (frame = cursor.next(ring.getNextEntry())) != null) {
+                pace.await(frame.getTimestamp());
+                listener.onFrame(frame.getPixels(), frame.getWidth(), frame.getHeight());
+                frameCount++;
+            }
+            failedCount += cursor.getSkippedCount();
+        } finally {
+            ring.close();
+        }
+    }
+
+    private void replayStream(Listener listener) throws IOException, InterruptedException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            MessageReader reader = new MessageReader(in);
+            FrameCodec[] codecs = new FrameCodec[3];
+            SnappyStage snappy = null;
+            int[] pixels = new int[0];
+            Pace pace = new Pace();
+            MessageHeader header;
+            while (isRunning() && (header = reader.next()) != null) {
+                if (header.getType() != WireProtocol.TYPE_FRAME)
+                    continue;
+
+                int encoding = header.getEncoding();
+                ByteBuffer payload = reader.payload();
+                if (encoding >= codecs.length || header.hasFlag(WireProtocol.FLAG_COMPRESSED)
+                        && !SnappyStage.isAvailable()) {
+                    failedCount++;
+                    continue;
+                }
+                if (header.hasFlag(WireProtocol.FLAG_COMPRESSED)) {
+                    if (snappy == null)
+                        snappy = new SnappyStage();
+                    payload = snappy.decompress(payload);
+                }
+                if (codecs[encoding] == null)
+                    codecs[encoding] = FrameCodecs.forEncoding(encoding);
+                int length = header.getWidth() * header.getHeight();
+                if (pixels.length < length)
+                    pixels = new int[length];
+                if (!codecs[encoding].decode(header, payload, pixels)) {
+                    failedCount++;
+                    continue;
+                }
+
+                pace.await(header.getTimestamp());
+                listener.onFrame(pixels, header.getWidth(), header.getHeight());
+                frameCount++;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean isRunning() {
+        return thread == Thread.currentThread();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public int getPassCount() {
+        return passCount;
+    }
+
+    @Override
+    public String toString() {
+        return "replay " + file.getName() + " " + (originalSpeed ? "original speed" : "max speed")
+                + (loop ? " looping" : "") + " frames=" + frameCount + " failed=" + failedCount + " passes=" + passCount;
+    }
+
+    /**
+     * waits between the frames of a pass like they were captured
+     */
+    private class Pace {
+        //capture time of the first frame of the pass, 0 until it was replayed
+        private long firstTimestamp;
+        //time the first frame of the pass was replayed
+        private long startNanos;
+
+        void await(long timestamp) throws InterruptedException {
+            if (!originalSpeed)
+                return;
+            long now = System.nanoTime();
+            if (firstTimestamp == 0 || timestamp < firstTimestamp
+                    || (timestamp - firstTimestamp) * 1000000L - (now - startNanos) > MAX_PAUSE * 1000000L) {
+                //the first frame, or a jump in the recording, the replay continues from here
+                firstTimestamp = timestamp;
+                startNanos = now;
+                return;
+            }
+            long wait = (timestamp - firstTimestamp) * 1000000L - (now - startNanos);
+            if (wait > 0)
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        }
+    }
+}
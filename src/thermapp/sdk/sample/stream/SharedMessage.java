@@ -0,0 +1,91 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a frame serialized once and shared by reference between the queues of all the subscribers.
+ * every holder keeps a reference, and the buffer goes back to the broadcaster when the last one
+ * is released. the subscribers write the same bytes through their own views of the buffer
+ */
+public class SharedMessage {
+    //gets the message back once it is not referenced anymore
+    private final FrameBroadcaster owner;
+
+    //the serialized message, flipped
+    private FrameBuffer buffer;
+    //sequence number of the frame
+    private long sequence;
+    //capture time of the frame, in milliseconds since epoch
+    private long timestamp;
+    //true if the frame can be decoded without the previous frames
+    private boolean independent;
+    //true if the message is a heartbeat standing for suppressed frames instead of a frame
+    private boolean heartbeat;
+    //number of holders of the message
+    private int references;
+
+    SharedMessage(FrameBroadcaster owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * fill the message with a serialized frame, held by the caller
+     */
+    void set(FrameBuffer buffer, long sequence, long timestamp, boolean independent, boolean heartbeat) {
+        this.buffer = buffer;
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.independent = independent;
+        this.heartbeat = heartbeat;
+        this.references = 1;
+    }
+
+    /**
+     * add a holder of the message
+     */
+    synchronized void retain() {
+        references++;
+    }
+
+    /**
+     * remove a holder of the message, the last one gives it back to the broadcaster
+     */
+    void release() {
+        synchronized (this) {
+            if (--references > 0)
+                return;
+        }
+        FrameBuffer released = buffer;
+        buffer = null;
+        owner.recycle(this, released);
+    }
+
+    /**
+     * @return a view of the serialized message, with its own position, for one writer
+     */
+    public ByteBuffer view() {
+        return buffer.bytes().duplicate();
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return true if a receiver that missed the previous frames can still decode this one
+     */
+    public boolean isIndependent() {
+        return independent;
+    }
+
+    /**
+     * @return true if the message is a heartbeat standing for suppressed frames instead of a frame
+     */
+    public boolean isHeartbeat() {
+        return heartbeat;
+    }
+}
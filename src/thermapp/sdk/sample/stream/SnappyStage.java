@@ -0,0 +1,135 @@
+package thermapp.sdk.sample.stream;
+
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * optional snappy block compression of the encoded frame payload, on top of any codec.
+ *
+ * compression works between pooled direct buffers and decompression into a reused heap buffer,
+ * so neither allocates per frame. the stage keeps byte and time counters for the compressed frames
+ */
+public class SnappyStage {
+    //true if the native snappy library could be loaded on this device
+    private static Boolean available;
+
+    //number of compressed payloads
+    private long frameCount;
+    //payload bytes before compression
+    private long uncompressedBytes;
+    //payload bytes after compression
+    private long compressedBytes;
+    //time spent compressing, in nanoseconds
+    private long compressNanos;
+
+    //decompressed payload, grows as needed
+    private byte[] decompressed = new byte[0];
+    private ByteBuffer decompressedBuffer = ByteBuffer.wrap(decompressed).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * @return true if snappy can be used, the native library is not available on every device
+     */
+    public static synchronized boolean isAvailable() {
+        if (available == null) {
+            try {
+                Snappy.getNativeLibraryVersion();
+                Snappy.maxCompressedLength(1);
+                available = true;
+            } catch (Throwable e) {
+                available = false;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * @return the largest compressed size of a payload of the given length
+     */
+    public int maxCompressedLength(int length) {
+        return Snappy.maxCompressedLength(length);
+    }
+
+    /**
+     * compress the payload between position and limit of the source into the destination position,
+     * neither buffer position is moved
+     * @param src direct buffer holding the payload
+     * @param dst direct buffer with at least {@link #maxCompressedLength(int)} bytes remaining
+     * @return the compressed length
+     * @throws IOException if snappy failed
+     */
+    public synchronized int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int length = src.remaining();
+        int limit = dst.limit();
+
+        long start = System.nanoTime();
+        int compressedLength = Snappy.compress(src, dst);
+        compressNanos += System.nanoTime() - start;
+
+        //snappy moves the destination limit to the end of the compressed bytes
+        dst.limit(limit);
+
+        frameCount++;
+        uncompressedBytes += length;
+        compressedBytes += compressedLength;
+        return compressedLength;
+    }
+
+    /**
+     * decompress a payload read from the stream
+     * @param payload heap buffer holding the compressed payload between position and limit
+     * @return a reused buffer holding the decompressed payload, valid until the next call
+     * @throws IOException if the payload is not valid snappy data
+     */
+    public ByteBuffer decompress(ByteBuffer payload) throws IOException {
+        byte[] src = payload.array();
+        int offset = payload.arrayOffset() + payload.position();
+        int length = payload.remaining();
+
+        int decompressedLength = Snappy.uncompressedLength(src, offset, length);
+        if (decompressed.length < decompressedLength) {
+            decompressed = new byte[decompressedLength];
+            decompressedBuffer = ByteBuffer.wrap(decompressed).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        Snappy.uncompress(src, offset, length, decompressed, 0);
+
+        decompressedBuffer.clear();
+        decompressedBuffer.limit(decompressedLength);
+        return decompressedBuffer;
+    }
+
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    public synchronized long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    public synchronized long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    /**
+     * @return uncompressed size divided by compressed size, 0 before the first frame
+     */
+    public synchronized double getRatio() {
+        return compressedBytes == 0 ? 0 : (double) uncompressedBytes / compressedBytes;
+    }
+
+    /**
+     * @return average compression time per frame in microseconds
+     */
+    public synchronized double getMicrosPerFrame() {
+        return frameCount == 0 ? 0 : compressNanos / 1000.0 / frameCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "frames=" + frameCount + " uncompressed=" + uncompressedBytes + " compressed=" + compressedBytes
+                + " ratio=" + String.format("%.2f", getRatio())
+                + " cpu=" + String.format("%.0f", getMicrosPerFrame()) + "us/frame";
+    }
+}
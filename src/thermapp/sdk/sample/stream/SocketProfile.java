@@ -0,0 +1,77 @@
+package thermapp.sdk.sample.stream;
+
+import java.net.DatagramSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * how the sockets of the stream are tuned, picked per site in the preferences.
+ *
+ * low latency writes every frame on its own the moment it is encoded and keeps little in the kernel,
+ * so a slow link backs up into the frame queue where the overflow policy drops old frames.
+ * throughput keeps the link busy with a large send buffer, and the frames already waiting in the
+ * queue are written together in a single gathering write
+ */
+public enum SocketProfile {
+    //nagle off, a small send buffer and a write per frame
+    LOW_LATENCY(true, 64 * 1024, 1),
+    //nagle on, a large send buffer and up to 4 queued frames per write
+    THROUGHPUT(false, 1024 * 1024, 4);
+
+    //true to send small segments at once instead of waiting for the previous ones to be acknowledged
+    private final boolean tcpNoDelay;
+    //size of the kernel send buffer in bytes
+    private final int sendBufferSize;
+    //largest number of frames written in a single write, 1 to write every frame on its own
+    private final int batchSize;
+
+    SocketProfile(boolean tcpNoDelay, int sendBufferSize, int batchSize) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * tune a tcp socket, before it is connected so the window is scaled to the buffer
+     */
+    public void apply(Socket socket) throws SocketException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        socket.setSendBufferSize(sendBufferSize);
+    }
+
+    /**
+     * tune a udp socket, only the send buffer applies
+     */
+    public void apply(DatagramSocket socket) throws SocketException {
+        socket.setSendBufferSize(sendBufferSize);
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * parse a profile from its preference value
+     * @param value the name of the profile, e.g. "THROUGHPUT"
+     * @param defaultProfile the profile to return if the value is missing or unknown
+     * @return the matching profile
+     */
+    public static SocketProfile parse(String value, SocketProfile defaultProfile) {
+        if (value == null)
+            return defaultProfile;
+
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultProfile;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package thermapp.sdk.sample.stream;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * times the phases of a cold start, from the camera plugged in to the first frame on the wire.
+ *
+ * a phase runs from {@link #begin(String)} to {@link #end(String)}, an event is a single point in time,
+ * both relative to the creation of the timer. the phases may run concurrently on any thread, the report
+ * lists them in the order they began with the time each one started, ended and took
+ */
+public class StartupTimer {
+    //start of the cold start, in nanoseconds
+    private final long startNanos = System.nanoTime();
+    //start and end of every phase or event, in nanoseconds since the start, end -1 while running
+    private final Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+
+    /**
+     * a phase began on the calling thread
+     */
+    public synchronized void begin(String phase) {
+        phases.put(phase, new long[]{System.nanoTime() - startNanos, -1});
+    }
+
+    /**
+     * a phase ended on the calling thread, ignored if it did not begin
+     */
+    public synchronized void end(String phase) {
+        long[] times = phases.get(phase);
+        if (times != null && times[1] < 0)
+            times[1] = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * an event happened, only its first occurrence counts
+     * @param nanos System.nanoTime() of the event
+     */
+    public synchronized void mark(String event, long nanos) {
+        if (!phases.containsKey(event))
+            phases.put(event, new long[]{nanos - startNanos, nanos - startNanos});
+    }
+
+    /**
+     * @return true if the phase or event is over
+     */
+    public synchronized boolean isDone(String phase) {
+        long[] times = phases.get(phase);
+        return times != null && times[1] >= 0;
+    }
+
+    /**
+     * @return time from the start to the end of the phase or to the event, -1 if it is not over
+     */
+    public synchronized long getMillis(String phase) {
+        long[] times = phases.get(phase);
+        return times == null || times[1] < 0 ? -1 : times[1] / 1000000;
+    }
+
+    /**
+     * @return every phase with its start and end since the start of the timer and its duration, and every
+     * event with its time
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+            long[] times = phase.getValue();
+            if (report.length() > 0)
+                report.append(' ');
+            report.append(phase.getKey()).append('=');
+            if (times[1] < 0)
+                report.append(times[0] / 1000000).append("ms-running");
+            else if (times[0] == times[1])
+                report.append(times[0] / 1000000).append("ms");
+            else
+                report.append(times[0] / 1000000).append('-').append(times[1] / 1000000).append("ms (")
+                        .append((times[1] - times[0]) / 1000000).append("ms)");
+        }
+        return report.toString();
+    }
+}
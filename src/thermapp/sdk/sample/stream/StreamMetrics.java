@@ -0,0 +1,316 @@
+package thermapp.sdk.sample.stream;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * timings and counters of the frame pipeline, shared by every stage and every connection of a stream.
+ *
+ * each stage is timed for every frame into its own {@link LatencyHistogram}: the time between two
+ * camera callbacks, the time a frame waits in the queue, the encode time and the socket write time.
+ * the report is logged periodically and sent back on the connection when the receiver asks for it
+ */
+public class StreamMetrics {
+    //time between two camera callbacks
+    private final LatencyHistogram arrival = new LatencyHistogram();
+    //time a frame waited in the queue before the sender took it
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    //time to encode, compress and frame a message
+    private final LatencyHistogram encode = new LatencyHistogram();
+    //time to write a message to the socket
+    private final LatencyHistogram write = new LatencyHistogram();
+    //time from the camera callback to the coarsest level written, in progressive mode
+    private final LatencyHistogram firstLevel = new LatencyHistogram();
+    //time from the camera callback to the last level written, for the frames sent in full in progressive mode
+    private final LatencyHistogram lastLevel = new LatencyHistogram();
+
+    //number of frames written
+    private final AtomicLong frames = new AtomicLong();
+    //number of socket writes the frames took, fewer than the frames when they are coalesced
+    private final AtomicLong writes = new AtomicLong();
+    //number of bytes written, headers included
+    private final AtomicLong bytes = new AtomicLong();
+    //number of bytes of the frames written, headers included
+    private final AtomicLong frameBytes = new AtomicLong();
+    //number of frames dropped because a queue was full
+    private final AtomicLong drops = new AtomicLong();
+    //number of connections established after the first one
+    private final AtomicLong reconnects = new AtomicLong();
+    //number of recorded frames sent after a reconnect
+    private final AtomicLong backfilled = new AtomicLong();
+    //number of statistics records sent instead of frames in analytics mode
+    private final AtomicLong statistics = new AtomicLong();
+
+    //number of heartbeats sent for the frames suppressed by the change gate, the gate counts the frames
+    private final AtomicLong heartbeats = new AtomicLong();
+
+    //number of frames whose refinement levels were skipped for a newer frame in progressive mode
+    private final AtomicLong preempted = new AtomicLong();
+
+    //time to encode a preview in dual channel mode
+    private final LatencyHistogram previewEncode = new LatencyHistogram();
+    //number of previews written in dual channel mode
+    private final AtomicLong previews = new AtomicLong();
+    //number of bytes of the previews written, headers included
+    private final AtomicLong previewBytes = new AtomicLong();
+    //number of frames not sent on the radiometric channel in dual channel mode
+    private final AtomicLong radiometricSkipped = new AtomicLong();
+
+    //System.nanoTime() the first frame or preview was written, 0 until then
+    private final AtomicLong firstWriteNanos = new AtomicLong();
+
+    //how the sockets are tuned, null if not known
+    private volatile SocketProfile socketProfile;
+    //time of the last camera callback, only used by the camera thread
+    private long lastArrivalNanos;
+
+    /**
+     * a frame arrived from the camera, called from the camera callback thread
+     * @param nanos System.nanoTime() of the arrival
+     */
+    public void onFrameArrived(long nanos) {
+        if (lastArrivalNanos != 0)
+            arrival.record(nanos - lastArrivalNanos);
+        lastArrivalNanos = nanos;
+    }
+
+    /**
+     * a frame was taken out of the queue
+     * @param waitNanos time the frame spent in the queue
+     */
+    public void onFrameDequeued(long waitNanos) {
+        queueWait.record(waitNanos);
+    }
+
+    public void onFrameEncoded(long encodeNanos) {
+        encode.record(encodeNanos);
+    }
+
+    /**
+     * @param writeNanos time the write took
+     * @param length number of bytes written
+     */
+    public void onFrameWritten(long writeNanos, int length) {
+        write.record(writeNanos);
+        frames.incrementAndGet();
+        writes.incrementAndGet();
+        bytes.addAndGet(length);
+        frameBytes.addAndGet(length);
+        onFirstWrite();
+    }
+
+    /**
+     * several frames were coalesced into a single write
+     * @param writeNanos time the write took
+     * @param frameCount number of frames written
+     * @param length number of bytes written
+     */
+    public void onBatchWritten(long writeNanos, int frameCount, int length) {
+        write.record(writeNanos);
+        frames.addAndGet(frameCount);
+        writes.incrementAndGet();
+        bytes.addAndGet(length);
+        frameBytes.addAndGet(length);
+        onFirstWrite();
+    }
+
+    public void onFrameDropped() {
+        drops.incrementAndGet();
+    }
+
+    public void onReconnect() {
+        reconnects.incrementAndGet();
+    }
+
+    /**
+     * a recorded frame was sent after a reconnect
+     * @param length number of bytes written
+     */
+    public void onFrameBackfilled(int length) {
+        backfilled.incrementAndGet();
+        bytes.addAndGet(length);
+    }
+
+    /**
+     * the statistics of a frame were sent instead of the frame
+     * @param length number of bytes written
+     */
+    public void onStatisticsWritten(int length) {
+        statistics.incrementAndGet();
+        bytes.addAndGet(length);
+    }
+
+    /**
+     * a heartbeat was sent for the suppressed frames
+     * @param length number of bytes written
+     */
+    public void onHeartbeatWritten(int length) {
+        heartbeats.incrementAndGet();
+        bytes.addAndGet(length);
+    }
+
+    /**
+     * the coarsest level of a frame was written in progressive mode
+     * @param nanos time since the frame was offered to the queue
+     */
+    public void onFirstLevelWritten(long nanos) {
+        firstLevel.record(nanos);
+    }
+
+    /**
+     * the last level of a frame was written in progressive mode, the receiver has the full frame
+     * @param nanos time since the frame was offered to the queue
+     */
+    public void onLastLevelWritten(long nanos) {
+        lastLevel.record(nanos);
+    }
+
+    /**
+     * the refinement levels of a frame were skipped for a newer frame
+     */
+    public void onRefinementPreempted() {
+        preempted.incrementAndGet();
+    }
+
+    /**
+     * a preview was written on the preview channel, the frame may follow on the radiometric channel
+     * @param encodeNanos time to encode the preview
+     * @param length number of bytes written
+     */
+    public void onPreviewWritten(long encodeNanos, int length) {
+        previewEncode.record(encodeNanos);
+        previews.incrementAndGet();
+        previewBytes.addAndGet(length);
+        bytes.addAndGet(length);
+        onFirstWrite();
+    }
+
+    /**
+     * a frame was not sent on the radiometric channel in dual channel mode
+     */
+    public void onRadiometricSkipped() {
+        radiometricSkipped.incrementAndGet();
+    }
+
+    private void onFirstWrite() {
+        if (firstWriteNanos.get() == 0)
+            firstWriteNanos.compareAndSet(0, System.nanoTime());
+    }
+
+    public LatencyHistogram getArrival() {
+        return arrival;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getEncode() {
+        return encode;
+    }
+
+    public LatencyHistogram getWrite() {
+        return write;
+    }
+
+    public LatencyHistogram getFirstLevel() {
+        return firstLevel;
+    }
+
+    public LatencyHistogram getLastLevel() {
+        return lastLevel;
+    }
+
+    public LatencyHistogram getPreviewEncode() {
+        return previewEncode;
+    }
+
+    public long getPreviews() {
+        return previews.get();
+    }
+
+    public long getPreviewBytes() {
+        return previewBytes.get();
+    }
+
+    /**
+     * @return number of bytes of the frames written, the radiometric channel in dual channel mode
+     */
+    public long getFrameBytes() {
+        return frameBytes.get();
+    }
+
+    public long getPreempted() {
+        return preempted.get();
+    }
+
+    /**
+     * @return System.nanoTime() the first frame or preview was written, 0 until then
+     */
+    public long getFirstWriteNanos() {
+        return firstWriteNanos.get();
+    }
+
+    public long getFrames() {
+        return frames.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getDrops() {
+        return drops.get();
+    }
+
+    public long getReconnects() {
+        return reconnects.get();
+    }
+
+    public long getBackfilled() {
+        return backfilled.get();
+    }
+
+    public long getStatistics() {
+        return statistics.get();
+    }
+
+    public long getHeartbeats() {
+        return heartbeats.get();
+    }
+
+    public long getRadiometricSkipped() {
+        return radiometricSkipped.get();
+    }
+
+    /**
+     * @return the counters on the first line and a line per stage
+     */
+    @Override
+    public String toString() {
+        long sent = frames.get();
+        return "profile=" + socketProfile + " frames=" + sent + " writes=" + writes + " bytes=" + bytes + " drops=" + drops
+                + " reconnects=" + reconnects + " backfilled=" + backfilled + " statistics=" + statistics
+                + " heartbeats=" + heartbeats
+                + "\narrival " + arrival
+                + "\nqueueWait " + queueWait
+                + "\nencode " + encode
+                + "\nwrite " + write
+                + (firstLevel.getCount() > 0 ? "\nfirstLevel " + firstLevel + "\nfullFrame " + lastLevel
+                + "\npreempted=" + preempted : "")
+                + (previews.get() > 0 ? "\npreview frames=" + previews + " bytes=" + previewBytes
+                + " radiometric frames=" + sent + " bytes=" + frameBytes + " skipped=" + radiometricSkipped
+                + "\npreviewEncode " + previewEncode : "");
+    }
+}
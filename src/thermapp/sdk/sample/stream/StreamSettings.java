@@ -0,0 +1,448 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * settings of the stream to the server, read from the preferences by the app,
+ * and the factory of the streaming pipeline they describe
+ */
+public class StreamSettings {
+    //smallest and largest recording file, in megabytes
+    public static final int MIN_RECORDING_SIZE = FrameRing.MIN_SIZE / (1024 * 1024);
+    public static final int MAX_RECORDING_SIZE = Integer.MAX_VALUE / (1024 * 1024);
+
+    //ip address of the server
+    private String host;
+    //port of the server, or the port to listen on in server mode
+    private int port;
+    //true if the app listens on the port and serves any number of subscribers instead of connecting to the server
+    private boolean serverMode;
+    //how the stream is carried to the server
+    private Transport transport = Transport.TCP;
+    //maximum transmission unit of the network, used to size the udp datagrams
+    private int mtu = 1500;
+    //how the sockets are tuned, for the lowest latency or the highest frame rate
+    private SocketProfile socketProfile = SocketProfile.LOW_LATENCY;
+    //maximum number of frames waiting to be sent
+    private int queueCapacity = 4;
+    //what to do with new frames when the queue is full
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+    //name of the encoding of the temperatures, see FrameCodecs
+    private String encoding = "RAW32";
+    //resolution of the fixed point encoding, in temperature units
+    private int fixedPointScale = 1;
+    //number of frames between keyframes of the delta encoding
+    private int keyframeInterval = 30;
+    //number of tiles the frames are split in to be encoded on all the cores, 1 to encode them whole
+    private int tiles = 8;
+    //true if the frames should be snappy compressed when the server supports it
+    private boolean compression;
+    //true if the frames are sent as levels of increasing resolution when the server supports it, see Pyramid.
+    //server mode sends the frames whole
+    private boolean progressive;
+    //true if the frame rate and resolution should be lowered when the connection falls behind
+    private boolean adaptiveRate = true;
+    //true if every frame is recorded into a ring file on the device
+    private boolean recording;
+    //the ring file, set by the app
+    private File recordingFile;
+    //size of the ring file in megabytes
+    private int recordingSize = 64;
+    //most recorded frames per second sent after a reconnect, 0 to not send them
+    private int backfillRate = 5;
+    //true if the frames that did not change are suppressed, see ChangeGate
+    private boolean gating;
+    //largest difference of a pixel to the last sent frame that is still sensor noise, in camera units
+    private int gateTolerance = 10;
+    //changed pixels per thousand a frame may have and still be suppressed
+    private int gateChangedPerMille = 5;
+    //time between two heartbeats while frames are suppressed, in milliseconds
+    private int heartbeatInterval = 1000;
+    //true if the frames go on a preview channel and a radiometric channel, see PreviewChannel.
+    //server mode and analytics mode send the frames on a single channel
+    private boolean dualChannel;
+    //time between two previews in dual channel mode, in milliseconds, 0 for every frame
+    private int previewInterval;
+    //time between two radiometric frames in dual channel mode, in milliseconds, -1 to send them on demand only
+    private int radiometricInterval = 1000;
+    //send the statistics of every frame instead of the frame, see FrameStatistics
+    private boolean analytics;
+    //temperature a hot spot must reach, a full frame is sent when it is reached in analytics mode
+    private int analyticsThreshold = Integer.MAX_VALUE;
+
+    /**
+     * build the streaming pipeline, the returned manager still has to be started
+     * @param listener notified about the connection, may be null
+     * @return a connection manager streaming to the server
+     */
+    public ConnectionManager createConnectionManager(ConnectionManager.Listener listener) {
+        StreamMetrics metrics = new StreamMetrics();
+        metrics.setSocketProfile(socketProfile);
+        FrameQueue queue = new FrameQueue(queueCapacity, overflowPolicy, metrics);
+        //the sender holds the frames it coalesces into one write, and a buffer for each
+        int batchSize = transport == Transport.TCP ? socketProfile.getBatchSize() : 1;
+        queue.setSenderFrames(batchSize);
+        SnappyStage snappy = isCompressionAvailable() ? new SnappyStage() : null;
+        FrameSerializer serializer = new FrameSerializer(createCodec(), snappy,
+                FrameSerializer.POOL_SIZE + batchSize - 1);
+        serializer.setProgressive(progressive);
+        RateController rateController = adaptiveRate ? new RateController(queueCapacity) : null;
+        return new ConnectionManager(this, queue, serializer, rateController, metrics, listener);
+    }
+
+    /**
+     * build the server mode pipeline, the returned server still has to be started.
+     * frames are serialized once for all the subscribers, so the rate is not adapted
+     * and compression is used whenever it is on, the frames are flagged when they are compressed
+     * @param listener notified about the subscribers, may be null
+     * @return a frame server listening on the port
+     */
+    public FrameServer createFrameServer(FrameServer.Listener listener) {
+        StreamMetrics metrics = new StreamMetrics();
+        metrics.setSocketProfile(socketProfile);
+        FrameQueue queue = new FrameQueue(queueCapacity, overflowPolicy, metrics);
+        SnappyStage snappy = isCompressionAvailable() ? new SnappyStage() : null;
+        //a buffer for every message a subscriber can hold, plus the ones being written and serialized
+        int poolSize = queueCapacity + FrameSerializer.POOL_SIZE;
+        FrameSerializer serializer = new FrameSerializer(createCodec(), snappy, poolSize);
+        serializer.setAcceptedCapabilities(serializer.getCapabilities());
+        FrameBroadcaster broadcaster = new FrameBroadcaster(queue, serializer, metrics, poolSize);
+        broadcaster.setGate(createGate());
+        return new FrameServer(port, queueCapacity, socketProfile, queue, broadcaster, listener);
+    }
+
+    /**
+     * @return the codec of the frames, tiling them on the shared workers once the receiver accepts tiles
+     */
+    private FrameCodec createCodec() {
+        return FrameCodecs.create(encoding, fixedPointScale, keyframeInterval, tiles, TileWorkers.getShared());
+    }
+
+    /**
+     * open the ring file the frames are recorded into, the returned recorder still has to be started
+     * and given to the frame queue
+     * @return the recorder, null if recording is off or there is no file
+     * @throws IOException if the ring file can not be created or mapped
+     */
+    public FrameRecorder createRecorder() throws IOException {
+        if (!recording || recordingFile == null)
+            return null;
+        //computed in long and clamped, so no size overflows or falls below what the ring needs
+        long size = Math.max(MIN_RECORDING_SIZE, Math.min(MAX_RECORDING_SIZE, recordingSize)) * 1024L * 1024L;
+        return new FrameRecorder(FrameRing.open(recordingFile, (int) size));
+    }
+
+    /**
+     * @return the statistics computed for every frame of a connection, null if analytics mode is off
+     */
+    public FrameStatistics createStatistics() {
+        return analytics ? new FrameStatistics(analyticsThreshold) : null;
+    }
+
+    /**
+     * @return the gate suppressing the frames that did not change on a connection, null if gating is off
+     */
+    public ChangeGate createGate() {
+        return gating ? new ChangeGate(gateTolerance, gateChangedPerMille, heartbeatInterval) : null;
+    }
+
+    /**
+     * @return the pacing of the preview and radiometric channels of a connection, null if dual channel mode is off
+     */
+    public PreviewChannel createPreview() {
+        return dualChannel && !analytics ? new PreviewChannel(previewInterval, radiometricInterval) : null;
+    }
+
+    /**
+     * @return true if compression is on and snappy can be used on this device
+     */
+    public boolean isCompressionAvailable() {
+        return compression && SnappyStage.isAvailable();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public boolean isServerMode() {
+        return serverMode;
+    }
+
+    public void setServerMode(boolean serverMode) {
+        this.serverMode = serverMode;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * @param mtu maximum transmission unit of the network, raised to UdpFragmenter.MIN_MTU if smaller
+     */
+    public void setMtu(int mtu) {
+        this.mtu = Math.max(mtu, UdpFragmenter.MIN_MTU);
+    }
+
+    public SocketProfile getSocketProfile() {
+        return socketProfile;
+    }
+
+    public void setSocketProfile(SocketProfile socketProfile) {
+        this.socketProfile = socketProfile;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(String encoding) {
+        this.encoding = encoding;
+    }
+
+    public int getFixedPointScale() {
+        return fixedPointScale;
+    }
+
+    public void setFixedPointScale(int fixedPointScale) {
+        this.fixedPointScale = fixedPointScale;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    public int getTiles() {
+        return tiles;
+    }
+
+    public void setTiles(int tiles) {
+        this.tiles = tiles;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    public boolean isProgressive() {
+        return progressive;
+    }
+
+    public void setProgressive(boolean progressive) {
+        this.progressive = progressive;
+    }
+
+    public boolean isAdaptiveRate() {
+        return adaptiveRate;
+    }
+
+    public void setAdaptiveRate(boolean adaptiveRate) {
+        this.adaptiveRate = adaptiveRate;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    public File getRecordingFile() {
+        return recordingFile;
+    }
+
+    public void setRecordingFile(File recordingFile) {
+        this.recordingFile = recordingFile;
+    }
+
+    public int getRecordingSize() {
+        return recordingSize;
+    }
+
+    public void setRecordingSize(int recordingSize) {
+        this.recordingSize = recordingSize;
+    }
+
+    public int getBackfillRate() {
+        return backfillRate;
+    }
+
+    public void setBackfillRate(int backfillRate) {
+        this.backfillRate = backfillRate;
+    }
+
+    public boolean isGating() {
+        return gating;
+    }
+
+    public void setGating(boolean gating) {
+        this.gating = gating;
+    }
+
+    public int getGateTolerance() {
+        return gateTolerance;
+    }
+
+    public void setGateTolerance(int gateTolerance) {
+        this.gateTolerance = gateTolerance;
+    }
+
+    public int getGateChangedPerMille() {
+        return gateChangedPerMille;
+    }
+
+    public void setGateChangedPerMille(int gateChangedPerMille) {
+        this.gateChangedPerMille = gateChangedPerMille;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public boolean isDualChannel() {
+        return dualChannel;
+    }
+
+    public void setDualChannel(boolean dualChannel) {
+        this.dualChannel = dualChannel;
+    }
+
+    public int getPreviewInterval() {
+        return previewInterval;
+    }
+
+    public void setPreviewInterval(int previewInterval) {
+        this.previewInterval = previewInterval;
+    }
+
+    public int getRadiometricInterval() {
+        return radiometricInterval;
+    }
+
+    public void setRadiometricInterval(int radiometricInterval) {
+        this.radiometricInterval = radiometricInterval;
+    }
+
+    public boolean isAnalytics() {
+        return analytics;
+    }
+
+    public void setAnalytics(boolean analytics) {
+        this.analytics = analytics;
+    }
+
+    public int getAnalyticsThreshold() {
+        return analyticsThreshold;
+    }
+
+    public void setAnalyticsThreshold(int analyticsThreshold) {
+        this.analyticsThreshold = analyticsThreshold;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof StreamSettings))
+            return false;
+
+        StreamSettings other = (StreamSettings) o;
+        return (host == null ? other.host == null : host.equals(other.host))
+                && port == other.port
+                && serverMode == other.serverMode
+                && transport == other.transport
+                && mtu == other.mtu
+                && socketProfile == other.socketProfile
+                && queueCapacity == other.queueCapacity
+                && overflowPolicy == other.overflowPolicy
+                && (encoding == null ? other.encoding == null : encoding.equals(other.encoding))
+                && fixedPointScale == other.fixedPointScale
+                && keyframeInterval == other.keyframeInterval
+                && tiles == other.tiles
+                && compression == other.compression
+                && progressive == other.progressive
+                && adaptiveRate == other.adaptiveRate
+                && recording == other.recording
+                && (recordingFile == null ? other.recordingFile == null : recordingFile.equals(other.recordingFile))
+                && recordingSize == other.recordingSize
+                && backfillRate == other.backfillRate
+                && gating == other.gating
+                && gateTolerance == other.gateTolerance
+                && gateChangedPerMille == other.gateChangedPerMille
+                && heartbeatInterval == other.heartbeatInterval
+                && dualChannel == other.dualChannel
+                && previewInterval == other.previewInterval
+                && radiometricInterval == other.radiometricInterval
+                && analytics == other.analytics
+                && analyticsThreshold == other.analyticsThreshold;
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return (serverMode ? "server" : transport + " " + host) + ":" + port + " mtu=" + mtu + " profile=" + socketProfile
+                + " queue=" + queueCapacity + " policy=" + overflowPolicy + " encoding=" + encoding
+                + " scale=" + fixedPointScale + " keyframes=" + keyframeInterval + " tiles=" + tiles
+                + " compression=" + compression + " progressive=" + progressive
+                + " adaptiveRate=" + adaptiveRate + " recording=" + (recording ? recordingSize + "MB" : "off")
+                + " backfillRate=" + backfillRate
+                + " gating=" + (gating ? "tolerance " + gateTolerance + " changed " + gateChangedPerMille
+                + "/1000 heartbeat " + heartbeatInterval + "ms" : "off")
+                + " dualChannel=" + (dualChannel ? "preview " + previewInterval + "ms radiometric "
+                + (radiometricInterval == PreviewChannel.ON_DEMAND ? "on demand" : radiometricInterval + "ms") : "off")
+                + " analytics=" + (analytics ? "threshold " + analyticsThreshold : "off");
+    }
+}
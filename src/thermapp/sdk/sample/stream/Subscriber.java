@@ -0,0 +1,365 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * thread that writes the shared messages to one subscriber of the {@link FrameServer}.
+ *
+ * every subscriber has its own bounded queue, when it is full the oldest message is dropped,
+ * so a slow subscriber only loses its own frames and never stalls the broadcaster or the others.
+ * with the delta encoding the queued frames that depended on a dropped frame are dropped as well,
+ * and the subscriber skips frames until the next keyframe instead of sending frames it cannot decode.
+ * with a batch size above 1 the queued messages are written together in a single gathering write
+ */
+public class Subscriber extends Thread implements ControlReader.Listener {
+    /**
+     * notified from the subscriber thread when its connection ends
+     */
+    public interface Listener {
+        void onSubscriberClosed(Subscriber subscriber, IOException e);
+    }
+
+    //connection to the subscriber
+    private final SocketChannel channel;
+    //address of the subscriber, kept after the channel is closed
+    private final SocketAddress address;
+    //queued messages, used as a ring
+    private final SharedMessage[] queue;
+    //notified when the connection ends
+    private final Listener listener;
+    //times the writes and counts the drops of all the subscribers
+    private final StreamMetrics metrics;
+    //held while writing a message, so the stats answered from the control reader do not interleave with frames
+    private final Object writeLock = new Object();
+    //reused buffer of the handshake
+    private final FrameBuffer handshake = new FrameBuffer(WireProtocol.HEADER_SIZE + WireProtocol.HANDSHAKE_LENGTH);
+    //messages taken out of the queue to be written together, and their bytes
+    private SharedMessage[] batch = new SharedMessage[1];
+    private ByteBuffer[] batchBytes = new ByteBuffer[1];
+
+    //index of the oldest queued message
+    private int head;
+    //number of queued messages
+    private int count;
+    //false once the subscriber was closed
+    private boolean open = true;
+    //true while frames are skipped until the next independent one
+    private boolean waitingForKeyframe;
+
+    //number of messages put in the queue
+    private long enqueuedCount;
+    //number of messages dropped because the queue was full or they could not be decoded
+    private long droppedCount;
+    //number of messages written
+    private volatile long sentCount;
+    //number of bytes written
+    private volatile long sentBytes;
+    //largest number of queued messages
+    private int maxQueued;
+    //sequence number of the newest message offered
+    private volatile long newestSequence = -1;
+    //sequence number of the last message written
+    private volatile long sentSequence = -1;
+    //time from capture to the end of the write of the last message, in milliseconds
+    private volatile long latencyMillis;
+    //longest time from capture to the end of a write, in milliseconds
+    private volatile long maxLatencyMillis;
+
+    /**
+     * @param channel connected subscriber
+     * @param capacity maximum number of queued messages
+     * @param waitForKeyframe true if the frames are delta encoded and the first one sent must be a keyframe
+     * @param metrics times the writes and counts the drops of all the subscribers
+     * @param listener notified when the connection ends
+     */
+    public Subscriber(SocketChannel channel, int capacity, boolean waitForKeyframe, StreamMetrics metrics,
+                      Listener listener) {
+        super("Subscriber");
+        this.channel = channel;
+        this.address = channel.socket().getRemoteSocketAddress();
+        this.queue = new SharedMessage[capacity];
+        this.waitingForKeyframe = waitForKeyframe;
+        this.metrics = metrics;
+        this.listener = listener;
+    }
+
+    /**
+     * write the handshake and then the queued messages until the connection fails or is closed
+     * @param sessionId identifies the stream
+     * @param capabilities WireProtocol.CAPABILITY_ constants used by the messages
+     * @param nextSequence sequence number of the next frame
+     */
+    void startStreaming(long sessionId, int capabilities, int nextSequence) {
+        FrameSerializer.writeHandshake(handshake, new MessageHeader(), sessionId, capabilities, nextSequence);
+        start();
+    }
+
+    @Override
+    public void run() {
+        IOException failure = null;
+        try {
+            write(handshake.bytes());
+            while (true) {
+                int taken = take(batch);
+                if (taken == 0)
+                    break;
+                try {
+                    long length = 0;
+                    int frames = 0;
+                    for (int i = 0; i < taken; i++) {
+                        batchBytes[i] = batch[i].view();
+                        length += batchBytes[i].remaining();
+                        if (!batch[i].isHeartbeat())
+                            frames++;
+                    }
+                    long start = System.nanoTime();
+                    write(batchBytes, taken, length);
+                    long writeNanos = System.nanoTime() - start;
+                    if (frames == 1 && taken == 1)
+                        metrics.onFrameWritten(writeNanos, (int) length);
+                    else
+                        metrics.onBatchWritten(writeNanos, frames, (int) length);
+                    SharedMessage newest = batch[taken - 1];
+                    sentBytes += length;
+                    sentCount += taken;
+                    sentSequence = newest.getSequence();
+                    latencyMillis = System.currentTimeMillis() - batch[0].getTimestamp();
+                    if (latencyMillis > maxLatencyMillis)
+                        maxLatencyMillis = latencyMillis;
+                } finally {
+                    for (int i = 0; i < taken; i++) {
+                        batch[i].release();
+                        batch[i] = null;
+                        batchBytes[i] = null;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            //closed
+        }
+
+        close();
+        if (listener != null)
+            listener.onSubscriberClosed(this, failure);
+    }
+
+    /**
+     * write up to that many queued messages in a single write, call before the subscriber is started
+     * @param messages largest number of messages in a write, 1 to write every message on its own
+     */
+    public void setBatchSize(int messages) {
+        batch = new SharedMessage[Math.max(1, messages)];
+        batchBytes = new ByteBuffer[batch.length];
+    }
+
+    /**
+     * queue a message for the subscriber, called from the broadcaster thread, never blocks
+     * @return true if the message was queued
+     */
+    synchronized boolean offer(SharedMessage message) {
+        newestSequence = message.getSequence();
+        if (!open)
+            return false;
+
+        if (count == queue.length)
+            dropOldest();
+
+        if (waitingForKeyframe) {
+            if (!message.isIndependent()) {
+                onDropped();
+                return false;
+            }
+            waitingForKeyframe = false;
+        }
+
+        message.retain();
+        queue[(head + count) % queue.length] = message;
+        count++;
+        enqueuedCount++;
+        if (count > maxQueued)
+            maxQueued = count;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * stop writing, release the queued messages and close the connection
+     */
+    public void close() {
+        synchronized (this) {
+            open = false;
+            while (count > 0)
+                poll().release();
+            notifyAll();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //nothing left to do with it
+        }
+    }
+
+    /**
+     * wait for the next messages
+     * @param messages filled with the oldest queued messages, as many as are queued and fit
+     * @return number of messages taken, 0 once the subscriber was closed
+     */
+    private synchronized int take(SharedMessage[] messages) throws InterruptedException {
+        while (open && count == 0)
+            wait();
+        if (!open)
+            return 0;
+        int taken = 0;
+        while (count > 0 && taken < messages.length)
+            messages[taken++] = poll();
+        return taken;
+    }
+
+    /**
+     * drop the oldest message, and the queued ones that cannot be decoded without it
+     */
+    private void dropOldest() {
+        poll().release();
+        onDropped();
+        while (count > 0 && !queue[head].isIndependent()) {
+            poll().release();
+            onDropped();
+        }
+        if (count == 0)
+            waitingForKeyframe = true;
+    }
+
+    private void onDropped() {
+        droppedCount++;
+        metrics.onFrameDropped();
+    }
+
+    private SharedMessage poll() {
+        SharedMessage message = queue[head];
+        queue[head] = null;
+        head = (head + 1) % queue.length;
+        count--;
+        return message;
+    }
+
+    private void write(ByteBuffer[] messages, int count, long length) throws IOException {
+        synchronized (writeLock) {
+            long remaining = length;
+            while (remaining > 0)
+                remaining -= channel.write(messages, 0, count);
+        }
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        synchronized (writeLock) {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+    }
+
+    /**
+     * the subscriber answered the handshake, called from the control reader thread.
+     * the frames are shared by all the subscribers, so the capabilities are not negotiated
+     */
+    @Override
+    public void onHandshake(int capabilities) {}
+
+    /**
+     * the subscriber asked for a region, called from the control reader thread.
+     * the frames are shared by all the subscribers, so they are always sent whole
+     */
+    @Override
+    public void onRegion(Region region) {}
+
+    /**
+     * the subscriber asked for a frame, called from the control reader thread.
+     * subscribers always get every frame
+     */
+    @Override
+    public void onFrameRequest() {}
+
+    /**
+     * the subscriber asked for the metrics, called from the control reader thread
+     */
+    @Override
+    public void onStatsRequest() {
+        try {
+            write(FrameSerializer.serializeStats(metrics + "\nsubscriber " + this, (int) newestSequence));
+        } catch (IOException e) {
+            //the next frame write reports the broken connection
+        }
+    }
+
+    /**
+     * the subscriber sent a ping, answered right away between two frames, called from the control reader thread
+     */
+    @Override
+    public void onPing(long originateMicros, long receiveMicros) {
+        ByteBuffer pong = FrameSerializer.serializePong(originateMicros, receiveMicros, (int) newestSequence);
+        try {
+            synchronized (writeLock) {
+                FrameSerializer.stampPong(pong);
+                write(pong);
+            }
+        } catch (IOException e) {
+            //the next frame write reports the broken connection
+        }
+    }
+
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    public synchronized long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    public long getSentBytes() {
+        return sentBytes;
+    }
+
+    public synchronized int getQueued() {
+        return count;
+    }
+
+    /**
+     * @return number of frames the subscriber is behind the newest frame
+     */
+    public long getLagFrames() {
+        long sent = sentSequence;
+        long newest = newestSequence;
+        return newest < 0 ? 0 : newest - sent;
+    }
+
+    /**
+     * @return time from capture to the end of the write of the last frame, in milliseconds
+     */
+    public long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return address + " enqueued=" + enqueuedCount + " dropped=" + droppedCount + " sent=" + sentCount
+                + " bytes=" + sentBytes + " queued=" + count + "/" + queue.length + " maxQueued=" + maxQueued
+                + " lag=" + getLagFrames() + " frames latency=" + latencyMillis + "ms maxLatency="
+                + maxLatencyMillis + "ms";
+    }
+}
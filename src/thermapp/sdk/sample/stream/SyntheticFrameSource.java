@@ -0,0 +1,162 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * camera like frames without a camera: a warm gradient, a hot spot moving across the scene, a slow
+ * drift of the whole scene and a little sensor noise, at any resolution and frame rate.
+ *
+ * the frames are generated on a thread of the source, paced to the frame rate or as fast as the
+ * listener takes them. the same seed and settings always generate the same frames
+ */
+public class SyntheticFrameSource implements FrameSource {
+    //size of the frames
+    private final int width;
+    private final int height;
+    //frames per second, 0 for as fast as possible
+    private final int fps;
+    //the frame being generated
+    private final int[] pixels;
+
+    //columns the hot spot moves by every frame
+    private int spotSpeed = 3;
+    //temperature added to the pixels of the hot spot
+    private int spotTemperature = 1200;
+    //largest sensor noise added to a pixel
+    private int noise = 7;
+    //amplitude of the slow change of the whole scene, 0 for a steady scene
+    private int drift;
+
+    //state of the noise generator
+    private int seed;
+    //number of frames generated
+    private volatile long count;
+    //frames that were due while the listener was still busy with the previous one
+    private volatile long skippedCount;
+    //delivers the frames, null while stopped
+    private volatile Thread thread;
+
+    /**
+     * @param width width of the frames
+     * @param height height of the frames
+     * @param fps frames per second, 0 for as fast as possible
+     * @param seed seed of the noise, sources with another seed generate another noise
+     */
+    public SyntheticFrameSource(int width, int height, int fps, int seed) {
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.pixels = new int[width * height];
+        this.seed = seed * 7919 + 1;
+    }
+
+    @Override
+    public synchronized void start(final Listener listener) {
+        if (thread != null)
+            return;
+
+        thread = new Thread("SyntheticFrameSource") {
+            @Override
+            public void run() {
+                Pacer pacer = fps > 0 ? new Pacer(fps) : null;
+                try {
+                    while (thread == this) {
+                        if (pacer != null)
+                            skippedCount += pacer.await();
+                        listener.onFrame(next(), width, height);
+                    }
+                } catch (InterruptedException e) {
+                    //stopped
+                }
+                listener.onSourceEnded(null);
+            }
+        };
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        Thread current = thread;
+        thread = null;
+        if (current != null)
+            current.interrupt();
+    }
+
+    /**
+     * generate the next frame, for callers that pace the frames themselves
+     * @return the temperatures, overwritten by the next call
+     */
+    public int[] next() {
+        int spotX = (int) (count * spotSpeed % width);
+        int spotY = height / 2 + (int) (height / 4 * Math.sin(count * spotSpeed / 60.0));
+        int radius = Math.max(2, height / 12);
+        int base = 2500 + (int) (drift * Math.sin(count / 100.0));
+        int noiseRange = noise + 1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                seed = seed * 1103515245 + 12345;
+                int value = base + y * 4 + x + (seed >>> 16) % noiseRange;
+                int dx = x - spotX;
+                int dy = y - spotY;
+                if (dx * dx + dy * dy < radius * radius)
+                    value += spotTemperature;
+                pixels[row + x] = value;
+            }
+        }
+        count++;
+        return pixels;
+    }
+
+    /**
+     * @param spotSpeed columns the hot spot moves by every frame, 0 for a still hot spot
+     */
+    public void setSpotSpeed(int spotSpeed) {
+        this.spotSpeed = spotSpeed;
+    }
+
+    /**
+     * @param spotTemperature temperature added to the pixels of the hot spot
+     */
+    public void setSpotTemperature(int spotTemperature) {
+        this.spotTemperature = spotTemperature;
+    }
+
+    /**
+     * @param noise largest sensor noise added to a pixel, 0 for noiseless frames
+     */
+    public void setNoise(int noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * @param drift amplitude of the slow change of the whole scene, 0 for a steady scene
+     */
+    public void setDrift(int drift) {
+        this.drift = drift;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFps() {
+        return fps;
+    }
+
+    public long getFrameCount() {
+        return count;
+    }
+
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "synthetic " + width + "x" + height + " fps=" + (fps > 0 ? String.valueOf(fps) : "max")
+                + " frames=" + count + " skipped=" + skippedCount;
+    }
+}
@@ -0,0 +1,176 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * fixed pool of threads working on the tiles of a frame in parallel, see {@link TiledCodec}.
+ *
+ * the thread calling {@link #run(Job, int)} works on the tiles as well, so a pool of one thread has
+ * no worker threads at all. the tiles are claimed one after the other by whichever thread is free,
+ * and nothing is allocated per frame. a single job runs at a time, other callers wait for it
+ */
+public class TileWorkers {
+    /**
+     * the work on a single tile, called from any thread of the pool
+     */
+    public interface Job {
+        void run(int tile);
+    }
+
+    //pool shared by the codecs of the app, created on first use
+    private static TileWorkers shared;
+
+    //number of threads working on a job, the caller included
+    private final int threads;
+    //held by the caller of a job for its whole run, so jobs do not mix
+    private final Object runLock = new Object();
+
+    //current job, null while idle
+    private Job job;
+    //number of tiles of the current job
+    private int tileCount;
+    //next tile to claim
+    private int nextTile;
+    //number of tiles claimed but not done yet, or not claimed yet
+    private int pending;
+    //incremented for every job, so the workers notice a new one
+    private long generation;
+    //first failure of a tile of the current job
+    private RuntimeException failure;
+    //false once the pool was shut down
+    private boolean running = true;
+
+    /**
+     * @param threads number of threads working on a job, the caller included
+     */
+    public TileWorkers(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.threads = threads;
+        for (int i = 1; i < threads; i++) {
+            Thread worker = new Thread("TileWorker-" + i) {
+                @Override
+                public void run() {
+                    work();
+                }
+            };
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * @return the pool shared by the codecs of the app, a thread per core
+     */
+    public static synchronized TileWorkers getShared() {
+        if (shared == null)
+            shared = new TileWorkers(Runtime.getRuntime().availableProcessors());
+        return shared;
+    }
+
+    /**
+     * run a job on every tile and wait until all of them are done
+     * @param job the work on a tile
+     * @param tiles number of tiles
+     * @throws RuntimeException the first failure of a tile, once all the tiles are done
+     */
+    public void run(Job job, int tiles) {
+        synchronized (runLock) {
+            synchronized (this) {
+                this.job = job;
+                tileCount = tiles;
+                nextTile = 0;
+                pending = tiles;
+                failure = null;
+                generation++;
+                notifyAll();
+            }
+
+            //the caller works on the tiles too
+            runTiles(job);
+
+            RuntimeException jobFailure;
+            synchronized (this) {
+                boolean interrupted = false;
+                while (pending > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        //the tiles are short, the job is finished before returning
+                        interrupted = true;
+                    }
+                }
+                this.job = null;
+                jobFailure = failure;
+                failure = null;
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+            if (jobFailure != null)
+                throw jobFailure;
+        }
+    }
+
+    /**
+     * stop the worker threads once they finished their tiles, the pool can not be used afterwards
+     */
+    public synchronized void shutdown() {
+        running = false;
+        notifyAll();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    private void work() {
+        long seen = 0;
+        while (true) {
+            Job current;
+            synchronized (this) {
+                while (running && generation == seen) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running)
+                    return;
+                seen = generation;
+                current = job;
+            }
+            if (current != null)
+                runTiles(current);
+        }
+    }
+
+    /**
+     * claim and run tiles of a job until none is left
+     */
+    private void runTiles(Job current) {
+        int tile;
+        while ((tile = claim(current)) >= 0) {
+            try {
+                current.run(tile);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    if (failure == null)
+                        failure = e;
+                }
+            } finally {
+                synchronized (this) {
+                    if (--pending == 0)
+                        notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the next tile of the job, -1 if all are claimed or the job is over
+     */
+    private synchronized int claim(Job current) {
+        if (job != current || nextTile >= tileCount)
+            return -1;
+        return nextTile++;
+    }
+}
@@ -0,0 +1,423 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * splits a frame into horizontal tiles encoded on their own, in parallel on the {@link TileWorkers}.
+ *
+ * every tile has a codec of its own, of the same encoding, so with the delta encoding every tile is a
+ * chain of its own. when compression is on every tile is compressed on its own as well, and sent
+ * compressed only if that made it smaller. the tiles are assembled in order behind a tile table,
+ * so the payload is the same whatever the number of threads and the order they finished in:
+ * <pre>
+ *  0  short  number of tiles (unsigned)
+ *  2  short  0
+ *  4         a row per tile:
+ *            short  number of rows of the tile (unsigned)
+ *            byte   WireProtocol.FLAG_KEYFRAME and FLAG_COMPRESSED of the tile
+ *            byte   0
+ *            int    length of the tile in bytes
+ *            then the tiles one after the other
+ * </pre>
+ * the frame is flagged WireProtocol.FLAG_TILED, and FLAG_KEYFRAME when every tile is a keyframe.
+ * a sender only tiles its frames once the receiver accepted WireProtocol.CAPABILITY_TILES, until then
+ * and for frames with fewer rows than tiles the frames are encoded whole by a codec of their own.
+ * receivers decode both, the tiles in parallel too when they are given workers
+ */
+public class TiledCodec implements FrameCodec {
+    //size of the start of the tile table
+    private static final int TABLE_OFFSET = 4;
+    //size of a row of the tile table
+    private static final int TABLE_ROW_LENGTH = 8;
+
+    //encoding of the tiles and the whole frames
+    private final int encoding;
+    //codec of the frames that are not tiled
+    private final FrameCodec whole;
+    //runs the tiles in parallel, null to run them on the calling thread
+    private final TileWorkers workers;
+    //codec of every tile, a sender has a fixed number of tiles, a receiver as many as it was sent
+    private FrameCodec[] tileCodecs;
+    //tiling and tile compression asked for by the last handshake, set from the control reader thread
+    private volatile boolean requestedTiled;
+    private volatile boolean requestedCompressed;
+    //true if the frame being encoded is tiled, taken from the requested tiling when the frame is sized
+    private boolean tiled;
+    //true if the tiles of the frame being encoded are compressed
+    private boolean compressed;
+
+    //state of every tile, reused for every frame
+    private int[][] tilePixels;
+    private FrameBuffer[] encoded;
+    private FrameBuffer[] compressedBuffers;
+    private SnappyStage[] snappy;
+    private ByteBuffer[] tileBytes;
+    private MessageHeader[] tileHeaders;
+    private int[] tileFirstRows;
+    private int[] tileRows;
+    private int[] tileFlags;
+    private int[] tileOffsets;
+    private int[] tileLengths;
+    private boolean[] decoded;
+
+    //the frame being encoded or decoded
+    private int[] framePixels;
+    private int frameWidth;
+    private MessageHeader frameHeader;
+    //payload the tile views were made of
+    private ByteBuffer viewSource;
+
+    //encodes a tile of the current frame
+    private final TileWorkers.Job encodeJob = new TileWorkers.Job() {
+        @Override
+        public void run(int tile) {
+            encodeTile(tile);
+        }
+    };
+    //decodes a tile of the current frame
+    private final TileWorkers.Job decodeJob = new TileWorkers.Job() {
+        @Override
+        public void run(int tile) {
+            decodeTile(tile);
+        }
+    };
+
+    /**
+     * create the codec of a sender
+     * @param whole codec of the frames that are not tiled
+     * @param tileCodecs codec of every tile, of the same encoding
+     * @param workers runs the tiles in parallel, null to run them on the calling thread
+     */
+    public TiledCodec(FrameCodec whole, FrameCodec[] tileCodecs, TileWorkers workers) {
+        this.encoding = whole.getEncoding();
+        this.whole = whole;
+        this.workers = workers;
+        this.tileCodecs = tileCodecs.clone();
+        growState(0, tileCodecs.length);
+    }
+
+    /**
+     * create the codec of a receiver, the tile codecs are created as the frames need them
+     * @param whole codec of the frames that are not tiled
+     * @param workers runs the tiles in parallel, null to run them on the calling thread
+     */
+    public TiledCodec(FrameCodec whole, TileWorkers workers) {
+        this.encoding = whole.getEncoding();
+        this.whole = whole;
+        this.workers = workers;
+        this.tileCodecs = new FrameCodec[0];
+        growState(0, 0);
+    }
+
+    /**
+     * tile the next frames or encode them whole, called when the receiver answered the handshake.
+     * it applies from the next {@link #maxPayloadLength(int, int)}, so a frame is never sized for one layout
+     * and encoded in the other
+     * @param tiled true if the receiver accepted WireProtocol.CAPABILITY_TILES
+     * @param compressed true to compress the tiles, ignored if snappy is not available
+     */
+    public void setTiled(boolean tiled, boolean compressed) {
+        this.requestedCompressed = compressed && SnappyStage.isAvailable();
+        this.requestedTiled = tiled;
+    }
+
+    /**
+     * @return true if the next frames are tiled
+     */
+    public boolean isTiled() {
+        return requestedTiled;
+    }
+
+    @Override
+    public int getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * the sender sizes every frame before encoding it, the tiling requested meanwhile applies from here
+     */
+    @Override
+    public int maxPayloadLength(int width, int height) {
+        compressed = requestedCompressed;
+        tiled = requestedTiled;
+        int tiles = tileCodecs.length;
+        if (!tiled || height < tiles)
+            return whole.maxPayloadLength(width, height);
+
+        int length = TABLE_OFFSET + tiles * TABLE_ROW_LENGTH;
+        for (int t = 0; t < tiles; t++)
+            length += maxTileLength(t, width, rows(t, tiles, height));
+        return length;
+    }
+
+    @Override
+    public int encode(int[] pixels, int width, int height, FrameBuffer out) {
+        int tiles = tileCodecs.length;
+        if (!tiled || height < tiles)
+            return whole.encode(pixels, width, height, out);
+
+        for (int t = 0; t < tiles; t++) {
+            tileFirstRows[t] = firstRow(t, tiles, height);
+            tileRows[t] = rows(t, tiles, height);
+        }
+        framePixels = pixels;
+        frameWidth = width;
+        try {
+            run(encodeJob, tiles);
+        } finally {
+            framePixels = null;
+        }
+
+        ByteBuffer bytes = out.bytes();
+        bytes.putShort((short) tiles);
+        bytes.putShort((short) 0);
+        boolean keyframe = true;
+        for (int t = 0; t < tiles; t++) {
+            bytes.putShort((short) tileRows[t]);
+            bytes.put((byte) tileFlags[t]);
+            bytes.put((byte) 0);
+            bytes.putInt(tileLengths[t]);
+            keyframe &= (tileFlags[t] & WireProtocol.FLAG_KEYFRAME) != 0;
+        }
+        for (int t = 0; t < tiles; t++) {
+            bytes.put(tileBytes[t]);
+            tileBytes[t] = null;
+        }
+        return WireProtocol.FLAG_TILED | (keyframe ? WireProtocol.FLAG_KEYFRAME : 0);
+    }
+
+    @Override
+    public boolean decode(MessageHeader header, ByteBuffer payload, int[] pixels) {
+        if (!header.hasFlag(WireProtocol.FLAG_TILED))
+            return whole.decode(header, payload, pixels);
+
+        int position = payload.position();
+        int limit = payload.limit();
+        if (limit - position < TABLE_OFFSET)
+            return false;
+        int tiles = payload.getShort(position) & 0xFFFF;
+        int offset = position + TABLE_OFFSET + tiles * TABLE_ROW_LENGTH;
+        if (tiles == 0 || offset > limit)
+            return false;
+        if (tiles > tileCodecs.length)
+            growTiles(tiles);
+
+        int row = 0;
+        for (int t = 0; t < tiles; t++) {
+            int entry = position + TABLE_OFFSET + t * TABLE_ROW_LENGTH;
+            int length = payload.getInt(entry + 4);
+            if (length < 0 || length > limit - offset)
+                return false;
+            tileFirstRows[t] = row;
+            tileRows[t] = payload.getShort(entry) & 0xFFFF;
+            tileFlags[t] = payload.get(entry + 2) & 0xFF;
+            tileOffsets[t] = offset;
+            tileLengths[t] = length;
+            row += tileRows[t];
+            offset += length;
+        }
+        if (row != header.getHeight())
+            return false;
+
+        //views of the payload for the tiles, made again only when the receiver uses another buffer
+        for (int t = 0; t < tiles; t++) {
+            if (tileBytes[t] == null || viewSource != payload)
+                tileBytes[t] = payload.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            decoded[t] = false;
+        }
+        viewSource = payload;
+        framePixels = pixels;
+        frameWidth = header.getWidth();
+        frameHeader = header;
+        try {
+            run(decodeJob, tiles);
+        } finally {
+            framePixels = null;
+            frameHeader = null;
+        }
+
+        for (int t = 0; t < tiles; t++)
+            if (!decoded[t])
+                return false;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        whole.reset();
+        for (FrameCodec codec : tileCodecs)
+            codec.reset();
+    }
+
+    public int getTileCount() {
+        return tileCodecs.length;
+    }
+
+    /**
+     * @return the workers running the tiles, null if they run on the calling thread
+     */
+    public TileWorkers getWorkers() {
+        return workers;
+    }
+
+    @Override
+    public String toString() {
+        long uncompressedBytes = 0;
+        long compressedBytes = 0;
+        for (SnappyStage stage : snappy) {
+            if (stage != null) {
+                uncompressedBytes += stage.getUncompressedBytes();
+                compressedBytes += stage.getCompressedBytes();
+            }
+        }
+        return "tiles=" + tileCodecs.length + " threads=" + (workers != null ? workers.getThreads() : 1)
+                + " tiled=" + requestedTiled + (requestedCompressed ? String.format(" compression ratio=%.2f",
+                compressedBytes == 0 ? 0 : (double) uncompressedBytes / compressedBytes) : "");
+    }
+
+    private void run(TileWorkers.Job job, int tiles) {
+        if (workers == null) {
+            for (int t = 0; t < tiles; t++)
+                job.run(t);
+        } else {
+            workers.run(job, tiles);
+        }
+    }
+
+    /**
+     * encode a tile of the current frame into its own buffer, and compress it
+     */
+    private void encodeTile(int tile) {
+        int rows = tileRows[tile];
+        int length = frameWidth * rows;
+        if (tilePixels[tile].length < length)
+            tilePixels[tile] = new int[length];
+        System.arraycopy(framePixels, tileFirstRows[tile] * frameWidth, tilePixels[tile], 0, length);
+
+        FrameCodec codec = tileCodecs[tile];
+        ByteBuffer bytes = encoded[tile].clear(codec.maxPayloadLength(frameWidth, rows));
+        int flags = codec.encode(tilePixels[tile], frameWidth, rows, encoded[tile]);
+        bytes.flip();
+
+        if (compressed) {
+            SnappyStage stage = snappy[tile];
+            if (stage == null)
+                stage = snappy[tile] = new SnappyStage();
+            ByteBuffer dst = compressedBuffers[tile].clear(stage.maxCompressedLength(bytes.remaining()));
+            try {
+                int compressedLength = stage.compress(bytes, dst);
+                //sent compressed only if that made it smaller
+                if (compressedLength < bytes.remaining()) {
+                    dst.limit(compressedLength);
+                    bytes = dst;
+                    flags |= WireProtocol.FLAG_COMPRESSED;
+                }
+            } catch (IOException e) {
+                //sent uncompressed
+            }
+        }
+        tileFlags[tile] = flags;
+        tileLengths[tile] = bytes.remaining();
+        tileBytes[tile] = bytes;
+    }
+
+    /**
+     * decode a tile of the current frame into its rows of the frame
+     */
+    private void decodeTile(int tile) {
+        ByteBuffer bytes = tileBytes[tile];
+        bytes.clear();
+        bytes.position(tileOffsets[tile]);
+        bytes.limit(tileOffsets[tile] + tileLengths[tile]);
+
+        int flags = tileFlags[tile];
+        if ((flags & WireProtocol.FLAG_COMPRESSED) != 0) {
+            if (!SnappyStage.isAvailable())
+                return;
+            SnappyStage stage = snappy[tile];
+            if (stage == null)
+                stage = snappy[tile] = new SnappyStage();
+            try {
+                bytes = stage.decompress(bytes);
+            } catch (IOException e) {
+                return;
+            }
+        }
+
+        int rows = tileRows[tile];
+        int length = frameWidth * rows;
+        if (tilePixels[tile].length < length)
+            tilePixels[tile] = new int[length];
+        MessageHeader tileHeader = tileHeaders[tile].set(frameHeader.getType(), encoding,
+                flags & ~WireProtocol.FLAG_COMPRESSED, frameHeader.getSequence(), frameHeader.getTimestamp(),
+                frameWidth, rows, bytes.remaining());
+        if (tileCodecs[tile].decode(tileHeader, bytes, tilePixels[tile])) {
+            System.arraycopy(tilePixels[tile], 0, framePixels, tileFirstRows[tile] * frameWidth, length);
+            decoded[tile] = true;
+        }
+    }
+
+    /**
+     * @return the largest encoded, and compressed, size of a tile
+     */
+    private int maxTileLength(int tile, int width, int rows) {
+        int length = tileCodecs[tile].maxPayloadLength(width, rows);
+        if (compressed) {
+            SnappyStage stage = snappy[tile];
+            if (stage == null)
+                stage = snappy[tile] = new SnappyStage();
+            length = Math.max(length, stage.maxCompressedLength(length));
+        }
+        return length;
+    }
+
+    private static int firstRow(int tile, int tiles, int height) {
+        return tile * height / tiles;
+    }
+
+    private static int rows(int tile, int tiles, int height) {
+        return (tile + 1) * height / tiles - tile * height / tiles;
+    }
+
+    /**
+     * grow the state to the number of tiles, a receiver creates the codecs of the new tiles
+     */
+    private void growTiles(int tiles) {
+        int from = tileCodecs.length;
+        FrameCodec[] codecs = new FrameCodec[tiles];
+        System.arraycopy(tileCodecs, 0, codecs, 0, from);
+        for (int t = from; t < tiles; t++)
+            codecs[t] = FrameCodecs.createDecoder(encoding);
+        tileCodecs = codecs;
+        growState(from, tiles);
+    }
+
+    private void growState(int from, int tiles) {
+        tilePixels = grow(tilePixels, new int[tiles][]);
+        encoded = grow(encoded, new FrameBuffer[tiles]);
+        compressedBuffers = grow(compressedBuffers, new FrameBuffer[tiles]);
+        snappy = grow(snappy, new SnappyStage[tiles]);
+        tileBytes = grow(tileBytes, new ByteBuffer[tiles]);
+        tileHeaders = grow(tileHeaders, new MessageHeader[tiles]);
+        for (int t = from; t < tiles; t++) {
+            tilePixels[t] = new int[0];
+            encoded[t] = new FrameBuffer(0);
+            compressedBuffers[t] = new FrameBuffer(0);
+            tileHeaders[t] = new MessageHeader();
+        }
+        tileFirstRows = new int[tiles];
+        tileRows = new int[tiles];
+        tileFlags = new int[tiles];
+        tileOffsets = new int[tiles];
+        tileLengths = new int[tiles];
+        decoded = new boolean[tiles];
+    }
+
+    private static <T> T[] grow(T[] old, T[] grown) {
+        if (old != null)
+            System.arraycopy(old, 0, grown, 0, old.length);
+        return grown;
+    }
+}
@@ -0,0 +1,28 @@
+package thermapp.sdk.sample.stream;
+
+/**
+ * how the stream is carried to the server
+ */
+public enum Transport {
+    //a reliable tcp connection, frames arrive in order but a slow link delays every later frame
+    TCP,
+    //fragmented udp datagrams, a lost fragment drops only its frame and never delays the next ones
+    UDP;
+
+    /**
+     * parse a transport from its preference value
+     * @param value the name of the transport, e.g. "UDP"
+     * @param defaultTransport the transport to return if the value is missing or unknown
+     * @return the matching transport
+     */
+    public static Transport parse(String value, Transport defaultTransport) {
+        if (value == null)
+            return defaultTransport;
+
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return defaultTransport;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package thermapp.sdk.sample.stream;
+
+import java.io.IOException;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * channel that splits every message written to it into datagrams that fit the mtu.
+ *
+ * every datagram starts with a fragment header, little endian:
+ * <pre>
+ *  0  int    magic, the bytes "THRF"
+ *  4  int    message id, increasing for every message
+ *  8  short  fragment index (unsigned)
+ * 10  short  fragment count (unsigned)
+ * 12  int    message length in bytes
+ * 16  int    offset of the fragment in the message
+ * </pre>
+ * followed by the next part of the message. each write must hold exactly one whole message,
+ * which is how {@link FrameSender} writes. the fragments are sent with a gathering write of the
+ * reused header buffer and a window of the message buffer, so nothing is copied or allocated.
+ * see {@link FragmentAssembler} for the receiving side
+ */
+public class UdpFragmenter implements WritableByteChannel {
+    //"THRF" as a little endian int
+    public static final int MAGIC = 'T' | 'H' << 8 | 'R' << 16 | 'F' << 24;
+    //size of the fragment header
+    public static final int HEADER_SIZE = 20;
+    //size of the ip and udp headers
+    private static final int IP_UDP_OVERHEAD = 28;
+    //largest number of fragments of a message
+    private static final int MAX_FRAGMENTS = 0xFFFF;
+    //smallest message part of a datagram
+    private static final int MIN_FRAGMENT_PAYLOAD = 64;
+    //smallest mtu a fragmenter accepts
+    public static final int MIN_MTU = IP_UDP_OVERHEAD + HEADER_SIZE + MIN_FRAGMENT_PAYLOAD;
+
+    //connected datagram channel to the server
+    private final DatagramChannel channel;
+    //largest message part of a datagram
+    private final int fragmentPayload;
+    //reused fragment header
+    private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    //reused gathering write array
+    private final ByteBuffer[] datagram = new ByteBuffer[2];
+
+    //id of the next message
+    private int nextMessageId;
+    //number of datagrams sent
+    private long datagramCount;
+    //number of datagrams the server port refused
+    private long refusedCount;
+
+    /**
+     * @param channel datagram channel connected to the server
+     * @param mtu maximum transmission unit of the network, 1500 on most wifi and ethernet links, at least MIN_MTU
+     */
+    public UdpFragmenter(DatagramChannel channel, int mtu) {
+        this.channel = channel;
+        this.fragmentPayload = mtu - IP_UDP_OVERHEAD - HEADER_SIZE;
+        if (fragmentPayload < MIN_FRAGMENT_PAYLOAD)
+            throw new IllegalArgumentException("mtu is too small: " + mtu);
+    }
+
+    /**
+     * send a whole message as fragments
+     * @param message the message between position and limit, fully consumed
+     * @return number of message bytes sent
+     */
+    @Override
+    public int write(ByteBuffer message) throws IOException {
+        int start = message.position();
+        int limit = message.limit();
+        int length = limit - start;
+        int count = Math.max(1, (length + fragmentPayload - 1) / fragmentPayload);
+        if (count > MAX_FRAGMENTS)
+            throw new IOException("message too large for udp: " + length + " bytes");
+
+        int messageId = nextMessageId++;
+        datagram[0] = header;
+        datagram[1] = message;
+        try {
+            for (int i = 0; i < count; i++) {
+                int fragmentStart = start + i * fragmentPayload;
+                header.clear();
+                header.putInt(MAGIC);
+                header.putInt(messageId);
+                header.putShort((short) i);
+                header.putShort((short) count);
+                header.putInt(length);
+                header.putInt(fragmentStart - start);
+                header.flip();
+
+                message.limit(Math.min(limit, fragmentStart + fragmentPayload));
+                message.position(fragmentStart);
+                try {
+                    channel.write(datagram);
+                } catch (PortUnreachableException e) {
+                    //nobody listens on the server right now, keep sending fresh frames
+                    refusedCount++;
+                }
+                datagramCount++;
+            }
+        } finally {
+            datagram[1] = null;
+            message.limit(limit);
+            message.position(limit);
+        }
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public long getDatagramCount() {
+        return datagramCount;
+    }
+
+    public long getRefusedCount() {
+        return refusedCount;
+    }
+}
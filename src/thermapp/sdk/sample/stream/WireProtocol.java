@@ -0,0 +1,186 @@
+package thermapp.sdk.sample.stream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * layout of the stream sent to the server.
+ *
+ * the stream is a sequence of messages, each one is a fixed size header followed by a payload.
+ * all values are little endian. the header layout is:
+ * <pre>
+ *  0  int    magic, the bytes "THRM"
+ *  4  byte   protocol version
+ *  5  byte   message type
+ *  6  byte   payload encoding
+ *  7  byte   flags
+ *  8  int    sequence number
+ * 12  long   capture timestamp, milliseconds since epoch
+ * 20  short  width (unsigned)
+ * 22  short  height (unsigned)
+ * 24  int    payload length in bytes
+ * 28  int    header check, FNV-1a of bytes 0-27
+ * </pre>
+ * every connection starts with a handshake message, then a frame message per frame.
+ * in dual channel mode the frames go on a preview channel and a radiometric channel of their own,
+ * on the same connection, see PreviewChannel.
+ * a server may answer with its own handshake listing the capabilities it accepted,
+ * after which the sender may use them on the following frames.
+ * the width and height of a frame are those of the temperatures sent, the region message sent
+ * before the first frame and whenever it changes tells which part of the sensor they cover.
+ * a receiver that joined late or lost bytes finds the next message by scanning for the magic
+ * and verifying the header check, and detects dropped frames by gaps in the sequence numbers.
+ * the capture timestamp is taken when the frame leaves the camera, a receiver that synchronized its clock
+ * with ping messages tells from it how old a frame is when it arrives
+ */
+public final class WireProtocol {
+    //"THRM" as a little endian int
+    public static final int MAGIC = 'T' | 'H' << 8 | 'R' << 16 | 'M' << 24;
+    //current version of the protocol
+    public static final int VERSION = 1;
+    //size of the message header in bytes, a multiple of 4 so int payloads stay aligned
+    public static final int HEADER_SIZE = 32;
+    //largest payload a receiver accepts, anything bigger is treated as a corrupt header
+    public static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+
+    //first message of every connection, payload is the handshake
+    public static final int TYPE_HANDSHAKE = 1;
+    //a temperatures frame, payload is the encoded frame
+    public static final int TYPE_FRAME = 2;
+    //sent by the receiver to ask for the metrics of the stream, no payload
+    public static final int TYPE_STATS_REQUEST = 3;
+    //answer to a stats request, payload is the metrics report as utf-8 text, see StreamMetrics
+    public static final int TYPE_STATS = 4;
+    //a recorded frame the receiver missed while disconnected, sent after a reconnect between the live frames.
+    //the payload is encoded like a frame but in a chain of its own, a receiver may already have the frame, see Backfill
+    public static final int TYPE_BACKFILL = 5;
+    //sent by the receiver to crop and bin the next frames, payload is the region, see Region.
+    //the sender answers with the region it applied, before the first frame cut from it
+    public static final int TYPE_REGION = 6;
+    //statistics of a frame sent instead of the frame in analytics mode, payload see FrameStatistics
+    public static final int TYPE_ANALYTICS = 7;
+    //sent by the receiver in analytics mode to get the next frame in full, no payload
+    public static final int TYPE_FRAME_REQUEST = 8;
+    //sent instead of the frames suppressed because they did not change, see ChangeGate. the sequence number
+    //and timestamp are those of the last suppressed frame, the payload is the number of frames suppressed
+    //since the previous frame or heartbeat (int), they are not missing
+    public static final int TYPE_HEARTBEAT = 9;
+    //a level of a frame in progressive mode, see Pyramid. the levels of a frame share its sequence number and
+    //come coarsest first, the width and height are those of the level. the payload is the level (byte), the
+    //number of levels (byte) and 0 (short), then the level encoded like a frame. the refinement levels of a
+    //frame may be skipped for a newer frame
+    public static final int TYPE_LEVEL = 10;
+    //an 8 bit preview of a frame on the preview channel, see PreviewCodec. the sequence number and timestamp are
+    //those of the frame, which may be sent on the radiometric channel as well, right after its preview. the frames
+    //since the previous message were skipped on both channels, they are not lost
+    public static final int TYPE_PREVIEW = 11;
+    //sent by the receiver to synchronize its clock with the sender, see ClockSync. the payload is the time the
+    //ping was written (long), in microseconds since epoch on the receiver clock
+    public static final int TYPE_PING = 12;
+    //answer to a ping, sent as soon as possible between the frames. the payload is the time of the ping, the time
+    //the sender read it and the time it wrote the answer (longs), in microseconds since epoch, the last two on
+    //the sender clock
+    public static final int TYPE_PONG = 13;
+
+    //every temperature as a 4 bytes int, like the original int2byte stream, see Raw32Codec
+    public static final int ENCODING_RAW32 = 0;
+    //every temperature as a 2 bytes fixed point value with a per frame offset, see Fixed16Codec
+    public static final int ENCODING_FIXED16 = 1;
+    //every temperature as the difference against the previous frame, see DeltaCodec
+    public static final int ENCODING_DELTA = 2;
+
+    //the frame does not depend on previous frames
+    public static final int FLAG_KEYFRAME = 1;
+    //the payload is snappy compressed, see SnappyStage
+    public static final int FLAG_COMPRESSED = 2;
+    //the payload is a tile table followed by horizontal tiles encoded on their own, see TiledCodec.
+    //the tiles may be compressed one by one, the payload as a whole never is
+    public static final int FLAG_TILED = 4;
+
+    //the payload may be snappy compressed
+    public static final int CAPABILITY_SNAPPY = 1;
+    //the frames may be split in tiles
+    public static final int CAPABILITY_TILES = 2;
+    //the frames may be sent as levels of increasing resolution
+    public static final int CAPABILITY_PROGRESSIVE = 4;
+
+    //size of the handshake payload: session id (long) and capabilities (int)
+    public static final int HANDSHAKE_LENGTH = 12;
+    //size of the region payload: left, top, width and height (unsigned shorts) and binning (int)
+    public static final int REGION_LENGTH = 12;
+    //size of the heartbeat payload: number of suppressed frames (int)
+    public static final int HEARTBEAT_LENGTH = 4;
+    //size of the start of a level payload: level (byte), number of levels (byte) and 0 (short)
+    public static final int LEVEL_HEADER_LENGTH = 4;
+    //size of the start of a preview payload: coldest and hottest temperatures (ints)
+    public static final int PREVIEW_HEADER_LENGTH = 8;
+    //size of the ping payload: time the ping was written (long)
+    public static final int PING_LENGTH = 8;
+    //size of the pong payload: times the ping was written and read and the pong written (longs)
+    public static final int PONG_LENGTH = 24;
+
+    private static final int CHECK_OFFSET = 28;
+
+    private WireProtocol() {}
+
+    /**
+     * write a header at the given offset, without moving the buffer position
+     * @param buffer little endian buffer to write to
+     * @param offset index of the first header byte
+     * @param header the header to write
+     */
+    public static void writeHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        buffer.putInt(offset, MAGIC);
+        buffer.put(offset + 4, (byte) header.getVersion());
+        buffer.put(offset + 5, (byte) header.getType());
+        buffer.put(offset + 6, (byte) header.getEncoding());
+        buffer.put(offset + 7, (byte) header.getFlags());
+        buffer.putInt(offset + 8, header.getSequence());
+        buffer.putLong(offset + 12, header.getTimestamp());
+        buffer.putShort(offset + 20, (short) header.getWidth());
+        buffer.putShort(offset + 22, (short) header.getHeight());
+        buffer.putInt(offset + 24, header.getPayloadLength());
+        buffer.putInt(offset + CHECK_OFFSET, check(buffer, offset));
+    }
+
+    /**
+     * read and validate a header at the given offset, without moving the buffer position
+     * @param buffer little endian buffer to read from
+     * @param offset index of the first header byte
+     * @param header filled with the header values
+     * @return false if the bytes are not a valid header
+     */
+    public static boolean readHeader(ByteBuffer buffer, int offset, MessageHeader header) {
+        if (buffer.getInt(offset) != MAGIC)
+            return false;
+        if (buffer.getInt(offset + CHECK_OFFSET) != check(buffer, offset))
+            return false;
+
+        int version = buffer.get(offset + 4) & 0xFF;
+        int payloadLength = buffer.getInt(offset + 24);
+        if (version > VERSION || payloadLength < 0 || payloadLength > MAX_PAYLOAD_LENGTH)
+            return false;
+
+        header.set(buffer.get(offset + 5) & 0xFF,
+                buffer.get(offset + 6) & 0xFF,
+                buffer.get(offset + 7) & 0xFF,
+                buffer.getInt(offset + 8),
+                buffer.getLong(offset + 12),
+                buffer.getShort(offset + 20) & 0xFFFF,
+                buffer.getShort(offset + 22) & 0xFFFF,
+                payloadLength);
+        header.setVersion(version);
+        return true;
+    }
+
+    /**
+     * FNV-1a hash of the header bytes before the check field
+     */
+    private static int check(ByteBuffer buffer, int offset) {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < CHECK_OFFSET; i++) {
+            hash ^= buffer.get(offset + i) & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+}
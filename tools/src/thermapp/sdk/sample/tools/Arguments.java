@@ -0,0 +1,48 @@
+package thermapp.sdk.sample.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * command line options of the tools, given as "--name value" pairs or "--flag"
+ */
+public class Arguments {
+    //option values by name, "true" for flags
+    private final Map<String, String> values = new HashMap<String, String>();
+
+    public Arguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("expected an option instead of: " + args[i]);
+
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+                values.put(name, args[++i]);
+            else
+                values.put(name, "true");
+        }
+    }
+
+    public boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    public String getString(String name, String defaultValue) {
+        String value = values.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = values.get(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public long getLong(String name, long defaultValue) {
+        String value = values.get(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    public boolean getFlag(String name) {
+        return "true".equals(values.get(name));
+    }
+}
@@ -0,0 +1,221 @@
+package thermapp.sdk.sample.tools;
+
+import thermapp.sdk.sample.stream.ConnectionManager;
+import thermapp.sdk.sample.stream.FrameQueue;
+import thermapp.sdk.sample.stream.FrameServer;
+import thermapp.sdk.sample.stream.FrameSource;
+import thermapp.sdk.sample.stream.OverflowPolicy;
+import thermapp.sdk.sample.stream.ReplayFrameSource;
+import thermapp.sdk.sample.stream.SocketProfile;
+import thermapp.sdk.sample.stream.StartupTimer;
+import thermapp.sdk.sample.stream.StreamMetrics;
+import thermapp.sdk.sample.stream.StreamSettings;
+import thermapp.sdk.sample.stream.Subscriber;
+import thermapp.sdk.sample.stream.SyntheticFrameSource;
+import thermapp.sdk.sample.stream.Transport;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * runs the streaming pipeline of the app on a desktop, fed by a synthetic scene or a replayed recording
+ * instead of the camera, to soak test the pipeline and feed receivers in a lab without a device.
+ *
+ * the frames go through the same queue, codecs, rate controller, connection manager or frame server
+ * as on the phone, and the pipeline metrics are printed every interval, after the timing of the start
+ * up to the first frame written to the wire. build it like the
+ * {@link StreamReceiver} and run, e.g. next to a receiver:
+ * <pre>
+ * java -cp out:libs/snappy-java-1.1.1.7-SNAPSHOT.jar thermapp.sdk.sample.tools.HeadlessStreamer --source synthetic --fps 0
+ * java -cp out:libs/snappy-java-1.1.1.7-SNAPSHOT.jar thermapp.sdk.sample.tools.HeadlessStreamer --source replay --file last-minute.thrm --loop
+ * </pre>
+ * options: --source (synthetic or replay), --width, --height, --fps (0 for as fast as possible),
+ * --drift and --spot-speed (0 for a still scene) for the synthetic scene, --file (a ring file or a stream
+ * file), --speed (original or max) and --loop for the replay, --host, --port, --server (listen for
+ * subscribers like server mode), --transport, --mtu, --profile (LOW_LATENCY or THROUGHPUT), --queue,
+ * --overflow, --encoding, --scale, --keyframes, --tiles (1 to encode the frames whole), --compression,
+ * --progressive, --adaptive, --gate (the pixel tolerance of change detection), --gate-changed (changed
+ * pixels per thousand), --heartbeat (ms), --preview (ms between two previews, turns dual channel mode on),
+ * --radiometric (ms between two frames of temperatures, -1 on demand only), --analytics (the hot spot
+ * threshold), --seconds (0 runs forever), --interval (report interval in ms)
+ */
+public class HeadlessStreamer implements FrameSource.Listener {
+    //frames of the pipeline, null until it was started
+    private volatile FrameQueue queue;
+    //frames the pipeline did not take because it was interrupted
+    private volatile long lostFrames;
+    //false once the source ended
+    private volatile boolean sourceRunning = true;
+    //times the start of the pipeline, null once it was printed
+    private volatile StartupTimer startupTimer;
+
+    public static void main(String[] args) throws Exception {
+        Arguments arguments = new Arguments(args);
+        FrameSource source = createSource(arguments);
+        if (source == null) {
+            System.err.println("usage: HeadlessStreamer --source synthetic|replay [--file recording] [--fps 9]"
+                    + " [--speed original|max] [--loop] [--host 127.0.0.1] [--port 31113] [--server] [--seconds 0]");
+            System.exit(1);
+        }
+        StreamSettings settings = createSettings(arguments);
+        System.out.println("source: " + source);
+        System.out.println("settings: " + settings);
+        new HeadlessStreamer().run(source, settings, arguments.getInt("seconds", 0), arguments.getInt("interval", 1000));
+    }
+
+    /**
+     * @return the source chosen on the command line, null if the options are missing
+     */
+    private static FrameSource createSource(Arguments arguments) {
+        String source = arguments.getString("source", "synthetic");
+        if ("replay".equalsIgnoreCase(source)) {
+            if (!arguments.has("file"))
+                return null;
+            return new ReplayFrameSource(new File(arguments.getString("file", null)),
+                    !"max".equalsIgnoreCase(arguments.getString("speed", "original")), arguments.getFlag("loop"));
+        }
+        if (!"synthetic".equalsIgnoreCase(source))
+            return null;
+        SyntheticFrameSource synthetic = new SyntheticFrameSource(arguments.getInt("width", 384),
+                arguments.getInt("height", 288), arguments.getInt("fps", 9), arguments.getInt("seed", 0));
+        synthetic.setDrift(arguments.getInt("drift", 0));
+        synthetic.setSpotSpeed(arguments.getInt("spot-speed", 3));
+        return synthetic;
+    }
+
+    /**
+     * @return the settings of the app with the values of the command line
+     */
+    private static StreamSettings createSettings(Arguments arguments) {
+        StreamSettings settings = new StreamSettings();
+        settings.setHost(arguments.getString("host", "127.0.0.1"));
+        settings.setPort(arguments.getInt("port", 31113));
+        settings.setServerMode(arguments.getFlag("server"));
+        settings.setTransport(Transport.parse(arguments.getString("transport", null), Transport.TCP));
+        settings.setMtu(arguments.getInt("mtu", 1500));
+        settings.setSocketProfile(SocketProfile.parse(arguments.getString("profile", null), SocketProfile.LOW_LATENCY));
+        settings.setQueueCapacity(arguments.getInt("queue", 4));
+        settings.setOverflowPolicy(OverflowPolicy.parse(arguments.getString("overflow", null), OverflowPolicy.DROP_OLDEST));
+        settings.setEncoding(arguments.getString("encoding", "RAW32"));
+        settings.setFixedPointScale(arguments.getInt("scale", 1));
+        settings.setKeyframeInterval(arguments.getInt("keyframes", 30));
+        settings.setTiles(arguments.getInt("tiles", 8));
+        settings.setCompression(arguments.getFlag("compression"));
+        settings.setProgressive(arguments.getFlag("progressive"));
+        settings.setAdaptiveRate(arguments.getFlag("adaptive"));
+        if (arguments.has("gate")) {
+            settings.setGating(true);
+            settings.setGateTolerance(arguments.getInt("gate", 10));
+            settings.setGateChangedPerMille(arguments.getInt("gate-changed", 5));
+            settings.setHeartbeatInterval(arguments.getInt("heartbeat", 1000));
+        }
+        if (arguments.has("preview")) {
+            settings.setDualChannel(true);
+            settings.setPreviewInterval(arguments.getInt("preview", 0));
+            settings.setRadiometricInterval(arguments.getInt("radiometric", 1000));
+        }
+        if (arguments.has("analytics")) {
+            settings.setAnalytics(true);
+            settings.setAnalyticsThreshold(arguments.getInt("analytics", Integer.MAX_VALUE));
+        }
+        return settings;
+    }
+
+    /**
+     * stream the source until it ends or the time is up
+     * @param seconds time to stream, 0 to stream until the source ends
+     * @param intervalMillis time between two reports
+     */
+    public void run(FrameSource source, StreamSettings settings, int seconds, int intervalMillis)
+            throws IOException, InterruptedException {
+        final StartupTimer timer = new StartupTimer();
+        startupTimer = timer;
+        ConnectionManager manager = null;
+        FrameServer server = null;
+        if (settings.isServerMode()) {
+            server = settings.createFrameServer(new FrameServer.Listener() {
+                @Override
+                public void onSubscriberConnected(Subscriber subscriber) {
+                    System.out.println("subscriber connected: " + subscriber);
+                }
+
+                @Override
+                public void onSubscriberDisconnected(Subscriber subscriber, IOException e) {
+                    System.out.println("subscriber disconnected: " + subscriber + (e != null ? " " + e : ""));
+                }
+
+                @Override
+                public void onServerFailed(IOException e) {
+                    System.out.println("failed to listen: " + e);
+                }
+            });
+            queue = server.getQueue();
+            server.start();
+        } else {
+            manager = settings.createConnectionManager(new ConnectionManager.Listener() {
+                @Override
+                public void onStateChanged(ConnectionManager.State state) {
+                    System.out.println("connection " + state);
+                }
+
+                @Override
+                public void onConnected(int attempts, long recoverMillis) {
+                    System.out.println("connected after " + attempts + " attempts in " + recoverMillis + "ms");
+                    timer.mark("connected", System.nanoTime());
+                }
+
+                @Override
+                public void onConnectionFailed(IOException e) {
+                    System.out.println("connection failed: " + e);
+                }
+            });
+            queue = manager.getQueue();
+            manager.start();
+        }
+
+        StreamMetrics metrics = server != null ? server.getBroadcaster().getMetrics() : manager.getMetrics();
+        long end = seconds > 0 ? System.currentTimeMillis() + seconds * 1000L : Long.MAX_VALUE;
+        timer.begin("sourceStart");
+        source.start(this);
+        timer.end("sourceStart");
+        try {
+            while (sourceRunning && System.currentTimeMillis() < end) {
+                Thread.sleep(Math.min(intervalMillis, Math.max(1, end - System.currentTimeMillis())));
+                if (startupTimer != null && metrics.getFirstWriteNanos() != 0) {
+                    timer.mark("firstFrameOnWire", metrics.getFirstWriteNanos());
+                    System.out.println("start: " + timer);
+                    startupTimer = null;
+                }
+                System.out.println(metrics);
+                System.out.println((server != null ? server : manager) + " " + source);
+            }
+        } finally {
+            source.stop();
+            if (manager != null)
+                manager.shutdown();
+            if (server != null)
+                server.shutdown();
+        }
+        System.out.println("queue: " + queue + " lost=" + lostFrames);
+    }
+
+    @Override
+    public void onFrame(int[] pixels, int width, int height) {
+        StartupTimer timer = startupTimer;
+        if (timer != null)
+            timer.mark("firstFrame", System.nanoTime());
+        try {
+            //copy the frame to the queue like the camera callback, the sender threads take it from there
+            queue.offer(pixels, width, height);
+        } catch (InterruptedException e) {
+            lostFrames++;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onSourceEnded(IOException e) {
+        System.out.println("source ended" + (e != null ? ": " + e : ""));
+        sourceRunning = false;
+    }
+}
@@ -0,0 +1,224 @@
+package thermapp.sdk.sample.tools;
+
+import thermapp.sdk.sample.stream.ControlReader;
+import thermapp.sdk.sample.stream.Frame;
+import thermapp.sdk.sample.stream.FrameBuffer;
+import thermapp.sdk.sample.stream.FrameCodecs;
+import thermapp.sdk.sample.stream.FrameQueue;
+import thermapp.sdk.sample.stream.FrameSerializer;
+import thermapp.sdk.sample.stream.OverflowPolicy;
+import thermapp.sdk.sample.stream.Pacer;
+import thermapp.sdk.sample.stream.Region;
+import thermapp.sdk.sample.stream.SnappyStage;
+import thermapp.sdk.sample.stream.SyntheticFrameSource;
+import thermapp.sdk.sample.stream.Transport;
+import thermapp.sdk.sample.stream.UdpFragmenter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+/**
+ * impersonates any number of senders streaming synthetic frames to a receiver, for capacity planning.
+ *
+ * every sender runs on its own thread at the given resolution and frame rate, and goes through the
+ * same queue, codec, compression and fragmentation as the app, or writes the legacy stream of the
+ * first version of the app. a frame that is not ready when the next one is due is skipped and
+ * counted as a gap. it prints frames/s, MB/s, encode times, latency and gaps every interval.
+ *
+ * build it like the {@link StreamReceiver} and run:
+ * <pre>
+ * java -cp out:libs/snappy-java-1.1.1.7-SNAPSHOT.jar thermapp.sdk.sample.tools.LoadGenerator --senders 8 --fps 25
+ * </pre>
+ * options: --host, --port, --senders, --width, --height, --fps, --seconds (0 runs forever),
+ * --encoding (RAW32, FIXED16, DELTA or LEGACY), --scale, --keyframes, --compression,
+ * --transport (TCP or UDP), --mtu, --interval (report interval in ms)
+ */
+public class LoadGenerator {
+    //counters of all the senders
+    private final ThroughputStats stats = new ThroughputStats("encode");
+    //command line options
+    private final Arguments arguments;
+    //false once the generator was asked to stop
+    private volatile boolean running = true;
+
+    public LoadGenerator(Arguments arguments) {
+        this.arguments = arguments;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Arguments arguments = new Arguments(args);
+        LoadGenerator generator = new LoadGenerator(arguments);
+        generator.stats.startReporting(arguments.getInt("interval", 1000));
+
+        int senders = arguments.getInt("senders", 1);
+        Thread[] threads = new Thread[senders];
+        for (int i = 0; i < senders; i++) {
+            threads[i] = generator.createSender(i);
+            threads[i].start();
+        }
+
+        int seconds = arguments.getInt("seconds", 0);
+        if (seconds > 0) {
+            Thread.sleep(seconds * 1000L);
+            generator.running = false;
+        }
+        for (Thread thread : threads)
+            thread.join();
+        System.out.println(generator.stats.summary());
+    }
+
+    private Thread createSender(final int index) {
+        return new Thread("Sender" + index) {
+            @Override
+            public void run() {
+                stats.onStreamOpened();
+                try {
+                    if ("LEGACY".equals(arguments.getString("encoding", "RAW32")))
+                        sendLegacy(index);
+                    else
+                        send(index);
+                } catch (IOException e) {
+                    System.err.println("sender " + index + " failed: " + e);
+                } catch (InterruptedException e) {
+                    //stopped
+                } finally {
+                    stats.onStreamClosed();
+                }
+            }
+        };
+    }
+
+    /**
+     * stream {@link thermapp.sdk.sample.stream.WireProtocol} messages like the app does
+     */
+    private void send(int index) throws IOException, InterruptedException {
+        int width = arguments.getInt("width", 384);
+        int height = arguments.getInt("height", 288);
+        InetSocketAddress address = new InetSocketAddress(arguments.getString("host", "127.0.0.1"),
+                arguments.getInt("port", 31113));
+
+        SnappyStage snappy = arguments.getFlag("compression") && SnappyStage.isAvailable() ? new SnappyStage() : null;
+        final FrameSerializer serializer = new FrameSerializer(FrameCodecs.create(arguments.getString("encoding", "RAW32"),
+                arguments.getInt("scale", 1), arguments.getInt("keyframes", 30)), snappy);
+
+        WritableByteChannel channel;
+        if (Transport.parse(arguments.getString("transport", null), Transport.TCP) == Transport.UDP) {
+            DatagramChannel datagramChannel = DatagramChannel.open();
+            datagramChannel.connect(address);
+            channel = new UdpFragmenter(datagramChannel, arguments.getInt("mtu", 1500));
+        } else {
+            SocketChannel socketChannel = SocketChannel.open(address);
+            socketChannel.socket().setTcpNoDelay(true);
+            new ControlReader(Channels.newInputStream(socketChannel), new ControlReader.Listener() {
+                @Override
+                public void onHandshake(int capabilities) {
+                    serializer.setAcceptedCapabilities(capabilities);
+                }
+
+                @Override
+                public void onStatsRequest() {
+                    //the load generator reports its own stats
+                }
+
+                @Override
+                public void onRegion(Region region) {
+                    //the load generator always sends whole frames
+                }
+
+                @Override
+                public void onFrameRequest() {
+                    //the load generator sends every frame
+                }
+
+                @Override
+                public void onPing(long originateMicros, long receiveMicros) {
+                    //not answered, only the sender thread writes to the connection
+                }
+            }).start();
+            channel = socketChannel;
+        }
+
+        //the queue stamps the sequence numbers and capture times like the camera callback does
+        FrameQueue queue = new FrameQueue(1, OverflowPolicy.DROP_OLDEST);
+        queue.open();
+        long sessionId = new Random().nextLong();
+        write(channel, serializer, serializer.serializeHandshake(sessionId, serializer.getCapabilities(), 0));
+
+        SyntheticFrameSource frames = new SyntheticFrameSource(width, height, 0, index);
+        Pacer pacer = new Pacer(arguments.getInt("fps", 25));
+        try {
+            while (running) {
+                stats.onGap(pacer.await());
+                queue.offer(frames.next(), width, height);
+                Frame frame = queue.take();
+                try {
+                    long start = System.nanoTime();
+                    FrameBuffer buffer = serializer.serialize(frame);
+                    long encodeNanos = System.nanoTime() - start;
+                    write(channel, serializer, buffer);
+                    stats.onFrame(encodeNanos, System.currentTimeMillis() - frame.getTimestamp());
+                } finally {
+                    queue.release(frame, true);
+                }
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * stream the legacy format: width and height once, then every frame as raw little endian ints
+     */
+    private void sendLegacy(int index) throws IOException, InterruptedException {
+        int width = arguments.getInt("width", 384);
+        int height = arguments.getInt("height", 288);
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(arguments.getString("host", "127.0.0.1"),
+                arguments.getInt("port", 31113)));
+
+        ByteBuffer bytes = ByteBuffer.allocateDirect(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(width).putInt(height).flip();
+        stats.onBytes(bytes.remaining());
+        writeFully(channel, bytes);
+
+        SyntheticFrameSource frames = new SyntheticFrameSource(width, height, 0, index);
+        Pacer pacer = new Pacer(arguments.getInt("fps", 25));
+        try {
+            while (running) {
+                stats.onGap(pacer.await());
+                int[] pixels = frames.next();
+                long capture = System.currentTimeMillis();
+                long start = System.nanoTime();
+                bytes.clear();
+                bytes.asIntBuffer().put(pixels);
+                long encodeNanos = System.nanoTime() - start;
+                stats.onBytes(bytes.remaining());
+                writeFully(channel, bytes);
+                stats.onFrame(encodeNanos, System.currentTimeMillis() - capture);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void write(WritableByteChannel channel, FrameSerializer serializer, FrameBuffer buffer)
+            throws IOException {
+        try {
+            stats.onBytes(buffer.bytes().remaining());
+            writeFully(channel, buffer.bytes());
+        } finally {
+            serializer.release(buffer);
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+}
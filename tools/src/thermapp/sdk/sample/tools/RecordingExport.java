@@ -0,0 +1,71 @@
+package thermapp.sdk.sample.tools;
+
+import thermapp.sdk.sample.stream.FrameCodecs;
+import thermapp.sdk.sample.stream.FrameRing;
+import thermapp.sdk.sample.stream.FrameSerializer;
+import thermapp.sdk.sample.stream.SnappyStage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * exports a time range of a recording ring file pulled from the device into a stream file.
+ *
+ * the stream file holds the same {@link thermapp.sdk.sample.stream.WireProtocol} messages a receiver
+ * gets, a handshake then a frame message per frame with its capture timestamp, and can be decoded
+ * with StreamReceiver --file. pull the ring file and export the last minute, e.g.:
+ * <pre>
+ * adb pull /sdcard/Android/data/thermapp.sdk.sample/files/recording.ring
+ * java -cp out:libs/snappy-java-1.1.1.7-SNAPSHOT.jar thermapp.sdk.sample.tools.RecordingExport --ring recording.ring --last 60000 --out last-minute.thrm
+ * </pre>
+ * options: --ring (the ring file), --out (the stream file), --from and --to (milliseconds since epoch,
+ * the whole recording by default), --last (milliseconds before the newest frame, instead of --from),
+ * --encoding (RAW32, FIXED16 or DELTA, DELTA by default), --scale, --keyframes, --compression
+ */
+public class RecordingExport {
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+        if (!arguments.has("ring") || !arguments.has("out")) {
+            System.err.println("usage: RecordingExport --ring file --out file [--from ms] [--to ms] [--last ms]"
+                    + " [--encoding DELTA] [--scale 1] [--keyframes 30] [--compression]");
+            System.exit(1);
+        }
+
+        FrameRing ring = FrameRing.openReadOnly(new File(arguments.getString("ring", null)));
+        try {
+            if (ring.size() == 0) {
+                System.out.println("the recording is empty");
+                return;
+            }
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            long first = ring.getTimestamp(ring.getFirstEntry());
+            long last = ring.getTimestamp(ring.getNextEntry() - 1);
+            System.out.println("recording: " + ring + " from " + format.format(new Date(first))
+                    + " to " + format.format(new Date(last)));
+
+            long from = arguments.has("last") ? last - arguments.getLong("last", 0)
+                    : arguments.getLong("from", Long.MIN_VALUE);
+            long to = arguments.getLong("to", Long.MAX_VALUE);
+
+            SnappyStage snappy = arguments.getFlag("compression") && SnappyStage.isAvailable() ? new SnappyStage() : null;
+            FrameSerializer serializer = new FrameSerializer(FrameCodecs.create(arguments.getString("encoding", "DELTA"),
+                    arguments.getInt("scale", 1), arguments.getInt("keyframes", 30)), snappy);
+            serializer.setAcceptedCapabilities(serializer.getCapabilities());
+
+            FileOutputStream out = new FileOutputStream(arguments.getString("out", null));
+            try {
+                FileChannel channel = out.getChannel();
+                long count = ring.export(from, to, serializer, channel);
+                System.out.println("exported " + count + " frames, " + channel.size() + " bytes");
+            } finally {
+                out.close();
+            }
+        } finally {
+            ring.close();
+        }
+    }
+}
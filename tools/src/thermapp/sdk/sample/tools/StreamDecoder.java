@@ -0,0 +1,333 @@
+package thermapp.sdk.sample.tools;
+
+import thermapp.sdk.sample.stream.ClockSync;
+import thermapp.sdk.sample.stream.FrameCodec;
+import thermapp.sdk.sample.stream.FrameCodecs;
+import thermapp.sdk.sample.stream.FrameStatistics;
+import thermapp.sdk.sample.stream.MessageHeader;
+import thermapp.sdk.sample.stream.PreviewCodec;
+import thermapp.sdk.sample.stream.Pyramid;
+import thermapp.sdk.sample.stream.SnappyStage;
+import thermapp.sdk.sample.stream.TileWorkers;
+import thermapp.sdk.sample.stream.WireProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * decodes the messages of one sender, whatever encoding and compression it uses,
+ * and counts the frames, gaps and decode times in the stats.
+ * the codecs keep state between frames, so every sender needs its own decoder, and the backfilled
+ * frames sent after a reconnect have codecs of their own. in analytics mode the statistics records
+ * carry the sequence numbers and the full frames are the exception, both count for the gaps.
+ * the frames suppressed because they did not change are not gaps, the heartbeats tell how many there were.
+ * in progressive mode the frames are rebuilt from their levels, see {@link Pyramid}. in dual channel mode
+ * the sender skips the frames neither channel is due for, so a preview stands for the frames since the
+ * previous message, and both channels are counted apart.
+ * the pongs answering the pings of the receiver synchronize the clock of the decoder with the sender, the age
+ * and latency of the frames are then on the sender clock. the capture timestamps are in milliseconds, so an age
+ * is up to a millisecond too old
+ */
+public class StreamDecoder {
+    //counters of the tool
+    private final ThroughputStats stats;
+    //decodes the tiles of tiled frames in parallel, null to decode them on the reading thread
+    private final TileWorkers workers;
+    //a codec per encoding, created when the encoding is first seen
+    private final FrameCodec[] codecs = new FrameCodec[3];
+    //a codec per encoding for the backfilled frames
+    private final FrameCodec[] backfillCodecs = new FrameCodec[3];
+    //decompresses the compressed payloads, null if snappy is not available
+    private final SnappyStage snappy = SnappyStage.isAvailable() ? new SnappyStage() : null;
+    //temperatures of the last decoded frame
+    private int[] pixels = new int[0];
+    //last statistics record received in analytics mode
+    private final FrameStatistics statistics = new FrameStatistics(Integer.MAX_VALUE);
+    //a codec per encoding for the levels of progressive mode
+    private final FrameCodec[] levelCodecs = new FrameCodec[3];
+    //rebuilds the frames from their levels in progressive mode
+    private final Pyramid pyramid = new Pyramid();
+    //temperatures or residuals of the last decoded level
+    private int[] levelValues = new int[0];
+    //levels of the last preview in dual channel mode, 0 for the coldest and 255 for the hottest pixel
+    private byte[] preview = new byte[0];
+    //offset of the clock of the sender, from the pongs
+    private final ClockSync clock = new ClockSync();
+
+    //session id of the last handshake
+    private long sessionId;
+    //true once a handshake or frame was seen, so gaps can be detected
+    private boolean hasLastSequence;
+    //sequence number of the last frame
+    private int lastSequence;
+
+    public StreamDecoder(ThroughputStats stats) {
+        this(stats, null);
+    }
+
+    /**
+     * @param stats counters of the tool
+     * @param workers decodes the tiles of tiled frames in parallel, may be shared by decoders, null for none
+     */
+    public StreamDecoder(ThroughputStats stats, TileWorkers workers) {
+        this.stats = stats;
+        this.workers = workers;
+    }
+
+    /**
+     * @return the WireProtocol.CAPABILITY_ constants this decoder accepts
+     */
+    public int getCapabilities() {
+        return (snappy != null ? WireProtocol.CAPABILITY_SNAPPY : 0) | WireProtocol.CAPABILITY_TILES
+                | WireProtocol.CAPABILITY_PROGRESSIVE;
+    }
+
+    /**
+     * decode a message
+     * @param header the header of the message
+     * @param payload heap buffer holding the payload from its position
+     */
+    public void onMessage(MessageHeader header, ByteBuffer payload) {
+        long receiptMicros = ClockSync.nowMicros();
+        stats.onBytes(WireProtocol.HEADER_SIZE + header.getPayloadLength());
+
+        if (header.getType() == WireProtocol.TYPE_HANDSHAKE) {
+            long handshakeSession = payload.getLong(payload.position());
+            if (!hasLastSequence || handshakeSession != sessionId) {
+                hasLastSequence = true;
+                lastSequence = header.getSequence() - 1;
+            }
+            sessionId = handshakeSession;
+            return;
+        }
+        if (header.getType() == WireProtocol.TYPE_PONG) {
+            if (header.getPayloadLength() < WireProtocol.PONG_LENGTH) {
+                stats.onFailure();
+                return;
+            }
+            int position = payload.position();
+            if (clock.onPong(payload.getLong(position), payload.getLong(position + 8), payload.getLong(position + 16),
+                    receiptMicros))
+                stats.onClock(clock.getRoundTripMicros(), clock.getOffsetMicros());
+            return;
+        }
+        if (header.getType() == WireProtocol.TYPE_BACKFILL) {
+            if (decode(header, payload, backfillCodecs))
+                stats.onBackfill();
+            else
+                stats.onFailure();
+            return;
+        }
+        if (header.getType() == WireProtocol.TYPE_ANALYTICS) {
+            onSequence(header.getSequence());
+            onAge(header, receiptMicros);
+            if (statistics.read(payload, payload.position(), header.getPayloadLength()))
+                stats.onStatistics();
+            else
+                stats.onFailure();
+            return;
+        }
+        if (header.getType() == WireProtocol.TYPE_HEARTBEAT) {
+            if (header.getPayloadLength() < WireProtocol.HEARTBEAT_LENGTH) {
+                stats.onFailure();
+                return;
+            }
+            int suppressed = payload.getInt(payload.position());
+            onSequence(header.getSequence(), suppressed);
+            stats.onHeartbeat(suppressed);
+            return;
+        }
+        if (header.getType() == WireProtocol.TYPE_PREVIEW) {
+            onAge(header, receiptMicros);
+            onPreview(header, payload);
+            return;
+        }
+        if (header.getType() == WireProtocol.TYPE_LEVEL) {
+            stats.onFrameBytes(WireProtocol.HEADER_SIZE + header.getPayloadLength());
+            onLevel(header, payload, receiptMicros);
+            return;
+        }
+        if (header.getType() != WireProtocol.TYPE_FRAME)
+            return;
+
+        stats.onFrameBytes(WireProtocol.HEADER_SIZE + header.getPayloadLength());
+        onSequence(header.getSequence());
+        onAge(header, receiptMicros);
+
+        long start = System.nanoTime();
+        if (decode(header, payload, codecs))
+            stats.onFrame(System.nanoTime() - start, getLatencyMillis(header));
+        else
+            stats.onFailure();
+    }
+
+    /**
+     * decode the preview of a frame in dual channel mode, the frame may follow with the same sequence number
+     */
+    private void onPreview(MessageHeader header, ByteBuffer payload) {
+        onSequence(header.getSequence(), header.getSequence() - lastSequence);
+        int length = header.getWidth() * header.getHeight();
+        if (preview.length < length)
+            preview = new byte[length];
+        if (PreviewCodec.decode(payload, header.getPayloadLength(), preview, length))
+            stats.onPreview(WireProtocol.HEADER_SIZE + header.getPayloadLength(),
+                    getLatencyMillis(header));
+        else
+            stats.onFailure();
+    }
+
+    /**
+     * decode a level of a frame in progressive mode and rebuild the frame up to it.
+     * the frame counts once its coarsest level arrived, with the latency of that level, and the latency of
+     * its last level is counted apart, its age is that of its coarsest level. a frame whose last level never
+     * arrived was preempted by a newer one
+     */
+    private void onLevel(MessageHeader header, ByteBuffer payload, long receiptMicros) {
+        long start = System.nanoTime();
+        int position = payload.position();
+        int level;
+        int levelCount;
+        int length = header.getWidth() * header.getHeight();
+        if (levelValues.length < length)
+            levelValues = new int[length];
+        try {
+            if (header.hasFlag(WireProtocol.FLAG_COMPRESSED)) {
+                if (snappy == null) {
+                    stats.onFailure();
+                    return;
+                }
+                payload = snappy.decompress(payload);
+                position = payload.position();
+            }
+            level = payload.get(position) & 0xFF;
+            levelCount = payload.get(position + 1) & 0xFF;
+            int encoding = header.getEncoding();
+            if (levelCount != Pyramid.LEVEL_COUNT || encoding < 0 || encoding >= levelCodecs.length) {
+                stats.onFailure();
+                return;
+            }
+            if (levelCodecs[encoding] == null)
+                levelCodecs[encoding] = FrameCodecs.forEncoding(encoding);
+            payload.position(position + WireProtocol.LEVEL_HEADER_LENGTH);
+            if (!levelCodecs[encoding].decode(header, payload, levelValues)) {
+                stats.onFailure();
+                return;
+            }
+        } catch (IOException e) {
+            stats.onFailure();
+            return;
+        } catch (RuntimeException e) {
+            //a corrupt or truncated payload that passed the header check
+            stats.onFailure();
+            return;
+        }
+
+        if (level == 0) {
+            if (pyramid.getLevel() >= 0 && pyramid.getLevel() < levelCount - 1)
+                stats.onPreempted();
+            onSequence(header.getSequence());
+            onAge(header, receiptMicros);
+        }
+        if (!pyramid.apply(header.getSequence(), level, levelValues, header.getWidth(), header.getHeight())) {
+            stats.onFailure();
+            return;
+        }
+
+        long latencyMillis = getLatencyMillis(header);
+        if (level == 0)
+            stats.onFrame(System.nanoTime() - start, latencyMillis);
+        if (level == levelCount - 1) {
+            stats.onFullFrame(latencyMillis);
+            if (pixels.length < length)
+                pixels = new int[length];
+            System.arraycopy(pyramid.getImage(), 0, pixels, 0, length);
+        }
+    }
+
+    /**
+     * count the age of a frame at its receipt, from its capture on the sender clock
+     */
+    private void onAge(MessageHeader header, long receiptMicros) {
+        stats.onAge(clock.toSenderMicros(receiptMicros) - header.getTimestamp() * 1000);
+    }
+
+    /**
+     * @return the time from the capture of a frame to now, on the sender clock
+     */
+    private long getLatencyMillis(MessageHeader header) {
+        return clock.toSenderMicros(ClockSync.nowMicros()) / 1000 - header.getTimestamp();
+    }
+
+    /**
+     * count the frames missing before a sequence number, a frame sent after its statistics is not a gap
+     */
+    private void onSequence(int sequence) {
+        onSequence(sequence, 1);
+    }
+
+    /**
+     * count the frames missing before a sequence number
+     * @param accounted number of frames up to the sequence number the message stands for,
+     * 1 for a frame, the suppressed frames for a heartbeat
+     */
+    private void onSequence(int sequence, int accounted) {
+        if (hasLastSequence && sequence - lastSequence > accounted)
+            stats.onGap(sequence - lastSequence - accounted);
+        hasLastSequence = true;
+        lastSequence = sequence;
+    }
+
+    /**
+     * @return the last statistics record received in analytics mode
+     */
+    public FrameStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * @return the levels of the last preview in dual channel mode
+     */
+    public byte[] getPreview() {
+        return preview;
+    }
+
+    /**
+     * @return the temperatures of the last decoded frame
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return the offset of the clock of the sender, from the pongs
+     */
+    public ClockSync getClock() {
+        return clock;
+    }
+
+    private boolean decode(MessageHeader header, ByteBuffer payload, FrameCodec[] codecs) {
+        int encoding = header.getEncoding();
+        if (encoding < 0 || encoding >= codecs.length)
+            return false;
+        if (codecs[encoding] == null)
+            codecs[encoding] = FrameCodecs.forEncoding(encoding, workers);
+
+        int length = header.getWidth() * header.getHeight();
+        if (pixels.length < length)
+            pixels = new int[length];
+
+        try {
+            if (header.hasFlag(WireProtocol.FLAG_COMPRESSED)) {
+                if (snappy == null)
+                    return false;
+                payload = snappy.decompress(payload);
+            }
+            return codecs[encoding].decode(header, payload, pixels);
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            //a corrupt payload that passed the header check
+            return false;
+        }
+    }
+}
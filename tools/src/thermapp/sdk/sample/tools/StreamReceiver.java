@@ -0,0 +1,409 @@
+package thermapp.sdk.sample.tools;
+
+import thermapp.sdk.sample.stream.ClockSync;
+import thermapp.sdk.sample.stream.FragmentAssembler;
+import thermapp.sdk.sample.stream.FrameSerializer;
+import thermapp.sdk.sample.stream.MessageHeader;
+import thermapp.sdk.sample.stream.MessageReader;
+import thermapp.sdk.sample.stream.Region;
+import thermapp.sdk.sample.stream.TileWorkers;
+import thermapp.sdk.sample.stream.WireProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * reference receiver of the frame stream, for testing senders and capacity planning without a device.
+ *
+ * it accepts any number of tcp senders, receives udp senders, or subscribes to a phone in server mode,
+ * and decodes every frame: the legacy stream of the first version of the app (width and height as two
+ * little endian ints, then every frame as raw little endian ints) as well as every {@link WireProtocol}
+ * encoding, compressed or not. it prints frames/s, MB/s, decode times, latency and gaps every interval.
+ *
+ * build and run from the repository root, with the snappy jar for compressed streams:
+ * <pre>
+ * javac -d out -cp libs/snappy-java-1.1.1.7-SNAPSHOT.jar src/thermapp/sdk/sample/stream/*.java tools/src/thermapp/sdk/sample/tools/*.java
+ * java -cp out:libs/snappy-java-1.1.1.7-SNAPSHOT.jar thermapp.sdk.sample.tools.StreamReceiver --port 31113 --udp-port 31113
+ * </pre>
+ * options: --port (tcp port to listen on, 0 to not listen), --udp-port (udp port, 0 by default),
+ * --connect host:port (subscribe to a phone in server mode), --interval (report interval in ms),
+ * --stats (interval in ms to ask tcp senders for their pipeline metrics, 0 by default),
+ * --file path (decode a stream saved to a file, e.g. a recording exported by {@link RecordingExport}),
+ * --region x,y,width,height and --binning (1, 2 or 4) to ask tcp senders for a part of the sensor only,
+ * --frames (interval in ms to ask tcp senders in analytics or dual channel mode for a full frame, 0 by default),
+ * --decode-threads (threads decoding the tiles of tiled frames, shared by all the senders, 1 by default),
+ * --ping (interval in ms to ping tcp senders to synchronize the clocks, 1000 by default, 0 to never ping).
+ * with the clocks synchronized the age of the frames, from capture to receipt, is measured across devices
+ */
+public class StreamReceiver {
+    //largest udp datagram
+    private static final int MAX_DATAGRAM = 65536;
+    //number of messages assembled at the same time per udp sender
+    private static final int ASSEMBLER_SLOTS = 4;
+
+    //counters of all the streams
+    private final ThroughputStats stats = new ThroughputStats("decode");
+    //interval to ask tcp senders for their metrics, 0 to never ask
+    private final int statsInterval;
+    //region to ask tcp senders for, null to receive what they send
+    private final Region region;
+    //interval to ask tcp senders in analytics or dual channel mode for a full frame, 0 to never ask
+    private final int frameInterval;
+    //decodes the tiles of tiled frames in parallel, null to decode them on the reading threads
+    private final TileWorkers workers;
+    //interval to ping tcp senders to synchronize the clocks, 0 to never ping
+    private final int pingInterval;
+
+    /**
+     * @param statsInterval interval to ask tcp senders for their metrics, 0 to never ask
+     * @param region region to ask tcp senders for, null to receive what they send
+     * @param frameInterval interval to ask tcp senders in analytics or dual channel mode for a full frame, 0 to never ask
+     * @param workers decodes the tiles of tiled frames in parallel, null to decode them on the reading threads
+     * @param pingInterval interval to ping tcp senders to synchronize the clocks, 0 to never ping
+     */
+    public StreamReceiver(int statsInterval, Region region, int frameInterval, TileWorkers workers, int pingInterval) {
+        this.statsInterval = statsInterval;
+        this.region = region;
+        this.frameInterval = frameInterval;
+        this.workers = workers;
+        this.pingInterval = pingInterval;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Arguments arguments = new Arguments(args);
+        Region region = null;
+        if (arguments.has("region") || arguments.has("binning")) {
+            String[] bounds = arguments.getString("region", "0,0,0,0").split(",");
+            region = new Region(Integer.parseInt(bounds[0]), Integer.parseInt(bounds[1]),
+                    Integer.parseInt(bounds[2]), Integer.parseInt(bounds[3]), arguments.getInt("binning", 1));
+        }
+        int decodeThreads = arguments.getInt("decode-threads", 1);
+        final StreamReceiver receiver = new StreamReceiver(arguments.getInt("stats", 0), region,
+                arguments.getInt("frames", 0), decodeThreads > 1 ? new TileWorkers(decodeThreads) : null,
+                arguments.getInt("ping", 1000));
+        receiver.stats.startReporting(arguments.getInt("interval", 1000));
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                System.out.println(receiver.stats.summary());
+            }
+        });
+
+        final int udpPort = arguments.getInt("udp-port", 0);
+        if (udpPort > 0) {
+            new Thread("UdpReceiver") {
+                @Override
+                public void run() {
+                    try {
+                        receiver.receiveUdp(udpPort);
+                    } catch (IOException e) {
+                        System.err.println("udp receiver failed: " + e);
+                    }
+                }
+            }.start();
+        }
+
+        if (arguments.has("file")) {
+            receiver.receive(new File(arguments.getString("file", null)));
+            return;
+        }
+
+        if (arguments.has("connect")) {
+            String address = arguments.getString("connect", null);
+            int colon = address.lastIndexOf(':');
+            Socket socket = new Socket(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+            receiver.receive(socket);
+            return;
+        }
+
+        int port = arguments.getInt("port", 31113);
+        if (port > 0)
+            receiver.listen(port);
+    }
+
+    /**
+     * accept tcp senders forever, each one is received on its own thread
+     */
+    public void listen(int port) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(port);
+        System.out.println("listening for tcp senders on port " + port);
+        while (true) {
+            final Socket socket = serverSocket.accept();
+            new Thread("TcpReceiver") {
+                @Override
+                public void run() {
+                    receive(socket);
+                }
+            }.start();
+        }
+    }
+
+    /**
+     * receive a tcp stream until it ends
+     */
+    public void receive(Socket socket) {
+        System.out.println("stream opened: " + socket.getRemoteSocketAddress());
+        stats.onStreamOpened();
+        try {
+            socket.setReceiveBufferSize(1 << 20);
+            PushbackInputStream in = new PushbackInputStream(
+                    new BufferedInputStream(socket.getInputStream(), 1 << 16), 4);
+
+            //the new protocol starts with a header, the legacy stream with the width
+            byte[] first = new byte[4];
+            readFully(in, first, first.length);
+            in.unread(first);
+            int magic = ByteBuffer.wrap(first).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            if (magic == WireProtocol.MAGIC) {
+                OutputStream out = socket.getOutputStream();
+                //pinged once the handshake is arriving, so no pong comes before it. a file or udp stream has no way back
+                if (pingInterval > 0)
+                    sendPings(out, pingInterval);
+                receiveMessages(in, out);
+            } else {
+                receiveLegacy(in);
+            }
+        } catch (EOFException e) {
+            //the sender went away
+        } catch (IOException e) {
+            System.out.println("stream failed: " + e);
+        } finally {
+            stats.onStreamClosed();
+            System.out.println("stream closed: " + socket.getRemoteSocketAddress());
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //nothing left to do with it
+            }
+        }
+    }
+
+    /**
+     * decode a stream of {@link WireProtocol} messages saved to a file
+     */
+    public void receive(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        stats.onStreamOpened();
+        try {
+            receiveMessages(in, new ByteArrayOutputStream());
+        } finally {
+            stats.onStreamClosed();
+            in.close();
+        }
+    }
+
+    /**
+     * receive a stream of {@link WireProtocol} messages, answering the handshakes with the accepted capabilities
+     * and printing the metrics the sender reports
+     */
+    private void receiveMessages(InputStream in, final OutputStream out) throws IOException {
+        if (statsInterval > 0)
+            sendPeriodically(out, WireProtocol.TYPE_STATS_REQUEST, statsInterval);
+        if (frameInterval > 0)
+            sendPeriodically(out, WireProtocol.TYPE_FRAME_REQUEST, frameInterval);
+
+        MessageReader reader = new MessageReader(in);
+        StreamDecoder decoder = new StreamDecoder(stats, workers);
+        boolean thresholdReached = false;
+        MessageHeader header;
+        while ((header = reader.next()) != null) {
+            if (header.getType() == WireProtocol.TYPE_HANDSHAKE) {
+                synchronized (out) {
+                    out.write(handshakeReply(decoder.getCapabilities()));
+                    if (region != null)
+                        out.write(FrameSerializer.serializeRegion(region, 0).array());
+                }
+            } else if (header.getType() == WireProtocol.TYPE_REGION) {
+                ByteBuffer payload = reader.payload();
+                System.out.println("sender region: " + Region.read(payload, payload.position()) + " from frame "
+                        + header.getSequence() + ", " + header.getWidth() + "x" + header.getHeight() + " sent");
+            } else if (header.getType() == WireProtocol.TYPE_STATS) {
+                ByteBuffer payload = reader.payload();
+                System.out.println("sender metrics: " + new String(payload.array(),
+                        payload.arrayOffset() + payload.position(), header.getPayloadLength(), "UTF-8"));
+            }
+            decoder.onMessage(header, reader.payload());
+
+            if (header.getType() == WireProtocol.TYPE_ANALYTICS
+                    && decoder.getStatistics().isThresholdReached() != thresholdReached) {
+                thresholdReached = !thresholdReached;
+                System.out.println((thresholdReached ? "threshold reached at frame " : "threshold cleared at frame ")
+                        + header.getSequence() + ": " + decoder.getStatistics());
+            }
+        }
+    }
+
+    /**
+     * send a request without payload to the sender every interval until the connection fails
+     * @param type WireProtocol.TYPE_ constant of the request
+     */
+    private void sendPeriodically(final OutputStream out, int type, final int interval) {
+        final byte[] request = emptyMessage(type);
+        Thread thread = new Thread("Requester") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(interval);
+                        synchronized (out) {
+                            out.write(request);
+                            out.flush();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    //stopped
+                } catch (IOException e) {
+                    //the connection ended, the receiving thread reports it
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * ping the sender every interval until the connection fails, the pongs synchronize the clock of the decoder
+     */
+    private void sendPings(final OutputStream out, final int interval) {
+        Thread thread = new Thread("Pinger") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        synchronized (out) {
+                            //stamped under the lock, so the wait for another request is not taken for network delay
+                            out.write(FrameSerializer.serializePing(ClockSync.nowMicros()).array());
+                            out.flush();
+                        }
+                        Thread.sleep(interval);
+                    }
+                } catch (InterruptedException e) {
+                    //stopped
+                } catch (IOException e) {
+                    //the connection ended, the receiving thread reports it
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * receive the stream of the first version of the app, which has no sequence numbers or timestamps
+     */
+    private void receiveLegacy(InputStream in) throws IOException {
+        byte[] size = new byte[8];
+        readFully(in, size, size.length);
+        ByteBuffer sizeBuffer = ByteBuffer.wrap(size).order(ByteOrder.LITTLE_ENDIAN);
+        int width = sizeBuffer.getInt(0);
+        int height = sizeBuffer.getInt(4);
+        System.out.println("legacy stream of " + width + "x" + height + " frames");
+
+        byte[] frame = new byte[width * height * 4];
+        ByteBuffer frameBuffer = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+        int[] pixels = new int[width * height];
+        stats.onBytes(size.length);
+        while (true) {
+            readFully(in, frame, frame.length);
+            long start = System.nanoTime();
+            frameBuffer.clear();
+            frameBuffer.asIntBuffer().get(pixels);
+            stats.onFrame(System.nanoTime() - start, -1);
+            stats.onBytes(frame.length);
+        }
+    }
+
+    /**
+     * receive udp senders forever, the datagrams of every sender are assembled and decoded separately
+     */
+    public void receiveUdp(int port) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.socket().setReceiveBufferSize(8 << 20);
+        channel.socket().bind(new InetSocketAddress(port));
+        System.out.println("listening for udp senders on port " + port);
+
+        Map<SocketAddress, FragmentAssembler> assemblers = new HashMap<SocketAddress, FragmentAssembler>();
+        Map<SocketAddress, StreamDecoder> decoders = new HashMap<SocketAddress, StreamDecoder>();
+        ByteBuffer datagram = ByteBuffer.allocate(MAX_DATAGRAM);
+        MessageHeader header = new MessageHeader();
+        while (true) {
+            datagram.clear();
+            SocketAddress sender = channel.receive(datagram);
+            datagram.flip();
+
+            FragmentAssembler assembler = assemblers.get(sender);
+            if (assembler == null) {
+                System.out.println("udp stream opened: " + sender);
+                stats.onStreamOpened();
+                assembler = new FragmentAssembler(ASSEMBLER_SLOTS);
+                assemblers.put(sender, assembler);
+                decoders.put(sender, new StreamDecoder(stats, workers));
+            }
+
+            long dropped = assembler.getDroppedCount();
+            ByteBuffer message = assembler.add(datagram);
+            if (assembler.getDroppedCount() > dropped)
+                stats.onFailure();
+            if (message == null)
+                continue;
+
+            if (!WireProtocol.readHeader(message, 0, header)) {
+                stats.onFailure();
+                continue;
+            }
+            message.position(WireProtocol.HEADER_SIZE);
+            decoders.get(sender).onMessage(header, message.slice().order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * @return a handshake message accepting the given capabilities
+     */
+    private static byte[] handshakeReply(int capabilities) {
+        ByteBuffer reply = ByteBuffer.allocate(WireProtocol.HEADER_SIZE + WireProtocol.HANDSHAKE_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader().set(WireProtocol.TYPE_HANDSHAKE, WireProtocol.ENCODING_RAW32, 0, 0,
+                System.currentTimeMillis(), 0, 0, WireProtocol.HANDSHAKE_LENGTH);
+        WireProtocol.writeHeader(reply, 0, header);
+        reply.putLong(WireProtocol.HEADER_SIZE, 0);
+        reply.putInt(WireProtocol.HEADER_SIZE + 8, capabilities);
+        return reply.array();
+    }
+
+    /**
+     * @return a message of the given type without payload
+     */
+    private static byte[] emptyMessage(int type) {
+        ByteBuffer message = ByteBuffer.allocate(WireProtocol.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        MessageHeader header = new MessageHeader().set(type, WireProtocol.ENCODING_RAW32, 0, 0,
+                System.currentTimeMillis(), 0, 0, 0);
+        WireProtocol.writeHeader(message, 0, header);
+        return message.array();
+    }
+
+    private static void readFully(InputStream in, byte[] dst, int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int n = in.read(dst, read, length - read);
+            if (n < 0)
+                throw new EOFException();
+            read += n;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package thermapp.sdk.sample.tools;
+
+import thermapp.sdk.sample.stream.LatencyHistogram;
+
+/**
+ * counters shared by all the streams of a tool, printed and reset every report interval.
+ * the processing time is the decode time of the receiver or the encode time of the load generator,
+ * the latency is the time from capture to the end of the processing, in progressive mode to the first
+ * level of a frame while the full latency is the time to its last level.
+ * the age is the time from capture to the receipt of a frame, before it is processed, with the clock of
+ * the receiver corrected by the offset to the sender clock measured with pings, see ClockSync. the round
+ * trip and offset reported are those of the last pong of any stream
+ */
+public class ThroughputStats {
+    //name of the processing step in the report, e.g. "decode"
+    private final String processName;
+    //start of the tool, in nanoseconds
+    private final long startNanos = System.nanoTime();
+
+    //start of the current interval, in nanoseconds
+    private long intervalStartNanos = startNanos;
+    //frames processed in the interval
+    private long frames;
+    //bytes sent or received in the interval, headers included
+    private long bytes;
+    //total processing time of the interval
+    private long processNanos;
+    //longest processing time of the interval
+    private long maxProcessNanos;
+    //total latency of the interval, in milliseconds
+    private long latencyMillis;
+    //longest latency of the interval, in milliseconds
+    private long maxLatencyMillis;
+    //number of frames with a latency in the interval
+    private long latencyFrames;
+    //frames missing from the sequence, or not sent in time, in the interval
+    private long gaps;
+    //frames that could not be processed in the interval
+    private long failures;
+    //missed frames received after a reconnect in the interval
+    private long backfilled;
+    //statistics records received instead of frames in the interval
+    private long statistics;
+    //frames the sender suppressed because they did not change, in the interval
+    private long suppressed;
+    //heartbeats received for the suppressed frames in the interval
+    private long heartbeats;
+    //total latency of the frames received up to their last level in progressive mode, in milliseconds
+    private long fullLatencyMillis;
+    //longest latency of a frame up to its last level in progressive mode, in milliseconds
+    private long maxFullLatencyMillis;
+    //frames received up to their last level in progressive mode in the interval
+    private long fullFrames;
+    //frames whose last levels were skipped for a newer frame in progressive mode, in the interval
+    private long preempted;
+    //bytes of the frames in the interval, the radiometric channel in dual channel mode
+    private long frameBytes;
+    //previews received on the preview channel in dual channel mode, and their bytes, in the interval
+    private long previews;
+    private long previewBytes;
+    //total latency of the previews in the interval, in milliseconds
+    private long previewLatencyMillis;
+    //age of the frames when they arrived, in the interval and since the start
+    private final LatencyHistogram age = new LatencyHistogram();
+    private final LatencyHistogram totalAge = new LatencyHistogram();
+    //pongs received in the interval
+    private long pongs;
+    //longest round trip of the interval, in microseconds
+    private long maxRoundTripMicros;
+    //round trip and clock offset of the last pong, in microseconds
+    private long roundTripMicros;
+    private long offsetMicros;
+
+    //totals since the start
+    private long totalFrames;
+    private long totalBytes;
+    private long totalGaps;
+    private long totalFailures;
+    private long totalBackfilled;
+    private long totalStatistics;
+    private long totalSuppressed;
+    private long totalHeartbeats;
+    private long totalFullFrames;
+    private long totalPreempted;
+    private long totalFrameBytes;
+    private long totalPreviews;
+    private long totalPreviewBytes;
+    private long totalPongs;
+    //number of streams currently open
+    private int streams;
+
+    public ThroughputStats(String processName) {
+        this.processName = processName;
+    }
+
+    /**
+     * @param processNanos processing time of the frame
+     * @param latencyMillis time from capture to the end of the processing, negative if unknown
+     */
+    public synchronized void onFrame(long processNanos, long latencyMillis) {
+        frames++;
+        totalFrames++;
+        this.processNanos += processNanos;
+        if (processNanos > maxProcessNanos)
+            maxProcessNanos = processNanos;
+        if (latencyMillis >= 0) {
+            latencyFrames++;
+            this.latencyMillis += latencyMillis;
+            if (latencyMillis > maxLatencyMillis)
+                maxLatencyMillis = latencyMillis;
+        }
+    }
+
+    public synchronized void onBytes(long count) {
+        bytes += count;
+        totalBytes += count;
+    }
+
+    public synchronized void onGap(long missing) {
+        gaps += missing;
+        totalGaps += missing;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        totalFailures++;
+    }
+
+    /**
+     * a frame missed while disconnected was received after the reconnect
+     */
+    public synchronized void onBackfill() {
+        backfilled++;
+        totalBackfilled++;
+    }
+
+    /**
+     * the statistics of a frame were received instead of the frame
+     */
+    public synchronized void onStatistics() {
+        statistics++;
+        totalStatistics++;
+    }
+
+    /**
+     * a heartbeat was received instead of frames that did not change
+     * @param suppressedFrames number of frames it stands for
+     */
+    public synchronized void onHeartbeat(int suppressedFrames) {
+        heartbeats++;
+        totalHeartbeats++;
+        suppressed += suppressedFrames;
+        totalSuppressed += suppressedFrames;
+    }
+
+    /**
+     * the last level of a frame was received in progressive mode, the frame counted with its first level
+     * @param latencyMillis time from capture to the last level
+     */
+    public synchronized void onFullFrame(long latencyMillis) {
+        fullFrames++;
+        totalFullFrames++;
+        fullLatencyMillis += latencyMillis;
+        if (latencyMillis > maxFullLatencyMillis)
+            maxFullLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * the last levels of a frame were skipped for a newer frame in progressive mode
+     */
+    public synchronized void onPreempted() {
+        preempted++;
+        totalPreempted++;
+    }
+
+    /**
+     * a frame was received, counted apart from the previews in dual channel mode
+     * @param count bytes of the frame, header included
+     */
+    public synchronized void onFrameBytes(long count) {
+        frameBytes += count;
+        totalFrameBytes += count;
+    }
+
+    /**
+     * a preview was received on the preview channel in dual channel mode
+     * @param count bytes of the preview, header included
+     * @param latencyMillis time from capture to the preview decoded
+     */
+    public synchronized void onPreview(long count, long latencyMillis) {
+        previews++;
+        totalPreviews++;
+        previewBytes += count;
+        totalPreviewBytes += count;
+        previewLatencyMillis += latencyMillis;
+    }
+
+    /**
+     * a frame, statistics record or preview arrived
+     * @param ageMicros time from its capture to its receipt, on the sender clock, negative counts as 0
+     */
+    public synchronized void onAge(long ageMicros) {
+        age.record(ageMicros * 1000);
+        totalAge.record(ageMicros * 1000);
+    }
+
+    /**
+     * a pong synchronized the clock of the receiver with a sender
+     * @param roundTripMicros round trip of the ping
+     * @param offsetMicros the sender clock minus the receiver clock, see ClockSync
+     */
+    public synchronized void onClock(long roundTripMicros, long offsetMicros) {
+        pongs++;
+        totalPongs++;
+        this.roundTripMicros = roundTripMicros;
+        this.offsetMicros = offsetMicros;
+        if (roundTripMicros > maxRoundTripMicros)
+            maxRoundTripMicros = roundTripMicros;
+    }
+
+    public synchronized void onStreamOpened() {
+        streams++;
+    }
+
+    public synchronized void onStreamClosed() {
+        streams--;
+    }
+
+    /**
+     * @return a report of the interval since the last call, which starts a new interval
+     */
+    public synchronized String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - intervalStartNanos) / 1e9;
+        String report = String.format("%6.1fs streams=%d frames/s=%.1f MB/s=%.2f %s avg=%.0fus max=%.0fus"
+                        + " latency avg=%.1fms max=%dms gaps=%d failed=%d backfilled=%d statistics/s=%.1f"
+                        + " suppressed/s=%.1f heartbeats=%d full latency avg=%.1fms max=%dms preempted=%d"
+                        + " previews/s=%.1f preview MB/s=%.3f latency avg=%.1fms frame MB/s=%.2f"
+                        + " age p50=%.1fms p99=%.1fms max=%.1fms %s",
+                (now - startNanos) / 1e9, streams, frames / seconds, bytes / seconds / 1e6, processName,
+                frames == 0 ? 0 : processNanos / 1e3 / frames, maxProcessNanos / 1e3,
+                latencyFrames == 0 ? 0 : (double) latencyMillis / latencyFrames, maxLatencyMillis, gaps, failures,
+                backfilled, statistics / seconds, suppressed / seconds, heartbeats,
+                fullFrames == 0 ? 0 : (double) fullLatencyMillis / fullFrames, maxFullLatencyMillis, preempted,
+                previews / seconds, previewBytes / seconds / 1e6,
+                previews == 0 ? 0 : (double) previewLatencyMillis / previews, frameBytes / seconds / 1e6,
+                age.getValueAtPercentile(50) / 1e6, age.getValueAtPercentile(99) / 1e6, age.getMax() / 1e6,
+                totalPongs == 0 ? "clock unsynchronized" : String.format("rtt=%.2fms max=%.2fms offset=%.2fms pongs=%d",
+                        roundTripMicros / 1e3, maxRoundTripMicros / 1e3, offsetMicros / 1e3, pongs));
+
+        intervalStartNanos = now;
+        frames = 0;
+        bytes = 0;
+        processNanos = 0;
+        maxProcessNanos = 0;
+        latencyMillis = 0;
+        maxLatencyMillis = 0;
+        latencyFrames = 0;
+        gaps = 0;
+        failures = 0;
+        backfilled = 0;
+        statistics = 0;
+        suppressed = 0;
+        heartbeats = 0;
+        fullLatencyMillis = 0;
+        maxFullLatencyMillis = 0;
+        fullFrames = 0;
+        preempted = 0;
+        frameBytes = 0;
+        previews = 0;
+        previewBytes = 0;
+        previewLatencyMillis = 0;
+        age.reset();
+        pongs = 0;
+        maxRoundTripMicros = 0;
+        return report;
+    }
+
+    /**
+     * @return a report of the totals since the start
+     */
+    public synchronized String summary() {
+        double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+        return String.format("total %.1fs frames=%d (%.1f/s) bytes=%d (%.2f MB/s) gaps=%d failed=%d backfilled=%d"
+                        + " statistics=%d suppressed=%d heartbeats=%d suppressed/received=%.2f full=%d preempted=%d"
+                        + " previews=%d previewBytes=%d frameBytes=%d age p50=%.1fms p99=%.1fms p999=%.1fms max=%.1fms"
+                        + " pongs=%d rtt=%.2fms offset=%.2fms",
+                seconds, totalFrames, totalFrames / seconds, totalBytes, totalBytes / seconds / 1e6, totalGaps,
+                totalFailures, totalBackfilled, totalStatistics, totalSuppressed, totalHeartbeats,
+                totalFrames == 0 ? 0 : (double) totalSuppressed / totalFrames, totalFullFrames, totalPreempted,
+                totalPreviews, totalPreviewBytes, totalFrameBytes, totalAge.getValueAtPercentile(50) / 1e6,
+                totalAge.getValueAtPercentile(99) / 1e6, totalAge.getValueAtPercentile(99.9) / 1e6,
+                totalAge.getMax() / 1e6, totalPongs, roundTripMicros / 1e3, offsetMicros / 1e3);
+    }
+
+    /**
+     * print a report every interval on a daemon thread
+     * @param intervalMillis time between two reports
+     */
+    public void startReporting(final long intervalMillis) {
+        Thread reporter = new Thread("StatsReporter") {
+            @Override
+            public void run() {
+                while (true) {
+                    try {
+                        Thread.sleep(intervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    System.out.println(report());
+                }
+            }
+        };
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+}